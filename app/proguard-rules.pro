@@ -18,4 +18,13 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# Solo se aplica si se activa minifyEnabled (hoy desactivado en release): R8
+# eliminaría las llamadas de debug al log del núcleo (y el cálculo de sus
+# argumentos si no tiene efectos secundarios). Sin R8 las filtra en ejecución
+# log.level=INFO.
+-assumenosideeffects class com.example.websocket.Log {
+    public static int v(...);
+    public static int d(...);
+}
@@ -0,0 +1,13 @@
+package com.example.websocket;
+
+/** Envía el log del núcleo ({@link Log}) a logcat. */
+final class AndroidLogSink implements Log.Sink {
+
+    @Override
+    public void log(int priority, String tag, String msg, Throwable tr) {
+        if (tr != null) {
+            msg = msg + '\n' + android.util.Log.getStackTraceString(tr);
+        }
+        android.util.Log.println(priority, tag, msg);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.websocket;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Ficheros de {@code assets/web/} del APK para el {@link AssetHandler}.
+ *
+ * <p>Los assets guardados sin comprimir en el APK (los que aapt deja tal
+ * cual: imágenes, .gz, .br, o los de {@code noCompress}) se mapean
+ * directamente desde el APK; el resto se leen con {@link AssetManager#open}.
+ * No cambian hasta que se actualiza la app, así que no se revalidan.</p>
+ */
+final class ApkAssetSource implements AssetHandler.Source {
+    static final String ROOT = "web";
+
+    private final AssetManager assets;
+    private final long lastModified;
+
+    ApkAssetSource(Context context) {
+        this.assets = context.getAssets();
+        this.lastModified = new File(context.getApplicationInfo().sourceDir).lastModified();
+    }
+
+    /** @return true si el APK trae algo en {@code assets/web/} */
+    static boolean available(Context context) {
+        try {
+            String[] files = context.getAssets().list(ROOT);
+            return files != null && files.length > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean immutable() {
+        return true;
+    }
+
+    @Override
+    public AssetHandler.Resource find(String path) throws IOException {
+        String name = ROOT + "/" + path;
+        long length;
+        try (AssetFileDescriptor fd = assets.openFd(name)) {
+            length = fd.getLength();
+        } catch (FileNotFoundException e) {
+            // openFd también falla con los assets comprimidos: se distingue abriéndolo
+            try (InputStream probe = assets.open(name)) {
+                length = -1;
+            } catch (FileNotFoundException missing) {
+                return null;
+            }
+        }
+        long knownLength = length;
+        return new AssetHandler.Resource() {
+            @Override
+            public long length() {
+                return knownLength;
+            }
+
+            @Override
+            public long lastModified() {
+                return lastModified;
+            }
+
+            @Override
+            public ByteBuffer map() throws IOException {
+                if (knownLength < 0) {
+                    return null;
+                }
+                try (AssetFileDescriptor fd = assets.openFd(name);
+                     FileInputStream in = fd.createInputStream();
+                     FileChannel channel = in.getChannel()) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+                }
+            }
+
+            @Override
+            public InputStream open() throws IOException {
+                return assets.open(name);
+            }
+        };
+    }
+}
@@ -9,6 +9,8 @@ public class App extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        // El módulo core no conoce Android: su log va a logcat
+        Log.setSink(new AndroidLogSink());
         createNotificationChannel();
     }
 
@@ -1,6 +1,8 @@
 package com.example.websocket;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.ComponentName;
 import android.content.Context;
@@ -14,6 +16,9 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
 
+import java.util.Collections;
+import java.util.List;
+
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
@@ -21,7 +26,10 @@ public class MainActivity extends AppCompatActivity {
     private WebSocketService wsService;
     private boolean bound = false;
 
-    private TextView statusText, messagesText;
+    private TextView statusText;
+    private RecyclerView messagesList;
+    private LinearLayoutManager messagesLayout;
+    private final MessageListAdapter messagesAdapter = new MessageListAdapter();
     private EditText inputMessage;
     private Button sendButton, connectButton, disconnectButton, setUrlButton;
 
@@ -31,27 +39,36 @@ public class MainActivity extends AppCompatActivity {
             WebSocketService.LocalBinder binder = (WebSocketService.LocalBinder) service;
             wsService = binder.getService();
             bound = true;
+            messagesAdapter.setLog(wsService.getMessageLog());
+            scrollToLatest();
 
+            // El servicio invoca estos callbacks ya en el hilo principal
             wsService.setActivityCallback(new WebSocketService.ActivityCallback() {
                 @Override
                 public void onStatusChanged(String status, boolean isConnected) {
-                    runOnUiThread(() -> {
-                        statusText.setText(status);
-                        statusText.setTextColor(isConnected ? Color.GREEN : Color.RED);
-                    });
+                    statusText.setText(status);
+                    statusText.setTextColor(isConnected ? Color.GREEN : Color.RED);
                 }
 
                 @Override
                 public void onStatusChanged(String status, int color) {
-                    runOnUiThread(() -> {
-                        statusText.setText(status);
-                        statusText.setTextColor(color);
-                    });
+                    statusText.setText(status);
+                    statusText.setTextColor(color);
                 }
 
                 @Override
                 public void onMessageReceived(String message) {
-                    runOnUiThread(() -> messagesText.append(message + "\n"));
+                    onMessagesReceived(Collections.singletonList(message));
+                }
+
+                @Override
+                public void onMessagesReceived(List<String> messages) {
+                    // El servicio ya los añadió al historial: solo se notifica el diff del lote
+                    boolean atBottom = isAtBottom();
+                    messagesAdapter.sync();
+                    if (atBottom) {
+                        scrollToLatest();
+                    }
                 }
             });
         }
@@ -60,6 +77,7 @@ public class MainActivity extends AppCompatActivity {
         public void onServiceDisconnected(ComponentName name) {
             bound = false;
             wsService = null;
+            messagesAdapter.setLog(null);
         }
     };
 
@@ -69,7 +87,11 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         statusText = findViewById(R.id.statusText);
-        messagesText = findViewById(R.id.messagesText);
+        messagesList = findViewById(R.id.messagesList);
+        messagesLayout = new LinearLayoutManager(this);
+        messagesLayout.setStackFromEnd(true);
+        messagesList.setLayoutManager(messagesLayout);
+        messagesList.setAdapter(messagesAdapter);
         inputMessage = findViewById(R.id.inputMessage);
         sendButton = findViewById(R.id.sendButton);
         connectButton = findViewById(R.id.connectBottom);
@@ -100,8 +122,8 @@ public class MainActivity extends AppCompatActivity {
         sendButton.setOnClickListener(v -> {
             String msg = inputMessage.getText().toString().trim();
             if (!msg.isEmpty() && bound && wsService != null) {
-                wsService.sendMessage(msg);
-                messagesText.append("Yo: " + msg + "\n");
+                wsService.sendEnvelope(msg);
+                wsService.recordLocalMessage("Yo: " + msg);
                 inputMessage.setText("");
             }
         });
@@ -114,6 +136,19 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    /** Solo se sigue el final si el usuario no se ha desplazado hacia atrás. */
+    private boolean isAtBottom() {
+        int last = messagesLayout.findLastVisibleItemPosition();
+        return last == RecyclerView.NO_POSITION || last >= messagesAdapter.getItemCount() - 1;
+    }
+
+    private void scrollToLatest() {
+        int count = messagesAdapter.getItemCount();
+        if (count > 0) {
+            messagesList.scrollToPosition(count - 1);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
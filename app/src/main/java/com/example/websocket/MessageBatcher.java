@@ -0,0 +1,68 @@
+package com.example.websocket;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Acumula los mensajes que llegan desde los hilos de red y los entrega al
+ * hilo principal en lotes, como mucho una vez por frame de pantalla.
+ *
+ * Los productores solo hacen un offer() sin bloqueo; el primero que encuentra
+ * el buffer vacío programa el frame callback, el resto no toca el main thread.
+ * Debe crearse en el hilo principal.
+ */
+public class MessageBatcher {
+
+    /** Máximo de mensajes entregados por frame; el resto pasa al siguiente. */
+    private static final int MAX_PER_FRAME = 512;
+
+    public interface Sink {
+        void onBatch(List<String> messages);
+    }
+
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> drain();
+    private final Sink sink;
+
+    public MessageBatcher(Sink sink) {
+        this.sink = sink;
+    }
+
+    /** Se puede llamar desde cualquier hilo. */
+    public void add(String message) {
+        pending.offer(message);
+        if (scheduled.compareAndSet(false, true)) {
+            // Choreographer admite postFrameCallback desde otros hilos
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+
+    /** Descarta lo pendiente y cancela el frame programado. */
+    public void clear() {
+        choreographer.removeFrameCallback(frameCallback);
+        pending.clear();
+        scheduled.set(false);
+    }
+
+    private void drain() {
+        // Se libera antes de vaciar para no perder mensajes que lleguen durante la entrega
+        scheduled.set(false);
+        List<String> batch = new ArrayList<>();
+        String message;
+        while (batch.size() < MAX_PER_FRAME && (message = pending.poll()) != null) {
+            batch.add(message);
+        }
+        if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(frameCallback);
+        }
+        if (!batch.isEmpty()) {
+            sink.onBatch(batch);
+        }
+    }
+}
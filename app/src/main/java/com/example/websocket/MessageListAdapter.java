@@ -0,0 +1,93 @@
+package com.example.websocket;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Lista reciclada sobre el {@link MessageLog} del servicio: solo existen las
+ * vistas visibles y cada lote notifica exactamente lo que entró y lo que el
+ * anillo descartó, en vez de re-maquetar todo el historial.
+ *
+ * Debe usarse en el hilo principal, que es donde cambia el historial.
+ */
+public class MessageListAdapter extends RecyclerView.Adapter<MessageListAdapter.Holder> {
+
+    static final class Holder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        Holder(View itemView) {
+            super(itemView);
+            text = itemView.findViewById(R.id.messageText);
+        }
+    }
+
+    private MessageLog log;
+    // Ventana [shownFirst, shownNext) del historial que la lista conoce
+    private long shownFirst;
+    private long shownNext;
+
+    /** Muestra el historial de golpe (al enlazar con el servicio). */
+    public void setLog(MessageLog log) {
+        this.log = log;
+        if (log != null) {
+            shownFirst = log.firstIndex();
+            shownNext = log.nextIndex();
+        } else {
+            shownFirst = shownNext = 0;
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Ajusta la lista a lo que cambió en el historial desde la última vez:
+     * posiciones quitadas al principio y añadidas al final.
+     */
+    public void sync() {
+        if (log == null) {
+            return;
+        }
+        long first = log.firstIndex();
+        long next = log.nextIndex();
+        int shownSize = (int) (shownNext - shownFirst);
+        int removed = (int) Math.min(first - shownFirst, shownSize);
+        if (shownSize > 0 && removed == shownSize) {
+            // Vaciado o un lote que desplazó todo lo visible: se redibuja entero
+            shownFirst = first;
+            shownNext = next;
+            notifyDataSetChanged();
+            return;
+        }
+        int added = (int) (next - shownNext);
+        shownFirst = first;
+        shownNext = next;
+        if (removed > 0) {
+            notifyItemRangeRemoved(0, removed);
+        }
+        if (added > 0) {
+            notifyItemRangeInserted(shownSize - removed, added);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_message, parent, false);
+        return new Holder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder holder, int position) {
+        holder.text.setText(log.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return (int) (shownNext - shownFirst);
+    }
+}
@@ -2,35 +2,81 @@ package com.example.websocket;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
-
+import okio.ByteString;
+
+/**
+ * Un socket WS suelto, creado con {@link WebSocketService#newWebSocketManager}.
+ * Usa el OkHttpClient del servicio: newBuilder() comparte el dispatcher y el
+ * pool, así que no añade hilos. El latido es el del nodo: el ping fijo de
+ * {@code client.pingIntervalSeconds} o, con {@code heartbeat.adaptive}, un
+ * {@link AdaptiveHeartbeat} propio (métricas con {@code socket="manager"}).
+ * Para varios destinos con failover, {@link EndpointManager}.
+ */
 public class WebSocketManager {
 
     private static final String TAG = "WebSocketManager";
     private WebSocket webSocket;
     private String serverUrl;
     private WebSocketListenerCustom listener;
+    private final AtomicLong envelopeSeq = new AtomicLong();
+    // Solo lo usa el hilo lector de OkHttp
+    private final Envelope.Reader envelope = new Envelope.Reader();
 
-    // Cliente con pingInterval para mantener conexión viva
-    private final OkHttpClient client = new OkHttpClient.Builder()
-            .pingInterval(5, TimeUnit.SECONDS) // 🔹 Ping cada 30 segundos
-            .build();
+    // El compartido tal cual (ping fijo) o sin ping de OkHttp si el latido es adaptativo
+    private final OkHttpClient client;
+    private final AdaptiveHeartbeat heartbeat;
 
     public interface WebSocketListenerCustom {
         void onMessageReceived(String message);
         void onStatusChanged(String status);
     }
 
-    public WebSocketManager(String serverUrl) {
+    public WebSocketManager(OkHttpClient sharedClient, String serverUrl, NodeConfig config,
+                            TaskScheduler scheduler) {
+        if (config.heartbeatAdaptive) {
+            this.client = sharedClient.newBuilder().pingInterval(0, TimeUnit.MILLISECONDS).build();
+            this.heartbeat = AdaptiveHeartbeat.fromConfig(config, scheduler, new HeartbeatProbe(),
+                    "socket=\"manager\"");
+        } else {
+            this.client = sharedClient;
+            this.heartbeat = null;
+        }
         this.serverUrl = serverUrl;
     }
 
+    /** El latido escribe y corta sobre el socket actual. */
+    private final class HeartbeatProbe implements AdaptiveHeartbeat.Probe {
+        @Override
+        public boolean sendPing(String frame) {
+            WebSocket ws = webSocket;
+            return ws != null && ws.send(frame);
+        }
+
+        @Override
+        public void onDead(String reason) {
+            WebSocket ws = webSocket;
+            if (ws != null) {
+                Log.w(TAG, "Conexión muerta (" + reason + "), cancelando socket");
+                // OkHttp responde con onFailure
+                ws.cancel();
+            }
+        }
+    }
+
+    /** Última ida y vuelta del latido adaptativo, o -1 si no hay (o el latido es fijo). */
+    public long lastRttMs() {
+        return heartbeat != null ? heartbeat.lastRttMs() : -1;
+    }
+
     public void setWebSocketListener(WebSocketListenerCustom listener) {
         this.listener = listener;
     }
@@ -42,37 +88,66 @@ public class WebSocketManager {
             @Override
             public void onOpen(WebSocket webSocket, Response response) {
                 WebSocketManager.this.webSocket = webSocket;
+                if (heartbeat != null) heartbeat.start();
                 Log.d(TAG, "Conectado al servidor WebSocket ✅");
                 if (listener != null) listener.onStatusChanged("Conectado ✅");
             }
 
             @Override
             public void onMessage(WebSocket webSocket, String text) {
+                if (heartbeat != null) {
+                    heartbeat.onActivity();
+                    if (text.startsWith(AdaptiveHeartbeat.CMD_PONG)) {
+                        heartbeat.onPong(text);
+                        return;
+                    }
+                }
                 Log.d(TAG, "Mensaje recibido: " + text);
                 if (listener != null) listener.onMessageReceived(text);
             }
 
+            /** Sobres binarios: se entregan en su forma JSON; otros binarios se ignoran. */
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                if (heartbeat != null) heartbeat.onActivity();
+                if (envelope.wrap(bytes.asByteBuffer())) {
+                    if (listener != null) listener.onMessageReceived(envelope.toString());
+                }
+            }
+
             @Override
             public void onClosed(WebSocket webSocket, int code, String reason) {
+                if (heartbeat != null) heartbeat.stop();
                 Log.d(TAG, "Conexión cerrada: " + reason);
                 if (listener != null) listener.onStatusChanged("Desconectado ❌");
             }
 
             @Override
             public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                if (heartbeat != null) heartbeat.stop();
                 Log.e(TAG, "Error WebSocket", t);
                 if (listener != null) listener.onStatusChanged("Error ⚠️");
             }
         });
     }
 
+    /** El texto viaja como sobre MESSAGE del tópico por defecto. */
     public void sendMessage(String message) {
-        if (webSocket != null) {
-            webSocket.send(message);
+        sendEnvelope(Envelope.Type.MESSAGE, MessageBus.DEFAULT_TOPIC, message);
+    }
+
+    /** Envía un {@link Envelope} con el texto como payload (MESSAGE recibe un ECHO). */
+    public boolean sendEnvelope(Envelope.Type type, String topic, String text) {
+        if (webSocket == null) {
+            return false;
         }
+        ByteBuffer frame = Envelope.encode(type, topic, envelopeSeq.incrementAndGet(),
+                System.currentTimeMillis(), text);
+        return webSocket.send(ByteString.of(frame));
     }
 
     public void close() {
+        if (heartbeat != null) heartbeat.stop();
         if (webSocket != null) {
             webSocket.close(1000, "Cierre manual");
         }
@@ -17,23 +17,21 @@ import android.widget.Toast;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.Arrays;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import okhttp3.Dns;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.WebSocket;
-import okhttp3.WebSocketListener;
 import okio.ByteString;
 
 /**
- * Servicio en primer plano que mantiene una conexión WebSocket activa,
- * expone callbacks a la Activity y levanta un servidor HTTP embebido.
+ * Servicio en primer plano que aloja el {@link RelayNode} (servidores
+ * embebidos, bus y cliente WS, en el módulo core) y lo conecta con Android:
+ * notificación, hilo principal y callbacks a la Activity.
  */
 public class WebSocketService extends Service {
     private static final String TAG = "WebSocketService";
@@ -41,45 +39,66 @@ public class WebSocketService extends Service {
     // Notificación / Foreground
     public static final String CHANNEL_ID = "WebSocketServiceChannel";
     private static final int NOTIFICATION_ID = 1;
-
-    // WS
-    private static final int NORMAL_CLOSURE = 1000;
-    private static final long RECONNECT_DELAY = 5000L;
-    private static final int CONNECT_TIMEOUT = 15;  // seg
-    private static final int PING_INTERVAL = 25;    // seg
-
-    // Cliente y socket
-    private OkHttpClient client;
-    private WebSocket webSocket;
-
-    /**
-     * Alias PrintConToda para el cliente WS hacia sí mismo
-     */
-    private String wsUrl = "ws://PrintConToda:8889/";
-
-    private boolean isConnected = false;
+    // Un solo builder para todas las actualizaciones; solo se vuelve a notificar si cambia algo
+    private NotificationCompat.Builder notificationBuilder;
+    private String notifiedText;
+    private int notifiedColor;
 
     // Comunicación con la Activity
     private ActivityCallback activityCallback;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Mensajes entrantes agrupados por frame antes de llegar a la Activity
+    private MessageBatcher messageBatcher;
+    // Historial acotado que la Activity muestra como lista; vive aquí para sobrevivir a la Activity
+    private MessageLog messageLog;
+    private final List<BinaryListener> binaryListeners = new CopyOnWriteArrayList<>();
+    // Los binarios llegan del hilo lector de OkHttp o de quien publique en el bus: un lector por hilo
+    private static final ThreadLocal<Envelope.Reader> READER = ThreadLocal.withInitial(Envelope.Reader::new);
+
+    // Las tareas diferidas del núcleo (reconexión, reintentos de envío) van al hilo principal
+    private final TaskScheduler mainScheduler = new TaskScheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            mainHandler.postDelayed(task, delayMs);
+        }
 
-    // Servidores embebidos
-    private SimpleHttpServer httpServer;
-    private SimpleWebSocketServer wsServer;
+        @Override
+        public void removeCallbacks(Runnable task) {
+            mainHandler.removeCallbacks(task);
+        }
+    };
+
+    private NodeConfig config;
+    private RelayNode node;
 
     // ======== Interfaz para comunicación con Activity ========
     public interface ActivityCallback {
         void onStatusChanged(String status, boolean isConnected);
         void onStatusChanged(String status, int color);
         void onMessageReceived(String message);
+
+        /**
+         * Lote de mensajes acumulados durante un frame, ya añadidos a
+         * {@link #getMessageLog()}; se invoca en el hilo principal.
+         */
+        default void onMessagesReceived(List<String> messages) {
+            for (String message : messages) {
+                onMessageReceived(message);
+            }
+        }
+    }
+
+    /** Consumidor de payloads binarios; se invoca en el hilo de red. */
+    public interface BinaryListener {
+        void onBinaryMessage(String source, ByteBuffer payload);
     }
 
-    // ======== Binder para conectar Service con Activity ========
     public class LocalBinder extends Binder {
         public WebSocketService getService() {
             return WebSocketService.this;
         }
     }
+
     private final IBinder binder = new LocalBinder();
 
     // ======== Ciclo de vida del Service ========
@@ -88,43 +107,42 @@ public class WebSocketService extends Service {
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Servicio WebSocket creado ✅");
+        messageBatcher = new MessageBatcher(this::deliverBatchToActivity);
         startForegroundServiceWithNotification();
-        initializeClient();
-        startHttpServer();
-        startWsServer();
+        config = buildConfig();
+        messageLog = new MessageLog(config.messageLogSize);
+        node = new RelayNode(config, mainScheduler, new NodeListener());
+        if (ApkAssetSource.available(this)) {
+            node.setAssetSource(new ApkAssetSource(this));
+        }
+        node.start();
+    }
+
+    /**
+     * Valores por defecto del núcleo más el diario en el almacenamiento
+     * privado de la app; en release el log de debug queda desactivado y ni
+     * el diario ni el log se sirven por HTTP.
+     */
+    private NodeConfig buildConfig() {
+        Properties props = new Properties();
+        props.setProperty("journal.dir", new File(getFilesDir(), "journal").getPath());
+        props.setProperty("http.debugEndpoints", BuildConfig.DEBUG ? "LOOPBACK" : "OFF");
+        props.setProperty("log.level", BuildConfig.DEBUG ? "DEBUG" : "INFO");
+        return new NodeConfig(props);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "onStartCommand recibido. flags=" + flags + " startId=" + startId);
-        if (webSocket == null || !isConnected) {
-            connectWebSocket();
-        }
+        node.connect();
         return START_STICKY;
     }
 
     @Override
     public void onDestroy() {
-        if (webSocket != null) {
-            try {
-                webSocket.close(NORMAL_CLOSURE, "Servicio terminado");
-            } catch (Exception ignored) {}
-            webSocket = null;
-        }
-        if (client != null) {
-            try {
-                client.dispatcher().executorService().shutdown();
-            } catch (Exception ignored) {}
-        }
-        if (httpServer != null) {
-            httpServer.stopServer();
-            httpServer = null;
-        }
-        if (wsServer != null) {
-            try {
-                wsServer.stop();
-            } catch (Exception ignored) {}
-            wsServer = null;
+        node.stop();
+        if (messageBatcher != null) {
+            messageBatcher.clear();
         }
         Log.d(TAG, "Servicio WebSocket destruido 🛑");
         super.onDestroy();
@@ -136,27 +154,66 @@ public class WebSocketService extends Service {
         return binder;
     }
 
-    // ======== Inicialización del cliente OkHttp con DNS personalizado ========
+    // ======== Eventos del núcleo ========
+
+    private final class NodeListener implements RelayNode.Listener {
+        /** Ya agrupado por el núcleo y en el hilo principal (mainScheduler). */
+        @Override
+        public void onStatusChanged(RelayNode.Status status, String detail) {
+            switch (status) {
+                case CONNECTING:
+                    updateStatus("Conectando...", false, Color.YELLOW);
+                    break;
+                case CONNECTED:
+                    updateStatus("Conectado", true, Color.GREEN);
+                    sendMessageToActivity("Conexión WS exitosa");
+                    break;
+                case IN_PROCESS:
+                    updateStatus("Conectado (en proceso)", true, Color.GREEN);
+                    break;
+                case DISCONNECTING:
+                    updateStatus("Desconectando...", false, Color.YELLOW);
+                    break;
+                case DISCONNECTED:
+                    updateStatus("Desconectado", false, Color.RED);
+                    break;
+                case FAILED:
+                    updateStatus("Error: " + detail, false, Color.RED);
+                    showToast("Error de conexión");
+                    break;
+            }
+        }
+
+        @Override
+        public void onMessage(String message) {
+            sendMessageToActivity(message);
+        }
 
-    private void initializeClient() {
-        Dns customDns = new Dns() {
-            @Override
-            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
-                if ("PrintConToda".equalsIgnoreCase(hostname)) {
-                    return Arrays.asList(InetAddress.getByName("127.0.0.1"));
-                }
-                return Dns.SYSTEM.lookup(hostname);
+        @Override
+        public void onBinary(String source, ByteBuffer payload) {
+            dispatchBinary(source, payload);
+        }
+
+        @Override
+        public void onOutboundRejected(int depth) {
+            showToast("Cola de envío llena");
+        }
+    }
+
+    private void dispatchBinary(String source, ByteBuffer payload) {
+        for (BinaryListener listener : binaryListeners) {
+            try {
+                listener.onBinaryMessage(source, payload.duplicate());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error en consumidor binario", e);
             }
-        };
-
-        client = new OkHttpClient.Builder()
-                .dns(customDns)
-                .connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS)
-                .readTimeout(0, TimeUnit.MILLISECONDS)
-                .writeTimeout(10, TimeUnit.SECONDS)
-                .pingInterval(PING_INTERVAL, TimeUnit.SECONDS)
-                .retryOnConnectionFailure(true)
-                .build();
+        }
+        if (activityCallback != null) {
+            // Los sobres se muestran en su forma JSON; el resto, solo el tamaño
+            Envelope.Reader envelope = READER.get();
+            sendMessageToActivity(envelope.wrap(payload) ? envelope.toString()
+                    : "[Datos binarios: " + payload.remaining() + " bytes]");
+        }
     }
 
     // ======== Notificación / Foreground ========
@@ -168,17 +225,25 @@ public class WebSocketService extends Service {
     }
 
     private Notification buildNotification(String text, int color) {
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Servicio WebSocket")
+        if (notificationBuilder == null) {
+            notificationBuilder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                    .setContentTitle("Servicio WebSocket")
+                    .setSmallIcon(R.drawable.ic_notification)
+                    .setOngoing(true)
+                    .setOnlyAlertOnce(true);
+        }
+        notifiedText = text;
+        notifiedColor = color;
+        return notificationBuilder
                 .setContentText(text)
-                .setSmallIcon(R.drawable.ic_notification)
                 .setColor(color)
-                .setOngoing(true)
-                .setOnlyAlertOnce(true)
                 .build();
     }
 
     private void updateNotification(String text, int color) {
+        if (text.equals(notifiedText) && color == notifiedColor) {
+            return;
+        }
         NotificationManager manager = getSystemService(NotificationManager.class);
         manager.notify(NOTIFICATION_ID, buildNotification(text, color));
     }
@@ -196,143 +261,164 @@ public class WebSocketService extends Service {
         }
     }
 
-    // ======== Conexión WebSocket como cliente ========
+    // ======== Utilidades UI / Activity callbacks ========
 
-    private void connectWebSocket() {
-        Log.d(TAG, "Conectando a: " + wsUrl);
-        updateStatus("Conectando...", false, Color.YELLOW);
+    /** En el hilo principal: los cambios de estado llegan por mainScheduler. */
+    private void updateStatus(String status, boolean connected, int color) {
+        if (activityCallback != null) {
+            activityCallback.onStatusChanged(status, connected);
+        }
+        updateNotification(status, color);
+    }
 
-        Request request = new Request.Builder().url(wsUrl).build();
+    private void sendMessageToActivity(String message) {
+        messageBatcher.add(message);
+    }
 
-        webSocket = client.newWebSocket(request, new WebSocketListener() {
-            @Override
-            public void onOpen(WebSocket webSocket, Response response) {
-                isConnected = true;
-                Log.i(TAG, "Conexión establecida. Código: " + response.code());
-                updateStatus("Conectado", true, Color.GREEN);
-                sendMessageToActivity("Conexión WS exitosa");
-            }
+    private void deliverBatchToActivity(List<String> messages) {
+        messageLog.addAll(messages);
+        if (activityCallback != null) {
+            activityCallback.onMessagesReceived(messages);
+        }
+    }
 
-            @Override
-            public void onMessage(WebSocket webSocket, String text) {
-                Log.d(TAG, "Mensaje recibido: " + text);
-                sendMessageToActivity(text);
-            }
+    private void showToast(String message) {
+        mainHandler.post(() ->
+                Toast.makeText(WebSocketService.this, message, Toast.LENGTH_SHORT).show()
+        );
+    }
 
-            @Override
-            public void onMessage(WebSocket webSocket, ByteString bytes) {
-                Log.d(TAG, "Datos binarios (" + bytes.size() + " bytes)");
-                sendMessageToActivity("[Datos binarios]");
-            }
+    // ======== API pública del Service ========
 
-            @Override
-            public void onClosing(WebSocket webSocket, int code, String reason) {
-                isConnected = false;
-                Log.d(TAG, "onClosing: code=" + code + " reason=" + reason);
-                updateStatus("Desconectando...", false, Color.YELLOW);
-            }
+    /**
+     * Encola el mensaje y lo envía en cuanto sea posible. Sin conexión queda
+     * guardado y se envía en orden al reconectar.
+     *
+     * @return false si la cola de salida lo rechazó por estar llena
+     */
+    public boolean sendMessage(String message) {
+        return node.sendMessage(message);
+    }
 
-            @Override
-            public void onClosed(WebSocket webSocket, int code, String reason) {
-                isConnected = false;
-                Log.d(TAG, "onClosed: code=" + code + " reason=" + reason);
-                updateStatus("Desconectado", false, Color.RED);
-                if (code != NORMAL_CLOSURE) {
-                    scheduleReconnect();
-                }
-            }
+    public boolean sendBinary(ByteString payload) {
+        return node.sendBinary(payload);
+    }
 
-            @Override
-            public void onFailure(WebSocket webSocket, Throwable t, @Nullable Response response) {
-                isConnected = false;
-                Log.e(TAG, "Error WS: " + (t != null ? t.getMessage() : "desconocido"), t);
-                updateStatus("Error: " + (t != null ? t.getMessage() : "WS failure"), false, Color.RED);
-                showToast("Error de conexión");
-                scheduleReconnect();
-            }
-        });
+    /** Envía los bytes entre position y limit; al volver el buffer puede reutilizarse. */
+    public boolean sendBinary(ByteBuffer payload) {
+        return node.sendBinary(payload);
     }
 
-    private void scheduleReconnect() {
-        Log.d(TAG, "Reintentando conexión en " + RECONNECT_DELAY + " ms…");
-        mainHandler.postDelayed(this::connectWebSocket, RECONNECT_DELAY);
+    /** Envía un {@link Envelope} (p. ej. PUBLISH a un tópico) con seq e instante del nodo. */
+    public boolean sendEnvelope(Envelope.Type type, String topic, ByteBuffer payload) {
+        return node.sendEnvelope(type, topic, payload);
     }
 
-    // ======== Utilidades UI / Activity callbacks ========
+    /** Texto del usuario como sobre MESSAGE del tópico por defecto; el servidor responde con un ECHO. */
+    public boolean sendEnvelope(String text) {
+        return node.sendEnvelope(Envelope.Type.MESSAGE, MessageBus.DEFAULT_TOPIC,
+                ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
 
-    private void updateStatus(String status, boolean connected, int color) {
-        mainHandler.post(() -> {
-            if (activityCallback != null) {
-                activityCallback.onStatusChanged(status, connected);
-            }
-            updateNotification(status, color);
-        });
+    public void addBinaryListener(BinaryListener listener) {
+        binaryListeners.add(listener);
     }
 
-    private void sendMessageToActivity(String message) {
-        mainHandler.post(() -> {
-            if (activityCallback != null) {
-                activityCallback.onMessageReceived(message);
-            }
-        });
+    public void removeBinaryListener(BinaryListener listener) {
+        binaryListeners.remove(listener);
     }
 
-    private void showToast(String message) {
-        mainHandler.post(() ->
-                Toast.makeText(WebSocketService.this, message, Toast.LENGTH_SHORT).show()
-        );
+    public void setOutboundPolicy(OutboundQueue.OverflowPolicy policy) {
+        node.setOutboundPolicy(policy);
     }
 
-    // ======== Servidores embebidos ========
+    /** Mensajes en la cola de salida propia (aún no entregados a OkHttp). */
+    public int getOutboundDepth() {
+        return node.getOutboundDepth();
+    }
 
-    private void startHttpServer() {
-        httpServer = new SimpleHttpServer(8888, this);
-        httpServer.startServer();
-        Log.d(TAG, "Servidor HTTP embebido iniciado en http://127.0.0.1:8888/ ✅");
+    /** Bytes pendientes de enviar (cola propia + buffer de OkHttp). */
+    public long queueSize() {
+        return node.queueSize();
     }
 
-    private void startWsServer() {
-        wsServer = new SimpleWebSocketServer(8889, this);
-        wsServer.start();
-        Log.d(TAG, "Servidor WebSocket embebido iniciado en ws://127.0.0.1:8889/ ✅");
+    public void setServerUrl(String url) {
+        node.setServerUrl(url);
     }
 
-    // ======== API pública del Service ========
+    public void reconnect() {
+        node.reconnect();
+    }
 
-    public void sendMessage(String message) {
-        if (webSocket != null && isConnected) {
-            webSocket.send(message);
-        } else {
-            showToast("No conectado");
-        }
+    /** Envía a uno de los destinos adicionales (upstream.urls) según su estrategia. */
+    public boolean sendUpstream(String message) {
+        return node.sendUpstream(message);
     }
 
-    public void setServerUrl(String url) {
-        this.wsUrl = url;
-        reconnect();
+    /** Destinos adicionales con su estado y salud, o null si no hay ninguno. */
+    public EndpointManager getUpstreams() {
+        return node.getUpstreams();
     }
 
-    public void reconnect() {
-        if (webSocket != null) {
-            try {
-                webSocket.close(NORMAL_CLOSURE, "Reconexión manual");
-            } catch (Exception ignored) {}
-            webSocket = null;
-        }
-        connectWebSocket();
+    /** Cliente OkHttp único del proceso; derivar con newBuilder() en vez de crear otro. */
+    public OkHttpClient getHttpClient() {
+        return node.getHttpClient();
+    }
+
+    /** Socket WS suelto sobre el cliente compartido, con el mismo latido que el nodo. */
+    public WebSocketManager newWebSocketManager(String serverUrl) {
+        return new WebSocketManager(getHttpClient(), serverUrl, config, mainScheduler);
+    }
+
+    public void setLoopbackTransport(boolean enabled) {
+        node.setLoopbackTransport(enabled);
+    }
+
+    /** Diario de mensajes recibidos y enviados; sobrevive a que maten el proceso. */
+    public MessageJournal getJournal() {
+        return node.getJournal();
+    }
+
+    public MessageBus getMessageBus() {
+        return node.getMessageBus();
+    }
+
+    /** Estadísticas de reconexión: intentos, esperas y latencia de conexión. */
+    public ReconnectScheduler getReconnectStats() {
+        return node.getReconnectStats();
+    }
+
+    /**
+     * Publica un mensaje a los clientes del servidor WS embebido suscritos al tópico.
+     * @return número de clientes que lo recibieron
+     */
+    public int publish(String topic, String message) {
+        return node.publish(topic, message);
     }
 
     public boolean isConnected() {
-        return isConnected;
+        return node.isConnected();
+    }
+
+    /** Historial de mensajes para la UI; solo cambia en el hilo principal. */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /** Añade al historial un mensaje generado en la UI (p. ej. lo enviado). Hilo principal. */
+    public void recordLocalMessage(String message) {
+        messageLog.add(message);
+        if (activityCallback != null) {
+            activityCallback.onMessagesReceived(Collections.singletonList(message));
+        }
     }
 
     public void setActivityCallback(ActivityCallback callback) {
         this.activityCallback = callback;
     }
 
-    // Método llamado por HTTP o WS para notificar a la UI
+    // Método llamado por HTTP para notificar a la UI y a los clientes WS (vía bus)
     public void notifyFromHttp(String msg) {
-        sendMessageToActivity(msg);
-        sendMessage(msg);
+        node.notifyFromHttp(msg);
     }
 }
@@ -0,0 +1,134 @@
+package com.example.websocket;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.HandshakeState;
+import org.java_websocket.exceptions.InvalidHandshakeException;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/** Utilidades comunes de los benchmarks: puertos libres, payloads, drafts y cliente WS de eco. */
+final class BenchSupport {
+
+    static final long TIMEOUT_SECONDS = 10;
+
+    private BenchSupport() {
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            socket.setReuseAddress(true);
+            return socket.getLocalPort();
+        }
+    }
+
+    static OkHttpClient newClient(CompressionConfig compression) {
+        return new OkHttpClient.Builder()
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .minWebSocketMessageToCompress(compression.clientMinMessageToCompress())
+                .build();
+    }
+
+    static String payload(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes);
+        while (sb.length() < bytes) {
+            sb.append("{\"sensor\":\"temperatura\",\"value\":21.5}");
+        }
+        sb.setLength(bytes);
+        return sb.toString();
+    }
+
+    /** JSON de un dispositivo con {@code readings} lecturas; {@code seed} varía valores e instantes. */
+    static String sensorPayload(int readings, int seed) {
+        StringBuilder sb = new StringBuilder("{\"device\":\"PrintConToda\",\"readings\":[");
+        for (int i = 0; i < readings; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"sensor\":\"temperatura\",\"unit\":\"celsius\",\"value\":")
+                    .append(20 + (seed * 7 + i) % 10).append('.').append((seed + i) % 10)
+                    .append(",\"ts\":").append(1_700_000_000_000L + seed * 1013L + i * 17L).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /** Draft del servidor tras aceptar un handshake que ofrece permessage-deflate. */
+    static Draft_6455 negotiatedDraft(CompressionConfig config) throws InvalidHandshakeException {
+        Draft_6455 draft = (Draft_6455) config.serverDrafts().get(0).copyInstance();
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.put("Upgrade", "websocket");
+        handshake.put("Connection", "Upgrade");
+        handshake.put("Sec-WebSocket-Version", "13");
+        handshake.put("Sec-WebSocket-Key", "dGhlIHNhbXBsZSBub25jZQ==");
+        handshake.put("Sec-WebSocket-Extensions", "permessage-deflate");
+        if (draft.acceptHandshakeAsServer(handshake) != HandshakeState.MATCHED) {
+            throw new IllegalStateException("Handshake no aceptado por " + draft);
+        }
+        return draft;
+    }
+
+    static void shutdown(OkHttpClient client) {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    /** Cliente OkHttp que encola todo lo recibido; el servidor aún puede estar arrancando. */
+    static final class WsClient extends WebSocketListener {
+        final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        WebSocket socket;
+
+        static WsClient connect(OkHttpClient client, String url) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (true) {
+                WsClient ws = new WsClient();
+                ws.socket = client.newWebSocket(new Request.Builder().url(url).build(), ws);
+                Object first = ws.received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (first instanceof String) {
+                    return ws;   // saludo del servidor
+                }
+                ws.socket.cancel();
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("No se pudo conectar a " + url + ": " + first);
+                }
+                Thread.sleep(100);
+            }
+        }
+
+        Object await() throws InterruptedException {
+            Object message = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (message == null || message instanceof Throwable) {
+                throw new IllegalStateException("Sin respuesta del servidor", (Throwable) message);
+            }
+            return message;
+        }
+
+        void close() {
+            socket.close(1000, "fin");
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            received.add(text);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            received.add(bytes);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, okhttp3.Response response) {
+            received.add(t);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.websocket;
+
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.InvalidHandshakeException;
+import org.java_websocket.framing.Framedata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de CPU de permessage-deflate con payloads JSON como los de los
+ * sensores, a través del Draft_6455 y la PerMessageDeflateExtension que monta
+ * {@link CompressionConfig#serverDrafts()} una vez negociada la extensión.
+ * La ratio de compresión se comprueba en CompressionConfigTest.
+ *
+ * {@code roundTrip} comprime con un draft y descomprime con otro en orden,
+ * como los dos extremos de una conexión (con context takeover cada frame
+ * depende de los anteriores).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    /** Lecturas por mensaje: de ~130 B a ~8 KiB. */
+    @Param({"1", "4", "16", "64"})
+    public int readings;
+
+    @Param({"true", "false"})
+    public boolean contextTakeover;
+
+    private final String[] payloads = new String[512];
+    private Draft_6455 sender;
+    private Draft_6455 receiver;
+    private int next;
+
+    @Setup
+    public void prepare() throws InvalidHandshakeException {
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = BenchSupport.sensorPayload(readings, i);
+        }
+        CompressionConfig config = new CompressionConfig(true, CompressionConfig.DEFAULT_THRESHOLD_BYTES,
+                !contextTakeover, !contextTakeover);
+        sender = BenchSupport.negotiatedDraft(config);
+        receiver = BenchSupport.negotiatedDraft(config);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return frame(payloads[next++ & (payloads.length - 1)]);
+    }
+
+    @Benchmark
+    public List<Framedata> roundTrip() throws InvalidDataException {
+        return receiver.translateFrame(frame(payloads[next++ & (payloads.length - 1)]));
+    }
+
+    /** Bytes en el cable de un mensaje de texto del servidor, comprimido si supera el umbral. */
+    private ByteBuffer frame(String text) {
+        return sender.createBinaryFrame(sender.createFrames(text, false).get(0));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Peticiones por segundo contra las rutas HTTP de la app, con NanoHTTPD
+ * ({@link SimpleHttpServer}) y con {@link UnifiedServer}. Conexiones
+ * keep-alive reutilizadas por OkHttp.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HttpServerBenchmark {
+
+    @Param({"nanohttpd", "unified"})
+    public String engine;
+
+    private SimpleHttpServer nanoServer;
+    private UnifiedServer unifiedServer;
+    private OkHttpClient client;
+    private Request request;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        int port = BenchSupport.freePort();
+        HttpRoutes routes = new HttpRoutes();
+        if ("unified".equals(engine)) {
+            unifiedServer = new UnifiedServer(port, 2, routes, new MessageBus());
+            unifiedServer.start();
+        } else {
+            nanoServer = new SimpleHttpServer(port, routes);
+            nanoServer.startServer();
+        }
+        client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(16, 1, TimeUnit.MINUTES))
+                .build();
+        request = new Request.Builder().url("http://127.0.0.1:" + port + "/").build();
+        get();   // calienta la conexión y comprueba que el servidor responde
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        BenchSupport.shutdown(client);
+        if (unifiedServer != null) {
+            unifiedServer.stop();
+        }
+        if (nanoServer != null) {
+            nanoServer.stopServer();
+        }
+    }
+
+    @Benchmark
+    public String get() throws IOException {
+        try (Response response = client.newCall(request).execute()) {
+            return response.body().string();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getConcurrent() throws IOException {
+        return get();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okio.ByteString;
+
+/**
+ * Lado cliente: cuánto tarda OkHttp en sacar mensajes por el socket (envío) y
+ * en entregar los que el servidor publica en un tópico (recepción).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OkHttpClientBenchmark {
+
+    private static final int BATCH = 512;
+    private static final String TOPIC = "bench";
+
+    @Param({"64", "4096"})
+    public int payloadBytes;
+
+    private SimpleWebSocketServer server;
+    private OkHttpClient client;
+    private BenchSupport.WsClient ws;
+    private String text;
+    private ByteString binary;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        int port = BenchSupport.freePort();
+        server = new SimpleWebSocketServer(port, new MessageBus(), CompressionConfig.DISABLED);
+        server.setReuseAddr(true);
+        server.start();
+        client = BenchSupport.newClient(CompressionConfig.DISABLED);
+        ws = BenchSupport.WsClient.connect(client, "ws://127.0.0.1:" + port + "/");
+        ws.socket.send(WsSessionHandler.CMD_SUBSCRIBE + TOPIC);
+        ws.await();   // SUBACK
+        text = BenchSupport.payload(payloadBytes);
+        binary = ByteString.encodeUtf8(text);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        ws.close();
+        BenchSupport.shutdown(client);
+        server.stop(1000);
+    }
+
+    /** Hasta que OkHttp vacía su buffer de salida; los frames binarios no tienen eco. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long sendBinary() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            ws.socket.send(binary);
+        }
+        while (ws.socket.queueSize() > 0) {
+            Thread.onSpinWait();
+        }
+        return ws.socket.queueSize();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object receive() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            server.publish(TOPIC, text);
+        }
+        Object last = null;
+        for (int i = 0; i < BATCH; i++) {
+            last = ws.await();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoWSD.WebSocketFrame;
+
+/**
+ * Tratamiento de frames de NanoWSD (el motor de {@link WebServer}): leer un
+ * frame de texto enmascarado de un cliente y escribir la respuesta. Se compara
+ * con la codificación de {@link UnifiedServer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WebServerFrameBenchmark {
+
+    @Param({"32", "1024", "65536"})
+    public int payloadBytes;
+
+    private byte[] maskedClientFrame;
+    private byte[] payload;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(70_000);
+
+    @Setup
+    public void prepare() throws IOException {
+        payload = BenchSupport.payload(payloadBytes).getBytes(StandardCharsets.UTF_8);
+        WebSocketFrame frame = new WebSocketFrame(WebSocketFrame.OpCode.Text, true, payload);
+        frame.setMaskingKey(new byte[]{1, 2, 3, 4});
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        frame.write(buffer);
+        maskedClientFrame = buffer.toByteArray();
+    }
+
+    @Benchmark
+    public String nanoWsdReadText() throws IOException {
+        return WebSocketFrame.read(new ByteArrayInputStream(maskedClientFrame)).getTextPayload();
+    }
+
+    @Benchmark
+    public int nanoWsdWriteText() throws IOException {
+        out.reset();
+        new WebSocketFrame(WebSocketFrame.OpCode.Text, true, payload).write(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public ByteBuffer unifiedEncodeText() {
+        return UnifiedServer.encodeFrame(UnifiedServer.OP_TEXT, ByteBuffer.wrap(payload));
+    }
+}
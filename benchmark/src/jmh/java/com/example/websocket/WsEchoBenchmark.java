@@ -0,0 +1,81 @@
+package com.example.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Eco de {@link SimpleWebSocketServer} por loopback: latencia de ida y vuelta
+ * de un mensaje y rendimiento con mensajes encadenados, con y sin
+ * permessage-deflate.
+ */
+@State(Scope.Benchmark)
+public class WsEchoBenchmark {
+
+    private static final int PIPELINE = 256;
+
+    @Param({"32", "1024", "16384"})
+    public int payloadBytes;
+
+    @Param({"false", "true"})
+    public boolean compression;
+
+    private SimpleWebSocketServer server;
+    private OkHttpClient client;
+    private BenchSupport.WsClient ws;
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        CompressionConfig config = compression ? CompressionConfig.DEFAULT : CompressionConfig.DISABLED;
+        int port = BenchSupport.freePort();
+        server = new SimpleWebSocketServer(port, new MessageBus(), config);
+        server.setReuseAddr(true);
+        server.start();
+        client = BenchSupport.newClient(config);
+        ws = BenchSupport.WsClient.connect(client, "ws://127.0.0.1:" + port + "/");
+        payload = BenchSupport.payload(payloadBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        ws.close();
+        BenchSupport.shutdown(client);
+        server.stop(1000);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object roundTrip() throws InterruptedException {
+        ws.socket.send(payload);
+        return ws.await();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(PIPELINE)
+    public Object pipelined() throws InterruptedException {
+        for (int i = 0; i < PIPELINE; i++) {
+            ws.socket.send(payload);
+        }
+        Object last = null;
+        for (int i = 0; i < PIPELINE; i++) {
+            last = ws.await();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma log-lineal de latencias para percentiles (p99, p99.9...), que
+ * {@link Metrics.Histogram} con sus pocos cubos fijos no puede dar.
+ *
+ * Cada potencia de dos se parte en {@link #SUB_BUCKETS} cubos: el error
+ * relativo es menor del 100/SUB_BUCKETS % en todo el rango de long, con un
+ * array fijo de contadores. Anotar es lock-free y no asigna memoria.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        sum.add(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * Valor por debajo del cual queda el {@code percentile} % de las
+     * muestras (límite superior de su cubo, nunca mayor que el máximo).
+     */
+    public long percentile(double percentile) {
+        long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift);          // entre SUB_BUCKETS y 2 * SUB_BUCKETS - 1
+        return (shift + 1) * SUB_BUCKETS + sub - SUB_BUCKETS;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        long next = (sub + 1) << shift;
+        return next > 0 ? next - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Generador de carga WS para dimensionar dispositivos: abre muchas
+ * conexiones contra el servidor WS de la app ({@link SimpleWebSocketServer},
+ * {@link UnifiedServer} o {@link WebServer}), envía texto a ritmo fijo y mide
+ * la latencia del eco.
+ * <pre>
+ *   ./gradlew :benchmark:loadTest -PloadArgs="url=ws://192.168.1.20:8889/ connections=2000 rate=5000 size=256"
+ * </pre>
+ *
+ * La carga es de lazo abierto: el mensaje k tiene su instante previsto
+ * (inicio + k / rate) y se envía entonces aunque el servidor vaya con
+ * retraso. La latencia se mide desde ese instante previsto, no desde el
+ * envío real: así el tiempo que el emisor pasa atascado cuenta como
+ * latencia (corrección de la omisión coordinada). El informe da ambas.
+ *
+ * Cada mensaje lleva sus dos instantes ({@code LG <previsto> <enviado>}) y
+ * el eco los devuelve, así que no hay estado por mensaje en vuelo. OkHttp
+ * dedica un hilo lector a cada socket: para miles de conexiones hace falta
+ * subir el límite de descriptores (ulimit -n) en la máquina que mide.
+ * Los límites {@code ws.rateLimit.*} del nodo se aplican también a esta
+ * carga: lo que descarten aparece como perdido.
+ */
+public final class LoadGenerator {
+
+    private static final String TAG = "LoadGenerator";
+
+    static final String MARK = "LG ";
+    // El eco es un sobre ECHO en JSON: la cabecera del sobre va antes del payload con la marca
+    private static final int MAX_PREFIX = 128;
+
+    /** Parámetros de una ejecución ({@code clave=valor} en la línea de comandos). */
+    public static final class Options {
+        public final String url;
+        public final int connections;
+        /** Mensajes por segundo, en total. */
+        public final long rate;
+        /** Tamaño de cada mensaje en caracteres (mínimo, el de la marca). */
+        public final int size;
+        public final int warmupSeconds;
+        public final int durationSeconds;
+        /** Hilos emisores; cada uno lleva rate/senders y una parte de las conexiones. */
+        public final int senders;
+        /** Espera tras el último envío para recoger los ecos pendientes. */
+        public final long drainMs;
+        public final int connectTimeoutSeconds;
+
+        public Options(Properties props) {
+            url = props.getProperty("url", "ws://127.0.0.1:8889/");
+            connections = Integer.parseInt(props.getProperty("connections", "100"));
+            rate = Long.parseLong(props.getProperty("rate", "1000"));
+            size = Integer.parseInt(props.getProperty("size", "128"));
+            warmupSeconds = Integer.parseInt(props.getProperty("warmup", "5"));
+            durationSeconds = Integer.parseInt(props.getProperty("seconds", "30"));
+            senders = Math.max(1, Math.min(Integer.parseInt(props.getProperty("senders", "1")), connections));
+            drainMs = Long.parseLong(props.getProperty("drainMs", "2000"));
+            connectTimeoutSeconds = Integer.parseInt(props.getProperty("connectTimeoutSeconds", "30"));
+        }
+
+        public static Options parse(String[] args) {
+            Properties props = new Properties();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Se esperaba clave=valor: " + arg);
+                }
+                props.setProperty(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+            }
+            return new Options(props);
+        }
+    }
+
+    private final Options options;
+    private final OkHttpClient client;
+    // Todos los sockets creados y los que llegaron a abrirse
+    private final List<WebSocket> created = new ArrayList<>();
+    private final List<WebSocket> opened = Collections.synchronizedList(new ArrayList<>());
+
+    // Medidas
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LatencyHistogram corrected = new LatencyHistogram();
+    private final LatencyHistogram uncorrected = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder sendRejected = new LongAdder();
+    private final LongAdder measuredSent = new LongAdder();
+    private final LongAdder measuredReceived = new LongAdder();
+    private final LongAdder measuredBytes = new LongAdder();
+    private final AtomicLong failedConnections = new AtomicLong();
+    private final AtomicLong closedDuringRun = new AtomicLong();
+
+    // Ventana de medida (System.nanoTime()); fuera de ella solo se envía
+    private volatile long measureFrom = Long.MAX_VALUE;
+    private volatile long measureUntil = Long.MAX_VALUE;
+    private volatile boolean collecting = true;
+
+    public LoadGenerator(Options options) {
+        this.options = options;
+        // Un hilo del dispatcher por socket abierto (el lector de OkHttp)
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(options.connections + 16);
+        dispatcher.setMaxRequestsPerHost(options.connections + 16);
+        this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(options.connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = Options.parse(args);
+        LoadGenerator generator = new LoadGenerator(options);
+        System.out.println(generator.run().format());
+        generator.shutdown();
+    }
+
+    // ======== Ejecución ========
+
+    public Report run() throws InterruptedException {
+        List<WebSocket> sockets = connectAll();
+        if (sockets.isEmpty()) {
+            return report(0, 0);
+        }
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        Log.i(TAG, "Carga: " + options.rate + " msg/s en " + sockets.size() + " conexiones, "
+                + options.warmupSeconds + " s de calentamiento + " + options.durationSeconds + " s medidos");
+
+        int senderCount = Math.min(options.senders, sockets.size());
+        List<Thread> senders = new ArrayList<>(senderCount);
+        for (int i = 0; i < senderCount; i++) {
+            List<WebSocket> share = new ArrayList<>();
+            for (int c = i; c < sockets.size(); c += senderCount) {
+                share.add(sockets.get(c));
+            }
+            int index = i;
+            Thread sender = new Thread(() -> pace(share, start, index, senderCount), "load-sender-" + i);
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        Thread.sleep(options.drainMs);
+        collecting = false;
+
+        for (WebSocket socket : created) {
+            socket.close(1000, "Fin de la carga");
+        }
+        return report(sockets.size(), TimeUnit.NANOSECONDS.toMillis(measureUntil - measureFrom));
+    }
+
+    public void shutdown() {
+        client.dispatcher().cancelAll();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private List<WebSocket> connectAll() throws InterruptedException {
+        CountDownLatch answered = new CountDownLatch(options.connections);
+        Request request = new Request.Builder().url(options.url).build();
+        for (int i = 0; i < options.connections; i++) {
+            created.add(client.newWebSocket(request, new EchoListener(answered, System.nanoTime())));
+        }
+        if (!answered.await(options.connectTimeoutSeconds + 5L, TimeUnit.SECONDS)) {
+            Log.w(TAG, "No todas las conexiones respondieron a tiempo");
+        }
+        // Solo se carga sobre las abiertas; las que abran más tarde no participan
+        List<WebSocket> sockets;
+        synchronized (opened) {
+            sockets = new ArrayList<>(opened);
+        }
+        Log.i(TAG, "Conexiones abiertas: " + sockets.size() + ", fallidas: " + failedConnections.get());
+        return sockets;
+    }
+
+    /** Bucle de un emisor: envía cada mensaje en su instante previsto, sin esperar respuestas. */
+    private void pace(List<WebSocket> sockets, long start, int index, int senderCount) {
+        long intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) * senderCount / Math.max(1, options.rate));
+        // Cada emisor desfasado para no enviar todos en el mismo instante
+        long offset = intervalNanos * index / senderCount;
+        String padding = padding(options.size);
+        StringBuilder frame = new StringBuilder(options.size + 48);
+        for (long k = 0; ; k++) {
+            long intended = start + offset + k * intervalNanos;
+            if (intended >= measureUntil) {
+                return;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            frame.setLength(0);
+            frame.append(MARK).append(intended).append(' ').append(now).append(' ');
+            int pad = options.size - frame.length();
+            if (pad > 0) {
+                frame.append(padding, 0, pad);
+            }
+            WebSocket socket = sockets.get((int) (k % sockets.size()));
+            if (!socket.send(frame.toString())) {
+                sendRejected.increment();
+                continue;
+            }
+            sent.increment();
+            if (intended >= measureFrom) {
+                measuredSent.increment();
+            }
+        }
+    }
+
+    private static String padding(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    /** Un eco recibido: anota las dos latencias si el envío cae en la ventana de medida. */
+    void onEcho(String text, long nowNanos) {
+        int mark = text.indexOf(MARK);
+        if (mark < 0 || mark > MAX_PREFIX || !collecting) {
+            return;
+        }
+        int pos = mark + MARK.length();
+        int space = text.indexOf(' ', pos);
+        int end = space > 0 ? text.indexOf(' ', space + 1) : -1;
+        if (end < 0) {
+            return;
+        }
+        long intended;
+        long sentAt;
+        try {
+            intended = Long.parseLong(text.substring(pos, space));
+            sentAt = Long.parseLong(text.substring(space + 1, end));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (intended < measureFrom || intended >= measureUntil) {
+            return;
+        }
+        corrected.record(nowNanos - intended);
+        uncorrected.record(nowNanos - sentAt);
+        measuredReceived.increment();
+        measuredBytes.add(text.length());
+    }
+
+    private final class EchoListener extends WebSocketListener {
+        private final CountDownLatch answered;
+        private final long startedNanos;
+        private volatile boolean open;
+
+        EchoListener(CountDownLatch answered, long startedNanos) {
+            this.answered = answered;
+            this.startedNanos = startedNanos;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            open = true;
+            connectTime.record(System.nanoTime() - startedNanos);
+            opened.add(webSocket);
+            answered.countDown();
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            onEcho(text, System.nanoTime());
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            if (collecting) {
+                closedDuringRun.incrementAndGet();
+                Log.w(TAG, "El servidor cerró una conexión: " + code + " " + reason);
+            }
+            webSocket.close(1000, null);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            if (!open) {
+                failedConnections.incrementAndGet();
+                answered.countDown();
+            } else if (collecting) {
+                closedDuringRun.incrementAndGet();
+            }
+        }
+    }
+
+    // ======== Informe ========
+
+    private Report report(int connections, long measuredMs) {
+        return new Report(options, connections, failedConnections.get(), closedDuringRun.get(),
+                sent.sum(), sendRejected.sum(), measuredSent.sum(), measuredReceived.sum(),
+                measuredBytes.sum(), measuredMs, connectTime, corrected, uncorrected);
+    }
+
+    /** Resultado de una ejecución; {@link #format()} lo da como texto. */
+    public static final class Report {
+        public final Options options;
+        /** Conexiones abiertas que participaron en la carga. */
+        public final int connections;
+        public final long failedConnections;
+        public final long closedDuringRun;
+        public final long sent;
+        public final long sendRejected;
+        public final long measuredSent;
+        public final long measuredReceived;
+        public final long measuredBytes;
+        public final long measuredMs;
+        public final LatencyHistogram connectTime;
+        /** Desde el instante previsto de envío (corregida). */
+        public final LatencyHistogram latency;
+        /** Desde el envío real (sin corregir; subestima cuando el emisor se atasca). */
+        public final LatencyHistogram sendLatency;
+
+        Report(Options options, int connections, long failedConnections, long closedDuringRun,
+               long sent, long sendRejected, long measuredSent, long measuredReceived, long measuredBytes,
+               long measuredMs, LatencyHistogram connectTime, LatencyHistogram latency,
+               LatencyHistogram sendLatency) {
+            this.options = options;
+            this.connections = connections;
+            this.failedConnections = failedConnections;
+            this.closedDuringRun = closedDuringRun;
+            this.sent = sent;
+            this.sendRejected = sendRejected;
+            this.measuredSent = measuredSent;
+            this.measuredReceived = measuredReceived;
+            this.measuredBytes = measuredBytes;
+            this.measuredMs = measuredMs;
+            this.connectTime = connectTime;
+            this.latency = latency;
+            this.sendLatency = sendLatency;
+        }
+
+        /** Ecos por segundo dentro de la ventana de medida. */
+        public double throughput() {
+            return measuredMs > 0 ? measuredReceived * 1000.0 / measuredMs : 0;
+        }
+
+        public long lost() {
+            return Math.max(0, measuredSent - measuredReceived);
+        }
+
+        public String format() {
+            StringBuilder out = new StringBuilder();
+            out.append("======== Carga WS: ").append(options.url).append(" ========\n");
+            out.append(String.format(Locale.ROOT, "Conexiones     %d abiertas, %d fallidas, %d cerradas durante la prueba%n",
+                    connections, failedConnections, closedDuringRun));
+            out.append("Apertura       ").append(percentiles(connectTime)).append('\n');
+            out.append(String.format(Locale.ROOT, "Objetivo       %d msg/s de %d caracteres, %d s medidos%n",
+                    options.rate, options.size, measuredMs / 1000));
+            out.append(String.format(Locale.ROOT, "Enviados       %d (%d en la ventana), %d rechazados por el socket%n",
+                    sent, measuredSent, sendRejected));
+            out.append(String.format(Locale.ROOT, "Recibidos      %d ecos, %d perdidos (%.2f %%)%n",
+                    measuredReceived, lost(), measuredSent > 0 ? lost() * 100.0 / measuredSent : 0));
+            out.append(String.format(Locale.ROOT, "Rendimiento    %.1f msg/s, %.1f KiB/s%n",
+                    throughput(), measuredMs > 0 ? measuredBytes * 1000.0 / measuredMs / 1024 : 0));
+            out.append("Latencia       ").append(percentiles(latency)).append("  (desde el instante previsto)\n");
+            out.append("Sin corregir   ").append(percentiles(sendLatency)).append("  (desde el envío real)\n");
+            return out.toString();
+        }
+
+        private static String percentiles(LatencyHistogram h) {
+            if (h.count() == 0) {
+                return "sin muestras";
+            }
+            return String.format(Locale.ROOT, "p50 %s  p90 %s  p99 %s  p99.9 %s  p99.99 %s  máx %s  (n=%d)",
+                    ms(h.percentile(50)), ms(h.percentile(90)), ms(h.percentile(99)),
+                    ms(h.percentile(99.9)), ms(h.percentile(99.99)), ms(h.max()), h.count());
+        }
+
+        private static String ms(long nanos) {
+            return String.format(Locale.ROOT, "%.3f ms", nanos / 1e6);
+        }
+    }
+}
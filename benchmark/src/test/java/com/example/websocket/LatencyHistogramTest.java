@@ -0,0 +1,55 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles_withinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) {
+            h.record(v * 1000);
+        }
+
+        assertEquals(100_000, h.count());
+        assertEquals(100_000_000L, h.max());
+        assertWithin(50_000_000L, h.percentile(50));
+        assertWithin(99_000_000L, h.percentile(99));
+        assertWithin(99_900_000L, h.percentile(99.9));
+        assertEquals(h.max(), h.percentile(100));
+    }
+
+    @Test
+    public void stallShowsUpInTail() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            h.record(1_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            h.record(2_000_000_000L);
+        }
+
+        assertWithin(1_000_000, h.percentile(50));
+        assertWithin(1_000_000, h.percentile(99));
+        assertWithin(2_000_000_000L, h.percentile(99.9));
+    }
+
+    @Test
+    public void bucketIndex_isMonotonicAndBoundsContainValue() {
+        long previous = -1;
+        for (long v : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789L, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(index >= previous);
+            assertTrue(LatencyHistogram.upperBound(index) >= v);
+            previous = index;
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        double error = Math.abs(actual - expected) / (double) expected;
+        assertTrue("esperado ~" + expected + ", obtenido " + actual,
+                error <= 1.0 / LatencyHistogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.websocket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Latido del cliente WS con intervalo adaptativo, en lugar del ping fijo de
+ * OkHttp (que despierta la radio cada pingInterval aunque el NAT aguante más).
+ *
+ * <ul>
+ *     <li>Si llegó tráfico durante el intervalo no se envía ping: el camino
+ *     ya está probado y la entrada del NAT, refrescada.</li>
+ *     <li>Cada ping tras un intervalo entero de silencio que recibe su PONG
+ *     confirma ese intervalo; tras {@link #STEP_UP_AFTER} confirmaciones se
+ *     prueba uno mayor (x1,5), sin pasar del último que falló.</li>
+ *     <li>Sin PONG en timeoutMs la conexión se da por muerta
+ *     ({@link Probe#onDead}) y el intervalo vuelve al último confirmado: el
+ *     que falló queda como techo.</li>
+ * </ul>
+ * Usa frames de texto propios ({@code HBPING n} / {@code HBPONG n}) que solo
+ * entienden los servidores de esta app ({@link WsSessionHandler} y
+ * {@link WebServer}).
+ */
+public final class AdaptiveHeartbeat {
+    private static final String TAG = "AdaptiveHeartbeat";
+
+    static final String CMD_PING = "HBPING ";
+    public static final String CMD_PONG = "HBPONG ";
+
+    /** PONG seguidos tras silencio completo antes de probar un intervalo mayor. */
+    static final int STEP_UP_AFTER = 3;
+
+    /** Lo que el latido necesita del socket. */
+    public interface Probe {
+        /** @return false si el socket no aceptó el frame */
+        boolean sendPing(String frame);
+
+        void onDead(String reason);
+    }
+
+    private final TaskScheduler scheduler;
+    private final Probe probe;
+    private final LongSupplier nanoClock;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final long timeoutMs;
+    private final Runnable tickRunnable = this::tick;
+    private final Runnable timeoutRunnable = this::onTimeout;
+
+    // Métricas
+    private final Metrics.Histogram rtt;
+    private final Metrics.Counter pings;
+    private final Metrics.Counter skipped;
+    private final Metrics.Counter timeouts;
+
+    // Lo aprendido se conserva entre conexiones
+    private long intervalMs;
+    private long confirmedMs;
+    private long ceilingMs;
+    private int confirmations;
+
+    private boolean running;
+    private long nextPingId;
+    private long pendingPingId;
+    private long pingSentNanos;
+    private volatile long lastRxNanos;
+    private volatile long lastRttMs = -1;
+
+    /**
+     * Latido con los parámetros {@code heartbeat.*} de la configuración.
+     *
+     * @param labels etiquetas de sus métricas; null para el socket principal del nodo
+     */
+    public static AdaptiveHeartbeat fromConfig(NodeConfig config, TaskScheduler scheduler, Probe probe,
+                                               String labels) {
+        return new AdaptiveHeartbeat(scheduler, probe, System::nanoTime, config.pingIntervalSeconds * 1000L,
+                config.heartbeatMinIntervalMs, config.heartbeatMaxIntervalMs, config.heartbeatTimeoutMs,
+                Metrics.shared(), labels);
+    }
+
+    AdaptiveHeartbeat(TaskScheduler scheduler, Probe probe, LongSupplier nanoClock, long initialIntervalMs,
+                      long minIntervalMs, long maxIntervalMs, long timeoutMs, Metrics metrics) {
+        this(scheduler, probe, nanoClock, initialIntervalMs, minIntervalMs, maxIntervalMs, timeoutMs, metrics, null);
+    }
+
+    private AdaptiveHeartbeat(TaskScheduler scheduler, Probe probe, LongSupplier nanoClock, long initialIntervalMs,
+                              long minIntervalMs, long maxIntervalMs, long timeoutMs, Metrics metrics,
+                              String labels) {
+        this.scheduler = scheduler;
+        this.probe = probe;
+        this.nanoClock = nanoClock;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = Math.max(minIntervalMs, maxIntervalMs);
+        this.timeoutMs = timeoutMs;
+        this.intervalMs = clamp(initialIntervalMs);
+        this.confirmedMs = this.minIntervalMs;
+        this.ceilingMs = Long.MAX_VALUE;
+        rtt = metrics.latency("ws_client_heartbeat_rtt_seconds",
+                "Ida y vuelta HBPING/HBPONG del latido adaptativo", labels);
+        pings = metrics.counter("ws_client_heartbeat_pings_total",
+                "Pings de latido enviados", labels);
+        skipped = metrics.counter("ws_client_heartbeat_skipped_total",
+                "Pings ahorrados porque llegó tráfico durante el intervalo", labels);
+        timeouts = metrics.counter("ws_client_heartbeat_timeouts_total",
+                "Pings sin PONG (conexión dada por muerta)", labels);
+        metrics.gauge("ws_client_heartbeat_interval_ms",
+                "Intervalo actual del latido adaptativo", labels, this::intervalMs);
+    }
+
+    // ======== Ciclo de vida (conexión abierta / cerrada) ========
+
+    public synchronized void start() {
+        running = true;
+        pendingPingId = 0;
+        lastRxNanos = nanoClock.getAsLong();
+        scheduler.removeCallbacks(tickRunnable);
+        scheduler.postDelayed(tickRunnable, intervalMs);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        pendingPingId = 0;
+        scheduler.removeCallbacks(tickRunnable);
+        scheduler.removeCallbacks(timeoutRunnable);
+    }
+
+    /** Cualquier frame recibido; solo una escritura volátil (camino caliente). */
+    public void onActivity() {
+        lastRxNanos = nanoClock.getAsLong();
+    }
+
+    /** Frame {@code HBPONG n} recibido (desde el hilo de red). */
+    public synchronized void onPong(String frame) {
+        long id;
+        try {
+            id = Long.parseLong(frame.substring(CMD_PONG.length()).trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (!running || id != pendingPingId) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        pendingPingId = 0;
+        lastRxNanos = now;
+        scheduler.removeCallbacks(timeoutRunnable);
+        rtt.record(now - pingSentNanos);
+        lastRttMs = TimeUnit.NANOSECONDS.toMillis(now - pingSentNanos);
+
+        // El ping salió tras un intervalo entero de silencio y el camino respondió
+        confirmedMs = Math.max(confirmedMs, intervalMs);
+        if (++confirmations >= STEP_UP_AFTER) {
+            confirmations = 0;
+            long next = clamp(intervalMs * 3 / 2);
+            if (next >= ceilingMs) {
+                next = (intervalMs + ceilingMs) / 2;
+            }
+            if (next > intervalMs + 1000) {
+                Log.d(TAG, "Latido: probando {} ms (confirmado {} ms)", next, confirmedMs);
+                intervalMs = next;
+            }
+        }
+        scheduler.postDelayed(tickRunnable, intervalMs);
+    }
+
+    // ======== Temporizadores ========
+
+    private synchronized void tick() {
+        if (!running || pendingPingId != 0) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        long idleMs = TimeUnit.NANOSECONDS.toMillis(now - lastRxNanos);
+        if (idleMs < intervalMs) {
+            // Hubo tráfico: no hace falta ping hasta completar un intervalo de silencio
+            skipped.inc();
+            scheduler.postDelayed(tickRunnable, intervalMs - idleMs);
+            return;
+        }
+        pendingPingId = ++nextPingId;
+        pingSentNanos = now;
+        pings.inc();
+        if (!probe.sendPing(CMD_PING + pendingPingId)) {
+            pendingPingId = 0;
+            running = false;
+            probe.onDead("el socket no aceptó el ping");
+            return;
+        }
+        scheduler.postDelayed(timeoutRunnable, timeoutMs);
+    }
+
+    private void onTimeout() {
+        String reason;
+        synchronized (this) {
+            if (!running || pendingPingId == 0) {
+                return;
+            }
+            pendingPingId = 0;
+            running = false;
+            timeouts.inc();
+            confirmations = 0;
+            // El intervalo probado no aguantó: queda como techo y se vuelve al último bueno
+            if (intervalMs > confirmedMs) {
+                ceilingMs = intervalMs;
+                intervalMs = confirmedMs;
+            } else {
+                intervalMs = clamp(intervalMs / 2);
+                confirmedMs = Math.min(confirmedMs, intervalMs);
+            }
+            reason = "sin PONG en " + timeoutMs + " ms";
+            Log.w(TAG, "Latido: {}; intervalo {} ms", reason, intervalMs);
+        }
+        probe.onDead(reason);
+    }
+
+    private long clamp(long ms) {
+        return Math.max(minIntervalMs, Math.min(maxIntervalMs, ms));
+    }
+
+    // ======== Estado ========
+
+    synchronized long intervalMs() {
+        return intervalMs;
+    }
+
+    /** Última ida y vuelta medida, o -1 si aún no hay. */
+    public long lastRttMs() {
+        return lastRttMs;
+    }
+
+    /** Respuesta del servidor a un {@code HBPING n}. */
+    static String pongFor(String ping) {
+        return CMD_PONG + ping.substring(CMD_PING.length());
+    }
+}
@@ -0,0 +1,537 @@
+package com.example.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Ficheros estáticos (el panel web) desde un directorio o, en la app, desde
+ * los assets del APK.
+ *
+ * <ul>
+ *     <li>Los ficheros pequeños quedan en una caché LRU en memoria (acotada en
+ *     bytes); los grandes se mapean ({@link FileChannel#map}) y se sirven
+ *     desde el mapeo, sin copiarlos al heap.</li>
+ *     <li>Si existe {@code fichero.br} o {@code fichero.gz} y el cliente lo
+ *     acepta, se sirve esa variante tal cual.</li>
+ *     <li>ETag por variante, 304 con If-None-Match y un rango por petición
+ *     (Range / If-Range).</li>
+ * </ul>
+ * Una recarga de página repetida es una búsqueda en la caché y, a lo sumo,
+ * una comprobación de fecha por segundo y fichero.
+ */
+public class AssetHandler implements HttpHandler {
+    private static final String TAG = "AssetHandler";
+
+    /** Tiempo durante el que una entrada de la caché se da por buena sin mirar el origen. */
+    static final long REVALIDATE_MS = 1000;
+    private static final int MAX_ENTRIES = 512;
+
+    /** De dónde salen los ficheros. */
+    public interface Source {
+        /** @return null si no existe o no es un fichero */
+        Resource find(String path) throws IOException;
+
+        /** Los ficheros no cambian mientras corre el proceso (assets del APK): no se revalidan. */
+        default boolean immutable() {
+            return false;
+        }
+    }
+
+    /** Un fichero del origen. */
+    public interface Resource {
+        /** Tamaño en bytes, o -1 si no se conoce sin leerlo. */
+        long length();
+
+        long lastModified();
+
+        /** Contenido mapeado en memoria (solo lectura), o null si el origen no lo permite. */
+        ByteBuffer map() throws IOException;
+
+        InputStream open() throws IOException;
+    }
+
+    /** Ficheros bajo un directorio local. */
+    public static Source directory(File root) {
+        return path -> {
+            File file = new File(root, path);
+            if (!file.isFile()) {
+                return null;
+            }
+            return new Resource() {
+                @Override
+                public long length() {
+                    return file.length();
+                }
+
+                @Override
+                public long lastModified() {
+                    return file.lastModified();
+                }
+
+                @Override
+                public ByteBuffer map() throws IOException {
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                         FileChannel channel = raf.getChannel()) {
+                        // El mapeo sigue siendo válido después de cerrar el canal
+                        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    }
+                }
+
+                @Override
+                public InputStream open() throws IOException {
+                    return new FileInputStream(file);
+                }
+            };
+        };
+    }
+
+    // ======== Caché ========
+
+    /** Una representación servible: el fichero tal cual o una variante precomprimida. */
+    private static final class Variant {
+        final String encoding;          // null = sin codificar
+        final ByteBuffer content;       // solo lectura; se sirve con duplicate()
+        final long length;
+        final long lastModified;
+        final String etag;
+        final boolean mapped;
+
+        Variant(String encoding, ByteBuffer content, long lastModified, boolean mapped) {
+            this.encoding = encoding;
+            this.content = content;
+            this.length = content.remaining();
+            this.lastModified = lastModified;
+            this.etag = "\"" + Long.toHexString(length) + '-' + Long.toHexString(lastModified)
+                    + (encoding != null ? "-" + encoding : "") + "\"";
+            this.mapped = mapped;
+        }
+
+        int heapBytes() {
+            return mapped ? 0 : (int) length;
+        }
+    }
+
+    // Marca de "variante comprobada y no existe"
+    private static final Variant MISSING = new Variant(null, ByteBuffer.allocate(0), 0, true);
+
+    /** Variantes conocidas de una ruta; las precomprimidas se cargan la primera vez que se piden. */
+    private static final class Entry {
+        final Variant identity;
+        volatile Variant gzip;
+        volatile Variant brotli;
+        volatile long checkedAtMs;
+        int accountedBytes;             // bajo el lock de la caché
+
+        Entry(Variant identity, long now) {
+            this.identity = identity;
+            this.checkedAtMs = now;
+        }
+
+        int heapBytes() {
+            int bytes = identity.heapBytes();
+            Variant gz = gzip;
+            Variant br = brotli;
+            if (gz != null) {
+                bytes += gz.heapBytes();
+            }
+            if (br != null) {
+                bytes += br.heapBytes();
+            }
+            return bytes;
+        }
+    }
+
+    private final Source source;
+    private final long maxCacheBytes;
+    private final int maxHeapFileBytes;
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    // Métricas
+    private final Metrics.Counter hits;
+    private final Metrics.Counter misses;
+    private final Metrics.Counter notModified;
+
+    /**
+     * @param maxCacheBytes    memoria total para ficheros en caché
+     * @param maxHeapFileBytes por encima de este tamaño se mapea en vez de copiar al heap
+     */
+    public AssetHandler(Source source, long maxCacheBytes, int maxHeapFileBytes) {
+        this(source, maxCacheBytes, maxHeapFileBytes, Metrics.shared());
+    }
+
+    AssetHandler(Source source, long maxCacheBytes, int maxHeapFileBytes, Metrics metrics) {
+        this.source = source;
+        this.maxCacheBytes = maxCacheBytes;
+        this.maxHeapFileBytes = maxHeapFileBytes;
+        hits = metrics.counter("http_asset_cache_hits_total", "Ficheros servidos desde la caché", null);
+        misses = metrics.counter("http_asset_cache_misses_total", "Ficheros leídos del origen", null);
+        notModified = metrics.counter("http_asset_not_modified_total", "Respuestas 304 por ETag", null);
+        metrics.gauge("http_asset_cache_bytes", "Bytes de ficheros en la caché (sin contar mapeos)", null,
+                this::cachedBytes);
+    }
+
+    // ======== Petición ========
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        if (!"GET".equals(request.method)) {
+            return HttpResponse.text(405, "Solo GET").header("Allow", "GET");
+        }
+        String path = normalize(request.path);
+        if (path == null) {
+            return HttpResponse.notFound();
+        }
+        Variant variant;
+        try {
+            Entry entry = lookup(path);
+            if (entry == null) {
+                return HttpResponse.notFound();
+            }
+            variant = negotiate(path, entry, request.header("accept-encoding"));
+        } catch (IOException e) {
+            Log.e(TAG, "Error leyendo {}", path, e);
+            return HttpResponse.text(500, "Error interno");
+        }
+
+        String type = mimeType(path);
+        String ifNoneMatch = request.header("if-none-match");
+        if (ifNoneMatch != null && etagMatches(ifNoneMatch, variant.etag)) {
+            notModified.inc();
+            return withHeaders(new HttpResponse(304, type, new byte[0]), variant);
+        }
+
+        ByteBuffer body = variant.content.duplicate();
+        String range = request.header("range");
+        String ifRange = request.header("if-range");
+        if (range != null && (ifRange == null || ifRange.equals(variant.etag))) {
+            long[] span = parseRange(range, variant.length);
+            if (span == UNSATISFIABLE) {
+                return withHeaders(HttpResponse.text(416, "Rango no válido"), variant)
+                        .header("Content-Range", "bytes */" + variant.length);
+            }
+            if (span != null) {
+                body.position((int) span[0]).limit((int) span[1] + 1);
+                return withHeaders(new HttpResponse(206, type, body.slice()), variant)
+                        .header("Content-Range", "bytes " + span[0] + '-' + span[1] + '/' + variant.length);
+            }
+        }
+        return withHeaders(new HttpResponse(200, type, body), variant);
+    }
+
+    private static HttpResponse withHeaders(HttpResponse response, Variant variant) {
+        response.header("ETag", variant.etag)
+                .header("Cache-Control", "no-cache")
+                .header("Vary", "Accept-Encoding")
+                .header("Accept-Ranges", "bytes");
+        if (variant.encoding != null) {
+            response.header("Content-Encoding", variant.encoding);
+        }
+        return response;
+    }
+
+    /** Mejor variante aceptada por el cliente: br, luego gzip, luego sin codificar. */
+    private Variant negotiate(String path, Entry entry, String acceptEncoding) throws IOException {
+        if (acceptEncoding == null) {
+            return entry.identity;
+        }
+        if (accepts(acceptEncoding, "br")) {
+            Variant br = entry.brotli;
+            if (br == null) {
+                br = orMissing(load(path + ".br", "br"));
+                entry.brotli = br;
+                store(path, entry);
+            }
+            if (br != MISSING) {
+                return br;
+            }
+        }
+        if (accepts(acceptEncoding, "gzip")) {
+            Variant gz = entry.gzip;
+            if (gz == null) {
+                gz = orMissing(load(path + ".gz", "gzip"));
+                entry.gzip = gz;
+                store(path, entry);
+            }
+            if (gz != MISSING) {
+                return gz;
+            }
+        }
+        return entry.identity;
+    }
+
+    // ======== Caché LRU ========
+
+    private Entry lookup(String path) throws IOException {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = cache.get(path);
+        }
+        if (entry != null) {
+            if (source.immutable() || now - entry.checkedAtMs < REVALIDATE_MS || stillValid(path, entry)) {
+                entry.checkedAtMs = now;
+                hits.inc();
+                return entry;
+            }
+            Log.d(TAG, "Fichero cambiado, se recarga: {}", path);
+        }
+        misses.inc();
+        Variant identity = load(path, null);
+        if (identity == null) {
+            if (entry != null) {
+                remove(path);
+            }
+            return null;
+        }
+        entry = new Entry(identity, now);
+        store(path, entry);
+        return entry;
+    }
+
+    /** Compara fecha y tamaño de cada variante conocida con el origen. */
+    private boolean stillValid(String path, Entry entry) throws IOException {
+        return sameAs(source.find(path), entry.identity)
+                && sameAs(entry.gzip, path + ".gz")
+                && sameAs(entry.brotli, path + ".br");
+    }
+
+    private boolean sameAs(Variant known, String variantPath) throws IOException {
+        if (known == null) {
+            return true;
+        }
+        Resource current = source.find(variantPath);
+        return known == MISSING ? current == null : sameAs(current, known);
+    }
+
+    private static boolean sameAs(Resource current, Variant known) {
+        return current != null && current.lastModified() == known.lastModified
+                && (current.length() < 0 || current.length() == known.length);
+    }
+
+    private synchronized void store(String path, Entry entry) {
+        int bytes = entry.heapBytes();
+        if (bytes > maxCacheBytes / 2) {
+            // Cabe mal en la caché: se sirve pero no se guarda
+            remove(path);
+            return;
+        }
+        Entry old = cache.put(path, entry);
+        if (old != null) {
+            cachedBytes -= old.accountedBytes;
+        }
+        entry.accountedBytes = bytes;
+        cachedBytes += bytes;
+        Iterator<Map.Entry<String, Entry>> eldest = cache.entrySet().iterator();
+        while ((cachedBytes > maxCacheBytes || cache.size() > MAX_ENTRIES) && eldest.hasNext()) {
+            Entry victim = eldest.next().getValue();
+            if (victim == entry) {
+                break;
+            }
+            cachedBytes -= victim.accountedBytes;
+            eldest.remove();
+        }
+    }
+
+    private synchronized void remove(String path) {
+        Entry old = cache.remove(path);
+        if (old != null) {
+            cachedBytes -= old.accountedBytes;
+        }
+    }
+
+    synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+
+    synchronized int cachedEntries() {
+        return cache.size();
+    }
+
+    // ======== Carga ========
+
+    private Variant load(String path, String encoding) throws IOException {
+        Resource resource = source.find(path);
+        if (resource == null) {
+            return null;
+        }
+        long length = resource.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Fichero demasiado grande: " + path);
+        }
+        if (length > maxHeapFileBytes) {
+            ByteBuffer mapped = resource.map();
+            if (mapped != null) {
+                return new Variant(encoding, mapped.asReadOnlyBuffer(), resource.lastModified(), true);
+            }
+        }
+        try (InputStream in = resource.open()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? (int) length : 8192);
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+            }
+            return new Variant(encoding, ByteBuffer.wrap(out.toByteArray()).asReadOnlyBuffer(),
+                    resource.lastModified(), false);
+        }
+    }
+
+    private static Variant orMissing(Variant variant) {
+        return variant != null ? variant : MISSING;
+    }
+
+    // ======== Utilidades HTTP ========
+
+    // Rango sintácticamente válido pero fuera del fichero (416)
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Un único rango {@code bytes=a-b}, {@code bytes=a-} o {@code bytes=-n}.
+     *
+     * @return [inicio, fin] inclusivos, {@link #UNSATISFIABLE}, o null para
+     * ignorar la cabecera (varios rangos o formato desconocido) y servir todo
+     */
+    static long[] parseRange(String header, long length) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? Math.max(start, length - 1) : Long.parseLong(last);
+                if (end < start) {
+                    // "bytes=5-3" no es un rango válido: se ignora
+                    return null;
+                }
+                end = Math.min(end, length - 1);
+            }
+            if (start >= length || end < start) {
+                return UNSATISFIABLE;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        if ("*".equals(ifNoneMatch.trim())) {
+            return true;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean accepts(String acceptEncoding, String coding) {
+        for (String part : acceptEncoding.split(",")) {
+            String token = part.trim();
+            int semi = token.indexOf(';');
+            String name = semi >= 0 ? token.substring(0, semi).trim() : token;
+            if (name.equalsIgnoreCase(coding)) {
+                // "br;q=0" rechaza explícitamente la codificación
+                String params = semi >= 0 ? token.substring(semi + 1).replace(" ", "") : "";
+                if (!params.startsWith("q=")) {
+                    return true;
+                }
+                try {
+                    return Double.parseDouble(params.substring(2)) > 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Ruta relativa segura ("/" → "index.html"), o null si intenta salir de la raíz. */
+    static String normalize(String requestPath) {
+        String path;
+        try {
+            path = URLDecoder.decode(requestPath.replace("+", "%2B"), StandardCharsets.UTF_8.name());
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+        if (path.endsWith("/")) {
+            path += "index.html";
+        }
+        StringBuilder out = new StringBuilder(path.length());
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals(".") || segment.equals("..") || segment.indexOf('\\') >= 0
+                    || segment.indexOf('\0') >= 0) {
+                return null;
+            }
+            if (out.length() > 0) {
+                out.append('/');
+            }
+            out.append(segment);
+        }
+        return out.length() > 0 ? out.toString() : null;
+    }
+
+    static String mimeType(String path) {
+        int dot = path.lastIndexOf('.');
+        String ext = dot >= 0 ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        switch (ext) {
+            case "html":
+            case "htm": return HttpResponse.MIME_HTML;
+            case "js":
+            case "mjs": return "text/javascript; charset=utf-8";
+            case "css": return "text/css; charset=utf-8";
+            case "json":
+            case "map": return "application/json";
+            case "txt": return HttpResponse.MIME_TEXT;
+            case "svg": return "image/svg+xml";
+            case "png": return "image/png";
+            case "jpg":
+            case "jpeg": return "image/jpeg";
+            case "gif": return "image/gif";
+            case "webp": return "image/webp";
+            case "ico": return "image/x-icon";
+            case "woff": return "font/woff";
+            case "woff2": return "font/woff2";
+            case "wasm": return "application/wasm";
+            default: return "application/octet-stream";
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de ByteBuffers por clases de tamaño (potencias de dos, de 1 KiB a 1 MiB)
+ * para construir payloads binarios sin asignar memoria en cada mensaje. Lo
+ * usa {@link UnifiedServer} para los payloads WS recibidos.
+ *
+ * Sin bloqueos: cada clase es una cola concurrente con un máximo de buffers
+ * retenidos. Los mayores que la clase más grande no se reutilizan.
+ */
+public class BufferPool {
+
+    private static final int MIN_SHIFT = 10;   // 1 KiB
+    private static final int MAX_SHIFT = 20;   // 1 MiB
+    private static final int MAX_PER_CLASS = 32;
+
+    private static final BufferPool SHARED = new BufferPool(false);
+
+    /** Buffers libres de una clase y cuántos hay (size() de la cola recorre la cola entera). */
+    private static final class SizeClass {
+        final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+        final AtomicInteger retained = new AtomicInteger();
+    }
+
+    private final boolean direct;
+    private final SizeClass[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+
+    public BufferPool(boolean direct) {
+        this.direct = direct;
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass();
+        }
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /** Buffer limpio con al menos {@code size} bytes de capacidad. */
+    public ByteBuffer acquire(int size) {
+        int index = classIndex(size);
+        if (index < 0) {
+            return allocate(size);
+        }
+        SizeClass sizeClass = classes[index];
+        ByteBuffer buffer = sizeClass.free.poll();
+        if (buffer == null) {
+            return allocate(1 << (index + MIN_SHIFT));
+        }
+        sizeClass.retained.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /** Devuelve el buffer al pool; no debe usarse después. */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != direct || buffer.isReadOnly()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        int index = Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+        if (index < 0 || index >= classes.length) {
+            return;
+        }
+        SizeClass sizeClass = classes[index];
+        if (sizeClass.retained.incrementAndGet() > MAX_PER_CLASS) {
+            sizeClass.retained.decrementAndGet();
+            return;
+        }
+        sizeClass.free.offer(buffer);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static int classIndex(int size) {
+        if (size > (1 << MAX_SHIFT)) {
+            return -1;
+        }
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+        return shift - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.websocket;
+
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configuración de permessage-deflate (RFC 7692) compartida por el servidor
+ * WS embebido y el cliente OkHttp, para que ambos lados usen el mismo umbral.
+ *
+ * Con context takeover el compresor conserva su diccionario entre mensajes:
+ * con JSON repetitivo la ratio mejora mucho a cambio de ~64 KiB de memoria
+ * por conexión y sentido.
+ */
+public final class CompressionConfig {
+
+    /** Por debajo de este tamaño no compensa el coste de CPU de comprimir. */
+    public static final int DEFAULT_THRESHOLD_BYTES = 256;
+
+    public static final CompressionConfig DEFAULT =
+            new CompressionConfig(true, DEFAULT_THRESHOLD_BYTES, false, false);
+    public static final CompressionConfig DISABLED =
+            new CompressionConfig(false, Integer.MAX_VALUE, true, true);
+
+    public final boolean enabled;
+    public final int thresholdBytes;
+    public final boolean serverNoContextTakeover;
+    public final boolean clientNoContextTakeover;
+
+    public CompressionConfig(boolean enabled, int thresholdBytes,
+                             boolean serverNoContextTakeover, boolean clientNoContextTakeover) {
+        this.enabled = enabled;
+        this.thresholdBytes = thresholdBytes;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+    }
+
+    /**
+     * Drafts para Java-WebSocket. Draft_6455 añade siempre la extensión por
+     * defecto, así que los clientes que no negocian compresión siguen entrando.
+     */
+    public List<Draft> serverDrafts() {
+        if (!enabled) {
+            return Collections.singletonList(new Draft_6455());
+        }
+        PerMessageDeflateExtension deflate = new PerMessageDeflateExtension();
+        deflate.setThreshold(thresholdBytes);
+        deflate.setServerNoContextTakeover(serverNoContextTakeover);
+        deflate.setClientNoContextTakeover(clientNoContextTakeover);
+        return Collections.singletonList(new Draft_6455(deflate));
+    }
+
+    /**
+     * Umbral para OkHttpClient.Builder#minWebSocketMessageToCompress. OkHttp
+     * negocia la extensión por su cuenta; sin compresión se sube al máximo.
+     */
+    public long clientMinMessageToCompress() {
+        return enabled ? thresholdBytes : Long.MAX_VALUE;
+    }
+}
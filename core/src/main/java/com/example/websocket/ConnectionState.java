@@ -0,0 +1,71 @@
+package com.example.websocket;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Estado del socket del cliente WS como máquina de estados atómica. Es el
+ * único sitio donde cambia el estado: cada transición es un CAS que solo se
+ * aplica desde los estados permitidos, así los callbacks de OkHttp (hilos de
+ * red), el planificador y las llamadas del anfitrión no se pisan.
+ *
+ * <pre>
+ *   IDLE ──► CONNECTING ──► OPEN ──► CLOSING
+ *    ▲           │           │          │
+ *    │           ▼           ▼          ▼
+ *    └──────── BACKOFF ◄─────┴──────────┘
+ * </pre>
+ * Cualquier estado puede volver a IDLE (parada o reconexión manual).
+ */
+public final class ConnectionState {
+
+    public enum State { IDLE, CONNECTING, OPEN, CLOSING, BACKOFF }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+
+    public State get() {
+        return state.get();
+    }
+
+    public boolean isOpen() {
+        return state.get() == State.OPEN;
+    }
+
+    /**
+     * Pasa a target si la transición está permitida desde el estado actual.
+     *
+     * @return false si no lo está (p. ej. un fallo tardío tras la parada)
+     */
+    public boolean moveTo(State target) {
+        while (true) {
+            State current = state.get();
+            if (!allowed(current, target)) {
+                return false;
+            }
+            if (state.compareAndSet(current, target)) {
+                return true;
+            }
+        }
+    }
+
+    static boolean allowed(State from, State to) {
+        switch (to) {
+            case CONNECTING:
+                return from == State.IDLE || from == State.BACKOFF;
+            case OPEN:
+                return from == State.CONNECTING;
+            case CLOSING:
+                return from == State.OPEN;
+            case BACKOFF:
+                return from == State.CONNECTING || from == State.OPEN || from == State.CLOSING;
+            case IDLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return state.get().name();
+    }
+}
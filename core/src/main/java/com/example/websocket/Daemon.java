@@ -0,0 +1,69 @@
+package com.example.websocket;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Punto de entrada para ejecutar el nodo en una JVM sin Android (pruebas de
+ * capacidad, perfilado con JFR o async-profiler, relay de escritorio):
+ * <pre>
+ *   ./gradlew :core:installDist
+ *   core/build/install/core/bin/core relay.properties
+ * </pre>
+ * Sin argumento usa la configuración por defecto (la misma que la app).
+ * Se detiene con Ctrl+C.
+ */
+public final class Daemon {
+
+    private static final String TAG = "Daemon";
+    private static final Log.Sampler RX_LOG = new Log.Sampler();
+
+    private Daemon() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        NodeConfig config = args.length > 0 ? NodeConfig.load(new File(args[0])) : NodeConfig.defaults();
+        ExecutorScheduler scheduler = new ExecutorScheduler("relay-scheduler");
+        RelayNode node = new RelayNode(config, scheduler, new ConsoleListener());
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Log.i(TAG, "Deteniendo nodo 🛑");
+            node.stop();
+            scheduler.shutdown();
+            stopped.countDown();
+        }, "relay-shutdown"));
+
+        node.start();
+        node.connect();
+        Log.i(TAG, "Nodo iniciado (motor {}, cliente → {}) ✅", config.engine, node.getServerUrl());
+        stopped.await();
+    }
+
+    /** Estado y mensajes al log; en la app esto lo hace la UI. */
+    private static final class ConsoleListener implements RelayNode.Listener {
+        @Override
+        public void onStatusChanged(RelayNode.Status status, String detail) {
+            if (detail != null) {
+                Log.i(TAG, "Estado: {} ({})", status, detail);
+            } else {
+                Log.i(TAG, "Estado: {}", status);
+            }
+        }
+
+        @Override
+        public void onMessage(String message) {
+            if (RX_LOG.sample()) Log.d(TAG, "📩 {}", message);
+        }
+
+        @Override
+        public void onBinary(String source, ByteBuffer payload) {
+            if (RX_LOG.sample()) Log.d(TAG, "📦 {} bytes de {}", payload.remaining(), source);
+        }
+
+        @Override
+        public void onOutboundRejected(int depth) {
+            Log.w(TAG, "Cola de salida llena ({} pendientes)", depth);
+        }
+    }
+}
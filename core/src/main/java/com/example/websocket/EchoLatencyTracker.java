@@ -0,0 +1,25 @@
+package com.example.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia extremo a extremo del eco: cada ECHO/PONG de un {@link Envelope}
+ * trae el instante con el que se envió el original, así que no hace falta
+ * recordar nada por envío ni asignar memoria por respuesta.
+ */
+final class EchoLatencyTracker {
+
+    private final Metrics.Histogram histogram;
+
+    EchoLatencyTracker(Metrics.Histogram histogram) {
+        this.histogram = histogram;
+    }
+
+    /** ECHO/PONG de un {@link Envelope}: el sobre trae su instante de envío (resolución de ms). */
+    void onEnvelopeEcho(long sentAtMs) {
+        long elapsedMs = System.currentTimeMillis() - sentAtMs;
+        if (elapsedMs >= 0) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(elapsedMs));
+        }
+    }
+}
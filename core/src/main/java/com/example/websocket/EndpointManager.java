@@ -0,0 +1,463 @@
+package com.example.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Varios sockets WS salientes a la vez sobre un único {@link OkHttpClient}
+ * (mismo dispatcher, pool de conexiones e hilo de pings), cada uno con su
+ * estado, su reconexión con backoff y su salud.
+ *
+ * Los envíos van a un endpoint abierto según la {@link Strategy}; si OkHttp
+ * lo rechaza (socket cerrándose o buffer lleno) se prueba el siguiente por
+ * prioridad. La lista de endpoints es inmutable y se sustituye entera al
+ * añadir o quitar: elegir destino no toma locks ni reserva memoria.
+ */
+public final class EndpointManager {
+    private static final String TAG = "EndpointManager";
+
+    static final int NORMAL_CLOSURE = 1000;
+
+    public enum Strategy {
+        /** Siempre el abierto de mejor prioridad (menor número). */
+        FAILOVER,
+        /** Rotación entre los abiertos. */
+        ROUND_ROBIN,
+        /** El abierto con menos bytes en el buffer de OkHttp. */
+        LEAST_LOADED
+    }
+
+    /** Eventos de los endpoints; se llama desde hilos de red (el estado, desde el planificador si reconecta). */
+    public interface Listener {
+        default void onEndpointState(Endpoint endpoint, ConnectionState.State state) {
+        }
+
+        void onMessage(Endpoint endpoint, String text);
+
+        default void onBinary(Endpoint endpoint, ByteBuffer payload) {
+        }
+    }
+
+    /** Un destino: URL, prioridad, socket actual y salud. */
+    public final class Endpoint {
+        public final String url;
+        public final int priority;
+
+        final ConnectionState state = new ConnectionState();
+        private final ReconnectScheduler reconnect;
+        volatile WebSocket socket;
+        // Listener del intento en curso: sus callbacks cuentan aunque lleguen antes de asignar socket
+        private volatile SocketListener attempt;
+        private volatile boolean removed;
+
+        // Salud
+        private final Metrics.Counter sent;
+        private final Metrics.Counter received;
+        private final Metrics.Counter failures;
+        private volatile int consecutiveFailures;
+        private volatile long lastFailureAtMs;
+        private volatile String lastError;
+
+        Endpoint(String url, int priority) {
+            this.url = url;
+            this.priority = priority;
+            this.reconnect = new ReconnectScheduler(scheduler, this::connect,
+                    reconnectBaseDelayMs, reconnectMaxDelayMs, reconnectStableAfterMs);
+            String labels = "endpoint=\"" + url + "\"";
+            sent = metrics.counter("ws_upstream_messages_sent_total",
+                    "Mensajes entregados a OkHttp por endpoint", labels);
+            received = metrics.counter("ws_upstream_messages_received_total",
+                    "Mensajes recibidos por endpoint", labels);
+            failures = metrics.counter("ws_upstream_failures_total",
+                    "Fallos o cierres anómalos por endpoint", labels);
+            metrics.gauge("ws_upstream_connected", "1 si el endpoint está abierto", labels,
+                    () -> isOpen() ? 1 : 0);
+        }
+
+        public ConnectionState.State state() {
+            return state.get();
+        }
+
+        public boolean isOpen() {
+            return state.isOpen();
+        }
+
+        /** Bytes en el buffer de OkHttp de este socket (0 si no hay socket). */
+        public long pendingBytes() {
+            WebSocket ws = socket;
+            return ws != null ? ws.queueSize() : 0L;
+        }
+
+        public long messagesSent() {
+            return sent.get();
+        }
+
+        public long messagesReceived() {
+            return received.get();
+        }
+
+        public long failureCount() {
+            return failures.get();
+        }
+
+        /** Fallos seguidos desde la última conexión abierta. */
+        public int consecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public long lastFailureAtMs() {
+            return lastFailureAtMs;
+        }
+
+        public String lastError() {
+            return lastError;
+        }
+
+        /** Intentos, esperas y latencia de conexión de este endpoint. */
+        public ReconnectScheduler reconnectStats() {
+            return reconnect;
+        }
+
+        @Override
+        public String toString() {
+            return url + " [" + state + ", p" + priority + ", fallos seguidos " + consecutiveFailures + "]";
+        }
+
+        // ======== Socket ========
+
+        private void connect() {
+            if (removed || !state.moveTo(ConnectionState.State.CONNECTING)) {
+                reconnect.onAttemptSkipped();
+                return;
+            }
+            Log.d(TAG, "Conectando a {}", url);
+            notifyState();
+            SocketListener listener = new SocketListener();
+            // Antes de la llamada: OkHttp puede fallar (DNS, conexión rechazada) antes de que devuelva
+            attempt = listener;
+            WebSocket ws = client.newWebSocket(new Request.Builder().url(url).build(), listener);
+            if (attempt == listener) {
+                socket = ws;
+            }
+        }
+
+        private void close(String reason) {
+            reconnect.cancel();
+            state.moveTo(ConnectionState.State.IDLE);
+            WebSocket ws = socket;
+            socket = null;
+            attempt = null;
+            if (ws != null) {
+                try {
+                    ws.close(NORMAL_CLOSURE, reason);
+                } catch (Exception ignored) {}
+            }
+        }
+
+        private boolean trySend(String text) {
+            WebSocket ws = socket;
+            if (ws != null && state.isOpen() && ws.send(text)) {
+                sent.inc();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean trySend(ByteString bytes) {
+            WebSocket ws = socket;
+            if (ws != null && state.isOpen() && ws.send(bytes)) {
+                sent.inc();
+                return true;
+            }
+            return false;
+        }
+
+        private void onLost(String error) {
+            failures.inc();
+            consecutiveFailures++;
+            lastFailureAtMs = System.currentTimeMillis();
+            lastError = error;
+            notifyState();
+            if (!removed) {
+                long delay = reconnect.onConnectionLost();
+                if (delay >= 0) {
+                    Log.d(TAG, "{}: reintento en {} ms", url, delay);
+                }
+            }
+        }
+
+        private void notifyState() {
+            listener.onEndpointState(this, state.get());
+        }
+
+        private final class SocketListener extends WebSocketListener {
+            /** Callbacks de un intento anterior (cerrado o sustituido) que ya no cuentan. */
+            private boolean isStale() {
+                return this != attempt;
+            }
+
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                if (isStale() || !state.moveTo(ConnectionState.State.OPEN)) return;
+                socket = webSocket;
+                reconnect.onConnected();
+                consecutiveFailures = 0;
+                Log.i(TAG, "Endpoint abierto: {}", url);
+                notifyState();
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                if (isStale()) return;
+                received.inc();
+                listener.onMessage(Endpoint.this, text);
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                if (isStale()) return;
+                received.inc();
+                listener.onBinary(Endpoint.this, bytes.asByteBuffer());
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                if (isStale() || !state.moveTo(ConnectionState.State.CLOSING)) return;
+                notifyState();
+            }
+
+            @Override
+            public void onClosed(WebSocket webSocket, int code, String reason) {
+                if (isStale()) return;
+                if (code == NORMAL_CLOSURE) {
+                    state.moveTo(ConnectionState.State.IDLE);
+                    notifyState();
+                } else if (state.moveTo(ConnectionState.State.BACKOFF)) {
+                    onLost("cerrado: " + code + " " + reason);
+                }
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                if (isStale() || !state.moveTo(ConnectionState.State.BACKOFF)) return;
+                String error = t != null ? t.getMessage() : "WS failure";
+                Log.w(TAG, "Fallo en endpoint {}: {}", url, error);
+                onLost(error);
+            }
+        }
+    }
+
+    private final OkHttpClient client;
+    private final TaskScheduler scheduler;
+    private final Listener listener;
+    private final Metrics metrics;
+    private final long reconnectBaseDelayMs;
+    private final long reconnectMaxDelayMs;
+    private final long reconnectStableAfterMs;
+
+    // Ordenada por prioridad e inmutable; se sustituye al añadir o quitar
+    private volatile List<Endpoint> endpoints = Collections.emptyList();
+    private final AtomicInteger nextRoundRobin = new AtomicInteger();
+    private volatile Strategy strategy;
+    private volatile boolean started;
+
+    public EndpointManager(OkHttpClient client, TaskScheduler scheduler, Listener listener, Strategy strategy,
+                           long reconnectBaseDelayMs, long reconnectMaxDelayMs, long reconnectStableAfterMs) {
+        this(client, scheduler, listener, strategy, reconnectBaseDelayMs, reconnectMaxDelayMs,
+                reconnectStableAfterMs, Metrics.shared());
+    }
+
+    EndpointManager(OkHttpClient client, TaskScheduler scheduler, Listener listener, Strategy strategy,
+                    long reconnectBaseDelayMs, long reconnectMaxDelayMs, long reconnectStableAfterMs,
+                    Metrics metrics) {
+        this.client = client;
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.strategy = strategy;
+        this.reconnectBaseDelayMs = reconnectBaseDelayMs;
+        this.reconnectMaxDelayMs = reconnectMaxDelayMs;
+        this.reconnectStableAfterMs = reconnectStableAfterMs;
+        this.metrics = metrics;
+    }
+
+    // ======== Endpoints ========
+
+    /**
+     * Añade un destino (menor prioridad = preferido); si el gestor ya está
+     * arrancado se conecta enseguida.
+     */
+    public synchronized Endpoint add(String url, int priority) {
+        for (Endpoint e : endpoints) {
+            if (e.url.equals(url)) {
+                throw new IllegalArgumentException("Endpoint duplicado: " + url);
+            }
+        }
+        Endpoint endpoint = new Endpoint(url, priority);
+        List<Endpoint> sorted = new ArrayList<>(endpoints);
+        sorted.add(endpoint);
+        sorted.sort(Comparator.comparingInt(e -> e.priority));
+        endpoints = Collections.unmodifiableList(sorted);
+        if (started) {
+            endpoint.reconnect.connectNow();
+        }
+        return endpoint;
+    }
+
+    public synchronized boolean remove(String url) {
+        for (Endpoint e : endpoints) {
+            if (e.url.equals(url)) {
+                List<Endpoint> rest = new ArrayList<>(endpoints);
+                rest.remove(e);
+                endpoints = Collections.unmodifiableList(rest);
+                e.removed = true;
+                e.close("Endpoint eliminado");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Endpoints por prioridad (vista de solo lectura). */
+    public List<Endpoint> endpoints() {
+        return endpoints;
+    }
+
+    public int openCount() {
+        int open = 0;
+        for (Endpoint e : endpoints) {
+            if (e.isOpen()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    // ======== Ciclo de vida ========
+
+    public synchronized void start() {
+        started = true;
+        for (Endpoint e : endpoints) {
+            e.reconnect.connectNow();
+        }
+    }
+
+    /** Cierra todos los sockets; el cliente compartido sigue siendo de quien lo creó. */
+    public synchronized void stop() {
+        started = false;
+        for (Endpoint e : endpoints) {
+            e.close("Servicio terminado");
+        }
+    }
+
+    // ======== Envío ========
+
+    /**
+     * Envía a un endpoint abierto según la estrategia.
+     *
+     * @return false si ninguno lo aceptó (todos caídos o con el buffer lleno)
+     */
+    public boolean send(String text) {
+        Endpoint first = pick();
+        if (first == null) {
+            return false;
+        }
+        if (first.trySend(text)) {
+            return true;
+        }
+        for (Endpoint e : endpoints) {
+            if (e != first && e.trySend(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean send(ByteString bytes) {
+        Endpoint first = pick();
+        if (first == null) {
+            return false;
+        }
+        if (first.trySend(bytes)) {
+            return true;
+        }
+        for (Endpoint e : endpoints) {
+            if (e != first && e.trySend(bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Envía a todos los endpoints abiertos; devuelve a cuántos. */
+    public int broadcast(String text) {
+        int delivered = 0;
+        for (Endpoint e : endpoints) {
+            if (e.trySend(text)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /** Endpoint abierto que toca según la estrategia, o null si no hay ninguno. */
+    Endpoint pick() {
+        List<Endpoint> list = endpoints;
+        int n = list.size();
+        if (n == 0) {
+            return null;
+        }
+        switch (strategy) {
+            case ROUND_ROBIN: {
+                int start = Math.floorMod(nextRoundRobin.getAndIncrement(), n);
+                for (int i = 0; i < n; i++) {
+                    Endpoint e = list.get((start + i) % n);
+                    if (e.isOpen()) {
+                        return e;
+                    }
+                }
+                return null;
+            }
+            case LEAST_LOADED: {
+                Endpoint best = null;
+                long bestBytes = Long.MAX_VALUE;
+                for (Endpoint e : list) {
+                    if (e.isOpen()) {
+                        long bytes = e.pendingBytes();
+                        if (bytes < bestBytes) {
+                            best = e;
+                            bestBytes = bytes;
+                        }
+                    }
+                }
+                return best;
+            }
+            case FAILOVER:
+            default:
+                for (Endpoint e : list) {
+                    if (e.isOpen()) {
+                        return e;
+                    }
+                }
+                return null;
+        }
+    }
+}
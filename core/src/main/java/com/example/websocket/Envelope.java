@@ -0,0 +1,511 @@
+package com.example.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Sobre binario de los mensajes de la app: tipo, tópico, seq, instante y
+ * payload en una cabecera fija, en lugar de prefijos de texto
+ * ({@code "PUB t m"}, {@code "Eco: "}...) que cada salto concatena y vuelve
+ * a parsear.
+ *
+ * <pre>
+ *   0  magic 0xEB      1  versión      2  tipo       3  bytes del tópico (T)
+ *   4  seq (8, big-endian)             12 instante, ms epoch (8)
+ *   20 tópico UTF-8 (T bytes)          20+T  payload hasta el final del frame
+ * </pre>
+ * Bits reservados, a cero: los 4 altos del tipo y el de signo de seq e
+ * instante. El tópico es UTF-8 válido sin caracteres de control. Un binario
+ * que no cumple la cabecera entera no es un sobre: los servidores lo tratan
+ * como binario en bruto, así que un payload ajeno que empiece por 0xEB 0x01
+ * casi nunca se confunde con uno.
+ *
+ * El tópico va por nombre (hasta {@link #MAX_TOPIC_BYTES} bytes): los
+ * extremos no comparten una tabla de ids. {@link Reader} lee un frame sin
+ * copiarlo ni asignar memoria; para depurar, el mismo sobre tiene forma JSON
+ * ({@link #toJson}, {@link #fromJson}) que los servidores aceptan en frames
+ * de texto.
+ */
+public final class Envelope {
+
+    static final byte MAGIC = (byte) 0xEB;
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = 20;
+    public static final int MAX_TOPIC_BYTES = 255;
+
+    private static final int OFF_TYPE = 2;
+    private static final int OFF_TOPIC_LENGTH = 3;
+    private static final int OFF_SEQ = 4;
+    private static final int OFF_TIMESTAMP = 12;
+
+    public enum Type {
+        /** Mensaje de un cliente para la app (antes, texto suelto con "[WS] " en el bus). */
+        MESSAGE(1),
+        /** Respuesta a MESSAGE: mismo tópico, seq, instante y payload. */
+        ECHO(2),
+        /** Publicar en el tópico (antes "PUB t m"). */
+        PUBLISH(3),
+        /** Entrega a un suscriptor (antes "MSG t m"). */
+        DELIVERY(4),
+        SUBSCRIBE(5),
+        UNSUBSCRIBE(6),
+        /** Confirmación de PUBLISH/SUBSCRIBE/UNSUBSCRIBE con su seq. */
+        ACK(7),
+        PING(8),
+        /** Respuesta a PING con su seq e instante. */
+        PONG(9),
+        /** Petición rechazada; el payload explica por qué. */
+        ERROR(10);
+
+        private static final Type[] BY_CODE = new Type[16];
+
+        static {
+            for (Type type : values()) {
+                BY_CODE[type.code] = type;
+            }
+        }
+
+        final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        static Type of(int code) {
+            return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        }
+    }
+
+    private Envelope() {
+    }
+
+    // ======== Codificación ========
+
+    /** Bytes que ocupa el sobre con este tópico y payload. */
+    public static int encodedLength(String topic, int payloadBytes) {
+        return HEADER_BYTES + (int) OutboundQueue.utf8Length(topic) + payloadBytes;
+    }
+
+    /** Sobre nuevo con los bytes del payload entre position y limit (el payload no se modifica). */
+    public static ByteBuffer encode(Type type, String topic, long seq, long timestampMs, ByteBuffer payload) {
+        ByteBuffer out = ByteBuffer.allocate(encodedLength(topic, payload.remaining()));
+        encode(out, type, topic, seq, timestampMs, payload);
+        out.flip();
+        return out;
+    }
+
+    public static ByteBuffer encode(Type type, String topic, long seq, long timestampMs, String text) {
+        return encode(type, topic, seq, timestampMs, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Escribe el sobre en {@code out} a partir de su posición (p. ej. un
+     * buffer de {@link BufferPool}).
+     *
+     * @throws IllegalArgumentException si el tópico supera {@link #MAX_TOPIC_BYTES}
+     */
+    public static void encode(ByteBuffer out, Type type, String topic, long seq, long timestampMs,
+                              ByteBuffer payload) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        if (topicBytes.length > MAX_TOPIC_BYTES) {
+            throw new IllegalArgumentException("Tópico demasiado largo: " + topicBytes.length + " bytes");
+        }
+        out.put(MAGIC).put(VERSION).put(type.code).put((byte) topicBytes.length)
+                .putLong(seq).putLong(timestampMs)
+                .put(topicBytes)
+                .put(payload.duplicate());
+    }
+
+    /** Copia del sobre leído con otro tipo (ECHO de un MESSAGE, PONG de un PING): un solo array. */
+    public static ByteBuffer copyAs(Reader envelope, Type type) {
+        ByteBuffer source = envelope.buffer.duplicate();
+        source.position(envelope.base).limit(envelope.end);
+        ByteBuffer copy = ByteBuffer.allocate(source.remaining());
+        copy.put(source).flip();
+        copy.put(OFF_TYPE, type.code);
+        return copy;
+    }
+
+    // ======== Lectura ========
+
+    /**
+     * Vista reutilizable sobre un frame: {@link #wrap} valida la cabecera y
+     * los getters leen con accesos absolutos, sin copiar ni asignar. El
+     * frame no debe cambiar mientras se lee. No es thread-safe: una por hilo.
+     */
+    public static final class Reader {
+        private ByteBuffer buffer;
+        private int base;
+        private int end;
+        private int topicLength;
+        private Type type;
+
+        /** @return false si el frame no es un sobre válido (se puede tratar como binario en bruto) */
+        public boolean wrap(ByteBuffer frame) {
+            int position = frame.position();
+            int limit = frame.limit();
+            if (limit - position < HEADER_BYTES
+                    || frame.get(position) != MAGIC || frame.get(position + 1) != VERSION) {
+                return false;
+            }
+            Type t = Type.of(frame.get(position + OFF_TYPE));
+            int topicBytes = frame.get(position + OFF_TOPIC_LENGTH) & 0xFF;
+            if (t == null || limit - position < HEADER_BYTES + topicBytes
+                    || frame.getLong(position + OFF_SEQ) < 0 || frame.getLong(position + OFF_TIMESTAMP) < 0
+                    || !isTopic(frame, position + HEADER_BYTES, topicBytes)) {
+                return false;
+            }
+            buffer = frame;
+            base = position;
+            end = limit;
+            topicLength = topicBytes;
+            type = t;
+            return true;
+        }
+
+        public Type type() {
+            return type;
+        }
+
+        public long seq() {
+            return buffer.getLong(base + OFF_SEQ);
+        }
+
+        public long timestampMs() {
+            return buffer.getLong(base + OFF_TIMESTAMP);
+        }
+
+        public int topicLength() {
+            return topicLength;
+        }
+
+        /** Compara el tópico sin decodificarlo (solo ASCII; otro texto se decodifica). */
+        public boolean topicEquals(String topic) {
+            int n = topic.length();
+            if (n != topicLength) {
+                return !isAscii(topic) && topic.equals(topic());
+            }
+            int offset = base + HEADER_BYTES;
+            for (int i = 0; i < n; i++) {
+                char c = topic.charAt(i);
+                if (c >= 0x80) {
+                    return topic.equals(topic());
+                }
+                if (buffer.get(offset + i) != c) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Tópico como String (asigna); vacío si el sobre no lleva. */
+        public String topic() {
+            if (topicLength == 0) {
+                return "";
+            }
+            if (buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + base + HEADER_BYTES, topicLength,
+                        StandardCharsets.UTF_8);
+            }
+            byte[] bytes = new byte[topicLength];
+            for (int i = 0; i < topicLength; i++) {
+                bytes[i] = buffer.get(base + HEADER_BYTES + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public int payloadOffset() {
+            return base + HEADER_BYTES + topicLength;
+        }
+
+        public int payloadLength() {
+            return end - payloadOffset();
+        }
+
+        /** Vista (sin copia) del payload; misma memoria que el frame. */
+        public ByteBuffer payload() {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(end).position(payloadOffset());
+            return view.slice();
+        }
+
+        public String payloadText() {
+            return StandardCharsets.UTF_8.decode(payload()).toString();
+        }
+
+        /** El sobre en JSON, para logs y la UI. */
+        @Override
+        public String toString() {
+            return buffer == null ? "{}" : toJson(this);
+        }
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ======== JSON (depuración) ========
+
+    /**
+     * {@code {"type":"MESSAGE","topic":"app","seq":1,"ts":1700000000000,"payload":"hola"}};
+     * un payload que no es UTF-8 válido va en base64 como {@code "payload64"}.
+     */
+    public static String toJson(Reader envelope) {
+        StringBuilder out = new StringBuilder(64 + envelope.topicLength() + envelope.payloadLength());
+        jsonHeader(out, envelope.type(), envelope.topic(), envelope.seq(), envelope.timestampMs());
+        String text = strictUtf8(envelope.payload());
+        if (text != null) {
+            out.append(",\"payload\":");
+            quote(text, out);
+        } else {
+            ByteBuffer payload = envelope.payload();
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            out.append(",\"payload64\":\"").append(Base64.getEncoder().encodeToString(bytes)).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    /** Forma JSON de un sobre con payload de texto, sin pasar por el binario (respuestas a clientes de texto). */
+    public static String toJson(Type type, String topic, long seq, long timestampMs, String text) {
+        StringBuilder out = new StringBuilder(64 + topic.length() + text.length());
+        jsonHeader(out, type, topic, seq, timestampMs);
+        out.append(",\"payload\":");
+        quote(text, out);
+        return out.append('}').toString();
+    }
+
+    private static void jsonHeader(StringBuilder out, Type type, String topic, long seq, long timestampMs) {
+        out.append("{\"type\":\"").append(type.name()).append("\",\"topic\":");
+        quote(topic, out);
+        out.append(",\"seq\":").append(seq)
+                .append(",\"ts\":").append(timestampMs);
+    }
+
+    /** Un frame de texto que parece un sobre JSON (lo demás sigue el protocolo de texto). */
+    public static boolean isJson(String text) {
+        return text.startsWith("{\"type\":");
+    }
+
+    /**
+     * Sobre binario a partir de su forma JSON. Campos ausentes: tópico vacío,
+     * seq 0, instante 0 y payload vacío.
+     *
+     * @return null si no es un objeto JSON plano con un "type" conocido
+     */
+    public static ByteBuffer fromJson(String json) {
+        JsonFields fields = new JsonFields();
+        if (!fields.parse(json)) {
+            return null;
+        }
+        Type type;
+        try {
+            type = fields.type != null ? Type.valueOf(fields.type) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (type == null) {
+            return null;
+        }
+        ByteBuffer payload;
+        try {
+            payload = fields.payload64 != null
+                    ? ByteBuffer.wrap(Base64.getDecoder().decode(fields.payload64))
+                    : ByteBuffer.wrap(fields.payload.getBytes(StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (OutboundQueue.utf8Length(fields.topic) > MAX_TOPIC_BYTES) {
+            return null;
+        }
+        return encode(type, fields.topic, fields.seq, fields.ts, payload);
+    }
+
+    /** Tópico en UTF-8 válido y sin caracteres de control; sin asignar si es ASCII. */
+    private static boolean isTopic(ByteBuffer frame, int offset, int length) {
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            int b = frame.get(offset + i);
+            if (b >= 0 && (b < 0x20 || b == 0x7F)) {
+                return false;
+            }
+            ascii &= b >= 0;
+        }
+        if (ascii) {
+            return true;
+        }
+        ByteBuffer topic = frame.duplicate();
+        topic.limit(offset + length).position(offset);
+        return strictUtf8(topic) != null;
+    }
+
+    private static String strictUtf8(ByteBuffer bytes) {
+        try {
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes);
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static void quote(String s, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /** Lector mínimo de un objeto JSON plano con los campos del sobre (se ignoran los demás). */
+    private static final class JsonFields {
+        String type;
+        String topic = "";
+        long seq;
+        long ts;
+        String payload = "";
+        String payload64;
+
+        private String json;
+        private int pos;
+
+        boolean parse(String text) {
+            json = text;
+            pos = 0;
+            try {
+                skipSpace();
+                expect('{');
+                skipSpace();
+                if (peek() == '}') {
+                    return false;
+                }
+                while (true) {
+                    skipSpace();
+                    String key = string();
+                    skipSpace();
+                    expect(':');
+                    skipSpace();
+                    field(key);
+                    skipSpace();
+                    char c = next();
+                    if (c == '}') {
+                        skipSpace();
+                        return pos == json.length();
+                    }
+                    if (c != ',') {
+                        return false;
+                    }
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                return false;
+            }
+        }
+
+        private void field(String key) {
+            switch (key) {
+                case "type": type = string(); break;
+                case "topic": topic = string(); break;
+                case "payload": payload = string(); break;
+                case "payload64": payload64 = string(); break;
+                case "seq": seq = number(); break;
+                case "ts": ts = number(); break;
+                default: skipValue();
+            }
+        }
+
+        private void skipValue() {
+            char c = peek();
+            if (c == '"') {
+                string();
+            } else {
+                // Número, true/false/null: hasta el siguiente separador
+                while (pos < json.length() && ",} \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                    pos++;
+                }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                char e = next();
+                switch (e) {
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'u':
+                        out.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: out.append(e);
+                }
+            }
+        }
+
+        private long number() {
+            int start = pos;
+            if (peek() == '-') {
+                pos++;
+            }
+            while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
+                pos++;
+            }
+            return Long.parseLong(json.substring(start, pos));
+        }
+
+        private void skipSpace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw new IllegalArgumentException("Se esperaba " + c);
+            }
+        }
+
+        private char peek() {
+            return json.charAt(pos);
+        }
+
+        private char next() {
+            return json.charAt(pos++);
+        }
+    }
+}
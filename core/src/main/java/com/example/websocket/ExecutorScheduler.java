@@ -0,0 +1,67 @@
+package com.example.websocket;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TaskScheduler} sobre un único hilo, el equivalente en la JVM al
+ * Handler del hilo principal: las tareas se ejecutan en serie.
+ */
+public class ExecutorScheduler implements TaskScheduler {
+
+    private static final String TAG = "ExecutorScheduler";
+
+    private final ScheduledExecutorService executor;
+    private final ConcurrentHashMap<Runnable, Set<ScheduledFuture<?>>> pending = new ConcurrentHashMap<>();
+
+    public ExecutorScheduler(String threadName) {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        Set<ScheduledFuture<?>> futures = pending.computeIfAbsent(task, k -> ConcurrentHashMap.newKeySet());
+        ScheduledFuture<?>[] self = new ScheduledFuture<?>[1];
+        synchronized (futures) {
+            self[0] = executor.schedule(() -> {
+                // Espera a que postDelayed haya registrado el future antes de quitarlo
+                synchronized (futures) {
+                    futures.remove(self[0]);
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error en tarea programada", e);
+                }
+            }, Math.max(0L, delayMs), TimeUnit.MILLISECONDS);
+            futures.add(self[0]);
+        }
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        Set<ScheduledFuture<?>> futures = pending.get(task);
+        if (futures == null) {
+            return;
+        }
+        synchronized (futures) {
+            for (ScheduledFuture<?> future : futures) {
+                future.cancel(false);
+            }
+            futures.clear();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+}
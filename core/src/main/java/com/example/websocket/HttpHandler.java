@@ -0,0 +1,8 @@
+package com.example.websocket;
+
+/**
+ * Manejador HTTP independiente del motor (NanoHTTPD o {@link UnifiedServer}).
+ */
+public interface HttpHandler {
+    HttpResponse handle(HttpRequest request);
+}
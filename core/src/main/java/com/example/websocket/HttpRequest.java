@@ -0,0 +1,102 @@
+package com.example.websocket;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.URLDecoder;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Petición HTTP independiente del motor. Las cabeceras se guardan con el
+ * nombre en minúsculas; el cuerpo se lee como stream.
+ */
+public final class HttpRequest {
+
+    public final String method;
+    public final String path;
+    /** Query string sin decodificar (sin '?'), o null. */
+    public final String query;
+    public final InputStream body;
+    /** Longitud del cuerpo, o -1 si no se conoce. */
+    public final long contentLength;
+    /** IP del cliente, sin puerto. */
+    public final String remoteAddress;
+    private final Map<String, String> headers;
+    private Map<String, String> queryParams;
+
+    public HttpRequest(String method, String path, String query, Map<String, String> headers,
+                       InputStream body, long contentLength, String remoteAddress) {
+        this.method = method;
+        this.path = path;
+        this.query = query;
+        this.headers = headers;
+        this.body = body;
+        this.contentLength = contentLength;
+        this.remoteAddress = remoteAddress;
+    }
+
+    /** Petición desde este mismo equipo (127.0.0.0/8 o ::1). */
+    public boolean fromLoopback() {
+        if (remoteAddress == null || !isIpLiteral(remoteAddress)) {
+            return false;
+        }
+        try {
+            // Con una IP literal getByName no consulta el DNS
+            return InetAddress.getByName(remoteAddress).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private static boolean isIpLiteral(String address) {
+        if (address.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return !address.isEmpty();
+    }
+
+    public String header(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public Map<String, String> headers() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public String queryParam(String name) {
+        if (queryParams == null) {
+            queryParams = parseQuery(query);
+        }
+        return queryParams.get(name);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            try {
+                params.put(URLDecoder.decode(key, StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8.name()));
+            } catch (UnsupportedEncodingException | IllegalArgumentException ignored) {
+                // Parámetro mal codificado: se ignora
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Respuesta HTTP independiente del motor. El cuerpo es un byte[] o, para
+ * contenido ya en memoria (caché, ficheros mapeados), un ByteBuffer que se
+ * escribe sin copiar.
+ */
+public final class HttpResponse {
+
+    public static final String MIME_TEXT = "text/plain; charset=utf-8";
+    public static final String MIME_HTML = "text/html; charset=utf-8";
+
+    public final int status;
+    public final String contentType;
+    public final byte[] body;
+    // Alternativa a body; se comparte entre respuestas, así que solo se lee con duplicate()
+    private final ByteBuffer bodyBuffer;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    public HttpResponse(int status, String contentType, byte[] body) {
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+        this.bodyBuffer = null;
+    }
+
+    /** Cuerpo entre position y limit de un buffer que no se modifica después. */
+    public HttpResponse(int status, String contentType, ByteBuffer body) {
+        this.status = status;
+        this.contentType = contentType;
+        this.body = null;
+        this.bodyBuffer = body;
+    }
+
+    public int bodyLength() {
+        return body != null ? body.length : bodyBuffer.remaining();
+    }
+
+    /** Vista propia del cuerpo (position y limit independientes). */
+    public ByteBuffer bodyBuffer() {
+        return body != null ? ByteBuffer.wrap(body) : bodyBuffer.duplicate();
+    }
+
+    public InputStream bodyStream() {
+        if (body != null) {
+            return new ByteArrayInputStream(body);
+        }
+        ByteBuffer view = bodyBuffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, view.remaining());
+                view.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+
+    public static HttpResponse text(int status, String text) {
+        return new HttpResponse(status, MIME_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HttpResponse html(String html) {
+        return new HttpResponse(200, MIME_HTML, html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HttpResponse notFound() {
+        return text(404, "Not Found");
+    }
+
+    public HttpResponse header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public Map<String, String> headers() {
+        return headers;
+    }
+
+    public static String reason(int status) {
+        switch (status) {
+            case 101: return "Switching Protocols";
+            case 200: return "OK";
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 416: return "Range Not Satisfiable";
+            case 429: return "Too Many Requests";
+            case 503: return "Service Unavailable";
+            default: return status >= 500 ? "Internal Server Error" : "Unknown";
+        }
+    }
+}
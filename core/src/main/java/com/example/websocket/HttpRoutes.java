@@ -0,0 +1,67 @@
+package com.example.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rutas HTTP de la app, compartidas por {@link SimpleHttpServer} (NanoHTTPD)
+ * y {@link UnifiedServer}. Las rutas son exactas por método y path; lo que no
+ * coincide va al manejador por defecto. Aquí se miden todas las peticiones,
+ * sea cual sea el motor.
+ */
+public class HttpRoutes implements HttpHandler {
+
+    private final Map<String, HttpHandler> routes = new ConcurrentHashMap<>();
+    private volatile HttpHandler fallback = request -> HttpResponse.text(200, "Hola mundo");
+
+    private final Metrics.Counter requests;
+    private final Metrics.Counter bytesIn;
+    private final Metrics.Counter bytesOut;
+    private final Metrics.Histogram latency;
+
+    public HttpRoutes() {
+        this(Metrics.shared());
+    }
+
+    public HttpRoutes(Metrics metrics) {
+        String labels = "server=\"http\"";
+        requests = metrics.counter("http_requests_total", "Peticiones HTTP atendidas", labels);
+        bytesIn = metrics.counter("http_request_bytes_total", "Bytes de cuerpo HTTP recibidos", labels);
+        bytesOut = metrics.counter("http_response_bytes_total", "Bytes de cuerpo HTTP enviados", labels);
+        latency = metrics.latency("http_request_duration_seconds", "Tiempo de atención de cada petición", labels);
+    }
+
+    public HttpRoutes add(String method, String path, HttpHandler handler) {
+        routes.put(key(method, path), handler);
+        return this;
+    }
+
+    public HttpRoutes setFallback(HttpHandler handler) {
+        this.fallback = handler;
+        return this;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        long start = System.nanoTime();
+        HttpHandler handler = routes.get(key(request.method, request.path));
+        HttpResponse response = (handler != null ? handler : fallback).handle(request);
+        latency.recordSince(start);
+        requests.inc();
+        if (request.contentLength > 0) {
+            bytesIn.add(request.contentLength);
+        }
+        bytesOut.add(response.bodyLength());
+        return response;
+    }
+
+    /** Solo atiende peticiones desde este equipo; al resto, 403. */
+    public static HttpHandler loopbackOnly(HttpHandler handler) {
+        return request -> request.fromLoopback() ? handler.handle(request)
+                : HttpResponse.text(403, "Solo disponible desde este equipo");
+    }
+
+    private static String key(String method, String path) {
+        return method + ' ' + path;
+    }
+}
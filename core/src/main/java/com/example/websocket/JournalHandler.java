@@ -0,0 +1,94 @@
+package com.example.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * {@code GET /journal?from=N&limit=M}: reproduce el {@link MessageJournal}
+ * desde el offset N (por defecto el más antiguo que se conserva).
+ *
+ * Responde NDJSON, un registro por línea:
+ * {@code {"offset":N,"ts":ms,"dir":"in","source":"...","text":"..."}}; los
+ * binarios llevan {@code "base64"} en vez de {@code "text"}. La cabecera
+ * {@code X-Journal-Next} indica desde dónde pedir la página siguiente.
+ */
+public class JournalHandler implements HttpHandler {
+
+    static final String HEADER_NEXT = "X-Journal-Next";
+    static final String HEADER_FIRST = "X-Journal-First";
+    static final int DEFAULT_LIMIT = 1000;
+    static final int MAX_LIMIT = 10_000;
+
+    private final MessageJournal journal;
+
+    public JournalHandler(MessageJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        long from;
+        int limit;
+        try {
+            from = parse(request.queryParam("from"), journal.firstOffset());
+            limit = (int) Math.min(parse(request.queryParam("limit"), DEFAULT_LIMIT), MAX_LIMIT);
+        } catch (NumberFormatException e) {
+            return HttpResponse.text(400, "from y limit deben ser números");
+        }
+        if (from < 0 || limit <= 0) {
+            return HttpResponse.text(400, "from y limit deben ser positivos");
+        }
+        List<MessageJournal.Record> records = journal.read(from, limit);
+        StringBuilder out = new StringBuilder(records.size() * 96);
+        for (MessageJournal.Record record : records) {
+            appendJson(out, record);
+            out.append('\n');
+        }
+        long next = records.isEmpty() ? Math.max(from, journal.firstOffset())
+                : records.get(records.size() - 1).offset + 1;
+        return new HttpResponse(200, PublishHandler.NDJSON, out.toString().getBytes(StandardCharsets.UTF_8))
+                .header(HEADER_NEXT, Long.toString(next))
+                .header(HEADER_FIRST, Long.toString(journal.firstOffset()));
+    }
+
+    private static long parse(String value, long def) {
+        return value == null || value.isEmpty() ? def : Long.parseLong(value);
+    }
+
+    static void appendJson(StringBuilder out, MessageJournal.Record record) {
+        out.append("{\"offset\":").append(record.offset)
+                .append(",\"ts\":").append(record.timestampMs)
+                .append(",\"dir\":\"").append(record.direction == MessageJournal.Direction.IN ? "in" : "out")
+                .append("\",\"source\":");
+        appendString(out, record.source);
+        if (record.binary) {
+            out.append(",\"base64\":\"").append(Base64.getEncoder().encodeToString(record.payload)).append('"');
+        } else {
+            out.append(",\"text\":");
+            appendString(out, record.text());
+        }
+        out.append('}');
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.websocket;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log del núcleo, con la misma forma que android.util.Log para que el código
+ * compartido no dependa de Android. En la app se redirige a logcat
+ * ({@link #setSink}); en la JVM (daemon, benchmarks) sale por consola.
+ *
+ * Para el camino caliente:
+ * <ul>
+ *     <li>formato diferido con {@code {}}: {@code Log.d(TAG, "Mensaje de {} bytes", n)}
+ *     no construye el texto si el nivel está desactivado, y en modo asíncrono
+ *     tampoco en el hilo que llama (los argumentos deben ser inmutables);</li>
+ *     <li>nivel en compilación ({@link #COMPILED_MIN_PRIORITY}) y en ejecución
+ *     ({@link #setMinPriority}; la app usa INFO en release);</li>
+ *     <li>muestreo por mensaje con {@link Sampler};</li>
+ *     <li>modo asíncrono ({@link #startAsync}): las entradas van a un anillo
+ *     preasignado que vacía un hilo de fondo.</li>
+ * </ul>
+ * Las últimas líneas escritas se conservan para {@code GET /debug/log}
+ * (según {@link NodeConfig#debugEndpoints}).
+ */
+public final class Log {
+
+    // Mismos valores que android.util.Log
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    /**
+     * Por debajo de esta prioridad las llamadas se eliminan al compilar (la
+     * condición es constante). Subir a INFO para un núcleo sin logs de debug.
+     */
+    public static final int COMPILED_MIN_PRIORITY = DEBUG;
+
+    static final int DEFAULT_RECENT_LINES = 512;
+
+    public interface Sink {
+        void log(int priority, String tag, String msg, Throwable tr);
+    }
+
+    private static volatile Sink sink = Log::console;
+    private static volatile int minPriority = DEBUG;
+    private static volatile int sampleEvery = 1;
+    private static volatile LogRing ring;
+
+    // Últimas líneas escritas, para volcarlas por HTTP
+    private static final Object recentLock = new Object();
+    private static String[] recent = new String[DEFAULT_RECENT_LINES];
+    private static long recentCount;
+
+    private Log() {
+    }
+
+    public static void setSink(Sink newSink) {
+        sink = newSink != null ? newSink : Log::console;
+    }
+
+    /** Descarta lo que esté por debajo de esta prioridad (p. ej. {@link #INFO} en pruebas de carga). */
+    public static void setMinPriority(int priority) {
+        minPriority = priority;
+    }
+
+    public static boolean isLoggable(int priority) {
+        return priority >= COMPILED_MIN_PRIORITY && priority >= minPriority;
+    }
+
+    /** Tasa de los {@link Sampler}: se escribe 1 de cada n mensajes (1 = todos). */
+    public static void setSampleEvery(int n) {
+        sampleEvery = Math.max(1, n);
+    }
+
+    // ======== Modo asíncrono ========
+
+    /**
+     * Pasa a escribir en segundo plano a través de un anillo de capacity
+     * entradas. Si se llena, las entradas nuevas se descartan ({@link #dropped}).
+     */
+    public static synchronized void startAsync(int capacity) {
+        if (ring == null) {
+            ring = new LogRing(capacity, Log::write);
+        }
+    }
+
+    /** Vuelve al modo síncrono tras escribir lo pendiente. */
+    public static synchronized void stopAsync() {
+        LogRing current = ring;
+        if (current != null) {
+            ring = null;
+            current.stop();
+        }
+    }
+
+    /** Escribe ya lo que haya pendiente en el anillo. */
+    public static void flush() {
+        LogRing current = ring;
+        if (current != null) {
+            current.drain();
+        }
+    }
+
+    /** Entradas descartadas por anillo lleno desde {@link #startAsync}. */
+    public static long dropped() {
+        LogRing current = ring;
+        return current != null ? current.dropped() : 0;
+    }
+
+    // ======== Volcado ========
+
+    /** Cambia cuántas líneas recientes se conservan (se pierden las actuales). */
+    public static void setRecentLines(int lines) {
+        synchronized (recentLock) {
+            recent = new String[Math.max(1, lines)];
+            recentCount = 0;
+        }
+    }
+
+    /** Últimas líneas escritas, de la más antigua a la más reciente. */
+    public static List<String> recent() {
+        flush();
+        synchronized (recentLock) {
+            int size = (int) Math.min(recentCount, recent.length);
+            List<String> lines = new ArrayList<>(size);
+            for (long i = recentCount - size; i < recentCount; i++) {
+                lines.add(recent[(int) (i % recent.length)]);
+            }
+            return lines;
+        }
+    }
+
+    // ======== Entradas ========
+
+    public static int v(String tag, String msg) {
+        return log(VERBOSE, tag, msg, null, null, null, null);
+    }
+
+    public static int d(String tag, String msg) {
+        return log(DEBUG, tag, msg, null, null, null, null);
+    }
+
+    public static int d(String tag, String format, Object a) {
+        return log(DEBUG, tag, format, a, null, null, null);
+    }
+
+    public static int d(String tag, String format, Object a, Object b) {
+        return log(DEBUG, tag, format, a, b, null, null);
+    }
+
+    public static int d(String tag, String format, Object a, Object b, Object c) {
+        return log(DEBUG, tag, format, a, b, c, null);
+    }
+
+    public static int i(String tag, String msg) {
+        return log(INFO, tag, msg, null, null, null, null);
+    }
+
+    public static int i(String tag, String format, Object a) {
+        return log(INFO, tag, format, a, null, null, null);
+    }
+
+    public static int i(String tag, String format, Object a, Object b) {
+        return log(INFO, tag, format, a, b, null, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return log(WARN, tag, msg, null, null, null, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return log(WARN, tag, msg, null, null, null, tr);
+    }
+
+    public static int w(String tag, String format, Object a) {
+        return log(WARN, tag, format, a, null, null, null);
+    }
+
+    public static int w(String tag, String format, Object a, Object b) {
+        return log(WARN, tag, format, a, b, null, null);
+    }
+
+    public static int w(String tag, String format, Object a, Object b, Object c) {
+        return log(WARN, tag, format, a, b, c, null);
+    }
+
+    public static int e(String tag, String msg) {
+        return log(ERROR, tag, msg, null, null, null, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return log(ERROR, tag, msg, null, null, null, tr);
+    }
+
+    public static int e(String tag, String format, Object a, Throwable tr) {
+        return log(ERROR, tag, format, a, null, null, tr);
+    }
+
+    public static int e(String tag, String format, Object a, Object b, Throwable tr) {
+        return log(ERROR, tag, format, a, b, null, tr);
+    }
+
+    private static int log(int priority, String tag, String format,
+                           Object a, Object b, Object c, Throwable tr) {
+        if (priority < COMPILED_MIN_PRIORITY || priority < minPriority) {
+            return 0;
+        }
+        LogRing current = ring;
+        if (current != null) {
+            current.offer(priority, tag, format, a, b, c, tr);
+        } else {
+            write(System.currentTimeMillis(), priority, tag, format, a, b, c, tr);
+        }
+        return 0;
+    }
+
+    /** Formatea y escribe una entrada; en modo asíncrono, en el hilo de fondo. */
+    private static void write(long timeMillis, int priority, String tag, String format,
+                              Object a, Object b, Object c, Throwable tr) {
+        String msg = format(format, a, b, c);
+        sink.log(priority, tag, msg, tr);
+        String line = timeMillis + " " + "??VDIWE".charAt(Math.min(priority, 6)) + '/' + tag + ": " + msg;
+        synchronized (recentLock) {
+            recent[(int) (recentCount % recent.length)] = line;
+            recentCount++;
+        }
+    }
+
+    /** Sustituye cada {@code {}} por el siguiente argumento (máximo tres). */
+    static String format(String format, Object a, Object b, Object c) {
+        if (a == null && b == null && c == null) {
+            return format;
+        }
+        StringBuilder out = new StringBuilder(format.length() + 32);
+        Object[] args = {a, b, c};
+        int arg = 0;
+        int start = 0;
+        int at;
+        while (arg < args.length && (at = format.indexOf("{}", start)) >= 0) {
+            out.append(format, start, at).append(args[arg++]);
+            start = at + 2;
+        }
+        return out.append(format, start, format.length()).toString();
+    }
+
+    private static void console(int priority, String tag, String msg, Throwable tr) {
+        StringBuilder line = new StringBuilder(msg.length() + 32)
+                .append(System.currentTimeMillis()).append(' ')
+                .append("??VDIWE".charAt(Math.min(priority, 6))).append('/')
+                .append(tag).append(": ").append(msg);
+        if (tr != null) {
+            StringWriter trace = new StringWriter();
+            tr.printStackTrace(new PrintWriter(trace));
+            line.append('\n').append(trace);
+        }
+        (priority >= WARN ? System.err : System.out).println(line);
+    }
+
+    // ======== Muestreo ========
+
+    /**
+     * Muestreo de un punto de log de debug del camino caliente: {@code sample()}
+     * es cierto una de cada {@link #setSampleEvery n} veces (nunca si DEBUG
+     * está desactivado).
+     * <pre>
+     * private static final Log.Sampler RX_LOG = new Log.Sampler();
+     * if (RX_LOG.sample()) Log.d(TAG, "Mensaje recibido: {}", text);
+     * </pre>
+     */
+    public static final class Sampler {
+        private final AtomicLong calls = new AtomicLong();
+
+        public boolean sample() {
+            if (minPriority > DEBUG) {
+                return false;
+            }
+            int every = sampleEvery;
+            return every == 1 || calls.getAndIncrement() % every == 0;
+        }
+    }
+}
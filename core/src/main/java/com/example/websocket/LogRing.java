@@ -0,0 +1,153 @@
+package com.example.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cola de entradas de log preasignada (varios productores, un consumidor) que
+ * vacía un hilo de fondo. Quien registra solo copia referencias a una ranura:
+ * el mensaje se formatea y se escribe en el hilo de fondo. Si la cola está
+ * llena la entrada se descarta (y se cuenta), nunca se bloquea al llamador.
+ *
+ * Cada ranura lleva su número de secuencia (cola acotada de Vyukov): el
+ * productor reclama la posición con un CAS y la publica al escribir la
+ * secuencia siguiente.
+ */
+final class LogRing {
+
+    /** Recibe las entradas en el hilo de fondo, en orden. */
+    interface Consumer {
+        void accept(long timeMillis, int priority, String tag, String format,
+                    Object a, Object b, Object c, Throwable tr);
+    }
+
+    // Espera del hilo de fondo sin entradas; WARN y ERROR lo despiertan antes
+    private static final long IDLE_PARK_NANOS = 10_000_000L;
+
+    private static final class Slot {
+        volatile long sequence;
+        long timeMillis;
+        int priority;
+        String tag;
+        String format;
+        Object a;
+        Object b;
+        Object c;
+        Throwable tr;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long head;                              // solo el hilo de fondo
+    private final Consumer consumer;
+    private final Thread drainer;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    LogRing(int capacity, Consumer consumer) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        mask = size - 1;
+        this.consumer = consumer;
+        drainer = new Thread(this::run, "log-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /** @return false si la cola estaba llena y la entrada se descartó */
+    boolean offer(int priority, String tag, String format, Object a, Object b, Object c, Throwable tr) {
+        long pos = tail.get();
+        while (true) {
+            Slot slot = slots[(int) (pos & mask)];
+            long diff = slot.sequence - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slot.timeMillis = System.currentTimeMillis();
+                    slot.priority = priority;
+                    slot.tag = tag;
+                    slot.format = format;
+                    slot.a = a;
+                    slot.b = b;
+                    slot.c = c;
+                    slot.tr = tr;
+                    slot.sequence = pos + 1;
+                    if (priority >= Log.WARN && idle) {
+                        LockSupport.unpark(drainer);
+                    }
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /** Vacía lo pendiente en el hilo que llama (tras parar el hilo de fondo, o en pruebas). */
+    synchronized int drain() {
+        int count = 0;
+        while (true) {
+            Slot slot = slots[(int) (head & mask)];
+            if (slot.sequence != head + 1) {
+                return count;
+            }
+            try {
+                consumer.accept(slot.timeMillis, slot.priority, slot.tag, slot.format,
+                        slot.a, slot.b, slot.c, slot.tr);
+            } catch (RuntimeException e) {
+                // Un sink roto no debe parar el vaciado
+            }
+            slot.tag = null;
+            slot.format = null;
+            slot.a = null;
+            slot.b = null;
+            slot.c = null;
+            slot.tr = null;
+            slot.sequence = head + slots.length;
+            head++;
+            count++;
+        }
+    }
+
+    /** Para el hilo de fondo tras vaciar lo pendiente. */
+    void stop() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+    }
+
+    private void run() {
+        while (running) {
+            if (drain() == 0) {
+                idle = true;
+                // Re-comprobar tras anunciar la espera para no perder un unpark
+                if (drain() == 0 && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bus de mensajes en proceso que conecta los servidores embebidos y el
+ * servicio sin pasar por sockets.
+ *
+ * La entrega es síncrona en el hilo que publica. Los mensajes binarios viajan
+ * como ByteBuffer de solo lectura sin copiar el contenido; cada oyente recibe
+ * su propia vista y no debe retenerla después de la llamada. Para evitar bucles:
+ * <ul>
+ *     <li>un mensaje nunca se entrega al componente que lo publicó;</li>
+ *     <li>si un oyente publica mientras procesa otro mensaje, el nuevo queda
+ *     encadenado al original; se descarta si la cadena supera {@link #MAX_HOPS}
+ *     o si repite el mismo tópico y texto que su causa (reflejo/eco).</li>
+ * </ul>
+ */
+public class MessageBus {
+
+    private static final String TAG = "MessageBus";
+    private static final Log.Sampler SUPPRESSED_LOG = new Log.Sampler();
+
+    public static final String DEFAULT_TOPIC = "app";
+    static final int MAX_HOPS = 3;
+
+    public static final class Message {
+        public final long id;
+        public final String origin;
+        public final String topic;
+        /** Texto del mensaje, o null si es binario. */
+        public final String text;
+        /** Payload binario (vista de solo lectura), o null si es texto. */
+        public final ByteBuffer data;
+        final Message cause;
+        final int hops;
+
+        Message(long id, String origin, String topic, String text, ByteBuffer data, Message cause) {
+            this.id = id;
+            this.origin = origin;
+            this.topic = topic;
+            this.text = text;
+            this.data = data;
+            this.cause = cause;
+            this.hops = cause != null ? cause.hops + 1 : 0;
+        }
+
+        public boolean isBinary() {
+            return data != null;
+        }
+
+        Message viewFor() {
+            return data == null ? this
+                    : new Message(id, origin, topic, null, data.asReadOnlyBuffer(), cause);
+        }
+    }
+
+    public interface Listener {
+        void onBusMessage(Message message);
+    }
+
+    private static final class Endpoint {
+        final String name;
+        final Listener listener;
+
+        Endpoint(String name, Listener listener) {
+            this.name = name;
+            this.listener = listener;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Endpoint> endpoints = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextId = new AtomicLong();
+    // Mensaje que se está entregando en este hilo (para encadenar publicaciones reentrantes)
+    private final ThreadLocal<Message> delivering = new ThreadLocal<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public void register(String name, Listener listener) {
+        endpoints.add(new Endpoint(name, listener));
+    }
+
+    public void unregister(String name) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.name.equals(name)) {
+                endpoints.remove(endpoint);
+            }
+        }
+    }
+
+    public boolean publish(String origin, String text) {
+        return publish(origin, DEFAULT_TOPIC, text);
+    }
+
+    /**
+     * Entrega el mensaje a todos los componentes registrados salvo al de origen.
+     *
+     * @return false si se suprimió por bucle o duplicado
+     */
+    public boolean publish(String origin, String topic, String text) {
+        return dispatch(origin, topic, text, null);
+    }
+
+    /** Publica un payload binario sin copiarlo; no debe modificarse durante la entrega. */
+    public boolean publishBinary(String origin, String topic, ByteBuffer data) {
+        return dispatch(origin, topic, null, data);
+    }
+
+    private boolean dispatch(String origin, String topic, String text, ByteBuffer data) {
+        Message cause = delivering.get();
+        if (cause != null && isLoop(cause, topic, text, data)) {
+            suppressed.incrementAndGet();
+            if (SUPPRESSED_LOG.sample()) Log.d(TAG, "Mensaje suprimido (bucle/duplicado) de {} en {}", origin, topic);
+            return false;
+        }
+        Message message = new Message(nextId.incrementAndGet(), origin, topic, text, data, cause);
+        published.incrementAndGet();
+        delivering.set(message);
+        try {
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.name.equals(origin)) {
+                    continue;
+                }
+                try {
+                    endpoint.listener.onBusMessage(message.viewFor());
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error entregando a {}", endpoint.name, e);
+                }
+            }
+        } finally {
+            if (cause != null) {
+                delivering.set(cause);
+            } else {
+                delivering.remove();
+            }
+        }
+        return true;
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    private static boolean isLoop(Message cause, String topic, String text, ByteBuffer data) {
+        if (cause.hops + 1 > MAX_HOPS) {
+            return true;
+        }
+        for (Message m = cause; m != null; m = m.cause) {
+            if (!m.topic.equals(topic)) {
+                continue;
+            }
+            if (text != null ? text.equals(m.text) : m.data != null && m.data.equals(data)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
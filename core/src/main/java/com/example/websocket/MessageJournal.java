@@ -0,0 +1,559 @@
+package com.example.websocket;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Diario append-only de los mensajes que entran y salen, para poder
+ * reproducirlos desde un offset tras un reinicio del proceso.
+ *
+ * Se guarda en segmentos de tamaño fijo mapeados en memoria
+ * ({@code <offset base>.log}). Escribir un mensaje es copiarlo al mapeo: lo
+ * escrito sobrevive a que maten el proceso porque las páginas son del kernel.
+ * El volcado a disco (force) se agrupa en un hilo cada flushIntervalMs, nunca
+ * por mensaje. Cada segmento tiene un índice disperso offset → posición
+ * ({@code .idx}, una entrada cada {@link #INDEX_INTERVAL} bytes) para empezar
+ * a leer cerca del offset pedido. Los segmentos cerrados más antiguos se
+ * borran por tamaño total y por edad.
+ *
+ * Formato de cada registro: longitud, crc32, offset, timestamp, flags,
+ * longitud del origen, origen (UTF-8) y payload. Al abrir se recorre el
+ * último segmento y se descarta lo que siga a un registro incompleto.
+ */
+public class MessageJournal implements Closeable {
+
+    private static final String TAG = "MessageJournal";
+
+    public enum Direction { IN, OUT }
+
+    static final int INDEX_INTERVAL = 4 * 1024;
+    private static final int INDEX_ENTRY = 8;                   // offset relativo + posición
+    private static final int FRAME_HEADER = 4 + 4;              // longitud + crc32
+    private static final int RECORD_HEADER = 8 + 8 + 1 + 2;     // offset, timestamp, flags, origen
+    private static final int TERMINATOR = 4;                    // longitud 0 tras el último registro
+    private static final int MAX_SOURCE_BYTES = 0xFFFF;
+
+    private static final byte FLAG_OUT = 1;
+    private static final byte FLAG_BINARY = 2;
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /** Un mensaje leído del diario. */
+    public static final class Record {
+        public final long offset;
+        public final long timestampMs;
+        public final Direction direction;
+        public final boolean binary;
+        public final String source;
+        public final byte[] payload;
+
+        Record(long offset, long timestampMs, Direction direction, boolean binary, String source, byte[] payload) {
+            this.offset = offset;
+            this.timestampMs = timestampMs;
+            this.direction = direction;
+            this.binary = binary;
+            this.source = source;
+            this.payload = payload;
+        }
+
+        public String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final File dir;
+    private final int segmentBytes;
+    private final long retentionBytes;
+    private final long retentionAgeMs;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ScheduledExecutorService flusher;
+
+    // Estado del escritor (protegido por this)
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+    private boolean dirty;
+    private boolean closed;
+    private volatile long nextOffset;
+
+    private final Metrics.Counter appended;
+    private final Metrics.Counter appendedBytes;
+    private final Metrics.Counter rejected;
+    private final Metrics.Histogram flushTime;
+
+    /**
+     * Abre (o crea) el diario en dir y recupera el último segmento.
+     *
+     * @param segmentBytes    tamaño de cada segmento; un registro mayor se rechaza
+     * @param retentionBytes  tamaño total a partir del cual se borran segmentos antiguos
+     * @param retentionAgeMs  edad a partir de la cual se borra un segmento cerrado
+     * @param flushIntervalMs cada cuánto se vuelca a disco lo escrito
+     */
+    public MessageJournal(File dir, int segmentBytes, long retentionBytes, long retentionAgeMs,
+                          long flushIntervalMs) throws IOException {
+        this(dir, segmentBytes, retentionBytes, retentionAgeMs, flushIntervalMs, Metrics.shared());
+    }
+
+    MessageJournal(File dir, int segmentBytes, long retentionBytes, long retentionAgeMs,
+                   long flushIntervalMs, Metrics metrics) throws IOException {
+        if (segmentBytes < INDEX_INTERVAL) {
+            throw new IllegalArgumentException("Segmento demasiado pequeño: " + segmentBytes);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("No se pudo crear " + dir);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionAgeMs = retentionAgeMs;
+        appended = metrics.counter("journal_records_appended_total", "Registros escritos en el diario", null);
+        appendedBytes = metrics.counter("journal_bytes_appended_total", "Bytes escritos en el diario", null);
+        rejected = metrics.counter("journal_records_rejected_total",
+                "Registros no escritos (demasiado grandes o error de E/S)", null);
+        flushTime = metrics.latency("journal_flush_seconds", "Duración de cada volcado a disco agrupado", null);
+        metrics.gauge("journal_segments", "Segmentos del diario en disco", null, segments::size);
+
+        openSegments();
+        enforceRetention();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAndRetain, flushIntervalMs, flushIntervalMs,
+                TimeUnit.MILLISECONDS);
+        Log.d(TAG, "Diario abierto en {}: {} segmentos, siguiente offset {} ✅", dir, segments.size(), nextOffset);
+    }
+
+    // ======== Escritura ========
+
+    /** @return offset asignado, o -1 si no se pudo escribir */
+    public long append(Direction direction, String source, String text) {
+        return append(direction, source, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    /** Guarda los bytes entre position y limit; el buffer no se modifica. */
+    public long append(Direction direction, String source, ByteBuffer data) {
+        return append(direction, source, data.duplicate(), true);
+    }
+
+    private long append(Direction direction, String source, ByteBuffer payload, boolean binary) {
+        byte[] src = source.getBytes(StandardCharsets.UTF_8);
+        if (src.length > MAX_SOURCE_BYTES) {
+            src = Arrays.copyOf(src, MAX_SOURCE_BYTES);
+        }
+        int recordLength = RECORD_HEADER + src.length + payload.remaining();
+        int frameLength = FRAME_HEADER + recordLength;
+        if ((long) frameLength + TERMINATOR > segmentBytes) {
+            rejected.inc();
+            Log.w(TAG, "Registro de {} bytes no cabe en un segmento, no se guarda", frameLength);
+            return -1;
+        }
+        byte flags = (byte) ((direction == Direction.OUT ? FLAG_OUT : 0) | (binary ? FLAG_BINARY : 0));
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (closed) {
+                return -1;
+            }
+            try {
+                if (active.size + frameLength + TERMINATOR > segmentBytes) {
+                    roll();
+                }
+            } catch (IOException e) {
+                rejected.inc();
+                Log.e(TAG, "Error abriendo un segmento nuevo", e);
+                return -1;
+            }
+            long offset = nextOffset;
+            active.write(offset, now, flags, src, payload, recordLength, crc);
+            nextOffset = offset + 1;
+            dirty = true;
+            appended.inc();
+            appendedBytes.add(frameLength);
+            return offset;
+        }
+    }
+
+    /** Vuelca a disco lo escrito desde el último volcado. */
+    public void flush() {
+        Segment segment;
+        synchronized (this) {
+            if (!dirty || closed) {
+                return;
+            }
+            dirty = false;
+            segment = active;
+        }
+        long start = System.nanoTime();
+        segment.force();
+        flushTime.recordSince(start);
+    }
+
+    private void flushAndRetain() {
+        try {
+            flush();
+            enforceRetention();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error en el volcado del diario", e);
+        }
+    }
+
+    /** Cierra el segmento activo (volcado y recorte) y abre uno nuevo. Con el lock. */
+    private void roll() throws IOException {
+        Segment old = active;
+        old.seal();
+        active = Segment.create(dir, nextOffset, segmentBytes);
+        segments.put(active.baseOffset, active);
+        Log.d(TAG, "Segmento {} cerrado ({} bytes), nuevo en {}", old.baseOffset, old.size, nextOffset);
+        enforceRetention();
+    }
+
+    // ======== Lectura ========
+
+    /**
+     * Registros desde fromOffset (incluido), en orden. Si ese offset ya se
+     * borró por retención se empieza por el más antiguo que quede.
+     */
+    public List<Record> read(long fromOffset, int maxRecords) {
+        List<Record> out = new ArrayList<>(Math.min(maxRecords, 256));
+        Map.Entry<Long, Segment> first = segments.floorEntry(fromOffset);
+        Map<Long, Segment> candidates = first != null ? segments.tailMap(first.getKey(), true) : segments;
+        for (Segment segment : candidates.values()) {
+            if (out.size() >= maxRecords) {
+                break;
+            }
+            segment.read(fromOffset, maxRecords, out);
+        }
+        return out;
+    }
+
+    /** Offset del registro más antiguo que se conserva. */
+    public long firstOffset() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first != null ? first.getKey() : nextOffset;
+    }
+
+    /** Offset que recibirá el próximo registro. */
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        active.force();
+        Log.d(TAG, "Diario cerrado en offset {} 🛑", nextOffset);
+    }
+
+    // ======== Segmentos en disco ========
+
+    private void openSegments() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(LOG_SUFFIX));
+        List<Long> bases = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Fichero ajeno al diario: {}", name);
+                }
+            }
+        }
+        bases.sort(null);
+        for (int i = 0; i < bases.size() - 1; i++) {
+            Segment segment = Segment.openSealed(dir, bases.get(i));
+            if (segment != null) {
+                segments.put(segment.baseOffset, segment);
+            }
+        }
+        long base = bases.isEmpty() ? 0 : bases.get(bases.size() - 1);
+        active = Segment.recover(dir, base, segmentBytes, crc);
+        segments.put(active.baseOffset, active);
+        nextOffset = active.nextOffset;
+    }
+
+    /** Borra los segmentos cerrados más antiguos mientras sobre tamaño o sean viejos. */
+    private synchronized void enforceRetention() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.diskBytes();
+        }
+        long cutoff = System.currentTimeMillis() - retentionAgeMs;
+        Iterator<Segment> it = segments.values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment == active || (total <= retentionBytes && segment.lastTimestampMs >= cutoff)) {
+                break;
+            }
+            it.remove();
+            total -= segment.diskBytes();
+            segment.delete();
+            Log.d(TAG, "Segmento {} borrado por retención", segment.baseOffset);
+        }
+    }
+
+    private static String fileName(long baseOffset, String suffix) {
+        return String.format(Locale.ROOT, "%020d%s", baseOffset, suffix);
+    }
+
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+             FileChannel channel = raf.getChannel()) {
+            // El mapeo sigue siendo válido tras cerrar el canal
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    /**
+     * Un segmento y su índice. Solo el activo se escribe; los lectores usan
+     * lecturas absolutas hasta {@link #size}, que se publica tras escribir.
+     */
+    private static final class Segment {
+        final long baseOffset;
+        final File logFile;
+        final File indexFile;
+        final MappedByteBuffer log;
+        final MappedByteBuffer index;
+        volatile int size;
+        volatile int indexEntries;
+        volatile long lastTimestampMs;
+        long nextOffset;
+        private int nextIndexPosition;
+
+        private Segment(long baseOffset, File logFile, File indexFile, MappedByteBuffer log, MappedByteBuffer index) {
+            this.baseOffset = baseOffset;
+            this.logFile = logFile;
+            this.indexFile = indexFile;
+            this.log = log;
+            this.index = index;
+            this.nextOffset = baseOffset;
+        }
+
+        static Segment create(File dir, long baseOffset, int capacity) throws IOException {
+            File logFile = new File(dir, fileName(baseOffset, LOG_SUFFIX));
+            File indexFile = new File(dir, fileName(baseOffset, INDEX_SUFFIX));
+            MappedByteBuffer log = map(logFile, FileChannel.MapMode.READ_WRITE, capacity);
+            MappedByteBuffer index = map(indexFile, FileChannel.MapMode.READ_WRITE, indexCapacity(capacity));
+            return new Segment(baseOffset, logFile, indexFile, log, index);
+        }
+
+        /** Segmento cerrado: solo lectura, tal como quedó en disco. */
+        static Segment openSealed(File dir, long baseOffset) throws IOException {
+            File logFile = new File(dir, fileName(baseOffset, LOG_SUFFIX));
+            File indexFile = new File(dir, fileName(baseOffset, INDEX_SUFFIX));
+            if (logFile.length() == 0) {
+                logFile.delete();
+                indexFile.delete();
+                return null;
+            }
+            MappedByteBuffer log = map(logFile, FileChannel.MapMode.READ_ONLY, logFile.length());
+            MappedByteBuffer index = indexFile.length() > 0
+                    ? map(indexFile, FileChannel.MapMode.READ_ONLY, indexFile.length())
+                    : null;
+            Segment segment = new Segment(baseOffset, logFile, indexFile, log, index);
+            segment.size = log.capacity();
+            segment.indexEntries = index != null ? countIndexEntries(index) : 0;
+            segment.lastTimestampMs = logFile.lastModified();
+            return segment;
+        }
+
+        /**
+         * Segmento activo tras un reinicio: se recorre validando longitud, crc
+         * y offset, se reconstruye el índice y se escribe a partir del último
+         * registro completo.
+         */
+        static Segment recover(File dir, long baseOffset, int capacity, CRC32 crc) throws IOException {
+            Segment segment = create(dir, baseOffset, capacity);
+            ByteBuffer log = segment.log;
+            int pos = 0;
+            long expected = baseOffset;
+            while (pos + FRAME_HEADER + RECORD_HEADER <= capacity - TERMINATOR) {
+                int length = log.getInt(pos);
+                if (length < RECORD_HEADER || pos + FRAME_HEADER + length > capacity - TERMINATOR
+                        || log.getLong(pos + FRAME_HEADER) != expected
+                        || checksum(crc, log, pos + FRAME_HEADER, length) != log.getInt(pos + 4)) {
+                    break;
+                }
+                segment.addIndexEntry(expected, pos);
+                segment.lastTimestampMs = log.getLong(pos + FRAME_HEADER + 8);
+                pos += FRAME_HEADER + length;
+                expected++;
+            }
+            log.putInt(pos, 0);
+            if (segment.indexEntries * INDEX_ENTRY < segment.index.capacity()) {
+                segment.index.putLong(segment.indexEntries * INDEX_ENTRY, 0L);
+            }
+            segment.size = pos;
+            segment.nextOffset = expected;
+            if (segment.lastTimestampMs == 0) {
+                segment.lastTimestampMs = System.currentTimeMillis();
+            }
+            if (expected > baseOffset) {
+                Log.i(TAG, "Recuperados {} registros del segmento {}", expected - baseOffset, baseOffset);
+            }
+            return segment;
+        }
+
+        void write(long offset, long timestampMs, byte flags, byte[] source, ByteBuffer payload,
+                   int recordLength, CRC32 crc) {
+            int pos = size;
+            addIndexEntry(offset, pos);
+            int body = pos + FRAME_HEADER;
+            log.putInt(pos, recordLength);
+            log.putLong(body, offset);
+            log.putLong(body + 8, timestampMs);
+            log.put(body + 16, flags);
+            log.putShort(body + 17, (short) source.length);
+            ByteBuffer out = log.duplicate();
+            out.position(body + RECORD_HEADER);
+            out.put(source);
+            out.put(payload);
+            log.putInt(pos + 4, checksum(crc, log, body, recordLength));
+            int end = body + recordLength;
+            log.putInt(end, 0);
+            lastTimestampMs = timestampMs;
+            nextOffset = offset + 1;
+            // Publica el registro a los lectores
+            size = end;
+        }
+
+        private void addIndexEntry(long offset, int position) {
+            if (position < nextIndexPosition && indexEntries > 0) {
+                return;
+            }
+            int slot = indexEntries * INDEX_ENTRY;
+            if (slot + INDEX_ENTRY > index.capacity()) {
+                return;
+            }
+            index.putInt(slot, (int) (offset - baseOffset));
+            index.putInt(slot + 4, position);
+            indexEntries++;
+            nextIndexPosition = position + INDEX_INTERVAL;
+        }
+
+        void read(long fromOffset, int maxRecords, List<Record> out) {
+            int limit = size;
+            ByteBuffer view = log.duplicate();
+            int pos = lookup(fromOffset);
+            while (out.size() < maxRecords && pos + FRAME_HEADER <= limit) {
+                int length = view.getInt(pos);
+                if (length < RECORD_HEADER) {
+                    break;
+                }
+                int body = pos + FRAME_HEADER;
+                long offset = view.getLong(body);
+                if (offset >= fromOffset) {
+                    out.add(decode(view, body, length, offset));
+                }
+                pos = body + length;
+            }
+        }
+
+        /** Posición del último registro indexado con offset ≤ el pedido. */
+        private int lookup(long offset) {
+            int low = 0;
+            int high = indexEntries - 1;
+            int position = 0;
+            long relative = offset - baseOffset;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (index.getInt(mid * INDEX_ENTRY) <= relative) {
+                    position = index.getInt(mid * INDEX_ENTRY + 4);
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return position;
+        }
+
+        private static Record decode(ByteBuffer view, int body, int length, long offset) {
+            long timestamp = view.getLong(body + 8);
+            byte flags = view.get(body + 16);
+            int sourceLength = view.getShort(body + 17) & 0xFFFF;
+            byte[] source = new byte[sourceLength];
+            byte[] payload = new byte[length - RECORD_HEADER - sourceLength];
+            view.position(body + RECORD_HEADER);
+            view.get(source);
+            view.get(payload);
+            return new Record(offset, timestamp,
+                    (flags & FLAG_OUT) != 0 ? Direction.OUT : Direction.IN,
+                    (flags & FLAG_BINARY) != 0,
+                    new String(source, StandardCharsets.UTF_8), payload);
+        }
+
+        void force() {
+            log.force();
+            index.force();
+        }
+
+        /** Vuelca y recorta los ficheros a lo escrito; el segmento pasa a ser de solo lectura. */
+        void seal() throws IOException {
+            force();
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                raf.setLength(size);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+                raf.setLength((long) indexEntries * INDEX_ENTRY);
+            }
+        }
+
+        long diskBytes() {
+            return size + (long) indexEntries * INDEX_ENTRY;
+        }
+
+        void delete() {
+            if (!logFile.delete() || !indexFile.delete()) {
+                Log.w(TAG, "No se pudo borrar del todo el segmento {}", baseOffset);
+            }
+        }
+
+        private static int indexCapacity(int capacity) {
+            return (capacity / INDEX_INTERVAL + 1) * INDEX_ENTRY;
+        }
+
+        /** Entradas válidas: la primera es (0, 0); después las posiciones son > 0. */
+        private static int countIndexEntries(ByteBuffer index) {
+            int entries = index.capacity() / INDEX_ENTRY;
+            for (int i = 1; i < entries; i++) {
+                if (index.getInt(i * INDEX_ENTRY + 4) == 0) {
+                    return i;
+                }
+            }
+            return entries;
+        }
+
+        private static int checksum(CRC32 crc, ByteBuffer buffer, int from, int length) {
+            ByteBuffer region = buffer.duplicate();
+            region.limit(from + length).position(from);
+            crc.reset();
+            crc.update(region);
+            return (int) crc.getValue();
+        }
+    }
+}
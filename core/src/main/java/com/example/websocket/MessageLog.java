@@ -0,0 +1,96 @@
+package com.example.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Historial acotado de mensajes para la UI: un anillo de capacidad fija en el
+ * que añadir cuesta lo mismo con 10 que con 10 000 mensajes (al llenarse se
+ * sobrescribe el más antiguo).
+ *
+ * Cada mensaje tiene un índice absoluto creciente; la vista se sincroniza
+ * comparando {@link #firstIndex()} y {@link #nextIndex()} con lo que ya
+ * mostraba, sin copiar el historial.
+ */
+public final class MessageLog {
+
+    private String[] entries;
+    private long next;              // índice absoluto del próximo mensaje
+    private int size;
+
+    public MessageLog(int capacity) {
+        entries = new String[Math.max(1, capacity)];
+    }
+
+    public synchronized void add(String message) {
+        append(message);
+    }
+
+    public synchronized void addAll(List<String> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            append(messages.get(i));
+        }
+    }
+
+    private void append(String message) {
+        entries[(int) (next % entries.length)] = message;
+        next++;
+        if (size < entries.length) {
+            size++;
+        }
+    }
+
+    /** Mensajes retenidos (como mucho {@link #capacity()}). */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int capacity() {
+        return entries.length;
+    }
+
+    /** Índice absoluto del mensaje más antiguo retenido. */
+    public synchronized long firstIndex() {
+        return next - size;
+    }
+
+    /** Índice absoluto que tendrá el próximo mensaje (total añadidos). */
+    public synchronized long nextIndex() {
+        return next;
+    }
+
+    /** Mensaje en la posición 0..size()-1, del más antiguo al más reciente. */
+    public synchronized String get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("posición " + position + " de " + size);
+        }
+        return entries[(int) ((next - size + position) % entries.length)];
+    }
+
+    /** Copia de los mensajes retenidos, del más antiguo al más reciente. */
+    public synchronized List<String> snapshot() {
+        List<String> copy = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            copy.add(get(i));
+        }
+        return copy;
+    }
+
+    /** Cambia la retención conservando los mensajes más recientes que quepan. */
+    public synchronized void setCapacity(int capacity) {
+        int newCapacity = Math.max(1, capacity);
+        int keep = Math.min(size, newCapacity);
+        String[] resized = new String[newCapacity];
+        for (long index = next - keep; index < next; index++) {
+            resized[(int) (index % newCapacity)] = entries[(int) (index % entries.length)];
+        }
+        entries = resized;
+        size = keep;
+    }
+
+    /** Vacía el historial; los índices siguen creciendo desde donde iban. */
+    public synchronized void clear() {
+        entries = new String[entries.length];
+        size = 0;
+    }
+}
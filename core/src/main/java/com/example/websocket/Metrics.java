@@ -0,0 +1,262 @@
+package com.example.websocket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registro de métricas del servicio y los servidores embebidos, exportable en
+ * formato texto de Prometheus ({@code GET /metrics}).
+ *
+ * Registrar es caro (se hace una vez, al crear cada componente) pero anotar no:
+ * contadores e histogramas usan {@link LongAdder} (con reparto por celdas entre
+ * hilos) y no asignan memoria en el camino caliente.
+ */
+public final class Metrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Cubetas por defecto para latencias: de 0,5 ms a 60 s. */
+    public static final long[] LATENCY_BUCKETS_NANOS = millis(
+            0.5, 1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000);
+
+    private static final Metrics SHARED = new Metrics();
+
+    // Familias por nombre, en orden de registro; cada una con sus series por etiquetas
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    // ======== Registro ========
+
+    /**
+     * Contador monótono. Volver a registrar el mismo nombre y etiquetas
+     * devuelve el existente, así un componente recreado sigue sumando.
+     *
+     * @param labels etiquetas ya formateadas ({@code server="ws"}) o null
+     */
+    public Counter counter(String name, String help, String labels) {
+        return (Counter) register(name, help, "counter", labels, () -> new Counter(labels));
+    }
+
+    /**
+     * Contador monótono que ya lleva otro componente (descartes de una cola,
+     * etc.), leído al exportar. Como en {@link #gauge}, si ya existía se
+     * sustituye la fuente.
+     */
+    public void counter(String name, String help, String labels, LongSupplier total) {
+        Sampled counter = (Sampled) register(name, help, "counter", labels, () -> new Sampled(labels));
+        counter.source = total;
+    }
+
+    /** Histograma con cubetas fijas (límites superiores en ns, ascendentes). */
+    public Histogram histogram(String name, String help, String labels, long[] boundsNanos) {
+        return (Histogram) register(name, help, "histogram", labels, () -> new Histogram(labels, boundsNanos));
+    }
+
+    public Histogram latency(String name, String help, String labels) {
+        return histogram(name, help, labels, LATENCY_BUCKETS_NANOS);
+    }
+
+    /**
+     * Valor leído al exportar (profundidad de una cola, etc.). Si ya existía
+     * se sustituye la fuente, que pasa a ser la del componente más reciente.
+     */
+    public void gauge(String name, String help, String labels, LongSupplier value) {
+        Sampled gauge = (Sampled) register(name, help, "gauge", labels, () -> new Sampled(labels));
+        gauge.source = value;
+    }
+
+    private synchronized Series register(String name, String help, String type, String labels,
+                                         Supplier<Series> factory) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Métrica " + name + " ya registrada como " + family.type);
+        }
+        for (Series series : family.series) {
+            if (equalLabels(series.labels, labels)) {
+                return series;
+            }
+        }
+        Series series = factory.get();
+        family.series.add(series);
+        return series;
+    }
+
+    private static boolean equalLabels(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    // ======== Exportación ========
+
+    /** Todas las métricas en formato texto de Prometheus 0.0.4. */
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Series series : family.series) {
+                series.write(family.name, out);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extraLabel, String value) {
+        out.append(name);
+        boolean hasLabels = labels != null && !labels.isEmpty();
+        if (hasLabels || extraLabel != null) {
+            out.append('{');
+            if (hasLabels) {
+                out.append(labels);
+            }
+            if (extraLabel != null) {
+                if (hasLabels) {
+                    out.append(',');
+                }
+                out.append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+
+    private static long[] millis(double... values) {
+        long[] nanos = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            nanos[i] = (long) (values[i] * 1_000_000L);
+        }
+        return nanos;
+    }
+
+    // ======== Tipos ========
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final List<Series> series = new ArrayList<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private abstract static class Series {
+        final String labels;
+
+        Series(String labels) {
+            this.labels = labels;
+        }
+
+        abstract void write(String name, StringBuilder out);
+    }
+
+    public static final class Counter extends Series {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String labels) {
+            super(labels);
+        }
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        void write(String name, StringBuilder out) {
+            sample(out, name, labels, null, Long.toString(value.sum()));
+        }
+    }
+
+    /** Gauge, o contador llevado fuera, cuyo valor se lee al exportar. */
+    private static final class Sampled extends Series {
+        volatile LongSupplier source;
+
+        Sampled(String labels) {
+            super(labels);
+        }
+
+        @Override
+        void write(String name, StringBuilder out) {
+            sample(out, name, labels, null, Long.toString(source.getAsLong()));
+        }
+    }
+
+    /**
+     * Histograma de cubetas fijas; se exporta en segundos. Anotar es una
+     * búsqueda lineal sobre los límites (pocas cubetas) y dos sumas.
+     */
+    public static final class Histogram extends Series {
+        private final long[] bounds;
+        private final LongAdder[] buckets;   // la última es +Inf
+        private final LongAdder sum = new LongAdder();
+
+        Histogram(String labels, long[] boundsNanos) {
+            super(labels);
+            this.bounds = boundsNanos.clone();
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            int i = 0;
+            while (i < bounds.length && nanos > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(nanos);
+        }
+
+        /** Anota el tiempo transcurrido desde {@code startNanos} (de System.nanoTime()). */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long count() {
+            long total = 0;
+            for (LongAdder bucket : buckets) {
+                total += bucket.sum();
+            }
+            return total;
+        }
+
+        @Override
+        void write(String name, StringBuilder out) {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < bounds.length ? seconds(bounds[i]) : "+Inf";
+                sample(out, name + "_bucket", labels, "le=\"" + le + "\"", Long.toString(cumulative));
+            }
+            sample(out, name + "_sum", labels, null, seconds(sum.sum()));
+            sample(out, name + "_count", labels, null, Long.toString(cumulative));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.websocket;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Configuración de {@link RelayNode}. Se lee de un fichero .properties (daemon)
+ * o se usan los valores por defecto, que son los de la app.
+ * Las claves están documentadas en {@code core/relay.properties}.
+ */
+public final class NodeConfig {
+
+    /**
+     * SEPARATE (por defecto): NanoHTTPD en httpPort + Java-WebSocket en wsPort,
+     * con permessage-deflate. UNIFIED: un solo {@link UnifiedServer} NIO con
+     * HTTP y /ws en httpPort, y WS en cualquier ruta en wsPort para los
+     * clientes existentes; no negocia permessage-deflate, así que
+     * {@code compression.*} solo se aplica al cliente WS.
+     */
+    public enum ServerEngine { SEPARATE, UNIFIED }
+
+    /** Quién puede leer las rutas de depuración: nadie, solo este equipo o cualquiera. */
+    public enum DebugAccess { OFF, LOOPBACK, ALL }
+
+    // Servidores embebidos
+    public final int httpPort;
+    public final int wsPort;
+    public final ServerEngine engine;
+    public final int unifiedWorkers;
+    /**
+     * GET /journal y GET /debug/log muestran el contenido de los mensajes sin
+     * autenticación: por defecto solo a peticiones desde este equipo; la app
+     * en release, a nadie.
+     */
+    public final DebugAccess debugEndpoints;
+    /** Hilos de Java-WebSocket que decodifican frames (motor SEPARATE). */
+    public final int wsDecoderCount;
+    /** Hilos donde corre la lógica de las sesiones WS, en orden por conexión. */
+    public final int wsWorkerCount;
+    /**
+     * Límites de entrada del servidor WS (ambos motores); 0 = sin límite, que
+     * es lo que hay por defecto. Ver {@link RateLimiter}.
+     */
+    public final long wsRateMessagesPerSec;
+    public final long wsRateBytesPerSec;
+    public final long wsRateGlobalMessagesPerSec;
+    public final long wsRateGlobalBytesPerSec;
+    public final RateLimiter.Policy wsRatePolicy;
+    public final long wsRateMaxDelayMs;
+    /** Salida hacia clientes WS lentos (ambos motores). Ver {@link SlowConsumerGuard}. */
+    public final SlowConsumerGuard.Policy wsSlowPolicy;
+    public final long wsSlowSocketBytes;
+    public final long wsSlowHighWaterBytes;
+    public final long wsSlowMaxLagMs;
+    public final long wsSlowCheckMs;
+
+    // Cliente WS
+    /** Destino del cliente; null = el servidor WS propio (vía bus, sin socket). */
+    public final String serverUrl;
+    /** Alias del propio dispositivo en las URLs del cliente. */
+    public final String loopbackHost;
+    public final boolean loopbackTransport;
+    public final int connectTimeoutSeconds;
+    public final int pingIntervalSeconds;
+    /**
+     * Latido adaptativo ({@link AdaptiveHeartbeat}) en lugar del ping fijo de
+     * OkHttp en el socket principal y en los de {@code WebSocketManager};
+     * el servidor debe ser de esta app.
+     */
+    public final boolean heartbeatAdaptive;
+    public final long heartbeatMinIntervalMs;
+    public final long heartbeatMaxIntervalMs;
+    /** Sin PONG en este tiempo la conexión se da por muerta y se reconecta. */
+    public final long heartbeatTimeoutMs;
+    /** Sesión reanudable con seq/ACK ({@link ResumableSession}); el servidor debe ser de esta app. */
+    public final boolean resumable;
+    public final CompressionConfig compression;
+
+    // Destinos WS adicionales ({@link EndpointManager}), sobre el mismo OkHttpClient
+    /** URLs en orden de prioridad (la primera es la preferida); vacía = ninguno. */
+    public final List<String> upstreamUrls;
+    public final EndpointManager.Strategy upstreamStrategy;
+
+    // Cola de salida
+    public final int outboundMaxMessages;
+    public final long outboundMaxBytes;
+    public final OutboundQueue.OverflowPolicy outboundPolicy;
+    public final long outboundBlockTimeoutMs;
+
+    // Reconexión
+    public final long reconnectBaseDelayMs;
+    public final long reconnectMaxDelayMs;
+    public final long reconnectStableAfterMs;
+
+    /** Intervalo mínimo entre cambios de estado entregados al anfitrión (se entrega el último). */
+    public final long statusMinIntervalMs;
+
+    /** Mensajes que la app retiene para la lista de la UI ({@link MessageLog}). */
+    public final int messageLogSize;
+
+    // Log (se aplica al arrancar el nodo y afecta a todo el proceso)
+    /** Prioridad mínima ({@link Log#DEBUG}, {@link Log#INFO}...). */
+    public final int logLevel;
+    /** Los puntos de log muestreados escriben 1 de cada n. */
+    public final int logSampleEvery;
+    /** Capacidad del anillo del log asíncrono; 0 = log síncrono. */
+    public final int logRingSize;
+
+    // Diario de mensajes
+    /** Directorio del {@link MessageJournal}; null = sin diario. */
+    public final File journalDir;
+    public final int journalSegmentBytes;
+    public final long journalRetentionBytes;
+    public final long journalRetentionAgeMs;
+    public final long journalFlushIntervalMs;
+
+    // Ficheros estáticos ({@link AssetHandler})
+    /** Directorio servido por HTTP; null = ninguno (la app puede poner su propio origen). */
+    public final File assetsDir;
+    /** Memoria para ficheros en caché. */
+    public final long assetsCacheBytes;
+    /** Por encima de este tamaño el fichero se mapea en vez de copiarse al heap. */
+    public final int assetsCacheMaxFileBytes;
+
+    public NodeConfig(Properties props) {
+        httpPort = intValue(props, "http.port", 8888);
+        wsPort = intValue(props, "ws.port", 8889);
+        engine = ServerEngine.valueOf(upper(props.getProperty("server.engine", "SEPARATE")));
+        unifiedWorkers = intValue(props, "server.unified.workers", 2);
+        debugEndpoints = DebugAccess.valueOf(upper(props.getProperty("http.debugEndpoints", "LOOPBACK")));
+        int cores = Runtime.getRuntime().availableProcessors();
+        wsDecoderCount = intValue(props, "ws.decoderCount", cores);
+        wsWorkerCount = intValue(props, "ws.workerCount", cores);
+        wsRateMessagesPerSec = longValue(props, "ws.rateLimit.messagesPerSec", 0L);
+        wsRateBytesPerSec = longValue(props, "ws.rateLimit.bytesPerSec", 0L);
+        wsRateGlobalMessagesPerSec = longValue(props, "ws.rateLimit.globalMessagesPerSec", 0L);
+        wsRateGlobalBytesPerSec = longValue(props, "ws.rateLimit.globalBytesPerSec", 0L);
+        wsRatePolicy = RateLimiter.Policy.valueOf(upper(props.getProperty("ws.rateLimit.policy", "DELAY")));
+        wsRateMaxDelayMs = longValue(props, "ws.rateLimit.maxDelayMs", 1000L);
+        wsSlowPolicy = SlowConsumerGuard.Policy.valueOf(upper(props.getProperty("ws.slowConsumer.policy", "CONFLATE")));
+        wsSlowSocketBytes = longValue(props, "ws.slowConsumer.socketBytes", 256L * 1024);
+        wsSlowHighWaterBytes = longValue(props, "ws.slowConsumer.highWaterBytes", 1024L * 1024);
+        wsSlowMaxLagMs = longValue(props, "ws.slowConsumer.maxLagMs", 30_000L);
+        wsSlowCheckMs = longValue(props, "ws.slowConsumer.checkMs", 50L);
+
+        String url = props.getProperty("client.url", "").trim();
+        serverUrl = url.isEmpty() ? null : url;
+        loopbackHost = props.getProperty("client.loopbackHost", "PrintConToda").trim();
+        loopbackTransport = boolValue(props, "client.loopbackTransport", false);
+        connectTimeoutSeconds = intValue(props, "client.connectTimeoutSeconds", 15);
+        pingIntervalSeconds = intValue(props, "client.pingIntervalSeconds", 25);
+        heartbeatAdaptive = boolValue(props, "heartbeat.adaptive", false);
+        heartbeatMinIntervalMs = longValue(props, "heartbeat.minIntervalMs", 15_000L);
+        heartbeatMaxIntervalMs = longValue(props, "heartbeat.maxIntervalMs", 270_000L);
+        heartbeatTimeoutMs = longValue(props, "heartbeat.timeoutMs", 10_000L);
+        resumable = boolValue(props, "client.resumable", false);
+        upstreamUrls = listValue(props, "upstream.urls");
+        upstreamStrategy = EndpointManager.Strategy.valueOf(
+                upper(props.getProperty("upstream.strategy", "FAILOVER")));
+        compression = new CompressionConfig(
+                boolValue(props, "compression.enabled", true),
+                intValue(props, "compression.thresholdBytes", CompressionConfig.DEFAULT_THRESHOLD_BYTES),
+                boolValue(props, "compression.serverNoContextTakeover", false),
+                boolValue(props, "compression.clientNoContextTakeover", false));
+
+        outboundMaxMessages = intValue(props, "outbound.maxMessages", 10_000);
+        outboundMaxBytes = longValue(props, "outbound.maxBytes", 4L * 1024 * 1024);
+        outboundPolicy = OutboundQueue.OverflowPolicy.valueOf(
+                upper(props.getProperty("outbound.policy", "DROP_OLDEST")));
+        outboundBlockTimeoutMs = longValue(props, "outbound.blockTimeoutMs", 2000L);
+
+        reconnectBaseDelayMs = longValue(props, "reconnect.baseDelayMs", 1000L);
+        reconnectMaxDelayMs = longValue(props, "reconnect.maxDelayMs", 60_000L);
+        reconnectStableAfterMs = longValue(props, "reconnect.stableAfterMs", 30_000L);
+        statusMinIntervalMs = longValue(props, "status.minIntervalMs", 500L);
+        messageLogSize = intValue(props, "ui.messageLogSize", 2000);
+
+        logLevel = logPriority(upper(props.getProperty("log.level", "DEBUG")));
+        logSampleEvery = intValue(props, "log.sampleEvery", 1);
+        logRingSize = intValue(props, "log.ringSize", 4096);
+
+        String journal = props.getProperty("journal.dir", "").trim();
+        journalDir = journal.isEmpty() ? null : new File(journal);
+        journalSegmentBytes = intValue(props, "journal.segmentBytes", 16 * 1024 * 1024);
+        journalRetentionBytes = longValue(props, "journal.retentionBytes", 256L * 1024 * 1024);
+        journalRetentionAgeMs = longValue(props, "journal.retentionAgeMs", 7L * 24 * 60 * 60 * 1000);
+        journalFlushIntervalMs = longValue(props, "journal.flushIntervalMs", 200L);
+
+        String assets = props.getProperty("assets.dir", "").trim();
+        assetsDir = assets.isEmpty() ? null : new File(assets);
+        assetsCacheBytes = longValue(props, "assets.cacheBytes", 4L * 1024 * 1024);
+        assetsCacheMaxFileBytes = intValue(props, "assets.cacheMaxFileBytes", 256 * 1024);
+    }
+
+    public static NodeConfig defaults() {
+        return new NodeConfig(new Properties());
+    }
+
+    public static NodeConfig load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            Properties props = new Properties();
+            props.load(reader);
+            return new NodeConfig(props);
+        }
+    }
+
+    /** URL del servidor WS propio, con el alias loopback como host. */
+    public String selfUrl() {
+        return engine == ServerEngine.UNIFIED
+                ? "ws://" + loopbackHost + ":" + httpPort + UnifiedServer.WS_PATH
+                : "ws://" + loopbackHost + ":" + wsPort + "/";
+    }
+
+    private static int intValue(Properties props, String key, int def) {
+        return (int) longValue(props, key, def);
+    }
+
+    private static long longValue(Properties props, String key, long def) {
+        String value = props.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return def;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no numérico para " + key + ": " + value, e);
+        }
+    }
+
+    /** Lista separada por comas, sin elementos vacíos. */
+    private static List<String> listValue(Properties props, String key) {
+        List<String> values = new ArrayList<>();
+        for (String value : props.getProperty(key, "").split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    private static boolean boolValue(Properties props, String key, boolean def) {
+        String value = props.getProperty(key);
+        return value == null || value.trim().isEmpty() ? def : Boolean.parseBoolean(value.trim());
+    }
+
+    private static int logPriority(String level) {
+        switch (level) {
+            case "VERBOSE": return Log.VERBOSE;
+            case "DEBUG": return Log.DEBUG;
+            case "INFO": return Log.INFO;
+            case "WARN": return Log.WARN;
+            case "ERROR": return Log.ERROR;
+            default: throw new IllegalArgumentException("Nivel de log desconocido: " + level);
+        }
+    }
+
+    private static String upper(String value) {
+        return value.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.websocket;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import okio.ByteString;
+
+/**
+ * Cola de salida acotada (por número de mensajes y por bytes) para el cliente WS.
+ *
+ * Admite mensajes de texto ({@link String}) y binarios ({@link ByteString}).
+ * Guarda los mensajes mientras no hay conexión o mientras el buffer de OkHttp
+ * está lleno, y los entrega en orden. Cuando se alcanza el límite se aplica
+ * la {@link OverflowPolicy} configurada.
+ */
+public class OutboundQueue {
+
+    public enum OverflowPolicy {
+        /** El productor espera hasta que haya hueco (o vence el timeout). No usar desde el main thread. */
+        BLOCK,
+        /** Se descartan los mensajes más antiguos para hacer hueco. */
+        DROP_OLDEST,
+        /** Se rechaza el mensaje nuevo. */
+        REJECT
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Object> messages = new ArrayDeque<>();
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private volatile OverflowPolicy policy;
+    private volatile long blockTimeoutMs;
+
+    private long bytes;
+    private long dropped;
+    private long rejected;
+
+    public OutboundQueue(int maxMessages, long maxBytes, OverflowPolicy policy, long blockTimeoutMs) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+    }
+
+    /**
+     * Encola un mensaje aplicando la política de desbordamiento.
+     *
+     * @return false si el mensaje no se encoló (REJECT, timeout de BLOCK o
+     * mensaje mayor que la capacidad total)
+     */
+    public boolean offer(String message) {
+        return offerItem(message, utf8Length(message));
+    }
+
+    public boolean offer(ByteString message) {
+        return offerItem(message, message.size());
+    }
+
+    private boolean offerItem(Object message, long size) {
+        if (size > maxBytes) {
+            countRejected();
+            return false;
+        }
+        lock.lock();
+        try {
+            if (!makeRoom(size)) {
+                rejected++;
+                return false;
+            }
+            messages.addLast(message);
+            bytes += size;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Primer mensaje pendiente ({@link String} o {@link ByteString}), sin sacarlo de la cola. */
+    public Object peek() {
+        lock.lock();
+        try {
+            return messages.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Saca el primer mensaje solo si sigue siendo {@code expected}; si entretanto
+     * se descartó por DROP_OLDEST no toca el siguiente.
+     */
+    public void removeHead(Object expected) {
+        lock.lock();
+        try {
+            if (messages.peekFirst() == expected) {
+                messages.pollFirst();
+                bytes -= sizeOf(expected);
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            messages.clear();
+            bytes = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ======== Métricas ========
+
+    public int depth() {
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bytes pendientes en la cola (el texto se cuenta en UTF-8). */
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long droppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long rejectedCount() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setPolicy(OverflowPolicy policy, long blockTimeoutMs) {
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    // ======== Utilidades internas ========
+
+    /** Debe llamarse con el lock tomado. */
+    private boolean makeRoom(long size) {
+        if (!isFull(size)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                while (isFull(size) && !messages.isEmpty()) {
+                    bytes -= sizeOf(messages.pollFirst());
+                    dropped++;
+                }
+                return true;
+            case BLOCK:
+                long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+                try {
+                    while (isFull(size)) {
+                        if (nanos <= 0L) {
+                            return false;
+                        }
+                        nanos = notFull.awaitNanos(nanos);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                return true;
+            case REJECT:
+            default:
+                return false;
+        }
+    }
+
+    private boolean isFull(long size) {
+        return messages.size() >= maxMessages || bytes + size > maxBytes;
+    }
+
+    private void countRejected() {
+        lock.lock();
+        try {
+            rejected++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static long sizeOf(Object message) {
+        return message instanceof ByteString
+                ? ((ByteString) message).size()
+                : utf8Length((String) message);
+    }
+
+    /** Longitud en UTF-8 sin crear el array de bytes (igual que cuenta OkHttp). */
+    static long utf8Length(String s) {
+        long length = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
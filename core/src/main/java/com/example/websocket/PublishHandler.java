@@ -0,0 +1,194 @@
+package com.example.websocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * {@code POST /publish}: entrada HTTP para productores que no hablan WS.
+ *
+ * Cada mensaje se publica en el bus, en orden, y llega así al servicio y a los
+ * clientes WS suscritos al tópico ({@code ?topic=}, por defecto
+ * {@link MessageBus#DEFAULT_TOPIC}).
+ * <ul>
+ *     <li>Cuerpo normal: un único mensaje.</li>
+ *     <li>{@code Content-Type: application/x-ndjson} (o {@code ?format=ndjson}):
+ *     un mensaje por línea. Se procesa en streaming, línea a línea, sin
+ *     cargar el cuerpo entero en memoria.</li>
+ * </ul>
+ * Responde {@code {"accepted":N,"rejected":M}}.
+ */
+public class PublishHandler implements HttpHandler {
+
+    private static final String TAG = "PublishHandler";
+
+    static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+    private static final int READ_CHUNK = 8 * 1024;
+
+    private final MessageBus bus;
+    private final String origin;
+
+    public PublishHandler(MessageBus bus, String origin) {
+        this.bus = bus;
+        this.origin = origin;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        String topic = request.queryParam("topic");
+        if (topic == null || topic.isEmpty()) {
+            topic = MessageBus.DEFAULT_TOPIC;
+        } else if (TopicRegistry.isWildcard(topic)) {
+            return HttpResponse.text(400, "El tópico de publicación no admite comodines");
+        }
+        if (request.contentLength < 0) {
+            return HttpResponse.text(411, "Falta Content-Length");
+        }
+        Counts counts = new Counts();
+        try {
+            if (isNdjson(request)) {
+                readLines(request.body, request.contentLength, topic, counts);
+            } else {
+                readSingle(request.body, request.contentLength, topic, counts);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error leyendo el cuerpo tras {} mensajes", counts.accepted, e);
+            return result(400, counts);
+        }
+        Log.d(TAG, "Publicados {} mensajes en {} ({} rechazados)", counts.accepted, topic, counts.rejected);
+        return result(200, counts);
+    }
+
+    private static boolean isNdjson(HttpRequest request) {
+        String contentType = request.header("content-type");
+        return "ndjson".equals(request.queryParam("format"))
+                || (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(NDJSON));
+    }
+
+    private void readSingle(InputStream in, long length, String topic, Counts counts) throws IOException {
+        if (length > MAX_MESSAGE_BYTES) {
+            counts.rejected++;
+            skip(in, length);
+            return;
+        }
+        byte[] body = new byte[(int) length];
+        int read = 0;
+        while (read < body.length) {
+            int n = in.read(body, read, body.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        emit(new String(body, 0, read, StandardCharsets.UTF_8), topic, counts);
+    }
+
+    /**
+     * Parte el cuerpo por '\n' con un buffer fijo. NanoHTTPD no marca el fin
+     * del cuerpo en el stream, así que se lee como mucho Content-Length bytes.
+     */
+    private void readLines(InputStream in, long length, String topic, Counts counts) throws IOException {
+        byte[] chunk = new byte[READ_CHUNK];
+        LineBuffer line = new LineBuffer();
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+            if (n < 0) {
+                break;
+            }
+            remaining -= n;
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (chunk[i] == '\n') {
+                    line.append(chunk, start, i - start);
+                    emitLine(line, topic, counts);
+                    start = i + 1;
+                }
+            }
+            line.append(chunk, start, n - start);
+        }
+        emitLine(line, topic, counts);
+    }
+
+    private void emitLine(LineBuffer line, String topic, Counts counts) {
+        if (line.overflow) {
+            counts.rejected++;
+        } else {
+            int length = line.length;
+            if (length > 0 && line.bytes[length - 1] == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                emit(new String(line.bytes, 0, length, StandardCharsets.UTF_8), topic, counts);
+            }
+        }
+        line.reset();
+    }
+
+    private void emit(String message, String topic, Counts counts) {
+        if (message.isEmpty()) {
+            return;
+        }
+        if (bus.publish(origin, topic, message)) {
+            counts.accepted++;
+        } else {
+            counts.rejected++;
+        }
+    }
+
+    private static void skip(InputStream in, long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    return;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static HttpResponse result(int status, Counts counts) {
+        return new HttpResponse(status, "application/json",
+                ("{\"accepted\":" + counts.accepted + ",\"rejected\":" + counts.rejected + "}")
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Counts {
+        int accepted;
+        int rejected;
+    }
+
+    /** Línea en curso; se reutiliza entre líneas y descarta las que superan el máximo. */
+    private static final class LineBuffer {
+        byte[] bytes = new byte[256];
+        int length;
+        boolean overflow;
+
+        void append(byte[] src, int offset, int count) {
+            if (overflow || count == 0) {
+                return;
+            }
+            if (length + count > MAX_MESSAGE_BYTES) {
+                overflow = true;
+                return;
+            }
+            if (length + count > bytes.length) {
+                byte[] bigger = new byte[Math.max(bytes.length * 2, length + count)];
+                System.arraycopy(bytes, 0, bigger, 0, length);
+                bytes = bigger;
+            }
+            System.arraycopy(src, offset, bytes, length, count);
+            length += count;
+        }
+
+        void reset() {
+            length = 0;
+            overflow = false;
+        }
+    }
+}
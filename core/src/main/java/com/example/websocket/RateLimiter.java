@@ -0,0 +1,181 @@
+package com.example.websocket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Límites de entrada de los servidores WS: mensajes/s y bytes/s por
+ * conexión y globales, con cubos de tokens.
+ *
+ * Cada cubo es un único {@link AtomicLong} (el instante teórico en que
+ * volvería a estar lleno, estilo GCRA): comprobar y consumir es una lectura
+ * y un CAS, sin locks ni hilos de recarga. Un límite de 0 no limita.
+ */
+public final class RateLimiter {
+
+    /** Qué hacer con lo que supera el límite. */
+    public enum Policy {
+        /** Se retiene la lectura de la conexión hasta que haya tokens (como mucho maxDelayMs; después, DROP). */
+        DELAY,
+        /** Se descarta el mensaje. */
+        DROP,
+        /** Se cierra la conexión con 1008 (policy violation). */
+        CLOSE
+    }
+
+    /** Código de cierre WS para una violación de política. */
+    static final int CLOSE_POLICY_VIOLATION = 1008;
+
+    /** Ráfaga admitida: el equivalente a este tiempo de tráfico al ritmo límite. */
+    static final long BURST_SECONDS = 2;
+
+    /** Resultado de {@link #admit}: el mensaje no pasa. */
+    static final long REJECTED = -1;
+
+    /**
+     * Cubo de tokens lock-free. Guarda el instante (nanos) en que el cubo
+     * estaría lleno; hay tokens para {@code cost} mientras ese instante más
+     * el coste no pase de "ahora + ráfaga".
+     */
+    static final class TokenBucket {
+        private final long nanosPerToken;
+        private final long burst;
+        private final long burstNanos;
+        private final AtomicLong fullAt;
+
+        TokenBucket(long perSecond, long burst, long nowNanos) {
+            this.nanosPerToken = Math.max(1, TimeUnit.SECONDS.toNanos(1) / perSecond);
+            this.burst = Math.max(1, burst);
+            this.burstNanos = nanosPerToken * this.burst;
+            this.fullAt = new AtomicLong(nowNanos);
+        }
+
+        /**
+         * Consume {@code cost} tokens si es posible esperando como mucho maxWaitNanos.
+         *
+         * @return 0 si hay tokens ya, los nanos a esperar si se reservaron, o
+         * {@link #REJECTED} (sin consumir nada) si habría que esperar más
+         */
+        long acquire(long cost, long nowNanos, long maxWaitNanos) {
+            // Un mensaje mayor que la ráfaga vacía el cubo en vez de no pasar nunca
+            long needed = Math.min(cost, burst) * nanosPerToken;
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, nowNanos) + needed;
+                long wait = next - nowNanos - burstNanos;
+                if (wait > maxWaitNanos) {
+                    return REJECTED;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return Math.max(0, wait);
+                }
+            }
+        }
+
+        /** Devuelve lo consumido por {@link #acquire} cuando otro cubo rechazó el mensaje. */
+        void refund(long cost) {
+            fullAt.addAndGet(-Math.min(cost, burst) * nanosPerToken);
+        }
+    }
+
+    /** Cubos de una conexión; se crea uno por conexión con {@link #newClient}. */
+    public final class Client {
+        private final TokenBucket messages;
+        private final TokenBucket bytes;
+
+        private Client(long nowNanos) {
+            messages = bucket(perConnMessages, nowNanos);
+            bytes = bucket(perConnBytes, nowNanos);
+        }
+    }
+
+    private final long perConnMessages;
+    private final long perConnBytes;
+    private final TokenBucket globalMessages;
+    private final TokenBucket globalBytes;
+    private final Policy policy;
+    private final long maxDelayNanos;
+
+    /**
+     * @param perConnMessages mensajes/s por conexión (0 = sin límite)
+     * @param perConnBytes    bytes/s por conexión
+     * @param globalMessages  mensajes/s sumando todas las conexiones
+     * @param globalBytes     bytes/s sumando todas las conexiones
+     * @param maxDelayMs      espera máxima con {@link Policy#DELAY}
+     */
+    public RateLimiter(long perConnMessages, long perConnBytes, long globalMessages, long globalBytes,
+                       Policy policy, long maxDelayMs) {
+        long now = System.nanoTime();
+        this.perConnMessages = perConnMessages;
+        this.perConnBytes = perConnBytes;
+        this.globalMessages = bucket(globalMessages, now);
+        this.globalBytes = bucket(globalBytes, now);
+        this.policy = policy;
+        this.maxDelayNanos = policy == Policy.DELAY ? TimeUnit.MILLISECONDS.toNanos(maxDelayMs) : 0;
+    }
+
+    private static TokenBucket bucket(long perSecond, long nowNanos) {
+        return perSecond > 0 ? new TokenBucket(perSecond, perSecond * BURST_SECONDS, nowNanos) : null;
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    /** Hay algún límite en bytes (si no, no hace falta medir los mensajes). */
+    public boolean limitsBytes() {
+        return perConnBytes > 0 || globalBytes != null;
+    }
+
+    public Client newClient() {
+        return new Client(System.nanoTime());
+    }
+
+    /** Un mensaje de {@code bytes} bytes de la conexión: ver {@link #admit(Client, long, long)}. */
+    public long admit(Client client, long bytes) {
+        return admit(client, bytes, System.nanoTime());
+    }
+
+    /**
+     * Pasa el mensaje por los cubos de la conexión y los globales. Si alguno
+     * lo rechaza se devuelven los tokens ya tomados de los demás.
+     *
+     * @return 0 si pasa ya, nanos a esperar antes de procesarlo (solo con
+     * {@link Policy#DELAY}), o {@link #REJECTED}
+     */
+    long admit(Client client, long bytes, long nowNanos) {
+        long connMessages = take(client.messages, 1, nowNanos);
+        if (connMessages == REJECTED) {
+            return REJECTED;
+        }
+        long connBytes = take(client.bytes, bytes, nowNanos);
+        if (connBytes == REJECTED) {
+            refund(client.messages, 1);
+            return REJECTED;
+        }
+        long allMessages = take(globalMessages, 1, nowNanos);
+        if (allMessages == REJECTED) {
+            refund(client.messages, 1);
+            refund(client.bytes, bytes);
+            return REJECTED;
+        }
+        long allBytes = take(globalBytes, bytes, nowNanos);
+        if (allBytes == REJECTED) {
+            refund(client.messages, 1);
+            refund(client.bytes, bytes);
+            refund(globalMessages, 1);
+            return REJECTED;
+        }
+        return Math.max(Math.max(connMessages, connBytes), Math.max(allMessages, allBytes));
+    }
+
+    private long take(TokenBucket bucket, long cost, long nowNanos) {
+        return bucket != null ? bucket.acquire(cost, nowNanos, maxDelayNanos) : 0;
+    }
+
+    private static void refund(TokenBucket bucket, long cost) {
+        if (bucket != null) {
+            bucket.refund(cost);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.websocket;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Programa las reconexiones del cliente WS con backoff exponencial acotado y
+ * "full jitter" (espera aleatoria entre 0 y min(tope, base * 2^intento)).
+ *
+ * Garantiza un solo intento en curso: mientras hay uno programado o
+ * conectando, las nuevas peticiones se ignoran. El contador de intentos se
+ * reinicia cuando la conexión se mantiene estable un tiempo.
+ */
+public class ReconnectScheduler {
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int CONNECTING = 2;
+
+    private final TaskScheduler handler;
+    private final Runnable connectAction;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final long stableAfterMs;
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private final Runnable fireRunnable = this::fire;
+    private final Runnable resetRunnable = this::resetBackoff;
+
+    // Intentos fallidos seguidos (determina el backoff)
+    private volatile int attempt;
+    private volatile long attemptStartedNanos;
+
+    // Estadísticas
+    private volatile long totalAttempts;
+    private volatile long successfulConnects;
+    private volatile long lastDelayMs;
+    private volatile long lastConnectLatencyMs = -1;
+    private volatile long maxConnectLatencyMs;
+    private volatile long totalConnectLatencyMs;
+
+    public ReconnectScheduler(TaskScheduler handler, Runnable connectAction,
+                              long baseDelayMs, long maxDelayMs, long stableAfterMs) {
+        this.handler = handler;
+        this.connectAction = connectAction;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.stableAfterMs = stableAfterMs;
+    }
+
+    /**
+     * Programa un intento con backoff si no hay otro en curso.
+     *
+     * @return espera elegida en ms, o -1 si ya había un intento en curso
+     */
+    public long schedule() {
+        if (!state.compareAndSet(IDLE, SCHEDULED)) {
+            return -1L;
+        }
+        handler.removeCallbacks(resetRunnable);
+        long delay = nextDelay(attempt);
+        attempt++;
+        lastDelayMs = delay;
+        handler.postDelayed(fireRunnable, delay);
+        return delay;
+    }
+
+    /**
+     * Conecta ya (reconexión manual), cancelando la espera pendiente.
+     *
+     * @return false si ya hay una conexión en curso
+     */
+    public boolean connectNow() {
+        handler.removeCallbacks(fireRunnable);
+        handler.removeCallbacks(resetRunnable);
+        int current = state.get();
+        if (current == CONNECTING || !state.compareAndSet(current, SCHEDULED)) {
+            return false;
+        }
+        attempt = 0;
+        fire();
+        return true;
+    }
+
+    /** El intento en curso terminó con la conexión abierta. */
+    public void onConnected() {
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - attemptStartedNanos);
+        if (state.compareAndSet(CONNECTING, IDLE)) {
+            successfulConnects++;
+            lastConnectLatencyMs = latency;
+            totalConnectLatencyMs += latency;
+            if (latency > maxConnectLatencyMs) {
+                maxConnectLatencyMs = latency;
+            }
+        }
+        handler.postDelayed(resetRunnable, stableAfterMs);
+    }
+
+    /** La conexión (o el intento) se perdió: se libera el turno y se programa otro. */
+    public long onConnectionLost() {
+        handler.removeCallbacks(resetRunnable);
+        state.compareAndSet(CONNECTING, IDLE);
+        return schedule();
+    }
+
+    /** El intento no llegó a empezar (el socket no estaba en un estado conectable): se libera el turno. */
+    public void onAttemptSkipped() {
+        state.compareAndSet(CONNECTING, IDLE);
+    }
+
+    /** Cancela cualquier intento pendiente (cierre manual o destrucción del servicio). */
+    public void cancel() {
+        handler.removeCallbacks(fireRunnable);
+        handler.removeCallbacks(resetRunnable);
+        state.set(IDLE);
+    }
+
+    // ======== Estadísticas ========
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public long getTotalAttempts() {
+        return totalAttempts;
+    }
+
+    public long getSuccessfulConnects() {
+        return successfulConnects;
+    }
+
+    public long getLastDelayMs() {
+        return lastDelayMs;
+    }
+
+    public long getLastConnectLatencyMs() {
+        return lastConnectLatencyMs;
+    }
+
+    public long getMaxConnectLatencyMs() {
+        return maxConnectLatencyMs;
+    }
+
+    public long getAverageConnectLatencyMs() {
+        long connects = successfulConnects;
+        return connects > 0 ? totalConnectLatencyMs / connects : -1L;
+    }
+
+    @Override
+    public String toString() {
+        return "intentos=" + totalAttempts
+                + " conexiones=" + successfulConnects
+                + " fallosSeguidos=" + attempt
+                + " ultimaEspera=" + lastDelayMs + "ms"
+                + " latencia(ult/media/max)=" + lastConnectLatencyMs + "/"
+                + getAverageConnectLatencyMs() + "/" + maxConnectLatencyMs + "ms";
+    }
+
+    // ======== Utilidades internas ========
+
+    private void fire() {
+        if (!state.compareAndSet(SCHEDULED, CONNECTING)) {
+            return;
+        }
+        totalAttempts++;
+        attemptStartedNanos = System.nanoTime();
+        connectAction.run();
+    }
+
+    private void resetBackoff() {
+        attempt = 0;
+    }
+
+    long nextDelay(int attempt) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
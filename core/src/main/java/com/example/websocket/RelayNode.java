@@ -0,0 +1,1011 @@
+package com.example.websocket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Núcleo de la app sin dependencias de Android: servidores embebidos (HTTP y
+ * WS), rutas, bus en proceso y cliente WS con cola de salida y reconexión.
+ *
+ * Lo alojan {@code WebSocketService} en el móvil y {@link Daemon} en la JVM;
+ * el anfitrión aporta el planificador de tareas y recibe estado y mensajes
+ * por {@link Listener}, que se invoca desde los hilos de red.
+ */
+public class RelayNode {
+
+    private static final String TAG = "RelayNode";
+    private static final Log.Sampler RX_LOG = new Log.Sampler();
+
+    private static final int NORMAL_CLOSURE = 1000;
+    // No se pasa más a OkHttp mientras su buffer supere este tamaño (su límite duro es 16 MiB)
+    private static final long OKHTTP_HIGH_WATER_BYTES = 1024L * 1024;
+    private static final long FLUSH_RETRY_DELAY = 50L;              // ms
+
+    // Nombres en el bus en proceso
+    static final String BUS_NAME = "service";
+    static final String BUS_HTTP = "http";
+    // Origen en el diario de lo que llega por el socket del cliente
+    private static final String JOURNAL_CLIENT = "client";
+
+    public enum Status { CONNECTING, CONNECTED, IN_PROCESS, DISCONNECTING, DISCONNECTED, FAILED }
+
+    /** Lo que el anfitrión recibe del nodo; se llama desde hilos de red. */
+    public interface Listener {
+        /**
+         * Cambios de estado agrupados ({@link NodeConfig#statusMinIntervalMs}):
+         * solo el último de cada intervalo y sin repetir el anterior. Se llama
+         * desde el {@link TaskScheduler} del nodo, no desde hilos de red.
+         */
+        void onStatusChanged(Status status, String detail);
+
+        void onMessage(String message);
+
+        void onBinary(String source, ByteBuffer payload);
+
+        /** La cola de salida rechazó un mensaje por estar llena. */
+        default void onOutboundRejected(int depth) {
+        }
+    }
+
+    private final NodeConfig config;
+    private final TaskScheduler scheduler;
+    private final Listener listener;
+
+    // Cliente y socket; el OkHttpClient es único en el proceso (también para los destinos extra)
+    private OkHttpClient client;
+    // El del socket principal: el compartido, o uno derivado sin ping fijo si el latido es adaptativo
+    private OkHttpClient socketClient;
+    private volatile WebSocket webSocket;
+    // Listener del intento en curso: identifica sus callbacks aunque lleguen antes de asignar webSocket
+    private volatile WebSocketListener activeListener;
+    private volatile String wsUrl;
+    private volatile boolean loopbackTransport;
+    // Único dueño del estado del socket; las transiciones son CAS
+    private final ConnectionState connectionState = new ConnectionState();
+    // Los cambios de estado llegan al anfitrión agrupados y en el planificador
+    private final StatusCoalescer statusUpdates;
+
+    // Bus en proceso entre servidores embebidos y cliente
+    private final MessageBus messageBus = new MessageBus();
+
+    // Mensajes pendientes de enviar (sin conexión o con el buffer de OkHttp lleno)
+    private final OutboundQueue outboundQueue;
+    private final Object flushLock = new Object();
+    private final Runnable flushRunnable = this::flushOutbound;
+
+    // Sesión reanudable (opcional): lo enviado queda hasta su ACK y se reenvía al reconectar
+    private final ResumableSession session;
+    private volatile boolean resumePending;
+    private final AtomicBoolean ackScheduled = new AtomicBoolean();
+    private final Runnable ackRunnable = this::sendDueAck;
+
+    // Latido adaptativo del socket principal (null = ping fijo de OkHttp)
+    private final AdaptiveHeartbeat heartbeat;
+
+    // Reconexión con backoff; como mucho un intento en curso
+    private final ReconnectScheduler reconnectScheduler;
+
+    // Métricas del cliente WS (GET /metrics)
+    private final Metrics metrics = Metrics.shared();
+    private final Metrics.Counter clientMessagesIn = metrics.counter("ws_client_messages_received_total",
+            "Mensajes recibidos por el cliente WS", null);
+    private final Metrics.Counter clientBytesIn = metrics.counter("ws_client_bytes_received_total",
+            "Bytes de payload recibidos por el cliente WS", null);
+    private final Metrics.Counter clientMessagesOut = metrics.counter("ws_client_messages_sent_total",
+            "Mensajes entregados a OkHttp para enviar", null);
+    private final Metrics.Counter clientBytesOut = metrics.counter("ws_client_bytes_sent_total",
+            "Bytes de payload entregados a OkHttp para enviar", null);
+    private final Metrics.Counter duplicatesIn = metrics.counter("ws_client_duplicates_dropped_total",
+            "Mensajes con seq ya entregado descartados por la sesión reanudable", null);
+    private final Metrics.Counter reconnects = metrics.counter("ws_client_reconnects_total",
+            "Reconexiones programadas tras una caída", null);
+    private final Metrics.Histogram reconnectDuration = metrics.latency("ws_client_reconnect_duration_seconds",
+            "Tiempo desde la caída hasta volver a estar conectado", null);
+    private final Metrics.Histogram handshakeTime = metrics.latency("ws_client_handshake_seconds",
+            "Tiempo desde newWebSocket() hasta onOpen", null);
+    private final EchoLatencyTracker echoLatency = new EchoLatencyTracker(metrics.latency(
+            "ws_echo_latency_seconds", "Ida y vuelta de un mensaje hasta recibir su eco", null));
+    private volatile long connectStartedNanos;
+    // Sobres: seq de los enviados y lector de los recibidos (hilo lector de OkHttp)
+    private final AtomicLong envelopeSeq = new AtomicLong();
+    private final Envelope.Reader clientEnvelope = new Envelope.Reader();
+    private volatile long disconnectedAtNanos;
+
+    // Servidores embebidos
+    private final HttpRoutes httpRoutes = new HttpRoutes();
+    private SimpleHttpServer httpServer;
+    private SimpleWebSocketServer wsServer;
+    private UnifiedServer unifiedServer;
+    // Origen de ficheros estáticos puesto por el anfitrión (tiene prioridad sobre assets.dir)
+    private volatile AssetHandler.Source assetSource;
+
+    // Destinos WS adicionales (null si no hay upstream.urls)
+    private volatile EndpointManager upstreams;
+
+    // Diario de lo que el nodo recibe y envía (null si está desactivado)
+    private volatile MessageJournal journal;
+
+    public RelayNode(NodeConfig config, TaskScheduler scheduler, Listener listener) {
+        this.config = config;
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.wsUrl = config.serverUrl != null ? config.serverUrl : config.selfUrl();
+        this.loopbackTransport = config.loopbackTransport;
+        this.outboundQueue = new OutboundQueue(config.outboundMaxMessages, config.outboundMaxBytes,
+                config.outboundPolicy, config.outboundBlockTimeoutMs);
+        this.session = config.resumable
+                ? new ResumableSession(UUID.randomUUID().toString(), config.outboundMaxMessages)
+                : null;
+        this.reconnectScheduler = new ReconnectScheduler(scheduler, this::connectWebSocket,
+                config.reconnectBaseDelayMs, config.reconnectMaxDelayMs, config.reconnectStableAfterMs);
+        this.heartbeat = config.heartbeatAdaptive
+                ? AdaptiveHeartbeat.fromConfig(config, scheduler, new HeartbeatProbe(), null)
+                : null;
+        this.statusUpdates = new StatusCoalescer(scheduler, config.statusMinIntervalMs,
+                listener::onStatusChanged);
+    }
+
+    // ======== Ciclo de vida ========
+
+    /** Levanta los servidores y prepara el cliente; la conexión se abre con {@link #connect()}. */
+    public void start() {
+        configureLogging();
+        messageBus.register(BUS_NAME, this::onBusMessage);
+        registerMetrics();
+        openJournal();
+        initializeClient();
+        startUpstreams();
+        startServers();
+    }
+
+    /** Conecta el cliente si no lo está (o activa el modo en proceso). */
+    public void connect() {
+        if (usesInProcessTransport()) {
+            connectInProcess();
+        } else if (webSocket == null || !connectionState.isOpen()) {
+            reconnectScheduler.connectNow();
+        }
+    }
+
+    public void stop() {
+        reconnectScheduler.cancel();
+        stopHeartbeat();
+        connectionState.moveTo(ConnectionState.State.IDLE);
+        statusUpdates.cancel();
+        messageBus.unregister(BUS_NAME);
+        if (webSocket != null) {
+            try {
+                webSocket.close(NORMAL_CLOSURE, "Servicio terminado");
+            } catch (Exception ignored) {}
+            webSocket = null;
+        }
+        activeListener = null;
+        if (upstreams != null) {
+            upstreams.stop();
+            upstreams = null;
+        }
+        if (client != null) {
+            try {
+                client.dispatcher().executorService().shutdown();
+            } catch (Exception ignored) {}
+        }
+        if (httpServer != null) {
+            httpServer.stopServer();
+            httpServer = null;
+        }
+        if (wsServer != null) {
+            try {
+                wsServer.stop();
+            } catch (Exception ignored) {}
+            wsServer = null;
+        }
+        if (unifiedServer != null) {
+            unifiedServer.stop();
+            unifiedServer = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        scheduler.removeCallbacks(flushRunnable);
+        scheduler.removeCallbacks(ackRunnable);
+        // Escribe lo pendiente del anillo antes de que termine el proceso
+        Log.stopAsync();
+    }
+
+    private void configureLogging() {
+        Log.setMinPriority(config.logLevel);
+        Log.setSampleEvery(config.logSampleEvery);
+        if (config.logRingSize > 0) {
+            Log.startAsync(config.logRingSize);
+        }
+    }
+
+    // ======== Inicialización del cliente OkHttp con DNS personalizado ========
+
+    private void initializeClient() {
+        Dns customDns = new Dns() {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                if (config.loopbackHost.equalsIgnoreCase(hostname)) {
+                    return Collections.singletonList(InetAddress.getByName("127.0.0.1"));
+                }
+                return Dns.SYSTEM.lookup(hostname);
+            }
+        };
+
+        client = new OkHttpClient.Builder()
+                .dns(customDns)
+                .connectTimeout(config.connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .writeTimeout(10, TimeUnit.SECONDS)
+                .pingInterval(config.pingIntervalSeconds, TimeUnit.SECONDS)
+                .minWebSocketMessageToCompress(config.compression.clientMinMessageToCompress())
+                .retryOnConnectionFailure(true)
+                .build();
+        // newBuilder() comparte dispatcher y pool: no añade hilos
+        socketClient = heartbeat != null
+                ? client.newBuilder().pingInterval(0, TimeUnit.MILLISECONDS).build()
+                : client;
+    }
+
+    // ======== Latido adaptativo ========
+
+    /** El latido escribe y corta sobre el socket actual. */
+    private final class HeartbeatProbe implements AdaptiveHeartbeat.Probe {
+        @Override
+        public boolean sendPing(String frame) {
+            WebSocket ws = webSocket;
+            return ws != null && ws.send(frame);
+        }
+
+        @Override
+        public void onDead(String reason) {
+            WebSocket ws = webSocket;
+            if (ws != null) {
+                Log.w(TAG, "💔 Conexión muerta ({}), cancelando socket", reason);
+                // OkHttp responde con onFailure, que programa la reconexión
+                ws.cancel();
+            }
+        }
+    }
+
+    private void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.stop();
+        }
+    }
+
+    // ======== Destinos adicionales ========
+
+    private void startUpstreams() {
+        if (config.upstreamUrls.isEmpty()) {
+            return;
+        }
+        EndpointManager manager = new EndpointManager(client, scheduler, new UpstreamListener(),
+                config.upstreamStrategy, config.reconnectBaseDelayMs, config.reconnectMaxDelayMs,
+                config.reconnectStableAfterMs);
+        for (int i = 0; i < config.upstreamUrls.size(); i++) {
+            manager.add(config.upstreamUrls.get(i), i);
+        }
+        manager.start();
+        upstreams = manager;
+        Log.i(TAG, "🔀 {} destinos adicionales ({})", config.upstreamUrls.size(), config.upstreamStrategy);
+    }
+
+    /** Lo recibido de los destinos extra llega al anfitrión como lo del socket principal. */
+    private final class UpstreamListener implements EndpointManager.Listener {
+        @Override
+        public void onEndpointState(EndpointManager.Endpoint endpoint, ConnectionState.State state) {
+            Log.d(TAG, "Destino {}: {}", endpoint.url, state);
+        }
+
+        @Override
+        public void onMessage(EndpointManager.Endpoint endpoint, String text) {
+            journal(MessageJournal.Direction.IN, endpoint.url, text);
+            if (RX_LOG.sample()) Log.d(TAG, "Mensaje de {}: {}", endpoint.url, text);
+            listener.onMessage(text);
+        }
+
+        @Override
+        public void onBinary(EndpointManager.Endpoint endpoint, ByteBuffer payload) {
+            journal(MessageJournal.Direction.IN, endpoint.url, payload);
+            listener.onBinary(endpoint.url, payload);
+        }
+    }
+
+    // ======== Conexión WebSocket como cliente ========
+
+    private void connectWebSocket() {
+        if (!connectionState.moveTo(ConnectionState.State.CONNECTING)) {
+            Log.d(TAG, "Conexión ignorada en estado {}", connectionState);
+            reconnectScheduler.onAttemptSkipped();
+            return;
+        }
+        Log.d(TAG, "Conectando a: {}", wsUrl);
+        status(Status.CONNECTING, wsUrl);
+
+        Request request = new Request.Builder().url(wsUrl).build();
+
+        connectStartedNanos = System.nanoTime();
+        WebSocketListener attempt = new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                if (isStale(this) || !connectionState.moveTo(ConnectionState.State.OPEN)) return;
+                // OkHttp puede abrir antes de que newWebSocket() devuelva el socket
+                RelayNode.this.webSocket = webSocket;
+                reconnectScheduler.onConnected();
+                if (heartbeat != null) {
+                    heartbeat.start();
+                }
+                handshakeTime.recordSince(connectStartedNanos);
+                long lostAt = disconnectedAtNanos;
+                if (lostAt != 0) {
+                    reconnectDuration.recordSince(lostAt);
+                    disconnectedAtNanos = 0;
+                }
+                Log.i(TAG, "Conexión establecida. Código: {}", response.code());
+                status(Status.CONNECTED, wsUrl);
+                if (session != null) {
+                    // Nada sale hasta saber qué recibió el servidor (RESUMED)
+                    resumePending = true;
+                    webSocket.send(ResumableSession.resumeFrame(session.id, session.lastReceived()));
+                } else {
+                    flushOutbound();
+                }
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String frame) {
+                if (isStale(this)) return;
+                if (heartbeat != null) {
+                    heartbeat.onActivity();
+                    if (frame.startsWith(AdaptiveHeartbeat.CMD_PONG)) {
+                        heartbeat.onPong(frame);
+                        return;
+                    }
+                }
+                clientMessagesIn.inc();
+                clientBytesIn.add(OutboundQueue.utf8Length(frame));
+                String text = session != null ? unwrapIncoming(frame) : frame;
+                if (text == null) return;
+                journal(MessageJournal.Direction.IN, JOURNAL_CLIENT, text);
+                if (RX_LOG.sample()) Log.d(TAG, "Mensaje recibido: {}", text);
+                listener.onMessage(text);
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                if (isStale(this)) return;
+                if (heartbeat != null) {
+                    heartbeat.onActivity();
+                }
+                clientMessagesIn.inc();
+                clientBytesIn.add(bytes.size());
+                // asByteBuffer() es una vista de solo lectura: sin copia ni conversión a String
+                ByteBuffer payload = bytes.asByteBuffer();
+                if (session != null && payload.remaining() >= ResumableSession.SEQ_HEADER) {
+                    if (!acceptIncoming(payload.getLong(payload.position()))) return;
+                    payload.position(payload.position() + ResumableSession.SEQ_HEADER);
+                    payload = payload.slice();
+                }
+                journal(MessageJournal.Direction.IN, JOURNAL_CLIENT, payload);
+                if (clientEnvelope.wrap(payload) && (clientEnvelope.type() == Envelope.Type.ECHO
+                        || clientEnvelope.type() == Envelope.Type.PONG)) {
+                    echoLatency.onEnvelopeEcho(clientEnvelope.timestampMs());
+                }
+                listener.onBinary("ws", payload);
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                if (isStale(this) || !connectionState.moveTo(ConnectionState.State.CLOSING)) return;
+                stopHeartbeat();
+                Log.d(TAG, "onClosing: code={} reason={}", code, reason);
+                status(Status.DISCONNECTING, reason);
+            }
+
+            @Override
+            public void onClosed(WebSocket webSocket, int code, String reason) {
+                if (isStale(this)) return;
+                stopHeartbeat();
+                Log.d(TAG, "onClosed: code={} reason={}", code, reason);
+                if (code != NORMAL_CLOSURE) {
+                    if (!connectionState.moveTo(ConnectionState.State.BACKOFF)) return;
+                    status(Status.DISCONNECTED, reason);
+                    scheduleReconnect();
+                } else {
+                    connectionState.moveTo(ConnectionState.State.IDLE);
+                    status(Status.DISCONNECTED, reason);
+                }
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                if (isStale(this) || !connectionState.moveTo(ConnectionState.State.BACKOFF)) return;
+                stopHeartbeat();
+                Log.e(TAG, "Error WS: {}", t != null ? t.getMessage() : "desconocido", t);
+                status(Status.FAILED, t != null ? t.getMessage() : "WS failure");
+                scheduleReconnect();
+            }
+        };
+        // Antes de la llamada: un fallo inmediato (DNS, conexión rechazada) llega en otro hilo y debe contar
+        activeListener = attempt;
+        WebSocket socket = socketClient.newWebSocket(request, attempt);
+        if (activeListener == attempt) {
+            webSocket = socket;
+        }
+    }
+
+    /** Sin socket: el cliente habla con los servidores embebidos por el bus. */
+    private void connectInProcess() {
+        Log.d(TAG, "Destino local {}: usando bus en proceso (sin socket)", wsUrl);
+        status(Status.IN_PROCESS, wsUrl);
+    }
+
+    private void status(Status status, String detail) {
+        statusUpdates.submit(status, detail);
+    }
+
+    private boolean usesInProcessTransport() {
+        return !loopbackTransport && isSelfUrl(wsUrl);
+    }
+
+    private boolean isSelfUrl(String url) {
+        try {
+            URI uri = URI.create(url);
+            String host = uri.getHost();
+            boolean localHost = config.loopbackHost.equalsIgnoreCase(host)
+                    || "127.0.0.1".equals(host)
+                    || "localhost".equalsIgnoreCase(host);
+            if (config.engine == NodeConfig.ServerEngine.UNIFIED) {
+                return localHost && (uri.getPort() == config.wsPort
+                        || uri.getPort() == config.httpPort && UnifiedServer.WS_PATH.equals(uri.getPath()));
+            }
+            return localHost && uri.getPort() == config.wsPort;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (disconnectedAtNanos == 0) {
+            disconnectedAtNanos = System.nanoTime();
+        }
+        long delay = reconnectScheduler.onConnectionLost();
+        if (delay >= 0) {
+            reconnects.inc();
+            Log.d(TAG, "Reintentando conexión en {} ms… ({})", delay, reconnectScheduler);
+        }
+    }
+
+    /** Callbacks de un intento anterior (cerrado por reconexión manual o stop) que ya no cuentan. */
+    private boolean isStale(WebSocketListener listener) {
+        return listener != activeListener;
+    }
+
+    // ======== Servidores embebidos ========
+
+    private void startServers() {
+        httpRoutes.add("POST", "/publish", new PublishHandler(messageBus, BUS_HTTP));
+        httpRoutes.add("GET", "/metrics", request -> new HttpResponse(200, Metrics.CONTENT_TYPE,
+                metrics.scrape().getBytes(StandardCharsets.UTF_8)));
+        if (journal != null) {
+            addDebugRoute("/journal", new JournalHandler(journal));
+        }
+        addDebugRoute("/debug/log", request -> HttpResponse.text(200,
+                String.join("\n", Log.recent()) + "\n"));
+        AssetHandler.Source assets = assetSource != null ? assetSource
+                : config.assetsDir != null ? AssetHandler.directory(config.assetsDir) : null;
+        if (assets != null) {
+            // Lo que no es una ruta registrada se busca entre los ficheros estáticos
+            httpRoutes.setFallback(new AssetHandler(assets, config.assetsCacheBytes,
+                    config.assetsCacheMaxFileBytes));
+        }
+        if (config.engine == NodeConfig.ServerEngine.UNIFIED) {
+            startUnifiedServer();
+        } else {
+            startHttpServer();
+            startWsServer();
+        }
+    }
+
+    private void startUnifiedServer() {
+        if (config.compression.enabled) {
+            Log.w(TAG, "server.engine=UNIFIED no negocia permessage-deflate: compression.enabled "
+                    + "solo se aplica al cliente WS (usar SEPARATE para comprimir en el servidor)");
+        }
+        // wsPort sigue aceptando WS en cualquier ruta: los clientes con ws://host:8889/ no cambian
+        unifiedServer = new UnifiedServer(config.httpPort, config.wsPort, config.unifiedWorkers,
+                httpRoutes, messageBus);
+        try {
+            unifiedServer.setJournal(journal);
+            unifiedServer.setRateLimiter(rateLimiter());
+            unifiedServer.setSlowConsumerGuard(slowConsumerGuard(UnifiedServer.BUS_NAME), config.wsSlowCheckMs);
+            unifiedServer.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Error al iniciar el servidor unificado", e);
+            unifiedServer = null;
+        }
+    }
+
+    private void startHttpServer() {
+        httpServer = new SimpleHttpServer(config.httpPort, httpRoutes);
+        httpServer.startServer();
+        Log.d(TAG, "Servidor HTTP embebido iniciado en http://127.0.0.1:{}/ ✅", config.httpPort);
+    }
+
+    private void startWsServer() {
+        wsServer = new SimpleWebSocketServer(config.wsPort, messageBus, config.compression,
+                config.wsDecoderCount, config.wsWorkerCount);
+        wsServer.setJournal(journal);
+        wsServer.setRateLimiter(rateLimiter());
+        wsServer.setSlowConsumerGuard(slowConsumerGuard(SimpleWebSocketServer.BUS_NAME), config.wsSlowCheckMs);
+        wsServer.start();
+        Log.d(TAG, "Servidor WebSocket embebido iniciado en ws://127.0.0.1:{}/ ✅", config.wsPort);
+    }
+
+    /** Rutas con el contenido de los mensajes: según http.debugEndpoints, solo desde este equipo o ninguna. */
+    private void addDebugRoute(String path, HttpHandler handler) {
+        switch (config.debugEndpoints) {
+            case OFF:
+                return;
+            case LOOPBACK:
+                httpRoutes.add("GET", path, HttpRoutes.loopbackOnly(handler));
+                return;
+            default:
+                httpRoutes.add("GET", path, handler);
+        }
+    }
+
+    /** null sin ningún límite configurado: los servidores no pasan por el limitador. */
+    private RateLimiter rateLimiter() {
+        if (config.wsRateMessagesPerSec <= 0 && config.wsRateBytesPerSec <= 0
+                && config.wsRateGlobalMessagesPerSec <= 0 && config.wsRateGlobalBytesPerSec <= 0) {
+            return null;
+        }
+        return new RateLimiter(config.wsRateMessagesPerSec, config.wsRateBytesPerSec,
+                config.wsRateGlobalMessagesPerSec, config.wsRateGlobalBytesPerSec,
+                config.wsRatePolicy, config.wsRateMaxDelayMs);
+    }
+
+    private SlowConsumerGuard slowConsumerGuard(String server) {
+        return new SlowConsumerGuard(config.wsSlowPolicy, config.wsSlowSocketBytes,
+                config.wsSlowHighWaterBytes, config.wsSlowMaxLagMs, metrics, server);
+    }
+
+    // ======== Bus en proceso ========
+
+    private void onBusMessage(MessageBus.Message message) {
+        if (message.isBinary()) {
+            journal(MessageJournal.Direction.IN, message.origin, message.data);
+            listener.onBinary(message.origin, message.data);
+            if (!isSelfUrl(wsUrl)) {
+                enqueueOutbound(ByteString.of(message.data.duplicate()));
+            }
+            return;
+        }
+        journal(MessageJournal.Direction.IN, message.origin, message.text);
+        listener.onMessage(message.text);
+        // Solo se reenvía por socket a un servidor remoto; el local ya lo recibió por el bus
+        if (!isSelfUrl(wsUrl)) {
+            enqueueOutbound(message.text);
+        }
+    }
+
+    // ======== Envío ========
+
+    /**
+     * Encola el mensaje y lo envía en cuanto sea posible. Sin conexión queda
+     * guardado y se envía en orden al reconectar.
+     *
+     * @return false si la cola de salida lo rechazó por estar llena
+     */
+    public boolean sendMessage(String message) {
+        journal(MessageJournal.Direction.OUT, BUS_NAME, message);
+        if (usesInProcessTransport()) {
+            return messageBus.publish(BUS_NAME, message);
+        }
+        return enqueueOutbound(message);
+    }
+
+    /**
+     * Envía un payload binario. Hacia el servidor local viaja sin copia por el
+     * bus; hacia un socket se encola tal cual (ByteString es inmutable).
+     */
+    public boolean sendBinary(ByteString payload) {
+        journal(MessageJournal.Direction.OUT, BUS_NAME, payload.asByteBuffer());
+        if (usesInProcessTransport()) {
+            return messageBus.publishBinary(BUS_NAME, MessageBus.DEFAULT_TOPIC, payload.asByteBuffer());
+        }
+        return enqueueOutbound(payload);
+    }
+
+    /**
+     * Variante para buffers (p. ej. de {@link BufferPool}): envía los bytes entre
+     * position y limit. Al volver, el llamador puede reutilizar el buffer.
+     */
+    public boolean sendBinary(ByteBuffer payload) {
+        journal(MessageJournal.Direction.OUT, BUS_NAME, payload);
+        if (usesInProcessTransport()) {
+            return messageBus.publishBinary(BUS_NAME, MessageBus.DEFAULT_TOPIC, payload.asReadOnlyBuffer());
+        }
+        // OkHttp necesita un ByteString propio: única copia en el camino de salida
+        return enqueueOutbound(ByteString.of(payload.duplicate()));
+    }
+
+    /**
+     * Envía el payload en un {@link Envelope} con seq propio y el instante
+     * actual; el ECHO del servidor alimenta la latencia de eco. Es la forma
+     * de enviar de la app; {@link #sendMessage} queda para texto en bruto.
+     */
+    public boolean sendEnvelope(Envelope.Type type, String topic, ByteBuffer payload) {
+        if (usesInProcessTransport()) {
+            return sendEnvelopeInProcess(type, topic, payload);
+        }
+        ByteBuffer envelope = Envelope.encode(type, topic, envelopeSeq.incrementAndGet(),
+                System.currentTimeMillis(), payload);
+        return sendBinary(ByteString.of(envelope));
+    }
+
+    /**
+     * Por el bus no hace falta sobre: MESSAGE y PUBLISH se publican en su
+     * tópico y el resto se responde aquí como lo haría el servidor. El nodo
+     * recibe todos los tópicos del bus, así que SUBSCRIBE/UNSUBSCRIBE solo
+     * se confirman.
+     */
+    private boolean sendEnvelopeInProcess(Envelope.Type type, String topic, ByteBuffer payload) {
+        String busTopic = topic.isEmpty() ? MessageBus.DEFAULT_TOPIC : topic;
+        switch (type) {
+            case MESSAGE:
+            case PUBLISH:
+                journal(MessageJournal.Direction.OUT, BUS_NAME, payload);
+                return messageBus.publishBinary(BUS_NAME, busTopic, payload.asReadOnlyBuffer());
+            case SUBSCRIBE:
+            case UNSUBSCRIBE:
+                listener.onBinary(BUS_NAME, Envelope.encode(Envelope.Type.ACK, busTopic,
+                        envelopeSeq.incrementAndGet(), System.currentTimeMillis(), ""));
+                return true;
+            case PING:
+                listener.onBinary(BUS_NAME, Envelope.encode(Envelope.Type.PONG, busTopic,
+                        envelopeSeq.incrementAndGet(), System.currentTimeMillis(), payload));
+                return true;
+            default:
+                Log.w(TAG, "Sobre {} no admitido por el bus en proceso", type);
+                return false;
+        }
+    }
+
+    /**
+     * Envía a uno de los destinos adicionales según upstream.strategy (sin
+     * cola propia: si ninguno está abierto se rechaza).
+     *
+     * @return false si no hay destinos o ninguno lo aceptó
+     */
+    public boolean sendUpstream(String message) {
+        EndpointManager manager = upstreams;
+        if (manager == null || !manager.send(message)) {
+            return false;
+        }
+        journal(MessageJournal.Direction.OUT, "upstream", message);
+        return true;
+    }
+
+    private boolean enqueueOutbound(Object message) {
+        boolean accepted = message instanceof ByteString
+                ? outboundQueue.offer((ByteString) message)
+                : outboundQueue.offer((String) message);
+        if (!accepted) {
+            Log.w(TAG, "Cola de salida llena, mensaje descartado ({} pendientes)", outboundQueue.depth());
+            listener.onOutboundRejected(outboundQueue.depth());
+            return false;
+        }
+        flushOutbound();
+        return true;
+    }
+
+    /**
+     * Pasa a OkHttp los mensajes pendientes en orden. Si su buffer está por
+     * encima del umbral se reintenta en breve; si send() devuelve false el
+     * socket se está cerrando y el mensaje se queda para la próxima conexión.
+     */
+    private void flushOutbound() {
+        synchronized (flushLock) {
+            WebSocket ws = webSocket;
+            if (ws == null || !connectionState.isOpen() || resumePending) {
+                return;
+            }
+            Object next;
+            while ((next = outboundQueue.peek()) != null) {
+                if (ws.queueSize() >= OKHTTP_HIGH_WATER_BYTES) {
+                    scheduler.removeCallbacks(flushRunnable);
+                    scheduler.postDelayed(flushRunnable, FLUSH_RETRY_DELAY);
+                    return;
+                }
+                // Con sesión, el mensaje queda guardado hasta su ACK aunque send() falle
+                Object frame = session != null ? wrapOutgoing(next) : next;
+                boolean sent = frame instanceof ByteString
+                        ? ws.send((ByteString) frame)
+                        : ws.send((String) frame);
+                if (!sent && session == null) {
+                    return;
+                }
+                clientMessagesOut.inc();
+                clientBytesOut.add(OutboundQueue.sizeOf(next));
+                outboundQueue.removeHead(next);
+                if (!sent) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // ======== Sesión reanudable ========
+
+    private Object wrapOutgoing(Object message) {
+        return message instanceof ByteString
+                ? ByteString.of(session.wrap(((ByteString) message).asByteBuffer()))
+                : session.wrap((String) message);
+    }
+
+    /** Quita el enmarcado de la sesión; null si el frame era de control o un duplicado. */
+    private String unwrapIncoming(String frame) {
+        if (frame.startsWith(ResumableSession.CMD_ACK)) {
+            session.onAck(ResumableSession.parseSeq(frame, ResumableSession.CMD_ACK));
+            return null;
+        }
+        if (frame.startsWith(ResumableSession.CMD_RESUMED)) {
+            onResumed(frame);
+            return null;
+        }
+        if (frame.startsWith(ResumableSession.CMD_SEQ)) {
+            return acceptIncoming(ResumableSession.parseSeq(frame, ResumableSession.CMD_SEQ))
+                    ? ResumableSession.payloadOf(frame) : null;
+        }
+        return frame;
+    }
+
+    /** "RESUMED <id> <último seq recibido> [NEW]": reenvía lo que el servidor no tiene y reanuda el envío. */
+    private void onResumed(String frame) {
+        String[] parts = frame.split(" ");
+        long serverReceived;
+        try {
+            serverReceived = Long.parseLong(parts[2]);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "RESUMED mal formado: {}", frame);
+            return;
+        }
+        if (parts.length > 3 && ResumableSession.FLAG_NEW.equals(parts[3])) {
+            // El servidor no conocía la sesión: sus seq empiezan de nuevo
+            session.resetReceive();
+        }
+        session.onAck(serverReceived);
+        int resent = 0;
+        synchronized (flushLock) {
+            WebSocket ws = webSocket;
+            if (ws != null) {
+                for (Object pending : session.unackedFrames()) {
+                    if (pending instanceof ByteBuffer) {
+                        ws.send(ByteString.of((ByteBuffer) pending));
+                    } else {
+                        ws.send((String) pending);
+                    }
+                    resent++;
+                }
+            }
+            resumePending = false;
+        }
+        Log.d(TAG, "Sesión {} reanudada; reenviados {} mensajes", session.id, resent);
+        flushOutbound();
+    }
+
+    /** Registra el seq entrante y programa el ACK por lotes; false si es duplicado. */
+    private boolean acceptIncoming(long seq) {
+        boolean fresh = seq > 0 && session.accept(seq);
+        if (!fresh) {
+            duplicatesIn.inc();
+        }
+        long ack = session.ackIfDue(false);
+        if (ack >= 0) {
+            sendAck(ack);
+        } else if (ackScheduled.compareAndSet(false, true)) {
+            scheduler.postDelayed(ackRunnable, ResumableSession.ACK_DELAY_MS);
+        }
+        return fresh;
+    }
+
+    private void sendDueAck() {
+        ackScheduled.set(false);
+        long ack = session.ackIfDue(true);
+        if (ack >= 0) {
+            sendAck(ack);
+        }
+    }
+
+    private void sendAck(long ack) {
+        WebSocket ws = webSocket;
+        if (ws != null && connectionState.isOpen()) {
+            ws.send(ResumableSession.ackFrame(ack));
+        }
+    }
+
+    public void setOutboundPolicy(OutboundQueue.OverflowPolicy policy) {
+        outboundQueue.setPolicy(policy, config.outboundBlockTimeoutMs);
+    }
+
+    /** Mensajes en la cola de salida propia (aún no entregados a OkHttp). */
+    public int getOutboundDepth() {
+        return outboundQueue.depth();
+    }
+
+    /**
+     * Bytes pendientes de enviar: los de la cola propia más los que OkHttp
+     * tiene en su buffer ({@link WebSocket#queueSize()}). Sirve a los
+     * productores para regular su ritmo.
+     */
+    public long queueSize() {
+        WebSocket ws = webSocket;
+        return outboundQueue.bytes() + (ws != null ? ws.queueSize() : 0L);
+    }
+
+    // ======== Conexión ========
+
+    public void setServerUrl(String url) {
+        this.wsUrl = url;
+        reconnect();
+    }
+
+    public String getServerUrl() {
+        return wsUrl;
+    }
+
+    public void reconnect() {
+        if (webSocket != null) {
+            try {
+                webSocket.close(NORMAL_CLOSURE, "Reconexión manual");
+            } catch (Exception ignored) {}
+            webSocket = null;
+        }
+        activeListener = null;
+        connectionState.moveTo(ConnectionState.State.IDLE);
+        reconnectScheduler.cancel();
+        stopHeartbeat();
+        if (usesInProcessTransport()) {
+            connectInProcess();
+        } else {
+            reconnectScheduler.connectNow();
+        }
+    }
+
+    /**
+     * Fuerza el uso del socket loopback (OkHttp → servidor WS propio) en vez
+     * del bus en proceso cuando la URL apunta al propio dispositivo.
+     */
+    public void setLoopbackTransport(boolean enabled) {
+        if (loopbackTransport != enabled) {
+            loopbackTransport = enabled;
+            reconnect();
+        }
+    }
+
+    /** Ficheros estáticos a servir por HTTP en lugar de assets.dir; llamar antes de start(). */
+    public void setAssetSource(AssetHandler.Source source) {
+        this.assetSource = source;
+    }
+
+    public boolean isConnected() {
+        return connectionState.isOpen() || usesInProcessTransport();
+    }
+
+    /** Estado del socket del cliente (IDLE también en modo en proceso). */
+    public ConnectionState.State getConnectionState() {
+        return connectionState.get();
+    }
+
+    // ======== Acceso a componentes ========
+
+    public MessageBus getMessageBus() {
+        return messageBus;
+    }
+
+    public HttpRoutes getHttpRoutes() {
+        return httpRoutes;
+    }
+
+    /** Destinos adicionales con su estado y salud, o null si no hay upstream.urls. */
+    public EndpointManager getUpstreams() {
+        return upstreams;
+    }
+
+    /** Cliente OkHttp del nodo, para compartir dispatcher y pool en vez de crear otro. */
+    public OkHttpClient getHttpClient() {
+        return client;
+    }
+
+    /** Estadísticas de reconexión: intentos, esperas y latencia de conexión. */
+    public ReconnectScheduler getReconnectStats() {
+        return reconnectScheduler;
+    }
+
+    /**
+     * Publica un mensaje a los clientes del servidor WS embebido suscritos al tópico.
+     * @return número de clientes que lo recibieron
+     */
+    public int publish(String topic, String message) {
+        if (unifiedServer != null) {
+            return unifiedServer.publish(topic, message);
+        }
+        return wsServer != null ? wsServer.publish(topic, message) : 0;
+    }
+
+    // Mensaje de HTTP para la UI y los clientes WS (vía bus)
+    public void notifyFromHttp(String msg) {
+        messageBus.publish(BUS_HTTP, msg);
+    }
+
+    // ======== Diario ========
+
+    private void openJournal() {
+        if (config.journalDir == null) {
+            return;
+        }
+        try {
+            journal = new MessageJournal(config.journalDir, config.journalSegmentBytes,
+                    config.journalRetentionBytes, config.journalRetentionAgeMs, config.journalFlushIntervalMs);
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo abrir el diario en {}, se sigue sin él", config.journalDir, e);
+        }
+    }
+
+    private void journal(MessageJournal.Direction direction, String source, String text) {
+        MessageJournal j = journal;
+        if (j != null) {
+            j.append(direction, source, text);
+        }
+    }
+
+    private void journal(MessageJournal.Direction direction, String source, ByteBuffer data) {
+        MessageJournal j = journal;
+        if (j != null) {
+            j.append(direction, source, data);
+        }
+    }
+
+    /** Diario de mensajes, o null si está desactivado. */
+    public MessageJournal getJournal() {
+        return journal;
+    }
+
+    // ======== Métricas ========
+
+    private void registerMetrics() {
+        metrics.gauge("ws_client_send_queue_depth",
+                "Mensajes en la cola de salida propia", null, outboundQueue::depth);
+        metrics.gauge("ws_client_send_queue_bytes",
+                "Bytes pendientes de enviar (cola propia + buffer de OkHttp)", null, this::queueSize);
+        metrics.counter("ws_client_send_queue_dropped_total",
+                "Mensajes descartados por la política de desbordamiento", null, outboundQueue::droppedCount);
+        metrics.counter("log_ring_dropped_total",
+                "Entradas de log descartadas por anillo lleno", null, Log::dropped);
+        metrics.gauge("ws_client_connected",
+                "1 si el cliente está conectado (o en proceso)", null, () -> isConnected() ? 1 : 0);
+    }
+}
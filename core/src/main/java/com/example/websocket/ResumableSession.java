@@ -0,0 +1,218 @@
+package com.example.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estado de una sesión reanudable en un extremo (cliente o servidor): números
+ * de secuencia de salida con los mensajes aún sin confirmar, y ventana de
+ * recepción para descartar duplicados. Es opcional; sin ella el protocolo es
+ * el de siempre.
+ *
+ * Protocolo (frames de texto de control, sin secuencia):
+ * <ul>
+ *     <li>cliente → {@code RESUME <id> <último seq recibido>} tras cada conexión;</li>
+ *     <li>servidor → {@code RESUMED <id> <último seq recibido> [NEW]}; NEW si
+ *     no conocía la sesión (el cliente reinicia su ventana de recepción);</li>
+ *     <li>datos: {@code SEQ <n> <mensaje>}; los binarios llevan 8 bytes de seq
+ *     delante del payload;</li>
+ *     <li>{@code ACK <n>}: acumulativo, cada {@link #ACK_EVERY} mensajes o a
+ *     los {@link #ACK_DELAY_MS} ms, nunca uno por mensaje.</li>
+ * </ul>
+ * Al reanudar cada extremo reenvía lo no confirmado por el otro y el receptor
+ * descarta lo que ya había entregado: entrega exactamente una vez mientras
+ * la sesión siga viva en ambos lados.
+ */
+public final class ResumableSession {
+
+    private static final String TAG = "ResumableSession";
+
+    static final String CMD_RESUME = "RESUME ";
+    static final String CMD_RESUMED = "RESUMED ";
+    static final String CMD_SEQ = "SEQ ";
+    static final String CMD_ACK = "ACK ";
+    static final String FLAG_NEW = "NEW";
+
+    static final int ACK_EVERY = 32;
+    static final long ACK_DELAY_MS = 100L;
+    /** Seqs por delante del último contiguo que se aceptan fuera de orden. */
+    static final int WINDOW = 1024;
+    static final int SEQ_HEADER = 8;
+
+    public final String id;
+    private final int maxUnacked;
+
+    // Salida: seq asignado y frames ya enmarcados pendientes de ACK
+    private long nextSeq = 1;
+    private final ArrayDeque<Pending> unacked = new ArrayDeque<>();
+    private long droppedUnacked;
+
+    // Entrada: todo ≤ contiguous entregado; bits para los que llegan por delante
+    private long contiguous = -1;              // -1 = aún sin anclar
+    private final long[] seen = new long[WINDOW / 64];
+    private long lastAckSent;
+
+    public ResumableSession(String id, int maxUnacked) {
+        this.id = id;
+        this.maxUnacked = maxUnacked;
+    }
+
+    // ======== Salida ========
+
+    /** Asigna seq al mensaje y lo guarda hasta su ACK; devuelve el frame a enviar. */
+    public synchronized String wrap(String text) {
+        long seq = nextSeq++;
+        String frame = CMD_SEQ + seq + " " + text;
+        remember(seq, frame);
+        return frame;
+    }
+
+    /** Variante binaria: copia los bytes entre position y limit tras la cabecera de seq. */
+    public synchronized ByteBuffer wrap(ByteBuffer data) {
+        long seq = nextSeq++;
+        ByteBuffer frame = ByteBuffer.allocate(SEQ_HEADER + data.remaining());
+        frame.putLong(seq).put(data.duplicate()).flip();
+        remember(seq, frame.asReadOnlyBuffer());
+        return frame;
+    }
+
+    private void remember(long seq, Object frame) {
+        unacked.addLast(new Pending(seq, frame));
+        if (unacked.size() > maxUnacked) {
+            // Memoria acotada: lo más antiguo ya no se podrá reenviar
+            unacked.removeFirst();
+            droppedUnacked++;
+        }
+    }
+
+    /** El otro extremo confirmó todo hasta seq (incluido). */
+    public synchronized void onAck(long seq) {
+        while (!unacked.isEmpty() && unacked.peekFirst().seq <= seq) {
+            unacked.removeFirst();
+        }
+    }
+
+    /** Frames sin confirmar, en orden (String o ByteBuffer), para reenviar al reanudar. */
+    public synchronized List<Object> unackedFrames() {
+        List<Object> frames = new ArrayList<>(unacked.size());
+        for (Pending pending : unacked) {
+            frames.add(pending.frame instanceof ByteBuffer ? ((ByteBuffer) pending.frame).duplicate() : pending.frame);
+        }
+        return frames;
+    }
+
+    public synchronized int unackedCount() {
+        return unacked.size();
+    }
+
+    /** Mensajes sin confirmar descartados por superar maxUnacked. */
+    public synchronized long droppedUnacked() {
+        return droppedUnacked;
+    }
+
+    // ======== Entrada ========
+
+    /**
+     * Registra la llegada de seq.
+     *
+     * @return true si hay que entregarlo; false si es duplicado o está fuera de la ventana
+     */
+    public synchronized boolean accept(long seq) {
+        if (contiguous < 0) {
+            // Sesión nueva en este extremo: se ancla en lo primero que llega
+            contiguous = seq - 1;
+            lastAckSent = contiguous;
+        }
+        if (seq <= contiguous) {
+            return false;
+        }
+        if (seq - contiguous > WINDOW) {
+            Log.w(TAG, "Seq {} fuera de la ventana de {} (contiguo {})", seq, id, contiguous);
+            return false;
+        }
+        int slot = (int) (seq % WINDOW);
+        if ((seen[slot >>> 6] & (1L << slot)) != 0) {
+            return false;
+        }
+        seen[slot >>> 6] |= 1L << slot;
+        // Avanza el contiguo sobre los que ya habían llegado por delante
+        while (true) {
+            int next = (int) ((contiguous + 1) % WINDOW);
+            if ((seen[next >>> 6] & (1L << next)) == 0) {
+                break;
+            }
+            seen[next >>> 6] &= ~(1L << next);
+            contiguous++;
+        }
+        return true;
+    }
+
+    /** Último seq hasta el que se ha recibido todo (0 si nada). */
+    public synchronized long lastReceived() {
+        return Math.max(contiguous, 0);
+    }
+
+    /**
+     * ACK a enviar ahora, o -1. Sin force solo si ya se acumularon
+     * {@link #ACK_EVERY} mensajes sin confirmar.
+     */
+    public synchronized long ackIfDue(boolean force) {
+        long received = lastReceived();
+        if (received <= lastAckSent || (!force && received - lastAckSent < ACK_EVERY)) {
+            return -1;
+        }
+        lastAckSent = received;
+        return received;
+    }
+
+    /** El otro extremo perdió la sesión: lo siguiente que llegue vuelve a anclar la ventana. */
+    public synchronized void resetReceive() {
+        contiguous = -1;
+        lastAckSent = 0;
+        Arrays.fill(seen, 0L);
+    }
+
+    // ======== Frames de control ========
+
+    static String resumeFrame(String id, long lastReceived) {
+        return CMD_RESUME + id + " " + lastReceived;
+    }
+
+    static String resumedFrame(String id, long lastReceived, boolean created) {
+        return CMD_RESUMED + id + " " + lastReceived + (created ? " " + FLAG_NEW : "");
+    }
+
+    static String ackFrame(long seq) {
+        return CMD_ACK + seq;
+    }
+
+    /** Seq de un frame "SEQ n ..." o "ACK n", o -1 si está mal formado. */
+    static long parseSeq(String frame, String command) {
+        int start = command.length();
+        int end = frame.indexOf(' ', start);
+        try {
+            return Long.parseLong(end < 0 ? frame.substring(start) : frame.substring(start, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Mensaje de un frame "SEQ n mensaje". */
+    static String payloadOf(String frame) {
+        int sep = frame.indexOf(' ', CMD_SEQ.length());
+        return sep < 0 ? "" : frame.substring(sep + 1);
+    }
+
+    private static final class Pending {
+        final long seq;
+        final Object frame;
+
+        Pending(long seq, Object frame) {
+            this.seq = seq;
+            this.frame = frame;
+        }
+    }
+}
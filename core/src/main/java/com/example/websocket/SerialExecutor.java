@@ -0,0 +1,70 @@
+package com.example.websocket;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carril de una conexión: ejecuta sus tareas en orden, una cada vez, sobre un
+ * pool compartido. Conexiones distintas avanzan en paralelo y una tarea lenta
+ * solo retrasa a su propia conexión (no hay carriles compartidos por hash).
+ */
+final class SerialExecutor implements Executor {
+
+    private static final String TAG = "SerialExecutor";
+
+    private final Executor pool;
+    private final String name;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    SerialExecutor(Executor pool, String name) {
+        this.pool = pool;
+        this.name = name;
+    }
+
+    /** Pool de hilos daemon para los carriles. */
+    static ExecutorService newWorkerPool(String threadPrefix, int threads) {
+        AtomicInteger threadIds = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, threadPrefix + "-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+            try {
+                pool.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Pool parado: el servidor se está cerrando
+                running.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error procesando {}", name, e);
+            }
+        }
+        running.set(false);
+        // Una tarea pudo llegar entre el último poll y liberar el turno
+        schedule();
+    }
+}
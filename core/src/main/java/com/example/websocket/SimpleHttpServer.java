@@ -0,0 +1,106 @@
+package com.example.websocket;
+
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Servidor HTTP basado en NanoHTTPD (un hilo por conexión). Las rutas se
+ * resuelven en {@link HttpRoutes}, compartidas con {@link UnifiedServer}.
+ */
+public class SimpleHttpServer extends NanoHTTPD {
+
+    private static final String TAG = "SimpleHttpServer";
+    private static final Log.Sampler REQUEST_LOG = new Log.Sampler();
+    private final HttpHandler routes;
+
+    public SimpleHttpServer(int port) {
+        this(port, new HttpRoutes());
+    }
+
+    public SimpleHttpServer(int port, HttpHandler routes) {
+        super(port);
+        this.routes = routes;
+    }
+
+    public void startServer() {
+        try {
+            start(SOCKET_READ_TIMEOUT, false);
+            Log.d(TAG, "Servidor HTTP iniciado en http://127.0.0.1:{}/ ✅", getListeningPort());
+        } catch (Exception e) {
+            Log.e(TAG, "Error al iniciar servidor HTTP", e);
+        }
+    }
+
+    public void stopServer() {
+        stop();
+        Log.d(TAG, "Servidor HTTP detenido 🛑");
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        if (REQUEST_LOG.sample()) Log.d(TAG, "Petición recibida: {}", session.getUri());
+        HttpResponse response;
+        try {
+            response = routes.handle(toRequest(session));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error en {}", session.getUri(), e);
+            response = HttpResponse.text(500, "Error interno");
+        }
+        return toNanoResponse(response);
+    }
+
+    /**
+     * NanoHTTPD comprimiría todo texto/JSON al vuelo (chunked). No se hace con
+     * lo que ya va comprimido (.gz/.br de AssetHandler), con rangos (206: el
+     * Content-Range describe bytes sin comprimir), con 304 ni con nada que
+     * lleve ETag: el ETag fuerte es el de la variante sin comprimir.
+     */
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        int status = r.getStatus() != null ? r.getStatus().getRequestStatus() : 200;
+        return status != 206 && status != 304
+                && r.getHeader("content-encoding") == null
+                && r.getHeader("content-range") == null
+                && r.getHeader("etag") == null
+                && super.useGzipWhenAccepted(r);
+    }
+
+    private static HttpRequest toRequest(IHTTPSession session) {
+        // NanoHTTPD ya entrega los nombres de cabecera en minúsculas
+        Map<String, String> headers = session.getHeaders();
+        long contentLength = -1;
+        String length = headers.get("content-length");
+        if (length != null) {
+            try {
+                contentLength = Long.parseLong(length.trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        return new HttpRequest(session.getMethod().name(), session.getUri(),
+                session.getQueryParameterString(), headers, session.getInputStream(),
+                contentLength, session.getRemoteIpAddress());
+    }
+
+    private static Response toNanoResponse(HttpResponse response) {
+        Response.IStatus status = Response.Status.lookup(response.status);
+        if (status == null) {
+            status = new Response.IStatus() {
+                @Override
+                public String getDescription() {
+                    return response.status + " " + HttpResponse.reason(response.status);
+                }
+
+                @Override
+                public int getRequestStatus() {
+                    return response.status;
+                }
+            };
+        }
+        Response nano = newFixedLengthResponse(status, response.contentType,
+                response.bodyStream(), response.bodyLength());
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            nano.addHeader(header.getKey(), header.getValue());
+        }
+        return nano;
+    }
+}
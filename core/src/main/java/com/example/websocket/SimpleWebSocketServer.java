@@ -0,0 +1,402 @@
+package com.example.websocket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Servidor WS basado en Java-WebSocket. La lógica de la app (pub/sub, bus,
+ * eco) vive en {@link WsSessionHandler}; los broadcast de
+ * {@link WebSocketServer} ya enmarcan una sola vez por draft.
+ *
+ * Los hilos decodificadores de Java-WebSocket solo decodifican: cada evento
+ * pasa al carril ({@link SerialExecutor}) de su conexión en un pool de
+ * workers, así un manejador lento no frena a las demás conexiones y se
+ * conserva el orden de cada cliente.
+ *
+ * Con un {@link RateLimiter} cada mensaje pasa por sus cubos en el hilo
+ * decodificador, antes de llegar al carril: lo que supera el límite no
+ * genera trabajo (bus, eco, UI) y, con DELAY, se deja de leer de ese socket.
+ *
+ * Con un {@link SlowConsumerGuard} todo lo que sale pasa por el outbox de
+ * la conexión: un cliente que no lee no hace crecer sin límite la cola de
+ * salida de Java-WebSocket.
+ */
+public class SimpleWebSocketServer extends WebSocketServer implements WsSessionHandler.Peers<WebSocket> {
+
+    private static final String TAG = "SimpleWebSocketServer";
+    private static final Log.Sampler RX_LOG = new Log.Sampler();
+    private static final Log.Sampler LIMIT_LOG = new Log.Sampler();
+
+    // Nombre con el que el servidor se registra en el bus
+    static final String BUS_NAME = "ws-server";
+    // Por defecto Java-WebSocket usa un decodificador por núcleo; igual para los workers
+    static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final WsSessionHandler<WebSocket> handler;
+    private final ExecutorService workers;
+    // Límites de entrada (null = sin límites)
+    private volatile RateLimiter limiter;
+    // Salida hacia clientes lentos (null = sin control)
+    private volatile SlowConsumerGuard guard;
+    private ScheduledExecutorService outboxTimer;
+
+    // Métricas de los límites
+    private final Metrics.Counter limitDelayed;
+    private final Metrics.Counter limitDropped;
+    private final Metrics.Counter limitClosed;
+
+    /** Lo que cada conexión lleva como attachment. */
+    private static final class Peer {
+        final SerialExecutor lane;
+        final RateLimiter.Client limits;    // null si no hay límites
+        final SlowConsumerGuard.Outbox<Collection<Framedata>> outbox;    // null sin control de salida
+
+        Peer(SerialExecutor lane, RateLimiter.Client limits,
+             SlowConsumerGuard.Outbox<Collection<Framedata>> outbox) {
+            this.lane = lane;
+            this.limits = limits;
+            this.outbox = outbox;
+        }
+    }
+
+    public SimpleWebSocketServer(int port, MessageBus bus) {
+        this(port, bus, CompressionConfig.DEFAULT);
+    }
+
+    public SimpleWebSocketServer(int port, MessageBus bus, CompressionConfig compression) {
+        this(port, bus, compression, DEFAULT_THREADS, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param decoderCount hilos de Java-WebSocket que leen y decodifican frames
+     * @param workerCount  hilos donde corre la lógica de la app
+     */
+    public SimpleWebSocketServer(int port, MessageBus bus, CompressionConfig compression,
+                                 int decoderCount, int workerCount) {
+        super(new InetSocketAddress(port), decoderCount, compression.serverDrafts());
+        this.handler = new WsSessionHandler<>(BUS_NAME, bus, this);
+        this.workers = SerialExecutor.newWorkerPool("ws-worker", workerCount);
+        String labels = "server=\"" + BUS_NAME + "\",action=";
+        Metrics metrics = Metrics.shared();
+        String help = "Mensajes WS entrantes por encima del límite";
+        limitDelayed = metrics.counter("ws_server_rate_limited_total", help, labels + "\"delayed\"");
+        limitDropped = metrics.counter("ws_server_rate_limited_total", help, labels + "\"dropped\"");
+        limitClosed = metrics.counter("ws_server_rate_limited_total", help, labels + "\"closed\"");
+    }
+
+    /** Límites de mensajes/bytes por conexión y globales; llamar antes de start(). */
+    public void setRateLimiter(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Control de clientes lentos; llamar antes de start(). Cada checkMs se
+     * vacían los outbox según el cliente va leyendo.
+     */
+    public void setSlowConsumerGuard(SlowConsumerGuard guard, long checkMs) {
+        this.guard = guard;
+        outboxTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ws-outbox");
+            t.setDaemon(true);
+            return t;
+        });
+        outboxTimer.scheduleWithFixedDelay(this::pollOutboxes, checkMs, checkMs, TimeUnit.MILLISECONDS);
+        String labels = "server=\"" + BUS_NAME + "\"";
+        Metrics metrics = Metrics.shared();
+        metrics.gauge("ws_server_outbound_buffered_bytes", "Bytes pendientes de escribir a los clientes WS",
+                labels, () -> {
+                    long total = 0;
+                    for (WebSocket conn : getConnections()) {
+                        Peer peer = conn.getAttachment();
+                        total += peer != null && peer.outbox != null ? peer.outbox.bufferedBytes() : 0;
+                    }
+                    return total;
+                });
+        metrics.gauge("ws_server_outbound_lag_ms", "Edad del frame retenido más antiguo entre los clientes WS",
+                labels, () -> {
+                    long now = System.nanoTime();
+                    long max = 0;
+                    for (WebSocket conn : getConnections()) {
+                        Peer peer = conn.getAttachment();
+                        max = peer != null && peer.outbox != null ? Math.max(max, peer.outbox.lagNanos(now)) : max;
+                    }
+                    return TimeUnit.NANOSECONDS.toMillis(max);
+                });
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        SerialExecutor lane = new SerialExecutor(workers, String.valueOf(conn.getRemoteSocketAddress()));
+        RateLimiter l = limiter;
+        SlowConsumerGuard g = guard;
+        conn.setAttachment(new Peer(lane, l != null ? l.newClient() : null,
+                g != null ? g.newOutbox(new ConnSocket(conn)) : null));
+        lane.execute(() -> {
+            Log.d(TAG, "Cliente conectado: {}", conn.getRemoteSocketAddress());
+            handler.onOpen(conn);
+        });
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        dispatch(conn, () -> {
+            handler.onClose(conn);
+            Log.d(TAG, "Cliente desconectado: {}", conn.getRemoteSocketAddress());
+        });
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        if (!admit(conn, message)) {
+            return;
+        }
+        dispatch(conn, () -> {
+            if (RX_LOG.sample()) Log.d(TAG, "Mensaje recibido: {}", message);
+            handler.onText(conn, message);
+        });
+    }
+
+    /**
+     * Frames binarios: el buffer de Java-WebSocket (propio de cada frame) se
+     * pasa tal cual al bus, sin copia ni conversión a String.
+     */
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        if (!admit(conn, message.remaining())) {
+            return;
+        }
+        dispatch(conn, () -> {
+            if (RX_LOG.sample()) Log.d(TAG, "Mensaje binario recibido: {} bytes", message.remaining());
+            handler.onBinary(conn, message);
+        });
+    }
+
+    /** Pasa el evento al carril de la conexión; sin carril (handshake fallido) se ejecuta aquí. */
+    private void dispatch(WebSocket conn, Runnable task) {
+        Peer peer = conn != null ? conn.getAttachment() : null;
+        if (peer != null) {
+            peer.lane.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    // ======== Límites de entrada ========
+
+    private boolean admit(WebSocket conn, String message) {
+        RateLimiter l = limiter;
+        if (l == null) {
+            return true;
+        }
+        return admit(conn, l.limitsBytes() ? OutboundQueue.utf8Length(message) : 0);
+    }
+
+    /**
+     * Aplica los límites en el hilo decodificador. Con DELAY el hilo espera:
+     * Java-WebSocket deja de leer de este socket (y de los que comparten
+     * decodificador) y TCP frena al cliente.
+     *
+     * @return false si el mensaje se descarta o se cerró la conexión
+     */
+    private boolean admit(WebSocket conn, long bytes) {
+        RateLimiter l = limiter;
+        Peer peer = l != null ? conn.getAttachment() : null;
+        if (peer == null || peer.limits == null) {
+            return true;
+        }
+        long waitNanos = l.admit(peer.limits, bytes);
+        if (waitNanos == 0) {
+            return true;
+        }
+        if (waitNanos > 0) {
+            limitDelayed.inc();
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (l.policy() == RateLimiter.Policy.CLOSE) {
+            limitClosed.inc();
+            if (conn.isOpen()) {
+                Log.w(TAG, "Límite superado, se cierra {}", conn.getRemoteSocketAddress());
+                conn.close(RateLimiter.CLOSE_POLICY_VIOLATION, "Límite de mensajes superado");
+            }
+        } else {
+            limitDropped.inc();
+            if (LIMIT_LOG.sample()) Log.d(TAG, "Límite superado, mensaje descartado de {}",
+                    conn.getRemoteSocketAddress());
+        }
+        return false;
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        Log.e(TAG, "Error WS: {}", ex.getMessage(), ex);
+    }
+
+    @Override
+    public void stop(int timeout) throws InterruptedException {
+        handler.close();
+        if (outboxTimer != null) {
+            outboxTimer.shutdownNow();
+        }
+        super.stop(timeout);
+        workers.shutdown();
+    }
+
+    @Override
+    public void onStart() {
+        Log.d(TAG, "Servidor WebSocket iniciado en ws://127.0.0.1:8889 ✅");
+    }
+
+    // ======== Pub/Sub ========
+
+    /** Guarda en el diario lo que este servidor recibe y envía. */
+    public void setJournal(MessageJournal journal) {
+        handler.setJournal(journal);
+    }
+
+    public int publish(String topic, String message) {
+        return handler.publish(topic, message);
+    }
+
+    public int publish(String topic, ByteBuffer data) {
+        return handler.publish(topic, data);
+    }
+
+    public TopicRegistry<WebSocket> getTopics() {
+        return handler.getTopics();
+    }
+
+    @Override
+    public void send(WebSocket conn, String text) {
+        Peer peer = guard != null ? conn.getAttachment() : null;
+        if (peer == null || peer.outbox == null) {
+            conn.send(text);
+            return;
+        }
+        peer.outbox.offer(null, conn.getDraft().createFrames(text, false), OutboundQueue.utf8Length(text));
+    }
+
+    @Override
+    public void broadcast(String text, Collection<WebSocket> conns) {
+        deliver(null, text, conns);
+    }
+
+    @Override
+    public void broadcast(ByteBuffer data, Collection<WebSocket> conns) {
+        deliver(null, data, conns);
+    }
+
+    @Override
+    public void deliver(String topic, String text, Collection<WebSocket> conns) {
+        if (guard == null) {
+            super.broadcast(text, conns);
+            return;
+        }
+        write(topic, text, null, OutboundQueue.utf8Length(text), conns);
+    }
+
+    @Override
+    public void deliver(String topic, ByteBuffer data, Collection<WebSocket> conns) {
+        if (guard == null) {
+            super.broadcast(data, conns);
+            return;
+        }
+        write(topic, null, data, data.remaining(), conns);
+    }
+
+    // ======== Clientes lentos ========
+
+    /**
+     * Como el broadcast de {@link WebSocketServer} (frames creados una vez
+     * por draft), pero cada conexión recibe a través de su outbox.
+     */
+    private void write(String topic, String text, ByteBuffer data, long bytes, Collection<WebSocket> conns) {
+        Map<Draft, List<Framedata>> framesByDraft = new HashMap<>();
+        for (WebSocket conn : conns) {
+            Draft draft = conn.getDraft();
+            List<Framedata> frames = framesByDraft.get(draft);
+            if (frames == null) {
+                frames = text != null ? draft.createFrames(text, false) : draft.createFrames(data, false);
+                framesByDraft.put(draft, frames);
+            }
+            Peer peer = conn.getAttachment();
+            try {
+                if (peer == null || peer.outbox == null) {
+                    conn.sendFrame(frames);
+                } else {
+                    peer.outbox.offer(topic, frames, bytes);
+                }
+            } catch (WebsocketNotConnectedException e) {
+                // Se cerró mientras se enviaba: su onClose ya está en camino
+            }
+        }
+    }
+
+    private void pollOutboxes() {
+        long now = System.nanoTime();
+        for (WebSocket conn : getConnections()) {
+            Peer peer = conn.getAttachment();
+            if (peer != null && peer.outbox != null) {
+                try {
+                    peer.outbox.poll(now);
+                } catch (WebsocketNotConnectedException e) {
+                    // Igual que arriba
+                }
+            }
+        }
+    }
+
+    /** El socket de una conexión de Java-WebSocket visto desde su outbox. */
+    private static final class ConnSocket implements SlowConsumerGuard.Socket<Collection<Framedata>> {
+        private final WebSocket conn;
+
+        ConnSocket(WebSocket conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public long backlogBytes() {
+            if (!(conn instanceof WebSocketImpl)) {
+                return 0;
+            }
+            long bytes = 0;
+            for (ByteBuffer buffer : ((WebSocketImpl) conn).outQueue) {
+                bytes += buffer.remaining();
+            }
+            return bytes;
+        }
+
+        @Override
+        public void write(Collection<Framedata> frames) {
+            conn.sendFrame(frames);
+        }
+
+        /** Sin handshake de cierre: el frame de cierre quedaría detrás de lo que no lee. */
+        @Override
+        public void disconnect(int code, String reason) {
+            Log.w(TAG, "{}, se desconecta {}", reason, conn.getRemoteSocketAddress());
+            conn.closeConnection(code, reason);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.websocket;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protección frente a clientes WS que leen despacio. Sin ella cada send va
+ * directo a la cola de salida de la librería, que crece sin límite mientras
+ * el cliente no lea, hasta agotar el heap.
+ *
+ * Cada conexión tiene un {@link Outbox}: mientras lo que la librería aún no
+ * ha escrito en el socket cabe en {@code socketBytes} el frame pasa directo;
+ * si no, espera en el outbox, donde se aplica la {@link Policy} al superar
+ * {@code highWaterBytes}. {@link Outbox#poll} (periódico) vuelve a medir el
+ * socket, vacía el outbox según hay sitio y desconecta a quien lleve más de
+ * {@code maxLagMs} sin avanzar.
+ */
+public final class SlowConsumerGuard {
+
+    /** Qué hacer cuando lo pendiente de una conexión supera highWaterBytes. */
+    public enum Policy {
+        /** Se queda solo el último valor de cada clave (tópico); si aun así no cabe, DROP_OLDEST. */
+        CONFLATE,
+        /** Se descartan los pendientes más antiguos. */
+        DROP_OLDEST,
+        /** Se desconecta al cliente. */
+        DISCONNECT
+    }
+
+    /** Código de cierre WS 1013 (try again later) con el que se desconecta a un cliente lento. */
+    static final int CLOSE_TRY_AGAIN_LATER = 1013;
+
+    /** Lo que cada servidor sabe hacer con el socket de una conexión. */
+    public interface Socket<F> {
+        /** Bytes que la librería tiene encolados sin escribir todavía. */
+        long backlogBytes();
+
+        void write(F frames);
+
+        void disconnect(int code, String reason);
+    }
+
+    private final Policy policy;
+    private final long socketBytes;
+    private final long highWaterBytes;
+    private final long maxLagNanos;
+
+    // Eventos de clientes lentos
+    private final Metrics.Counter slow;
+    private final Metrics.Counter conflated;
+    private final Metrics.Counter dropped;
+    private final Metrics.Counter disconnected;
+
+    /**
+     * @param socketBytes    lo que se deja en la cola de la librería antes de retener frames
+     * @param highWaterBytes tope de lo retenido en cada outbox
+     * @param maxLagMs       edad máxima del pendiente más antiguo; 0 = sin límite
+     */
+    public SlowConsumerGuard(Policy policy, long socketBytes, long highWaterBytes, long maxLagMs,
+                             Metrics metrics, String server) {
+        this.policy = policy;
+        this.socketBytes = Math.max(1, socketBytes);
+        this.highWaterBytes = Math.max(1, highWaterBytes);
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMs);
+        String labels = "server=\"" + server + "\",event=";
+        String help = "Eventos de clientes WS que leen más despacio de lo que se les envía";
+        slow = metrics.counter("ws_server_slow_consumer_total", help, labels + "\"slow\"");
+        conflated = metrics.counter("ws_server_slow_consumer_total", help, labels + "\"conflated\"");
+        dropped = metrics.counter("ws_server_slow_consumer_total", help, labels + "\"dropped\"");
+        disconnected = metrics.counter("ws_server_slow_consumer_total", help, labels + "\"disconnected\"");
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    public <F> Outbox<F> newOutbox(Socket<F> socket) {
+        return new Outbox<>(socket);
+    }
+
+    /** Un frame retenido; con CONFLATE se sustituye en su sitio por el más reciente de su clave. */
+    private static final class Pending<F> {
+        final String key;
+        final long enqueuedNanos;
+        F frames;
+        long bytes;
+
+        Pending(String key, F frames, long bytes, long enqueuedNanos) {
+            this.key = key;
+            this.frames = frames;
+            this.bytes = bytes;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * Salida de una conexión. Los frames se escriben en el socket con el lock
+     * tomado, así se conserva el orden aunque envíen varios hilos.
+     */
+    public final class Outbox<F> {
+        private final Socket<F> socket;
+        private final ArrayDeque<Pending<F>> pending = new ArrayDeque<>();
+        private final Map<String, Pending<F>> latest = new HashMap<>();
+        private long pendingBytes;
+        // Estimación (por exceso) de lo encolado en la librería: la última medida más lo escrito desde entonces
+        private long socketEstimate;
+        private boolean closed;
+
+        private Outbox(Socket<F> socket) {
+            this.socket = socket;
+        }
+
+        public boolean offer(String key, F frames, long bytes) {
+            return offer(key, frames, bytes, System.nanoTime());
+        }
+
+        /**
+         * Escribe el frame o lo retiene si el cliente va retrasado.
+         *
+         * @param key clave de conflación (el tópico de una entrega); null = no se fusiona
+         * @return false si el frame se descartó o la conexión se cerró por lenta
+         */
+        public boolean offer(String key, F frames, long bytes, long nowNanos) {
+            boolean accepted;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                if (pending.isEmpty()) {
+                    // Medir la cola de la librería solo cuando la estimación dice que está llena
+                    if (socketEstimate + bytes > socketBytes) {
+                        socketEstimate = socket.backlogBytes();
+                    }
+                    if (socketEstimate == 0 || socketEstimate + bytes <= socketBytes) {
+                        socket.write(frames);
+                        socketEstimate += bytes;
+                        return true;
+                    }
+                    slow.inc();
+                }
+                accepted = hold(key, frames, bytes, nowNanos);
+                if (accepted || policy != Policy.DISCONNECT) {
+                    return accepted;
+                }
+                close();
+            }
+            socket.disconnect(CLOSE_TRY_AGAIN_LATER, "Cliente lento: más de " + highWaterBytes + " bytes pendientes");
+            return false;
+        }
+
+        /**
+         * Vuelve a medir la cola de la librería, escribe lo retenido que ya
+         * cabe y desconecta si lo más antiguo lleva más de maxLagMs esperando.
+         */
+        public void poll(long nowNanos) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                socketEstimate = socket.backlogBytes();
+                Pending<F> head;
+                while ((head = pending.peekFirst()) != null
+                        && (socketEstimate == 0 || socketEstimate + head.bytes <= socketBytes)) {
+                    removeHead();
+                    socket.write(head.frames);
+                    socketEstimate += head.bytes;
+                }
+                if (head == null || maxLagNanos <= 0 || nowNanos - head.enqueuedNanos <= maxLagNanos) {
+                    return;
+                }
+                close();
+            }
+            socket.disconnect(CLOSE_TRY_AGAIN_LATER, "Cliente lento: sin leer en "
+                    + TimeUnit.NANOSECONDS.toMillis(maxLagNanos) + " ms");
+        }
+
+        /** Bytes pendientes: los retenidos más los que la librería tenía en la última medida. */
+        public synchronized long bufferedBytes() {
+            return pendingBytes + socketEstimate;
+        }
+
+        /** Edad del frame retenido más antiguo (0 si no hay). */
+        public synchronized long lagNanos(long nowNanos) {
+            Pending<F> head = pending.peekFirst();
+            return head == null ? 0 : nowNanos - head.enqueuedNanos;
+        }
+
+        public synchronized int pendingCount() {
+            return pending.size();
+        }
+
+        /** Debe llamarse con el lock tomado. */
+        private boolean hold(String key, F frames, long bytes, long nowNanos) {
+            if (policy == Policy.CONFLATE && key != null) {
+                Pending<F> previous = latest.get(key);
+                if (previous != null) {
+                    pendingBytes += bytes - previous.bytes;
+                    previous.frames = frames;
+                    previous.bytes = bytes;
+                    conflated.inc();
+                    return trim(previous);
+                }
+            }
+            Pending<F> item = new Pending<>(key, frames, bytes, nowNanos);
+            pending.addLast(item);
+            pendingBytes += bytes;
+            if (policy == Policy.CONFLATE && key != null) {
+                latest.put(key, item);
+            }
+            return trim(item);
+        }
+
+        /**
+         * Aplica el tope de lo retenido. Con DISCONNECT solo informa; en otro
+         * caso descarta desde el principio.
+         *
+         * @return false si {@code added} no llegó a quedarse (o hay que desconectar)
+         */
+        private boolean trim(Pending<F> added) {
+            if (pendingBytes <= highWaterBytes) {
+                return true;
+            }
+            if (policy == Policy.DISCONNECT) {
+                return false;
+            }
+            boolean kept = true;
+            while (pendingBytes > highWaterBytes && !pending.isEmpty()) {
+                kept &= removeHead() != added;
+                dropped.inc();
+            }
+            return kept;
+        }
+
+        private Pending<F> removeHead() {
+            Pending<F> head = pending.pollFirst();
+            pendingBytes -= head.bytes;
+            if (head.key != null && latest.get(head.key) == head) {
+                latest.remove(head.key);
+            }
+            return head;
+        }
+
+        private void close() {
+            closed = true;
+            pending.clear();
+            latest.clear();
+            pendingBytes = 0;
+            disconnected.inc();
+        }
+    }
+}
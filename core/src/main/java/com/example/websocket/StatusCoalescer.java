@@ -0,0 +1,87 @@
+package com.example.websocket;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrupa los cambios de estado antes de llegar a la UI: como mucho una
+ * entrega cada minIntervalMs, siempre la más reciente, y nada si no cambió
+ * respecto a la anterior. Una conexión que oscila (Conectando/Error/
+ * Conectando...) deja de reconstruir la notificación en cada transición.
+ *
+ * Las entregas van por el {@link TaskScheduler} (el hilo principal en la app).
+ */
+final class StatusCoalescer {
+
+    interface Sink {
+        void deliver(RelayNode.Status status, String detail);
+    }
+
+    private static final class Update {
+        final RelayNode.Status status;
+        final String detail;
+
+        Update(RelayNode.Status status, String detail) {
+            this.status = status;
+            this.detail = detail;
+        }
+    }
+
+    private final TaskScheduler scheduler;
+    private final long minIntervalMs;
+    private final Sink sink;
+    private final AtomicReference<Update> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable flushRunnable = this::flush;
+    private final LongAdder coalesced = new LongAdder();
+
+    // Lo escribe flush(); submit() lo lee desde cualquier hilo para calcular la espera
+    private volatile long lastDeliveredAtMs;
+    // Solo se toca en flush(), siempre en el hilo del planificador
+    private Update lastDelivered;
+
+    StatusCoalescer(TaskScheduler scheduler, long minIntervalMs, Sink sink) {
+        this.scheduler = scheduler;
+        this.minIntervalMs = minIntervalMs;
+        this.sink = sink;
+    }
+
+    /** Desde cualquier hilo; sustituye al cambio pendiente si aún no se entregó. */
+    void submit(RelayNode.Status status, String detail) {
+        if (pending.getAndSet(new Update(status, detail)) != null) {
+            coalesced.increment();
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            long wait = Math.max(0L, lastDeliveredAtMs + minIntervalMs - System.currentTimeMillis());
+            scheduler.postDelayed(flushRunnable, wait);
+        }
+    }
+
+    /** Cambios sustituidos por uno posterior antes de entregarse. */
+    long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    void cancel() {
+        scheduler.removeCallbacks(flushRunnable);
+        pending.set(null);
+        scheduled.set(false);
+    }
+
+    private void flush() {
+        scheduled.set(false);
+        Update update = pending.getAndSet(null);
+        if (update == null) {
+            return;
+        }
+        lastDeliveredAtMs = System.currentTimeMillis();
+        if (lastDelivered != null && lastDelivered.status == update.status
+                && Objects.equals(lastDelivered.detail, update.detail)) {
+            return;
+        }
+        lastDelivered = update;
+        sink.deliver(update.status, update.detail);
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.websocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cuerpo de una petición HTTP de {@link UnifiedServer} que el handler lee
+ * mientras llega: el hilo selector escribe con {@link #offer} y el worker lee
+ * como de cualquier InputStream.
+ *
+ * Solo se retiene una ventana fija; con la ventana llena el selector deja de
+ * leer del socket (TCP frena al cliente) y {@code onSpace} le avisa cuando el
+ * handler ha hecho sitio. Si el handler cierra el stream sin leerlo entero,
+ * lo que falte se descarta al llegar.
+ */
+final class StreamingBody extends InputStream {
+
+    private final byte[] window;
+    private final long readTimeoutNanos;
+    private final Runnable onSpace;
+
+    // Estado compartido entre selector y worker (con el lock del objeto)
+    private int head;
+    private int size;
+    private long toArrive;
+    private boolean abandoned;
+    private boolean failed;
+    private boolean waitingForSpace;
+
+    /**
+     * @param length        Content-Length: lo que falta por llegar del socket
+     * @param readTimeoutMs espera máxima del handler sin datos nuevos
+     * @param onSpace       se llama (desde el worker) cuando el selector puede volver a leer
+     */
+    StreamingBody(long length, int windowBytes, long readTimeoutMs, Runnable onSpace) {
+        this.window = new byte[windowBytes];
+        this.toArrive = length;
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMs);
+        this.onSpace = onSpace;
+    }
+
+    // ---- Selector ----
+
+    /**
+     * Copia de {@code src} lo que quepa y pertenezca al cuerpo.
+     *
+     * @return true si ya llegó el cuerpo entero (lo que quede en src es la petición siguiente)
+     */
+    synchronized boolean offer(ByteBuffer src) {
+        int n = (int) Math.min(src.remaining(), toArrive);
+        if (abandoned || failed) {
+            src.position(src.position() + n);
+        } else {
+            n = Math.min(n, window.length - size);
+            int tail = (head + size) % window.length;
+            int first = Math.min(n, window.length - tail);
+            src.get(window, tail, first);
+            src.get(window, 0, n - first);
+            size += n;
+            if (n > 0) {
+                notifyAll();
+            }
+        }
+        toArrive -= n;
+        return toArrive == 0;
+    }
+
+    /** Ventana llena: el selector debe dejar de leer hasta {@code onSpace}. */
+    synchronized boolean isFull() {
+        if (size < window.length || abandoned || failed) {
+            return false;
+        }
+        waitingForSpace = true;
+        return true;
+    }
+
+    /** La conexión se cerró: el handler recibe un IOException en vez de esperar. */
+    synchronized void fail() {
+        failed = true;
+        notifyAll();
+    }
+
+    // ---- Worker ----
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        boolean wake;
+        int n;
+        synchronized (this) {
+            long deadline = System.nanoTime() + readTimeoutNanos;
+            while (size == 0 && toArrive > 0 && !failed && !abandoned) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    throw new SocketTimeoutException("Sin datos del cuerpo en "
+                            + TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos) + " ms");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Lectura del cuerpo interrumpida", e);
+                }
+            }
+            if (failed || abandoned) {
+                throw new IOException("Conexión cerrada antes de recibir el cuerpo");
+            }
+            if (size == 0) {
+                return -1;
+            }
+            n = Math.min(len, size);
+            int first = Math.min(n, window.length - head);
+            System.arraycopy(window, head, b, off, first);
+            System.arraycopy(window, 0, b, off + first, n - first);
+            head = (head + n) % window.length;
+            size -= n;
+            wake = waitingForSpace;
+            waitingForSpace = false;
+        }
+        if (wake) {
+            onSpace.run();
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        return size;
+    }
+
+    /** El handler terminó: lo que falte se descarta y el selector sigue leyendo. */
+    @Override
+    public void close() {
+        boolean wake;
+        synchronized (this) {
+            if (abandoned) {
+                return;
+            }
+            abandoned = true;
+            size = 0;
+            wake = waitingForSpace;
+            waitingForSpace = false;
+            notifyAll();
+        }
+        if (wake) {
+            onSpace.run();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.websocket;
+
+/**
+ * Lo que el núcleo necesita de un android.os.Handler: ejecutar tareas
+ * diferidas y cancelarlas. En la app lo implementa el Handler del hilo
+ * principal; en la JVM, {@link ExecutorScheduler}.
+ */
+public interface TaskScheduler {
+
+    void postDelayed(Runnable task, long delayMs);
+
+    /** Cancela todas las ejecuciones pendientes de {@code task}. */
+    void removeCallbacks(Runnable task);
+}
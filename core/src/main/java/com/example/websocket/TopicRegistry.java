@@ -0,0 +1,159 @@
+package com.example.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice tópico → conexiones para el pub/sub de los servidores embebidos.
+ *
+ * Los tópicos se separan con '/' y admiten comodines estilo MQTT:
+ * '+' coincide con un nivel y '#' (solo al final) con el resto de niveles.
+ * Es seguro usarlo desde varios hilos a la vez.
+ */
+public class TopicRegistry<C> {
+
+    private static final char SEPARATOR = '/';
+    private static final String SINGLE_LEVEL = "+";
+    private static final String MULTI_LEVEL = "#";
+
+    // Suscripciones exactas: búsqueda O(1) al publicar
+    private final Map<String, Set<C>> exact = new ConcurrentHashMap<>();
+    // Suscripciones con comodines: se recorren al publicar
+    private final Map<String, Set<C>> wildcards = new ConcurrentHashMap<>();
+    // Índice inverso para limpiar al desconectar
+    private final Map<C, Set<String>> byConnection = new ConcurrentHashMap<>();
+
+    public boolean subscribe(C conn, String topic) {
+        if (!isValidFilter(topic)) {
+            return false;
+        }
+        // El add va dentro del compute: removeFromIndex podría desenganchar el conjunto vacío entre medias
+        indexFor(topic).compute(topic, (t, conns) -> {
+            Set<C> set = conns != null ? conns : ConcurrentHashMap.newKeySet();
+            set.add(conn);
+            return set;
+        });
+        byConnection.computeIfAbsent(conn, c -> ConcurrentHashMap.newKeySet()).add(topic);
+        return true;
+    }
+
+    public boolean unsubscribe(C conn, String topic) {
+        Set<String> topics = byConnection.get(conn);
+        if (topics == null || !topics.remove(topic)) {
+            return false;
+        }
+        removeFromIndex(conn, topic);
+        return true;
+    }
+
+    /** Elimina todas las suscripciones de una conexión (al cerrarse). */
+    public void removeAll(C conn) {
+        Set<String> topics = byConnection.remove(conn);
+        if (topics == null) {
+            return;
+        }
+        for (String topic : topics) {
+            removeFromIndex(conn, topic);
+        }
+    }
+
+    /**
+     * Conexiones cuyo filtro (exacto o con comodines) coincide con el tópico
+     * publicado, sin duplicados. El tópico publicado no lleva comodines.
+     */
+    public Set<C> subscribers(String topic) {
+        Set<C> direct = exact.get(topic);
+        if (wildcards.isEmpty()) {
+            return direct != null ? Collections.unmodifiableSet(direct) : Collections.emptySet();
+        }
+        Set<C> result = new HashSet<>();
+        if (direct != null) {
+            result.addAll(direct);
+        }
+        List<String> levels = split(topic);
+        for (Map.Entry<String, Set<C>> entry : wildcards.entrySet()) {
+            if (matches(split(entry.getKey()), levels)) {
+                result.addAll(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    public Set<String> topicsOf(C conn) {
+        Set<String> topics = byConnection.get(conn);
+        return topics != null ? Collections.unmodifiableSet(topics) : Collections.emptySet();
+    }
+
+    public int topicCount() {
+        return exact.size() + wildcards.size();
+    }
+
+    // ======== Utilidades internas ========
+
+    private Map<String, Set<C>> indexFor(String topic) {
+        return isWildcard(topic) ? wildcards : exact;
+    }
+
+    private void removeFromIndex(C conn, String topic) {
+        indexFor(topic).computeIfPresent(topic, (t, conns) -> {
+            conns.remove(conn);
+            return conns.isEmpty() ? null : conns;
+        });
+    }
+
+    static boolean isWildcard(String topic) {
+        return topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0;
+    }
+
+    static boolean isValidFilter(String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return false;
+        }
+        List<String> levels = split(filter);
+        for (int i = 0; i < levels.size(); i++) {
+            String level = levels.get(i);
+            if (MULTI_LEVEL.equals(level) && i != levels.size() - 1) {
+                return false;
+            }
+            if (level.length() > 1 && (level.indexOf('+') >= 0 || level.indexOf('#') >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean matches(List<String> filter, List<String> topic) {
+        int i = 0;
+        for (; i < filter.size(); i++) {
+            String level = filter.get(i);
+            if (MULTI_LEVEL.equals(level)) {
+                return true;
+            }
+            if (i >= topic.size()) {
+                return false;
+            }
+            if (!SINGLE_LEVEL.equals(level) && !level.equals(topic.get(i))) {
+                return false;
+            }
+        }
+        return i == topic.size();
+    }
+
+    private static List<String> split(String topic) {
+        List<String> levels = new ArrayList<>(4);
+        int start = 0;
+        for (int i = 0; i < topic.length(); i++) {
+            if (topic.charAt(i) == SEPARATOR) {
+                levels.add(topic.substring(start, i));
+                start = i + 1;
+            }
+        }
+        levels.add(topic.substring(start));
+        return levels;
+    }
+}
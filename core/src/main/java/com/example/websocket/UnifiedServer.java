@@ -0,0 +1,1054 @@
+package com.example.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor de un solo puerto sobre NIO: sirve HTTP y actualiza {@code /ws} a
+ * WebSocket (RFC 6455) en la misma conexión.
+ *
+ * Un único hilo selector acepta, lee, parsea y escribe; el trabajo de la app
+ * (rutas HTTP y {@link WsSessionHandler}) corre en un pool fijo de workers.
+ * Cada conexión procesa sus tareas en serie, así que el orden de peticiones y
+ * mensajes de un mismo cliente se conserva.
+ *
+ * Con un puerto WS heredado (el 8889 de {@link SimpleWebSocketServer}) el
+ * mismo selector acepta también ahí y actualiza en cualquier ruta: los
+ * clientes que usan ws://host:8889/ siguen funcionando.
+ *
+ * Las protecciones son las del motor SEPARATE: {@link RateLimiter} en la
+ * entrada (en el selector; DELAY deja de leer del socket en vez de dormir) y
+ * {@link SlowConsumerGuard} en la salida WS. Además una conexión con más de
+ * {@link #MAX_QUEUED_BYTES} pendientes de escribir deja de leerse hasta que
+ * se vacíe a la mitad, así nadie hace crecer su cola sin límite.
+ *
+ * Los cuerpos HTTP de más de {@link #BODY_WINDOW_BYTES} no se almacenan
+ * enteros: el handler los lee mientras llegan ({@link StreamingBody}).
+ *
+ * Cada frame recibido se desenmascara en un buffer de {@link BufferPool}
+ * (MAX_MESSAGE_BYTES cabe en la clase más grande) que vuelve al pool en
+ * cuanto el handler termina con él: WsSessionHandler y el bus no retienen el
+ * payload, y lo que se reenvía se copia al enmarcarlo.
+ */
+public class UnifiedServer implements Runnable, WsSessionHandler.Peers<UnifiedServer.Connection> {
+
+    private static final String TAG = "UnifiedServer";
+
+    static final String WS_PATH = "/ws";
+    static final String BUS_NAME = "unified-server";
+
+    private static final String WS_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+    // Cuerpos HTTP mayores que esto (o que no han llegado enteros) se leen en streaming
+    static final int BODY_WINDOW_BYTES = 64 * 1024;
+    private static final long BODY_READ_TIMEOUT_MS = 30_000L;
+    private static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+    // Por encima de esto pendiente de escribir, no se lee más de esa conexión
+    static final long MAX_QUEUED_BYTES = 1024 * 1024;
+
+    // Opcodes RFC 6455
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    private final int port;
+    // Puerto donde se acepta el upgrade en cualquier ruta (-1 = ninguno)
+    private final int legacyWsPort;
+    private final HttpHandler httpHandler;
+    private final WsSessionHandler<Connection> wsHandler;
+    private final ExecutorService workers;
+    // Payloads WS recibidos: se toman en el selector y se devuelven al acabar el handler
+    private final BufferPool receivePool = new BufferPool(false);
+    private final ConcurrentLinkedQueue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    // Conexiones cuya pausa de lectura (DELAY) ya venció
+    private final ConcurrentLinkedQueue<Connection> pendingResumes = new ConcurrentLinkedQueue<>();
+    // Conexiones cuyo handler ha hecho sitio en el cuerpo en streaming
+    private final ConcurrentLinkedQueue<Connection> pendingBodyReads = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> wsConnections = ConcurrentHashMap.newKeySet();
+    // Todas las abiertas, HTTP o WS
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    // Límites de entrada y salida hacia clientes lentos (null = sin control)
+    private volatile RateLimiter limiter;
+    private volatile SlowConsumerGuard guard;
+    private long guardCheckMs;
+
+    // Métricas de los límites
+    private final Metrics.Counter limitDelayed;
+    private final Metrics.Counter limitDropped;
+    private final Metrics.Counter limitClosed;
+
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ServerSocketChannel legacyChannel;
+    private Thread selectorThread;
+    // Fin de las pausas de DELAY y vaciado de los outbox
+    private ScheduledExecutorService timer;
+
+    public UnifiedServer(int port, int workerCount, HttpHandler httpHandler, MessageBus bus) {
+        this(port, -1, workerCount, httpHandler, bus);
+    }
+
+    /** @param legacyWsPort puerto adicional con upgrade en cualquier ruta; -1 = ninguno */
+    public UnifiedServer(int port, int legacyWsPort, int workerCount, HttpHandler httpHandler, MessageBus bus) {
+        this.port = port;
+        this.legacyWsPort = legacyWsPort;
+        this.httpHandler = httpHandler;
+        this.wsHandler = new WsSessionHandler<>(BUS_NAME, bus, this);
+        this.workers = SerialExecutor.newWorkerPool("unified-worker", workerCount);
+        String labels = "server=\"" + BUS_NAME + "\",action=";
+        Metrics metrics = Metrics.shared();
+        String help = "Mensajes WS entrantes por encima del límite";
+        limitDelayed = metrics.counter("ws_server_rate_limited_total", help, labels + "\"delayed\"");
+        limitDropped = metrics.counter("ws_server_rate_limited_total", help, labels + "\"dropped\"");
+        limitClosed = metrics.counter("ws_server_rate_limited_total", help, labels + "\"closed\"");
+    }
+
+    /** Límites de mensajes/bytes por conexión WS y globales; llamar antes de start(). */
+    public void setRateLimiter(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /** Control de clientes WS lentos; llamar antes de start(). Los outbox se vacían cada checkMs. */
+    public void setSlowConsumerGuard(SlowConsumerGuard guard, long checkMs) {
+        this.guard = guard;
+        this.guardCheckMs = checkMs;
+        String labels = "server=\"" + BUS_NAME + "\"";
+        Metrics metrics = Metrics.shared();
+        metrics.gauge("ws_server_outbound_buffered_bytes", "Bytes pendientes de escribir a los clientes WS",
+                labels, () -> {
+                    long total = 0;
+                    for (Connection conn : wsConnections) {
+                        total += conn.outbox != null ? conn.outbox.bufferedBytes() : 0;
+                    }
+                    return total;
+                });
+        metrics.gauge("ws_server_outbound_lag_ms", "Edad del frame retenido más antiguo entre los clientes WS",
+                labels, () -> {
+                    long now = System.nanoTime();
+                    long max = 0;
+                    for (Connection conn : wsConnections) {
+                        max = conn.outbox != null ? Math.max(max, conn.outbox.lagNanos(now)) : max;
+                    }
+                    return TimeUnit.NANOSECONDS.toMillis(max);
+                });
+    }
+
+    // ======== Ciclo de vida ========
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        if (legacyWsPort >= 0) {
+            legacyChannel = ServerSocketChannel.open();
+            legacyChannel.configureBlocking(false);
+            legacyChannel.socket().setReuseAddress(true);
+            legacyChannel.bind(new InetSocketAddress(legacyWsPort));
+            legacyChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "unified-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        if (guard != null) {
+            timer.scheduleWithFixedDelay(this::pollOutboxes, guardCheckMs, guardCheckMs, TimeUnit.MILLISECONDS);
+        }
+        running = true;
+        selectorThread = new Thread(this, "unified-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        Log.d(TAG, "Servidor unificado en http://127.0.0.1:{}/ y ws://127.0.0.1:{}{} ✅", getPort(), getPort(), WS_PATH);
+    }
+
+    public void stop() {
+        running = false;
+        wsHandler.close();
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        workers.shutdownNow();
+        Log.d(TAG, "Servidor unificado detenido 🛑");
+    }
+
+    /** Bytes encolados y aún sin escribir, sumando todas las conexiones. */
+    long queuedBytes() {
+        long total = 0;
+        for (Connection conn : connections) {
+            total += conn.queuedBytes.get();
+        }
+        return total;
+    }
+
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+    }
+
+    /** Puerto WS heredado (-1 si no hay). */
+    public int getLegacyWsPort() {
+        return legacyChannel != null ? legacyChannel.socket().getLocalPort() : legacyWsPort;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPendingWrites();
+                resumePendingReads();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel());
+                        } else {
+                            Connection conn = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                conn.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                conn.onWritable();
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        Object attachment = key.attachment();
+                        if (attachment instanceof Connection) {
+                            ((Connection) attachment).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error en el selector", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    // ======== WsSessionHandler.Peers ========
+
+    @Override
+    public void send(Connection conn, String text) {
+        conn.sendData(null, encodeFrame(OP_TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Override
+    public void broadcast(String text, Collection<Connection> conns) {
+        deliver(null, text, conns);
+    }
+
+    @Override
+    public void broadcast(ByteBuffer data, Collection<Connection> conns) {
+        deliver(null, data, conns);
+    }
+
+    @Override
+    public void deliver(String topic, String text, Collection<Connection> conns) {
+        // Un solo frame codificado; cada conexión recibe una vista propia
+        ByteBuffer frame = encodeFrame(OP_TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        for (Connection conn : conns) {
+            conn.sendData(topic, frame.duplicate());
+        }
+    }
+
+    @Override
+    public void deliver(String topic, ByteBuffer data, Collection<Connection> conns) {
+        ByteBuffer frame = encodeFrame(OP_BINARY, data);
+        for (Connection conn : conns) {
+            conn.sendData(topic, frame.duplicate());
+        }
+    }
+
+    /** Guarda en el diario lo que este servidor recibe y envía. */
+    public void setJournal(MessageJournal journal) {
+        wsHandler.setJournal(journal);
+    }
+
+    public int publish(String topic, String message) {
+        return wsHandler.publish(topic, message);
+    }
+
+    public int publish(String topic, ByteBuffer data) {
+        return wsHandler.publish(topic, data);
+    }
+
+    // ======== Selector ========
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection conn = new Connection(channel, server == legacyChannel);
+        conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+        connections.add(conn);
+    }
+
+    private void registerPendingWrites() {
+        Connection conn;
+        while ((conn = pendingWrites.poll()) != null) {
+            if (conn.key != null && conn.key.isValid()) {
+                conn.key.interestOps(conn.key.interestOps() | SelectionKey.OP_WRITE);
+                conn.checkBackpressure();
+            }
+        }
+    }
+
+    private void resumePendingReads() {
+        Connection conn;
+        while ((conn = pendingResumes.poll()) != null) {
+            conn.resumeAfterDelay();
+        }
+        while ((conn = pendingBodyReads.poll()) != null) {
+            conn.resumeAfterBodyRead();
+        }
+    }
+
+    private void pollOutboxes() {
+        long now = System.nanoTime();
+        for (Connection conn : wsConnections) {
+            if (conn.outbox != null) {
+                conn.outbox.poll(now);
+            }
+        }
+    }
+
+    private void closeAll() {
+        if (selector == null) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                ((Connection) attachment).close();
+            }
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+            if (legacyChannel != null) {
+                legacyChannel.close();
+            }
+        } catch (IOException ignored) {}
+    }
+
+    // ======== Codificación de frames ========
+
+    /** Frame de servidor (sin máscara) con los bytes entre position y limit. */
+    static ByteBuffer encodeFrame(int opcode, ByteBuffer payload) {
+        int length = payload.remaining();
+        int headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(headerLength + length);
+        frame.put((byte) (0x80 | opcode));
+        if (length < 126) {
+            frame.put((byte) length);
+        } else if (length <= 0xFFFF) {
+            frame.put((byte) 126);
+            frame.putShort((short) length);
+        } else {
+            frame.put((byte) 127);
+            frame.putLong(length);
+        }
+        frame.put(payload.duplicate());
+        frame.flip();
+        return frame;
+    }
+
+    static String acceptKey(String clientKey) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((clientKey.trim() + WS_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Cabecera y, si el cuerpo es un byte[], también el cuerpo en el mismo buffer. */
+    private static ByteBuffer encodeHttpResponse(HttpResponse response, boolean keepAlive) {
+        StringBuilder head = new StringBuilder(128)
+                .append("HTTP/1.1 ").append(response.status).append(' ')
+                .append(HttpResponse.reason(response.status)).append("\r\n")
+                .append("Content-Type: ").append(response.contentType).append("\r\n")
+                .append("Content-Length: ").append(response.bodyLength()).append("\r\n")
+                .append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        if (response.body == null) {
+            return ByteBuffer.wrap(headBytes);
+        }
+        ByteBuffer out = ByteBuffer.allocate(headBytes.length + response.body.length);
+        out.put(headBytes).put(response.body).flip();
+        return out;
+    }
+
+    // ======== Conexión ========
+
+    /**
+     * Estado de una conexión. Lectura y parseo solo en el hilo selector; el
+     * envío es seguro desde cualquier hilo.
+     */
+    public final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ConcurrentLinkedQueue<ByteBuffer> outQueue = new ConcurrentLinkedQueue<>();
+        // Bytes en outQueue aún sin escribir en el socket
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private volatile boolean closeAfterWrite;
+        private volatile boolean closed;
+        private boolean webSocket;
+        private final boolean legacyPort;
+        private final String remoteAddress;
+        // Solo la IP, como la da NanoHTTPD: es la que ven los HttpHandler
+        private final String remoteIp;
+
+        // Lectura en pausa (solo hilo selector): por cola de salida llena, por DELAY del limitador
+        // o porque el handler no ha leído aún el cuerpo en streaming
+        private boolean backpressured;
+        private boolean delayed;
+        private boolean bodyBlocked;
+        // Cuerpo HTTP que aún llega del socket (solo hilo selector)
+        private StreamingBody body;
+        // Solo con conexión WS: cubos del limitador y salida hacia cliente lento (null = sin control)
+        private RateLimiter.Client limits;
+        private volatile SlowConsumerGuard.Outbox<ByteBuffer> outbox;
+
+        // Mensaje WS fragmentado en curso
+        private int fragmentOpcode = -1;
+        private ByteArrayOutputStream fragments;
+
+        // Tareas de la app para esta conexión, ejecutadas en serie en el pool
+        private final SerialExecutor lane;
+
+        Connection(SocketChannel channel, boolean legacyPort) {
+            this.channel = channel;
+            this.legacyPort = legacyPort;
+            String address;
+            String ip = null;
+            try {
+                SocketAddress remote = channel.getRemoteAddress();
+                address = String.valueOf(remote);
+                if (remote instanceof InetSocketAddress && ((InetSocketAddress) remote).getAddress() != null) {
+                    ip = ((InetSocketAddress) remote).getAddress().getHostAddress();
+                }
+            } catch (IOException e) {
+                address = "?";
+            }
+            this.remoteAddress = address;
+            this.remoteIp = ip;
+            this.lane = new SerialExecutor(workers, address);
+        }
+
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        /** Encola un frame ya codificado. Seguro desde cualquier hilo. */
+        void sendFrame(ByteBuffer frame) {
+            if (closed) {
+                return;
+            }
+            queuedBytes.addAndGet(frame.remaining());
+            outQueue.offer(frame);
+            requestWrite();
+        }
+
+        /** Frame de datos WS: pasa por el outbox si hay control de clientes lentos. */
+        void sendData(String topic, ByteBuffer frame) {
+            SlowConsumerGuard.Outbox<ByteBuffer> o = outbox;
+            if (o != null) {
+                o.offer(topic, frame, frame.remaining());
+            } else {
+                sendFrame(frame);
+            }
+        }
+
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            if (body != null) {
+                body.fail();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            outQueue.clear();
+            queuedBytes.set(0);
+            connections.remove(this);
+            if (webSocket) {
+                wsConnections.remove(this);
+                execute(() -> wsHandler.onClose(this));
+            }
+        }
+
+        private void requestWrite() {
+            if (writeRequested.compareAndSet(false, true)) {
+                pendingWrites.offer(this);
+                selector.wakeup();
+            }
+        }
+
+        private void execute(Runnable task) {
+            lane.execute(task);
+        }
+
+        // ---- Lectura (hilo selector) ----
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            parseBuffered();
+        }
+
+        /** Procesa lo ya leído mientras no haya pausa. */
+        private void parseBuffered() {
+            readBuffer.flip();
+            try {
+                boolean progress = true;
+                while (progress && !closed && !closeAfterWrite && !readPaused()) {
+                    progress = webSocket ? parseFrame() : body != null ? feedBody() : parseHttpRequest();
+                }
+            } finally {
+                readBuffer.compact();
+            }
+        }
+
+        void onWritable() throws IOException {
+            ByteBuffer head;
+            while ((head = outQueue.peek()) != null) {
+                int before = head.remaining();
+                channel.write(head);
+                queuedBytes.addAndGet(head.remaining() - before);
+                if (head.hasRemaining()) {
+                    return;
+                }
+                outQueue.poll();
+            }
+            key.interestOps(readPaused() ? 0 : SelectionKey.OP_READ);
+            writeRequested.set(false);
+            if (backpressured && queuedBytes.get() <= MAX_QUEUED_BYTES / 2) {
+                backpressured = false;
+                resumeReading();
+            }
+            if (!outQueue.isEmpty()) {
+                requestWrite();
+            } else if (closeAfterWrite) {
+                close();
+            }
+        }
+
+        // ---- Pausas de lectura (hilo selector) ----
+
+        private boolean readPaused() {
+            return backpressured || delayed || bodyBlocked;
+        }
+
+        /** Con demasiado pendiente de escribir se deja de leer: el cliente no genera más respuestas. */
+        void checkBackpressure() {
+            if (!backpressured && queuedBytes.get() > MAX_QUEUED_BYTES) {
+                backpressured = true;
+                pauseReading();
+            }
+        }
+
+        /** DELAY del limitador: no se lee más de este socket durante waitNanos. */
+        private void delayReading(long waitNanos) {
+            delayed = true;
+            pauseReading();
+            timer.schedule(() -> {
+                pendingResumes.offer(this);
+                selector.wakeup();
+            }, waitNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void resumeAfterDelay() {
+            delayed = false;
+            resumeReading();
+        }
+
+        void resumeAfterBodyRead() {
+            bodyBlocked = false;
+            resumeReading();
+        }
+
+        private void pauseReading() {
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        /** Reanuda la lectura y procesa lo que quedó en el buffer durante la pausa. */
+        private void resumeReading() {
+            if (readPaused() || closed || key == null || !key.isValid()) {
+                return;
+            }
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            parseBuffered();
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                bigger.put(readBuffer);
+                bigger.flip();
+                readBuffer = bigger;
+            }
+        }
+
+        // ---- HTTP ----
+
+        private boolean parseHttpRequest() {
+            int headerEnd = indexOfHeaderEnd(readBuffer);
+            if (headerEnd < 0) {
+                if (readBuffer.remaining() >= MAX_HEADER_BYTES) {
+                    rejectRequest(400, "Cabeceras demasiado grandes");
+                    return false;
+                }
+                ensureCapacity(Math.max(READ_BUFFER_SIZE, readBuffer.remaining() * 2));
+                return false;
+            }
+            int start = readBuffer.position();
+            String head = StandardCharsets.ISO_8859_1.decode(readBuffer.duplicate().limit(headerEnd)).toString();
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length < 3) {
+                rejectRequest(400, "Petición inválida");
+                return false;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                            lines[i].substring(colon + 1).trim());
+                }
+            }
+            if (headers.containsKey("transfer-encoding")) {
+                // Sin decodificador de chunked: leer el cuerpo como la siguiente petición desincronizaría
+                rejectRequest(501, "Transfer-Encoding no soportado; enviar Content-Length");
+                return false;
+            }
+            long contentLength = parseContentLength(headers.get("content-length"));
+            if (contentLength < 0) {
+                rejectRequest(400, "Content-Length inválido");
+                return false;
+            }
+            if (contentLength > MAX_BODY_BYTES) {
+                rejectRequest(413, "Cuerpo demasiado grande");
+                return false;
+            }
+            int bodyStart = headerEnd + 4;
+            // Cuerpo pequeño: se espera a tenerlo entero en el buffer de lectura
+            boolean buffered = contentLength <= BODY_WINDOW_BYTES;
+            if (buffered && readBuffer.limit() - bodyStart < contentLength) {
+                ensureCapacity(bodyStart - start + (int) contentLength);
+                return false;
+            }
+            readBuffer.position(bodyStart);
+
+            String method = requestLine[0];
+            String target = requestLine[1];
+            int q = target.indexOf('?');
+            String path = q >= 0 ? target.substring(0, q) : target;
+            String query = q >= 0 ? target.substring(q + 1) : null;
+            boolean keepAlive = "HTTP/1.1".equals(requestLine[2])
+                    ? !"close".equalsIgnoreCase(headers.get("connection"))
+                    : "keep-alive".equalsIgnoreCase(headers.get("connection"));
+
+            if ((WS_PATH.equals(path) || legacyPort) && "websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+                upgrade(method, requestLine[2], headers);
+                return true;
+            }
+            InputStream in;
+            if (buffered) {
+                byte[] bytes = new byte[(int) contentLength];
+                readBuffer.get(bytes);
+                in = new ByteArrayInputStream(bytes);
+            } else {
+                // El handler empieza ya; el resto del cuerpo lo va pasando feedBody()
+                body = new StreamingBody(contentLength, BODY_WINDOW_BYTES, BODY_READ_TIMEOUT_MS, () -> {
+                    pendingBodyReads.offer(this);
+                    selector.wakeup();
+                });
+                in = body;
+            }
+            HttpRequest request = new HttpRequest(method, path, query, headers, in, contentLength, remoteIp);
+            execute(() -> {
+                HttpResponse response;
+                try {
+                    response = httpHandler.handle(request);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error en {} {}", method, path, e);
+                    response = HttpResponse.text(500, "Error interno");
+                } finally {
+                    // Lo que el handler no leyó se descarta al llegar
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {}
+                }
+                reply(response, keepAlive);
+            });
+            return true;
+        }
+
+        /**
+         * Pasa al cuerpo en streaming lo leído del socket. Con la ventana
+         * llena deja de leer hasta que el handler haga sitio.
+         *
+         * @return true si el cuerpo terminó y puede seguir la petición siguiente
+         */
+        private boolean feedBody() {
+            if (body.offer(readBuffer)) {
+                body = null;
+                return true;
+            }
+            if (body.isFull()) {
+                bodyBlocked = true;
+                pauseReading();
+            }
+            return false;
+        }
+
+        private void reply(HttpResponse response, boolean keepAlive) {
+            if (closed) {
+                return;
+            }
+            ByteBuffer head = encodeHttpResponse(response, keepAlive);
+            // Cuerpo en buffer (caché o fichero mapeado): se encola tal cual, sin copiarlo
+            ByteBuffer mapped = response.body == null ? response.bodyBuffer() : null;
+            // Cuenta como los frames WS, para que la contrapresión también frene a HTTP
+            queuedBytes.addAndGet(head.remaining() + (mapped != null ? mapped.remaining() : 0));
+            outQueue.offer(head);
+            if (mapped != null) {
+                outQueue.offer(mapped);
+            }
+            // Después de encolar todo, para que el selector no cierre entre cabecera y cuerpo
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+            requestWrite();
+        }
+
+        /** Respuesta de error desde el selector: se descarta lo que quede por leer. */
+        private void rejectRequest(int status, String message) {
+            readBuffer.position(readBuffer.limit());
+            reply(HttpResponse.text(status, message), false);
+        }
+
+        private void upgrade(String method, String version, Map<String, String> headers) {
+            String key = headers.get("sec-websocket-key");
+            if (!"GET".equals(method) || !"HTTP/1.1".equals(version)
+                    || !hasToken(headers.get("connection"), "upgrade")
+                    || key == null || !"13".equals(headers.get("sec-websocket-version"))) {
+                rejectRequest(400, "Handshake WebSocket inválido");
+                return;
+            }
+            String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+            webSocket = true;
+            RateLimiter l = limiter;
+            limits = l != null ? l.newClient() : null;
+            SlowConsumerGuard g = guard;
+            outbox = g != null ? g.newOutbox(new ConnSocket(this)) : null;
+            wsConnections.add(this);
+            sendFrame(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+            Log.d(TAG, "Cliente WS conectado: {}", remoteAddress);
+            execute(() -> wsHandler.onOpen(this));
+        }
+
+        // ---- WebSocket ----
+
+        private boolean parseFrame() {
+            int available = readBuffer.remaining();
+            if (available < 2) {
+                return false;
+            }
+            int p = readBuffer.position();
+            int b0 = readBuffer.get(p) & 0xFF;
+            int b1 = readBuffer.get(p + 1) & 0xFF;
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            boolean masked = (b1 & 0x80) != 0;
+            long length = b1 & 0x7F;
+            int headerLength = 2;
+            if (length == 126) {
+                if (available < 4) return false;
+                length = readBuffer.getShort(p + 2) & 0xFFFF;
+                headerLength = 4;
+            } else if (length == 127) {
+                if (available < 10) return false;
+                length = readBuffer.getLong(p + 2);
+                headerLength = 10;
+            }
+            if (!masked || length < 0 || length > MAX_MESSAGE_BYTES) {
+                // Los clientes deben enmascarar (RFC 6455 §5.1)
+                closeWithCode(masked ? 1009 : 1002);
+                return false;
+            }
+            int frameLength = headerLength + 4 + (int) length;
+            if (available < frameLength) {
+                ensureCapacity(frameLength);
+                return false;
+            }
+            int maskOffset = p + headerLength;
+            ByteBuffer payload = receivePool.acquire((int) length);
+            for (int i = 0; i < length; i++) {
+                payload.put((byte) (readBuffer.get(maskOffset + 4 + i) ^ readBuffer.get(maskOffset + (i & 3))));
+            }
+            payload.flip();
+            readBuffer.position(p + frameLength);
+            onFrame(fin, opcode, payload);
+            return true;
+        }
+
+        /** {@code payload} es del pool: o se entrega (y lo devuelve deliver) o se devuelve aquí. */
+        private void onFrame(boolean fin, int opcode, ByteBuffer payload) {
+            switch (opcode) {
+                case OP_PING:
+                    sendFrame(encodeFrame(OP_PONG, payload));
+                    break;
+                case OP_PONG:
+                    break;
+                case OP_CLOSE:
+                    payload.limit(Math.min(payload.limit(), 2));
+                    sendFrame(encodeFrame(OP_CLOSE, payload));
+                    closeAfterWrite = true;
+                    break;
+                case OP_CONTINUATION:
+                    if (fragments == null) {
+                        closeWithCode(1002);
+                        break;
+                    }
+                    appendFragment(payload);
+                    if (fragments.size() > MAX_MESSAGE_BYTES) {
+                        closeWithCode(1009);
+                        break;
+                    }
+                    if (fin) {
+                        deliver(fragmentOpcode, ByteBuffer.wrap(fragments.toByteArray()));
+                        fragments = null;
+                        fragmentOpcode = -1;
+                    }
+                    break;
+                case OP_TEXT:
+                case OP_BINARY:
+                    if (fragments != null) {
+                        // Otro mensaje de datos antes de terminar el fragmentado (RFC 6455 §5.4)
+                        closeWithCode(1002);
+                        break;
+                    }
+                    if (fin) {
+                        deliver(opcode, payload);
+                        return;
+                    }
+                    fragmentOpcode = opcode;
+                    fragments = new ByteArrayOutputStream(payload.remaining() * 2);
+                    appendFragment(payload);
+                    break;
+                default:
+                    closeWithCode(1002);
+            }
+            receivePool.release(payload);
+        }
+
+        private void appendFragment(ByteBuffer payload) {
+            fragments.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+
+        /** Pasa el mensaje al handler en su carril; el buffer vuelve al pool cuando termina. */
+        private void deliver(int opcode, ByteBuffer payload) {
+            if (!admit(payload.remaining())) {
+                receivePool.release(payload);
+                return;
+            }
+            if (opcode == OP_TEXT) {
+                execute(() -> {
+                    String text = new String(payload.array(), payload.arrayOffset() + payload.position(),
+                            payload.remaining(), StandardCharsets.UTF_8);
+                    receivePool.release(payload);
+                    wsHandler.onText(this, text);
+                });
+            } else {
+                execute(() -> {
+                    try {
+                        wsHandler.onBinary(this, payload);
+                    } finally {
+                        receivePool.release(payload);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Límites de entrada en el selector, antes de generar trabajo. Con
+         * DELAY el mensaje pasa pero no se lee más del socket hasta que haya
+         * tokens: TCP frena al cliente sin bloquear el selector.
+         *
+         * @return false si el mensaje se descarta o se cierra la conexión
+         */
+        private boolean admit(long bytes) {
+            RateLimiter l = limiter;
+            if (l == null || limits == null) {
+                return true;
+            }
+            long waitNanos = l.admit(limits, l.limitsBytes() ? bytes : 0);
+            if (waitNanos == 0) {
+                return true;
+            }
+            if (waitNanos > 0) {
+                limitDelayed.inc();
+                delayReading(waitNanos);
+                return true;
+            }
+            if (l.policy() == RateLimiter.Policy.CLOSE) {
+                limitClosed.inc();
+                Log.w(TAG, "Límite superado, se cierra {}", remoteAddress);
+                closeWithCode(RateLimiter.CLOSE_POLICY_VIOLATION);
+            } else {
+                limitDropped.inc();
+            }
+            return false;
+        }
+
+        private void closeWithCode(int code) {
+            ByteBuffer status = ByteBuffer.allocate(2).putShort((short) code);
+            status.flip();
+            sendFrame(encodeFrame(OP_CLOSE, status));
+            closeAfterWrite = true;
+        }
+    }
+
+    /** La salida de una conexión WS vista desde su outbox. */
+    private static final class ConnSocket implements SlowConsumerGuard.Socket<ByteBuffer> {
+        private final Connection conn;
+
+        ConnSocket(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public long backlogBytes() {
+            return conn.queuedBytes.get();
+        }
+
+        @Override
+        public void write(ByteBuffer frame) {
+            conn.sendFrame(frame);
+        }
+
+        /** Sin frame de cierre: quedaría detrás de lo que el cliente no lee. */
+        @Override
+        public void disconnect(int code, String reason) {
+            Log.w(TAG, "{}, se desconecta {}", reason, conn.getRemoteAddress());
+            conn.close();
+        }
+    }
+
+    /** ¿La cabecera (lista separada por comas) incluye el token, sin distinguir mayúsculas? */
+    static boolean hasToken(String header, String token) {
+        if (header == null) {
+            return false;
+        }
+        for (String part : header.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfHeaderEnd(ByteBuffer buffer) {
+        for (int i = buffer.position(); i + 3 < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+                    && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseContentLength(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
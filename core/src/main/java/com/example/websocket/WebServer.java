@@ -0,0 +1,113 @@
+package com.example.websocket;
+
+import fi.iki.elonen.NanoWSD;
+import fi.iki.elonen.NanoWSD.WebSocket;
+import fi.iki.elonen.NanoWSD.WebSocketFrame;
+import fi.iki.elonen.NanoHTTPD.Response;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class WebServer extends NanoWSD {
+
+    private static final String TAG = "WebServer";
+    private static final Log.Sampler RX_LOG = new Log.Sampler();
+
+    public WebServer(int port) {
+        super(port);
+    }
+
+    @Override
+    protected WebSocket openWebSocket(IHTTPSession handshake) {
+        return new MyWebSocket(handshake);
+    }
+
+    @Override
+    public Response serveHttp(IHTTPSession session) {
+        String uri = session.getUri();
+
+        if ("/".equals(uri)) {
+            return newFixedLengthResponse(Status.OK, "text/html",
+                    "<h1>Hola Mundo desde Android!</h1>" +
+                            "<p>Servidor WebSocket corriendo en <b>/ws</b></p>");
+        } else if ("/ws".equals(uri)) {
+            return super.serveHttp(session);
+        } else {
+            return newFixedLengthResponse(Status.NOT_FOUND, "text/plain", "Not Found");
+        }
+    }
+
+    private static class MyWebSocket extends WebSocket {
+        // NanoWSD lee cada socket en su propio hilo: un lector por socket basta
+        private final Envelope.Reader envelope = new Envelope.Reader();
+
+        public MyWebSocket(IHTTPSession handshakeRequest) {
+            super(handshakeRequest);
+        }
+
+        @Override
+        protected void onOpen() {
+            Log.d(TAG, "✅ WebSocket abierto");
+        }
+
+        @Override
+        protected void onClose(WebSocketFrame.CloseCode code, String reason, boolean initiatedByRemote) {
+            Log.d(TAG, "❌ WebSocket cerrado: {}", reason);
+        }
+
+        @Override
+        protected void onMessage(WebSocketFrame message) {
+            try {
+                if (message.getOpCode() == WebSocketFrame.OpCode.Binary) {
+                    // Eco binario con el mismo array del frame, sin pasar por String
+                    byte[] payload = message.getBinaryPayload();
+                    if (RX_LOG.sample()) Log.d(TAG, "📦 Mensaje binario recibido: {} bytes", payload.length);
+                    ByteBuffer reply = envelope.wrap(ByteBuffer.wrap(payload)) ? envelopeReply() : null;
+                    send(reply != null ? reply.array() : payload);
+                    return;
+                }
+                String msg = message.getTextPayload();
+                if (msg.startsWith(AdaptiveHeartbeat.CMD_PING)) {
+                    // Latido adaptativo del cliente, igual que WsSessionHandler
+                    send(AdaptiveHeartbeat.pongFor(msg));
+                    return;
+                }
+                if (RX_LOG.sample()) Log.d(TAG, "📩 Mensaje recibido: {}", msg);
+                if (Envelope.isJson(msg)) {
+                    ByteBuffer decoded = Envelope.fromJson(msg);
+                    ByteBuffer reply = decoded != null && envelope.wrap(decoded) ? envelopeReply() : null;
+                    if (reply != null && envelope.wrap(reply)) {
+                        send(Envelope.toJson(envelope));
+                        return;
+                    }
+                }
+                // Texto suelto: eco como sobre ECHO en JSON, igual que WsSessionHandler
+                send(Envelope.toJson(Envelope.Type.ECHO, MessageBus.DEFAULT_TOPIC, 0,
+                        System.currentTimeMillis(), msg));
+            } catch (IOException e) {
+                Log.e(TAG, "Error enviando el eco", e);
+            }
+        }
+
+        /** ECHO de un MESSAGE o PONG de un PING; null para otros tipos (se devuelven tal cual). */
+        private ByteBuffer envelopeReply() {
+            switch (envelope.type()) {
+                case MESSAGE: return Envelope.copyAs(envelope, Envelope.Type.ECHO);
+                case PING: return Envelope.copyAs(envelope, Envelope.Type.PONG);
+                default: return null;
+            }
+        }
+
+        @Override
+        protected void onPong(WebSocketFrame pong) {
+            Log.v(TAG, "📡 Pong recibido");
+        }
+
+        @Override
+        protected void onException(IOException exception) {
+            Log.e(TAG, "Error en el WebSocket", exception);
+        }
+    }
+}
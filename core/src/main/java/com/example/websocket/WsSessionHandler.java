@@ -0,0 +1,650 @@
+package com.example.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lógica de las sesiones WS de la app (saludo, pub/sub, bus y eco),
+ * independiente del motor. {@link SimpleWebSocketServer} y
+ * {@link UnifiedServer} la comparten aportando su forma de enviar.
+ *
+ * Un cliente que envía {@code RESUME} pasa a una sesión reanudable
+ * ({@link ResumableSession}): sus mensajes llevan seq y ACK, y al reconectar
+ * con el mismo id recupera lo no confirmado y sus suscripciones. Lo publicado
+ * mientras estaba desconectado no se guarda.
+ *
+ * Un cliente que envía un {@link Envelope} (binario, o su forma JSON en un
+ * frame de texto) pasa a recibir las respuestas y las entregas de sus
+ * tópicos también como sobres, en la misma forma. Un mensaje de texto suelto
+ * se trata como MESSAGE del tópico por defecto: va al bus sin prefijo y su
+ * eco es un ECHO en JSON. Los comandos de texto (SUB/UNSUB/PUB) se siguen
+ * aceptando para clientes antiguos.
+ */
+public class WsSessionHandler<C> {
+
+    private static final String TAG = "WsSessionHandler";
+    private static final Log.Sampler PUBLISH_LOG = new Log.Sampler();
+
+    // Comandos de pub/sub (texto): "SUB <tópico>", "UNSUB <tópico>", "PUB <tópico> <mensaje>"
+    static final String CMD_SUBSCRIBE = "SUB ";
+    static final String CMD_UNSUBSCRIBE = "UNSUB ";
+    static final String CMD_PUBLISH = "PUB ";
+    // Prefijo de lo que reciben los suscriptores: "MSG <tópico> <mensaje>"
+    static final String DELIVERY_PREFIX = "MSG ";
+
+    static final String GREETING = "Hola mundo desde el servidor WS ✅";
+
+    // Sesiones reanudables desconectadas: se olvidan pasado este tiempo
+    static final long SESSION_TTL_MS = 5 * 60_000L;
+    static final int MAX_SESSIONS = 1024;
+    static final int MAX_UNACKED = 10_000;
+
+    /** Cómo envía cada motor. Los broadcast deben enmarcar el mensaje una sola vez. */
+    public interface Peers<C> {
+        void send(C conn, String text);
+
+        void broadcast(String text, Collection<C> conns);
+
+        void broadcast(ByteBuffer data, Collection<C> conns);
+
+        /**
+         * Entrega de un tópico. El motor puede quedarse solo con la última
+         * de cada tópico para un cliente que va retrasado.
+         */
+        default void deliver(String topic, String text, Collection<C> conns) {
+            broadcast(text, conns);
+        }
+
+        default void deliver(String topic, ByteBuffer data, Collection<C> conns) {
+            broadcast(data, conns);
+        }
+    }
+
+    private final String busName;
+    private final MessageBus bus;
+    private final Peers<C> peers;
+    private final TopicRegistry<C> topics = new TopicRegistry<>();
+    // Diario de lo que entra y sale (null = sin diario)
+    private volatile MessageJournal journal;
+
+    // Sesiones reanudables, por id y por conexión
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<C, Session> sessionsByConn = new ConcurrentHashMap<>();
+    private ScheduledExecutorService ackTimer;
+
+    // Conexiones que hablan con sobres (true = en JSON) y seq de las entregas que reciben
+    private final Map<C, Boolean> envelopePeers = new ConcurrentHashMap<>();
+    private final AtomicLong deliverySeq = new AtomicLong();
+    private static final ThreadLocal<Envelope.Reader> READER = ThreadLocal.withInitial(Envelope.Reader::new);
+
+    // Métricas por servidor (etiqueta server="<nombre en el bus>")
+    private final Metrics.Counter connectionsOpened;
+    private final Metrics.Counter messagesIn;
+    private final Metrics.Counter bytesIn;
+    private final Metrics.Counter messagesOut;
+    private final Metrics.Counter bytesOut;
+    private final Metrics.Counter resumes;
+    private final Metrics.Counter duplicates;
+
+    public WsSessionHandler(String busName, MessageBus bus, Peers<C> peers) {
+        this(busName, bus, peers, Metrics.shared());
+    }
+
+    public WsSessionHandler(String busName, MessageBus bus, Peers<C> peers, Metrics metrics) {
+        this.busName = busName;
+        this.bus = bus;
+        this.peers = peers;
+        String labels = "server=\"" + busName + "\"";
+        connectionsOpened = metrics.counter("ws_server_connections_opened_total",
+                "Conexiones WS aceptadas", labels);
+        messagesIn = metrics.counter("ws_server_messages_received_total",
+                "Mensajes WS recibidos de los clientes", labels);
+        bytesIn = metrics.counter("ws_server_bytes_received_total",
+                "Bytes de payload WS recibidos de los clientes", labels);
+        messagesOut = metrics.counter("ws_server_messages_sent_total",
+                "Mensajes WS enviados (uno por destinatario)", labels);
+        bytesOut = metrics.counter("ws_server_bytes_sent_total",
+                "Bytes de payload WS enviados (por destinatario)", labels);
+        resumes = metrics.counter("ws_server_sessions_resumed_total",
+                "RESUME atendidos (sesiones nuevas o reanudadas)", labels);
+        duplicates = metrics.counter("ws_server_duplicates_dropped_total",
+                "Mensajes con seq ya entregado descartados", labels);
+        if (bus != null) {
+            // Lo que publican otros componentes llega a los clientes suscritos al tópico
+            bus.register(busName, message -> {
+                if (message.isBinary()) {
+                    publish(message.topic, message.data);
+                } else {
+                    publish(message.topic, message.text);
+                }
+            });
+        }
+    }
+
+    public void onOpen(C conn) {
+        connectionsOpened.inc();
+        send(conn, GREETING);
+    }
+
+    public void onClose(C conn) {
+        envelopePeers.remove(conn);
+        Session session = sessionsByConn.remove(conn);
+        if (session != null) {
+            session.detach(conn, topics.topicsOf(conn));
+        }
+        topics.removeAll(conn);
+    }
+
+    public void onText(C conn, String frame) {
+        messagesIn.inc();
+        bytesIn.add(OutboundQueue.utf8Length(frame));
+        if (frame.startsWith(AdaptiveHeartbeat.CMD_PING)) {
+            // Latido del cliente: respuesta inmediata, fuera de la sesión (sin seq)
+            peers.send(conn, AdaptiveHeartbeat.pongFor(frame));
+            return;
+        }
+        String message = frame;
+        Session session = sessionOf(conn);
+        if (session == null && Envelope.isJson(frame)) {
+            ByteBuffer envelope = Envelope.fromJson(frame);
+            Envelope.Reader reader = READER.get();
+            if (envelope != null && reader.wrap(envelope)) {
+                journal(MessageJournal.Direction.IN, frame);
+                onEnvelope(conn, reader, true);
+                return;
+            }
+        }
+        if (session != null) {
+            if (frame.startsWith(ResumableSession.CMD_ACK)) {
+                session.state.onAck(ResumableSession.parseSeq(frame, ResumableSession.CMD_ACK));
+                return;
+            }
+            if (frame.startsWith(ResumableSession.CMD_SEQ)) {
+                if (!accept(session, ResumableSession.parseSeq(frame, ResumableSession.CMD_SEQ))) {
+                    return;
+                }
+                message = ResumableSession.payloadOf(frame);
+            }
+        }
+        if (message.startsWith(ResumableSession.CMD_RESUME)) {
+            resume(conn, message);
+            return;
+        }
+        journal(MessageJournal.Direction.IN, message);
+        if (handleCommand(conn, message)) {
+            return;
+        }
+        // Notifica al servicio (y demás componentes) por el bus en proceso; el origen va en el mensaje del bus
+        if (bus != null) {
+            bus.publish(busName, message);
+        }
+        // Eco al cliente como sobre ECHO en JSON
+        send(conn, Envelope.toJson(Envelope.Type.ECHO, MessageBus.DEFAULT_TOPIC, 0,
+                System.currentTimeMillis(), message));
+    }
+
+    /** El buffer se pasa tal cual al bus, sin copia ni conversión a String. */
+    public void onBinary(C conn, ByteBuffer frame) {
+        messagesIn.inc();
+        bytesIn.add(frame.remaining());
+        ByteBuffer message = frame;
+        Session session = sessionOf(conn);
+        Envelope.Reader envelope = READER.get();
+        if (session == null && envelope.wrap(frame)) {
+            journal(MessageJournal.Direction.IN, frame);
+            onEnvelope(conn, envelope, false);
+            return;
+        }
+        if (session != null && frame.remaining() >= ResumableSession.SEQ_HEADER) {
+            if (!accept(session, frame.getLong(frame.position()))) {
+                return;
+            }
+            message = frame.duplicate();
+            message.position(message.position() + ResumableSession.SEQ_HEADER);
+            message = message.slice();
+        }
+        journal(MessageJournal.Direction.IN, message);
+        if (bus != null) {
+            bus.publishBinary(busName, MessageBus.DEFAULT_TOPIC, message.asReadOnlyBuffer());
+        }
+    }
+
+    /** Guarda en el diario los mensajes recibidos y los enviados (un registro por broadcast). */
+    public void setJournal(MessageJournal journal) {
+        this.journal = journal;
+    }
+
+    /** Se da de baja del bus; llamar al parar el servidor. */
+    public void close() {
+        if (bus != null) {
+            bus.unregister(busName);
+        }
+        synchronized (this) {
+            if (ackTimer != null) {
+                ackTimer.shutdownNow();
+                ackTimer = null;
+            }
+        }
+    }
+
+    // ======== Pub/Sub ========
+
+    /**
+     * Publica un mensaje a todos los suscriptores del tópico. El frame se
+     * codifica una sola vez y se escribe en cada conexión.
+     *
+     * @return número de conexiones a las que se envió
+     */
+    public int publish(String topic, String message) {
+        Set<C> subscribers = subscribersOf(topic);
+        if (subscribers.isEmpty()) {
+            return 0;
+        }
+        Set<C> plain = deliverEnvelopes(topic, subscribers,
+                () -> ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+        if (!plain.isEmpty()) {
+            String delivery = DELIVERY_PREFIX + topic + " " + message;
+            broadcast(topic, delivery, plain);
+            journal(MessageJournal.Direction.OUT, delivery);
+            countSent(plain.size(), OutboundQueue.utf8Length(delivery));
+        }
+        return subscribers.size();
+    }
+
+    /**
+     * Variante binaria: los suscriptores reciben el payload en bruto, sin
+     * prefijo de tópico. Los bytes entre position y limit se enmarcan una vez.
+     */
+    public int publish(String topic, ByteBuffer data) {
+        Set<C> subscribers = subscribersOf(topic);
+        if (subscribers.isEmpty()) {
+            return 0;
+        }
+        Set<C> plain = deliverEnvelopes(topic, subscribers, data::duplicate);
+        if (!plain.isEmpty()) {
+            broadcast(topic, data, plain);
+            journal(MessageJournal.Direction.OUT, data);
+            countSent(plain.size(), data.remaining());
+        }
+        return subscribers.size();
+    }
+
+    public TopicRegistry<C> getTopics() {
+        return topics;
+    }
+
+    private void send(C conn, String text) {
+        Session session = sessionOf(conn);
+        if (session != null) {
+            synchronized (session.state) {
+                peers.send(conn, session.state.wrap(text));
+            }
+        } else {
+            peers.send(conn, text);
+        }
+        countSent(1, OutboundQueue.utf8Length(text));
+        journal(MessageJournal.Direction.OUT, text);
+    }
+
+    private void journal(MessageJournal.Direction direction, String text) {
+        MessageJournal j = journal;
+        if (j != null) {
+            j.append(direction, busName, text);
+        }
+    }
+
+    private void journal(MessageJournal.Direction direction, ByteBuffer data) {
+        MessageJournal j = journal;
+        if (j != null) {
+            j.append(direction, busName, data);
+        }
+    }
+
+    private void countSent(int recipients, long size) {
+        messagesOut.add(recipients);
+        bytesOut.add(recipients * size);
+    }
+
+    private Set<C> subscribersOf(String topic) {
+        if (topic == null || topic.isEmpty() || TopicRegistry.isWildcard(topic)) {
+            return Collections.emptySet();
+        }
+        return topics.subscribers(topic);
+    }
+
+    // ======== Sobres ========
+
+    /** MESSAGE, PUBLISH, SUB/UNSUB y PING en forma de sobre; la respuesta va en la misma forma. */
+    private void onEnvelope(C conn, Envelope.Reader envelope, boolean json) {
+        envelopePeers.put(conn, json);
+        String topic = envelope.topicLength() > 0 ? envelope.topic() : MessageBus.DEFAULT_TOPIC;
+        switch (envelope.type()) {
+            case MESSAGE:
+                // El origen ya va en el mensaje del bus: sin prefijo
+                if (bus != null) {
+                    bus.publishBinary(busName, topic, envelope.payload().asReadOnlyBuffer());
+                }
+                reply(conn, json, Envelope.copyAs(envelope, Envelope.Type.ECHO));
+                return;
+            case PUBLISH:
+                ByteBuffer payload = envelope.payload();
+                int delivered = publish(topic, payload);
+                if (PUBLISH_LOG.sample()) Log.d(TAG, "Publicado en {} a {} suscriptores", topic, delivered);
+                if (bus != null) {
+                    bus.publishBinary(busName, topic, payload.asReadOnlyBuffer());
+                }
+                replyStatus(conn, json, Envelope.Type.ACK, topic, envelope.seq(), "");
+                return;
+            case SUBSCRIBE:
+                boolean ok = topics.subscribe(conn, topic);
+                replyStatus(conn, json, ok ? Envelope.Type.ACK : Envelope.Type.ERROR, topic, envelope.seq(),
+                        ok ? "" : "tópico no válido");
+                return;
+            case UNSUBSCRIBE:
+                topics.unsubscribe(conn, topic);
+                replyStatus(conn, json, Envelope.Type.ACK, topic, envelope.seq(), "");
+                return;
+            case PING:
+                reply(conn, json, Envelope.copyAs(envelope, Envelope.Type.PONG));
+                return;
+            default:
+                replyStatus(conn, json, Envelope.Type.ERROR, topic, envelope.seq(),
+                        "tipo no admitido: " + envelope.type());
+        }
+    }
+
+    private void replyStatus(C conn, boolean json, Envelope.Type type, String topic, long seq, String detail) {
+        reply(conn, json, Envelope.encode(type, topic, seq, System.currentTimeMillis(), detail));
+    }
+
+    private void reply(C conn, boolean json, ByteBuffer envelope) {
+        if (json) {
+            Envelope.Reader reader = READER.get();
+            reader.wrap(envelope);
+            String text = Envelope.toJson(reader);
+            peers.send(conn, text);
+            journal(MessageJournal.Direction.OUT, text);
+            countSent(1, OutboundQueue.utf8Length(text));
+        } else {
+            journal(MessageJournal.Direction.OUT, envelope);
+            countSent(1, envelope.remaining());
+            peers.broadcast(envelope, Collections.singleton(conn));
+        }
+    }
+
+    /**
+     * Entrega a los suscriptores que usan sobres un DELIVERY (codificado una
+     * vez por forma) y devuelve el resto, que siguen el protocolo de texto.
+     */
+    private Set<C> deliverEnvelopes(String topic, Set<C> subscribers,
+                                    Supplier<ByteBuffer> payload) {
+        if (envelopePeers.isEmpty()) {
+            return subscribers;
+        }
+        List<C> binary = new ArrayList<>();
+        List<C> json = new ArrayList<>();
+        Set<C> plain = new HashSet<>(subscribers.size());
+        for (C conn : subscribers) {
+            Boolean asJson = envelopePeers.get(conn);
+            if (asJson == null) {
+                plain.add(conn);
+            } else if (asJson) {
+                json.add(conn);
+            } else {
+                binary.add(conn);
+            }
+        }
+        if (binary.isEmpty() && json.isEmpty()) {
+            return subscribers;
+        }
+        ByteBuffer delivery = Envelope.encode(Envelope.Type.DELIVERY, topic, deliverySeq.incrementAndGet(),
+                System.currentTimeMillis(), payload.get());
+        if (!binary.isEmpty()) {
+            peers.deliver(topic, delivery.duplicate(), binary);
+            countSent(binary.size(), delivery.remaining());
+        }
+        if (!json.isEmpty()) {
+            Envelope.Reader reader = READER.get();
+            reader.wrap(delivery);
+            String text = Envelope.toJson(reader);
+            peers.deliver(topic, text, json);
+            countSent(json.size(), OutboundQueue.utf8Length(text));
+        }
+        journal(MessageJournal.Direction.OUT, delivery);
+        return plain;
+    }
+
+    // ======== Sesiones reanudables ========
+
+    private Session sessionOf(C conn) {
+        return sessionsByConn.isEmpty() ? null : sessionsByConn.get(conn);
+    }
+
+    /**
+     * Los que tienen sesión reciben el mensaje con su propio seq (un frame
+     * cada uno); el resto comparte un único frame.
+     */
+    private void broadcast(String topic, String text, Set<C> subscribers) {
+        if (sessionsByConn.isEmpty()) {
+            peers.deliver(topic, text, subscribers);
+            return;
+        }
+        List<C> plain = new ArrayList<>(subscribers.size());
+        for (C conn : subscribers) {
+            Session session = sessionsByConn.get(conn);
+            if (session == null) {
+                plain.add(conn);
+            } else {
+                synchronized (session.state) {
+                    peers.send(conn, session.state.wrap(text));
+                }
+            }
+        }
+        if (!plain.isEmpty()) {
+            peers.deliver(topic, text, plain);
+        }
+    }
+
+    private void broadcast(String topic, ByteBuffer data, Set<C> subscribers) {
+        if (sessionsByConn.isEmpty()) {
+            peers.deliver(topic, data.duplicate(), subscribers);
+            return;
+        }
+        List<C> plain = new ArrayList<>(subscribers.size());
+        for (C conn : subscribers) {
+            Session session = sessionsByConn.get(conn);
+            if (session == null) {
+                plain.add(conn);
+            } else {
+                synchronized (session.state) {
+                    peers.broadcast(session.state.wrap(data), Collections.singleton(conn));
+                }
+            }
+        }
+        if (!plain.isEmpty()) {
+            peers.deliver(topic, data.duplicate(), plain);
+        }
+    }
+
+    /** "RESUME <id> <último seq recibido>": asocia la conexión a la sesión y reenvía lo pendiente. */
+    private void resume(C conn, String message) {
+        String[] parts = message.split(" ");
+        long peerReceived;
+        try {
+            peerReceived = parts.length == 3 ? Long.parseLong(parts[2]) : -1;
+        } catch (NumberFormatException e) {
+            peerReceived = -1;
+        }
+        if (peerReceived < 0 || parts[1].isEmpty()) {
+            peers.send(conn, "RESUMEERR formato: RESUME <id> <último seq recibido>");
+            return;
+        }
+        expireSessions();
+        String id = parts[1];
+        Session session = sessions.get(id);
+        boolean created = session == null;
+        if (created) {
+            if (sessions.size() >= MAX_SESSIONS) {
+                peers.send(conn, "RESUMEERR demasiadas sesiones");
+                return;
+            }
+            session = sessions.computeIfAbsent(id, k -> new Session(new ResumableSession(k, MAX_UNACKED)));
+        }
+        synchronized (session.state) {
+            C previous = session.conn;
+            if (previous != null && previous != conn) {
+                sessionsByConn.remove(previous);
+            }
+            Set<String> restore = previous != null && previous != conn
+                    ? new HashSet<>(topics.topicsOf(previous)) : session.topics;
+            session.attach(conn);
+            for (String topic : restore) {
+                topics.subscribe(conn, topic);
+            }
+            sessionsByConn.put(conn, session);
+            session.state.onAck(peerReceived);
+            peers.send(conn, ResumableSession.resumedFrame(id, session.state.lastReceived(), created));
+            List<Object> pending = session.state.unackedFrames();
+            for (Object frame : pending) {
+                if (frame instanceof ByteBuffer) {
+                    peers.broadcast((ByteBuffer) frame, Collections.singleton(conn));
+                } else {
+                    peers.send(conn, (String) frame);
+                }
+            }
+            resumes.inc();
+            if (created) {
+                Log.d(TAG, "Sesión {} creada", id);
+            } else {
+                Log.d(TAG, "Sesión {} reanudada, reenviados {}", id, pending.size());
+            }
+        }
+    }
+
+    /** Registra el seq; si es nuevo devuelve true. Programa el ACK en ambos casos. */
+    private boolean accept(Session session, long seq) {
+        boolean fresh = seq > 0 && session.state.accept(seq);
+        if (!fresh) {
+            duplicates.inc();
+        }
+        long ack = session.state.ackIfDue(false);
+        if (ack >= 0) {
+            sendAck(session, ack);
+        } else if (session.ackScheduled.compareAndSet(false, true)) {
+            ackTimer().schedule(() -> {
+                session.ackScheduled.set(false);
+                long due = session.state.ackIfDue(true);
+                if (due >= 0) {
+                    sendAck(session, due);
+                }
+            }, ResumableSession.ACK_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return fresh;
+    }
+
+    private void sendAck(Session session, long ack) {
+        C conn = session.conn;
+        if (conn != null) {
+            peers.send(conn, ResumableSession.ackFrame(ack));
+        }
+    }
+
+    private synchronized ScheduledExecutorService ackTimer() {
+        if (ackTimer == null) {
+            ackTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, busName + "-acks");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return ackTimer;
+    }
+
+    private void expireSessions() {
+        long cutoff = System.currentTimeMillis() - SESSION_TTL_MS;
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            long detachedAt = session.detachedAtMs;
+            if (detachedAt != 0 && detachedAt < cutoff) {
+                it.remove();
+                Log.d(TAG, "Sesión {} caducada", session.state.id);
+            }
+        }
+    }
+
+    /** Sesión reanudable y la conexión que la usa ahora (null si está desconectada). */
+    private final class Session {
+        final ResumableSession state;
+        final AtomicBoolean ackScheduled = new AtomicBoolean();
+        volatile C conn;
+        volatile long detachedAtMs;
+        // Suscripciones a restaurar al reanudar
+        volatile Set<String> topics = Collections.emptySet();
+
+        Session(ResumableSession state) {
+            this.state = state;
+        }
+
+        void attach(C newConn) {
+            conn = newConn;
+            detachedAtMs = 0;
+        }
+
+        void detach(C oldConn, Set<String> subscribed) {
+            synchronized (state) {
+                if (conn == oldConn) {
+                    topics = new HashSet<>(subscribed);
+                    conn = null;
+                    detachedAtMs = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    private boolean handleCommand(C conn, String message) {
+        if (message.startsWith(CMD_SUBSCRIBE)) {
+            String topic = message.substring(CMD_SUBSCRIBE.length()).trim();
+            boolean ok = topics.subscribe(conn, topic);
+            send(conn, (ok ? "SUBACK " : "SUBERR ") + topic);
+            return true;
+        }
+        if (message.startsWith(CMD_UNSUBSCRIBE)) {
+            String topic = message.substring(CMD_UNSUBSCRIBE.length()).trim();
+            topics.unsubscribe(conn, topic);
+            send(conn, "UNSUBACK " + topic);
+            return true;
+        }
+        if (message.startsWith(CMD_PUBLISH)) {
+            int sep = message.indexOf(' ', CMD_PUBLISH.length());
+            if (sep < 0) {
+                send(conn, "PUBERR formato: PUB <tópico> <mensaje>");
+                return true;
+            }
+            String topic = message.substring(CMD_PUBLISH.length(), sep);
+            String payload = message.substring(sep + 1);
+            int delivered = publish(topic, payload);
+            if (PUBLISH_LOG.sample()) Log.d(TAG, "Publicado en {} a {} suscriptores", topic, delivered);
+            if (bus != null) {
+                bus.publish(busName, topic, payload);
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveHeartbeatTest {
+
+    /** Planificador y reloj manuales: el tiempo solo avanza con advance(). */
+    private static final class FakeTime implements TaskScheduler {
+        long nowMs;
+        final List<long[]> dueAt = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(task);
+            dueAt.add(new long[]{nowMs + delayMs});
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    dueAt.remove(i);
+                }
+            }
+        }
+
+        long nanos() {
+            return TimeUnit.MILLISECONDS.toNanos(nowMs);
+        }
+
+        void advance(long ms) {
+            long target = nowMs + ms;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (dueAt.get(i)[0] <= target && (next < 0 || dueAt.get(i)[0] < dueAt.get(next)[0])) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                nowMs = Math.max(nowMs, dueAt.get(next)[0]);
+                Runnable task = tasks.remove(next);
+                dueAt.remove(next);
+                task.run();
+            }
+            nowMs = target;
+        }
+    }
+
+    private static final class FakeProbe implements AdaptiveHeartbeat.Probe {
+        final List<String> pings = new ArrayList<>();
+        String dead;
+
+        @Override
+        public boolean sendPing(String frame) {
+            pings.add(frame);
+            return true;
+        }
+
+        @Override
+        public void onDead(String reason) {
+            dead = reason;
+        }
+
+        String lastPong() {
+            return AdaptiveHeartbeat.pongFor(pings.get(pings.size() - 1));
+        }
+    }
+
+    private static AdaptiveHeartbeat heartbeat(FakeTime time, FakeProbe probe) {
+        return new AdaptiveHeartbeat(time, probe, time::nanos, 20_000, 10_000, 120_000, 5_000, new Metrics());
+    }
+
+    @Test
+    public void trafficDuringInterval_skipsPing() {
+        FakeTime time = new FakeTime();
+        FakeProbe probe = new FakeProbe();
+        AdaptiveHeartbeat hb = heartbeat(time, probe);
+        hb.start();
+
+        for (int i = 0; i < 10; i++) {
+            time.advance(5_000);
+            hb.onActivity();
+        }
+        assertTrue(probe.pings.isEmpty());
+
+        time.advance(20_000);
+        assertEquals(1, probe.pings.size());
+    }
+
+    @Test
+    public void confirmedIntervals_probeUpward() {
+        FakeTime time = new FakeTime();
+        FakeProbe probe = new FakeProbe();
+        AdaptiveHeartbeat hb = heartbeat(time, probe);
+        hb.start();
+
+        for (int i = 0; i < AdaptiveHeartbeat.STEP_UP_AFTER; i++) {
+            time.advance(hb.intervalMs());
+            time.advance(50);
+            hb.onPong(probe.lastPong());
+        }
+
+        assertEquals(30_000, hb.intervalMs());
+        assertEquals(50, hb.lastRttMs());
+        assertNull(probe.dead);
+    }
+
+    @Test
+    public void missingPong_declaresDeadAndFallsBackToConfirmed() {
+        FakeTime time = new FakeTime();
+        FakeProbe probe = new FakeProbe();
+        AdaptiveHeartbeat hb = heartbeat(time, probe);
+        hb.start();
+        for (int i = 0; i < AdaptiveHeartbeat.STEP_UP_AFTER; i++) {
+            time.advance(hb.intervalMs());
+            hb.onPong(probe.lastPong());
+        }
+        assertEquals(30_000, hb.intervalMs());
+
+        // El NAT no aguanta 30 s de silencio: el ping no obtiene respuesta
+        time.advance(30_000);
+        time.advance(5_000);
+
+        assertNotNull(probe.dead);
+        assertEquals(20_000, hb.intervalMs());
+
+        // El techo impide volver a 30 s: se prueba a medio camino
+        hb.start();
+        for (int i = 0; i < AdaptiveHeartbeat.STEP_UP_AFTER; i++) {
+            time.advance(hb.intervalMs());
+            hb.onPong(probe.lastPong());
+        }
+        assertEquals(25_000, hb.intervalMs());
+    }
+}
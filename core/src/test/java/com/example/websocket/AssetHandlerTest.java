@@ -0,0 +1,123 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AssetHandlerTest {
+
+    private static File webRoot() throws IOException {
+        File root = Files.createTempDirectory("assets").toFile();
+        root.deleteOnExit();
+        write(new File(root, "index.html"), "<h1>panel</h1>");
+        write(new File(root, "app.js"), "0123456789");
+        write(new File(root, "app.js.gz"), "gzip!");
+        return root;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        file.deleteOnExit();
+    }
+
+    private static AssetHandler handler(File root) {
+        return new AssetHandler(AssetHandler.directory(root), 1024 * 1024, 64 * 1024, new Metrics());
+    }
+
+    private static HttpRequest get(String path, String... headers) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        return new HttpRequest("GET", path, null, map, null, -1, "127.0.0.1");
+    }
+
+    private static String body(HttpResponse response) {
+        ByteBuffer buffer = response.bodyBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void root_servesIndexAndCachesIt() throws IOException {
+        AssetHandler handler = handler(webRoot());
+
+        HttpResponse first = handler.handle(get("/"));
+        HttpResponse second = handler.handle(get("/index.html"));
+
+        assertEquals(200, first.status);
+        assertEquals("<h1>panel</h1>", body(first));
+        assertEquals(HttpResponse.MIME_HTML, first.contentType);
+        assertEquals(first.headers().get("ETag"), second.headers().get("ETag"));
+        assertEquals(1, handler.cachedEntries());
+    }
+
+    @Test
+    public void matchingEtag_returnsNotModified() throws IOException {
+        AssetHandler handler = handler(webRoot());
+        String etag = handler.handle(get("/app.js")).headers().get("ETag");
+
+        HttpResponse response = handler.handle(get("/app.js", "if-none-match", etag));
+
+        assertEquals(304, response.status);
+        assertEquals(0, response.bodyLength());
+    }
+
+    @Test
+    public void acceptedGzip_servesPrecompressedVariant() throws IOException {
+        AssetHandler handler = handler(webRoot());
+
+        HttpResponse gz = handler.handle(get("/app.js", "accept-encoding", "gzip, deflate, br"));
+        HttpResponse plain = handler.handle(get("/app.js", "accept-encoding", "gzip;q=0"));
+
+        assertEquals("gzip", gz.headers().get("Content-Encoding"));
+        assertEquals("gzip!", body(gz));
+        assertNull(plain.headers().get("Content-Encoding"));
+        assertNotEquals(gz.headers().get("ETag"), plain.headers().get("ETag"));
+    }
+
+    @Test
+    public void range_returnsPartialContent() throws IOException {
+        AssetHandler handler = handler(webRoot());
+
+        HttpResponse middle = handler.handle(get("/app.js", "range", "bytes=2-4"));
+        HttpResponse suffix = handler.handle(get("/app.js", "range", "bytes=-3"));
+        HttpResponse outside = handler.handle(get("/app.js", "range", "bytes=50-"));
+
+        assertEquals(206, middle.status);
+        assertEquals("234", body(middle));
+        assertEquals("bytes 2-4/10", middle.headers().get("Content-Range"));
+        assertEquals("789", body(suffix));
+        assertEquals(416, outside.status);
+        assertEquals("bytes */10", outside.headers().get("Content-Range"));
+    }
+
+    @Test
+    public void staleIfRange_servesWholeFile() throws IOException {
+        AssetHandler handler = handler(webRoot());
+
+        HttpResponse response = handler.handle(get("/app.js", "range", "bytes=0-1", "if-range", "\"viejo\""));
+
+        assertEquals(200, response.status);
+        assertEquals(10, response.bodyLength());
+    }
+
+    @Test
+    public void pathEscape_isRejected() throws IOException {
+        AssetHandler handler = handler(webRoot());
+
+        assertEquals(404, handler.handle(get("/../secret")).status);
+        assertEquals(404, handler.handle(get("/%2e%2e/secret")).status);
+        assertEquals(404, handler.handle(get("/missing.css")).status);
+        assertNull(AssetHandler.normalize("/a/../b"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void acquire_roundsUpToSizeClass() {
+        BufferPool pool = new BufferPool(false);
+        assertEquals(1024, pool.acquire(1).capacity());
+        assertEquals(2048, pool.acquire(1025).capacity());
+    }
+
+    @Test
+    public void release_reusesSameBuffer() {
+        BufferPool pool = new BufferPool(false);
+        ByteBuffer buffer = pool.acquire(4000);
+        buffer.putInt(42);
+        pool.release(buffer);
+
+        ByteBuffer again = pool.acquire(3000);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+    }
+
+    @Test
+    public void oversizedBuffers_areNotPooled() {
+        BufferPool pool = new BufferPool(false);
+        ByteBuffer big = pool.acquire(2 * 1024 * 1024);
+        pool.release(big);
+        assertTrue(big != pool.acquire(2 * 1024 * 1024));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.websocket;
+
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.HandshakeState;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * permessage-deflate a través del Draft_6455 que monta {@link CompressionConfig},
+ * con un handshake que ofrece la extensión. El coste de CPU se mide en el
+ * CompressionBenchmark de {@code :benchmark}.
+ */
+public class CompressionConfigTest {
+
+    @Test
+    public void aboveThreshold_compressesJsonAndRoundTrips() throws Exception {
+        for (boolean takeover : new boolean[]{false, true}) {
+            CompressionConfig config = new CompressionConfig(true, CompressionConfig.DEFAULT_THRESHOLD_BYTES,
+                    !takeover, !takeover);
+            Draft_6455 sender = negotiated(config);
+            Draft_6455 receiver = negotiated(config);
+            for (int seed = 0; seed < 8; seed++) {
+                String text = sensorPayload(16, seed);
+                ByteBuffer wire = encode(sender, text);
+                int payloadBytes = text.getBytes(StandardCharsets.UTF_8).length;
+                assertTrue("ratio " + wire.remaining() + "/" + payloadBytes,
+                        wire.remaining() < payloadBytes * 0.8);
+
+                List<Framedata> frames = receiver.translateFrame(wire);
+                assertEquals(1, frames.size());
+                assertTrue(frames.get(0).isRSV1());
+                assertEquals(text, StandardCharsets.UTF_8.decode(frames.get(0).getPayloadData()).toString());
+            }
+        }
+    }
+
+    @Test
+    public void belowThreshold_isSentUncompressed() throws Exception {
+        Draft_6455 sender = negotiated(CompressionConfig.DEFAULT);
+        String text = sensorPayload(1, 0);
+        assertTrue(text.length() < CompressionConfig.DEFAULT_THRESHOLD_BYTES);
+
+        List<Framedata> frames = negotiated(CompressionConfig.DEFAULT).translateFrame(encode(sender, text));
+        assertFalse(frames.get(0).isRSV1());
+        assertEquals(text, StandardCharsets.UTF_8.decode(frames.get(0).getPayloadData()).toString());
+    }
+
+    @Test
+    public void disabled_neverCompresses() throws Exception {
+        Draft_6455 sender = negotiated(CompressionConfig.DISABLED);
+        String text = sensorPayload(64, 0);
+
+        ByteBuffer wire = encode(sender, text);
+        assertTrue(wire.remaining() > text.length());
+        assertFalse(negotiated(CompressionConfig.DISABLED).translateFrame(wire).get(0).isRSV1());
+        assertEquals(Long.MAX_VALUE, CompressionConfig.DISABLED.clientMinMessageToCompress());
+    }
+
+    private static Draft_6455 negotiated(CompressionConfig config) throws Exception {
+        Draft_6455 draft = (Draft_6455) config.serverDrafts().get(0).copyInstance();
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.put("Upgrade", "websocket");
+        handshake.put("Connection", "Upgrade");
+        handshake.put("Sec-WebSocket-Version", "13");
+        handshake.put("Sec-WebSocket-Key", "dGhlIHNhbXBsZSBub25jZQ==");
+        handshake.put("Sec-WebSocket-Extensions", "permessage-deflate");
+        assertEquals(HandshakeState.MATCHED, draft.acceptHandshakeAsServer(handshake));
+        return draft;
+    }
+
+    private static ByteBuffer encode(Draft_6455 draft, String text) {
+        return draft.createBinaryFrame(draft.createFrames(text, false).get(0));
+    }
+
+    private static String sensorPayload(int readings, int seed) {
+        StringBuilder sb = new StringBuilder("{\"device\":\"PrintConToda\",\"readings\":[");
+        for (int i = 0; i < readings; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"sensor\":\"temperatura\",\"unit\":\"celsius\",\"value\":")
+                    .append(20 + (seed * 7 + i) % 10).append('.').append((seed + i) % 10)
+                    .append(",\"ts\":").append(1_700_000_000_000L + seed * 1013L + i * 17L).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+}
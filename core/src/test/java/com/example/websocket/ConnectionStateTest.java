@@ -0,0 +1,69 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.websocket.ConnectionState.State.*;
+import static org.junit.Assert.*;
+
+public class ConnectionStateTest {
+
+    @Test
+    public void normalLifecycle_followsAllowedTransitions() {
+        ConnectionState state = new ConnectionState();
+
+        assertTrue(state.moveTo(CONNECTING));
+        assertTrue(state.moveTo(OPEN));
+        assertTrue(state.isOpen());
+        assertTrue(state.moveTo(CLOSING));
+        assertTrue(state.moveTo(BACKOFF));
+        assertTrue(state.moveTo(CONNECTING));
+        assertTrue(state.moveTo(IDLE));
+        assertEquals(IDLE, state.get());
+    }
+
+    @Test
+    public void lateCallbacks_areRejected() {
+        ConnectionState state = new ConnectionState();
+
+        // Un fallo o una apertura tardía tras la parada no cambian nada
+        assertFalse(state.moveTo(BACKOFF));
+        assertFalse(state.moveTo(OPEN));
+        assertFalse(state.moveTo(CLOSING));
+        state.moveTo(CONNECTING);
+        assertFalse(state.moveTo(CONNECTING));
+        assertEquals(CONNECTING, state.get());
+    }
+
+    @Test
+    public void concurrentConnects_onlyOneWins() throws Exception {
+        ConnectionState state = new ConnectionState();
+        AtomicInteger winners = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (state.moveTo(CONNECTING)) {
+                    winners.incrementAndGet();
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        go.countDown();
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+
+        assertEquals(1, winners.get());
+    }
+}
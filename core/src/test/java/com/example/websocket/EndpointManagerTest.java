@@ -0,0 +1,172 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+import static org.junit.Assert.*;
+
+public class EndpointManagerTest {
+
+    /** Socket de prueba: guarda lo enviado y simula un buffer ocupado o cerrado. */
+    private static final class FakeSocket implements WebSocket {
+        final List<String> sent = new ArrayList<>();
+        long queued;
+        boolean accepting = true;
+
+        @Override
+        public boolean send(String s) {
+            if (accepting) {
+                sent.add(s);
+            }
+            return accepting;
+        }
+
+        @Override
+        public boolean send(ByteString b) {
+            return send(b.utf8());
+        }
+
+        @Override
+        public boolean close(int c, String r) {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public long queueSize() {
+            return queued;
+        }
+
+        @Override
+        public Request request() {
+            return null;
+        }
+    }
+
+    private static final TaskScheduler NO_SCHEDULER = new TaskScheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+        }
+    };
+
+    private static EndpointManager manager(EndpointManager.Strategy strategy) {
+        return new EndpointManager(null, NO_SCHEDULER, (endpoint, text) -> { }, strategy,
+                1000, 60_000, 30_000, new Metrics());
+    }
+
+    private static FakeSocket open(EndpointManager.Endpoint endpoint) {
+        FakeSocket socket = new FakeSocket();
+        endpoint.socket = socket;
+        endpoint.state.moveTo(ConnectionState.State.CONNECTING);
+        endpoint.state.moveTo(ConnectionState.State.OPEN);
+        return socket;
+    }
+
+    @Test
+    public void failureBeforeNewWebSocketReturns_isNotDroppedAsStale() {
+        // Como un DNS o un puerto cerrado que falla en el dispatcher antes de que newWebSocket() vuelva
+        OkHttpClient failsImmediately = new OkHttpClient() {
+            @Override
+            public WebSocket newWebSocket(Request request, WebSocketListener listener) {
+                FakeSocket socket = new FakeSocket();
+                listener.onFailure(socket, new IOException("conexión rechazada"), null);
+                return socket;
+            }
+        };
+        EndpointManager m = new EndpointManager(failsImmediately, NO_SCHEDULER, (endpoint, text) -> { },
+                EndpointManager.Strategy.FAILOVER, 1000, 60_000, 30_000, new Metrics());
+        EndpointManager.Endpoint endpoint = m.add("ws://a", 0);
+
+        m.start();
+
+        assertEquals(ConnectionState.State.BACKOFF, endpoint.state());
+        assertEquals(1, endpoint.consecutiveFailures());
+        assertEquals("conexión rechazada", endpoint.lastError());
+    }
+
+    @Test
+    public void failover_prefersBestPriorityThatIsOpen() {
+        EndpointManager m = manager(EndpointManager.Strategy.FAILOVER);
+        EndpointManager.Endpoint backup = m.add("ws://b", 2);
+        EndpointManager.Endpoint primary = m.add("ws://a", 1);
+        FakeSocket b = open(backup);
+
+        assertTrue(m.send("1"));
+        FakeSocket a = open(primary);
+        assertTrue(m.send("2"));
+
+        assertEquals(primary, m.endpoints().get(0));
+        assertEquals(1, b.sent.size());
+        assertEquals(1, a.sent.size());
+        assertEquals(1, primary.messagesSent());
+    }
+
+    @Test
+    public void rejectedSend_fallsBackToNextEndpoint() {
+        EndpointManager m = manager(EndpointManager.Strategy.FAILOVER);
+        FakeSocket a = open(m.add("ws://a", 1));
+        FakeSocket b = open(m.add("ws://b", 2));
+        a.accepting = false;
+
+        assertTrue(m.send("x"));
+        assertEquals(1, b.sent.size());
+
+        b.accepting = false;
+        assertFalse(m.send("y"));
+    }
+
+    @Test
+    public void roundRobin_rotatesAcrossOpenEndpoints() {
+        EndpointManager m = manager(EndpointManager.Strategy.ROUND_ROBIN);
+        FakeSocket a = open(m.add("ws://a", 1));
+        m.add("ws://caido", 2);
+        FakeSocket c = open(m.add("ws://c", 3));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(m.send("m" + i));
+        }
+
+        assertEquals(10, a.sent.size() + c.sent.size());
+        assertTrue(a.sent.size() >= 3);
+        assertTrue(c.sent.size() >= 3);
+    }
+
+    @Test
+    public void leastLoaded_picksSmallestBuffer() {
+        EndpointManager m = manager(EndpointManager.Strategy.LEAST_LOADED);
+        FakeSocket a = open(m.add("ws://a", 1));
+        FakeSocket b = open(m.add("ws://b", 2));
+        a.queued = 64 * 1024;
+        b.queued = 10;
+
+        assertTrue(m.send("x"));
+        assertEquals(0, a.sent.size());
+        assertEquals(1, b.sent.size());
+    }
+
+    @Test
+    public void noOpenEndpoint_rejects() {
+        EndpointManager m = manager(EndpointManager.Strategy.FAILOVER);
+        m.add("ws://a", 1);
+
+        assertFalse(m.send("x"));
+        assertEquals(0, m.openCount());
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EnvelopeTest {
+
+    @Test
+    public void encodeThenRead_roundTripsAllFields() {
+        ByteBuffer frame = Envelope.encode(Envelope.Type.PUBLISH, "sensores", 42, 1_700_000_000_000L, "21.5");
+        Envelope.Reader reader = new Envelope.Reader();
+
+        assertTrue(reader.wrap(frame));
+        assertEquals(Envelope.Type.PUBLISH, reader.type());
+        assertEquals(42, reader.seq());
+        assertEquals(1_700_000_000_000L, reader.timestampMs());
+        assertTrue(reader.topicEquals("sensores"));
+        assertFalse(reader.topicEquals("sensor"));
+        assertEquals("sensores", reader.topic());
+        assertEquals("21.5", reader.payloadText());
+        assertEquals(Envelope.HEADER_BYTES + 8 + 4, frame.remaining());
+        // El lector no mueve el frame
+        assertEquals(0, frame.position());
+    }
+
+    @Test
+    public void readerWorksOnSlicesAndRejectsForeignFrames() {
+        ByteBuffer frame = Envelope.encode(Envelope.Type.MESSAGE, "", 1, 0, "x");
+        ByteBuffer padded = ByteBuffer.allocate(frame.remaining() + 3);
+        padded.position(3);
+        padded.put(frame.duplicate()).position(3);
+        Envelope.Reader reader = new Envelope.Reader();
+
+        assertTrue(reader.wrap(padded));
+        assertEquals("x", reader.payloadText());
+        assertEquals(0, reader.topicLength());
+
+        assertFalse(reader.wrap(ByteBuffer.wrap("hola".getBytes(StandardCharsets.UTF_8))));
+        ByteBuffer unknownType = frame.duplicate();
+        unknownType.put(2, (byte) 99);
+        assertFalse(reader.wrap(unknownType));
+    }
+
+    @Test
+    public void readerRejectsMagicPrefixedBinaryWithoutAValidHeader() {
+        Envelope.Reader reader = new Envelope.Reader();
+        ByteBuffer frame = Envelope.encode(Envelope.Type.MESSAGE, "sensores/ñ", 1, 2, "x");
+        assertTrue(reader.wrap(frame));
+
+        ByteBuffer reservedType = copyOf(frame);
+        reservedType.put(2, (byte) (0x10 | Envelope.Type.MESSAGE.code));
+        assertFalse(reader.wrap(reservedType));
+
+        ByteBuffer negativeSeq = copyOf(frame);
+        negativeSeq.putLong(4, -1);
+        assertFalse(reader.wrap(negativeSeq));
+
+        ByteBuffer negativeTimestamp = copyOf(frame);
+        negativeTimestamp.putLong(12, Long.MIN_VALUE);
+        assertFalse(reader.wrap(negativeTimestamp));
+
+        ByteBuffer controlInTopic = copyOf(frame);
+        controlInTopic.put(Envelope.HEADER_BYTES, (byte) 0x01);
+        assertFalse(reader.wrap(controlInTopic));
+
+        ByteBuffer badUtf8 = copyOf(frame);
+        badUtf8.put(Envelope.HEADER_BYTES + 9, (byte) 0xFF);
+        assertFalse(reader.wrap(badUtf8));
+
+        ByteBuffer topicPastEnd = copyOf(frame);
+        topicPastEnd.put(3, (byte) 200);
+        assertFalse(reader.wrap(topicPastEnd));
+    }
+
+    @Test
+    public void handler_passesNonEnvelopeBinaryThroughRaw() {
+        MessageBus bus = new MessageBus();
+        List<ByteBuffer> received = new ArrayList<>();
+        bus.register("app", message -> received.add(message.data));
+        FakePeers peers = new FakePeers();
+        WsSessionHandler<String> handler = new WsSessionHandler<>("ws-test", bus, peers, new Metrics());
+        handler.onOpen("bin");
+
+        // Empieza como un sobre (magic, versión, tipo MESSAGE) pero el resto no es una cabecera válida
+        byte[] raw = new byte[64];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (0xA0 + i);
+        }
+        raw[0] = Envelope.MAGIC;
+        raw[1] = Envelope.VERSION;
+        raw[2] = Envelope.Type.MESSAGE.code;
+        raw[3] = 4;
+        handler.onBinary("bin", ByteBuffer.wrap(raw));
+
+        assertNull(peers.lastBinary("bin"));
+        assertEquals(WsSessionHandler.GREETING, peers.lastText("bin"));
+        assertEquals(1, received.size());
+        assertEquals(ByteBuffer.wrap(raw), received.get(0));
+        handler.close();
+    }
+
+    @Test
+    public void json_roundTripsTextAndBinaryPayloads() {
+        ByteBuffer frame = Envelope.encode(Envelope.Type.MESSAGE, "app", 7, 123, "dice \"hola\"\n");
+        Envelope.Reader reader = new Envelope.Reader();
+        reader.wrap(frame);
+
+        String json = Envelope.toJson(reader);
+        assertEquals("{\"type\":\"MESSAGE\",\"topic\":\"app\",\"seq\":7,\"ts\":123,"
+                + "\"payload\":\"dice \\\"hola\\\"\\n\"}", json);
+        assertTrue(Envelope.isJson(json));
+        assertEquals(frame, Envelope.fromJson(json));
+        // Misma forma sin pasar por el binario
+        assertEquals(json, Envelope.toJson(Envelope.Type.MESSAGE, "app", 7, 123, "dice \"hola\"\n"));
+
+        ByteBuffer binary = Envelope.encode(Envelope.Type.DELIVERY, "raw", 1, 0,
+                ByteBuffer.wrap(new byte[]{(byte) 0xFF, 0, 1}));
+        reader.wrap(binary);
+        String binaryJson = Envelope.toJson(reader);
+        assertTrue(binaryJson.contains("\"payload64\":\"/wAB\""));
+        assertEquals(binary, Envelope.fromJson(binaryJson));
+
+        assertNull(Envelope.fromJson("{\"type\":\"NOPE\"}"));
+        assertNull(Envelope.fromJson("{\"type\":\"PING\""));
+    }
+
+    @Test
+    public void handler_echoesMessagesAndDeliversEnvelopesToEnvelopeSubscribers() {
+        FakePeers peers = new FakePeers();
+        WsSessionHandler<String> handler = new WsSessionHandler<>("ws-test", null, peers, new Metrics());
+        Envelope.Reader reader = new Envelope.Reader();
+        handler.onOpen("bin");
+        handler.onOpen("json");
+        handler.onOpen("texto");
+
+        handler.onBinary("bin", Envelope.encode(Envelope.Type.MESSAGE, "app", 5, 99, "hola"));
+        assertTrue(reader.wrap(peers.lastBinary("bin")));
+        assertEquals(Envelope.Type.ECHO, reader.type());
+        assertEquals(5, reader.seq());
+        assertEquals(99, reader.timestampMs());
+        assertEquals("hola", reader.payloadText());
+
+        handler.onBinary("bin", Envelope.encode(Envelope.Type.SUBSCRIBE, "t", 6, 0, ""));
+        handler.onText("json", "{\"type\":\"SUBSCRIBE\",\"topic\":\"t\",\"seq\":1}");
+        assertTrue(peers.lastText("json").startsWith("{\"type\":\"ACK\",\"topic\":\"t\",\"seq\":1,"));
+        handler.onText("texto", "SUB t");
+
+        assertEquals(3, handler.publish("t", "dato"));
+
+        assertTrue(reader.wrap(peers.lastBinary("bin")));
+        assertEquals(Envelope.Type.DELIVERY, reader.type());
+        assertEquals("dato", reader.payloadText());
+        assertTrue(peers.lastText("json").startsWith("{\"type\":\"DELIVERY\",\"topic\":\"t\""));
+        assertEquals(WsSessionHandler.DELIVERY_PREFIX + "t dato", peers.lastText("texto"));
+        handler.close();
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame.duplicate()).flip();
+        return copy;
+    }
+
+    private static final class FakePeers implements WsSessionHandler.Peers<String> {
+        final List<Object[]> sent = new ArrayList<>();
+
+        @Override
+        public void send(String conn, String text) {
+            sent.add(new Object[]{conn, text});
+        }
+
+        @Override
+        public void broadcast(String text, Collection<String> conns) {
+            for (String conn : conns) {
+                send(conn, text);
+            }
+        }
+
+        @Override
+        public void broadcast(ByteBuffer data, Collection<String> conns) {
+            for (String conn : conns) {
+                sent.add(new Object[]{conn, data.duplicate()});
+            }
+        }
+
+        String lastText(String conn) {
+            for (int i = sent.size() - 1; i >= 0; i--) {
+                if (sent.get(i)[0].equals(conn) && sent.get(i)[1] instanceof String) {
+                    return (String) sent.get(i)[1];
+                }
+            }
+            return null;
+        }
+
+        ByteBuffer lastBinary(String conn) {
+            for (int i = sent.size() - 1; i >= 0; i--) {
+                if (sent.get(i)[0].equals(conn) && sent.get(i)[1] instanceof ByteBuffer) {
+                    return (ByteBuffer) sent.get(i)[1];
+                }
+            }
+            return null;
+        }
+    }
+}
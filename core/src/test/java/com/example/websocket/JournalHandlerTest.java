@@ -0,0 +1,76 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class JournalHandlerTest {
+
+    @Test
+    public void replay_returnsNdjsonPageAndNextOffset() throws Exception {
+        File dir = Files.createTempDirectory("journal").toFile();
+        try (MessageJournal journal = new MessageJournal(dir, 64 * 1024, Long.MAX_VALUE, Long.MAX_VALUE / 2,
+                10_000, new Metrics())) {
+            journal.append(MessageJournal.Direction.IN, "client", "hola \"mundo\"\n");
+            journal.append(MessageJournal.Direction.OUT, "service", ByteBuffer.wrap(new byte[]{1, 2}));
+            journal.append(MessageJournal.Direction.IN, "client", "tercero");
+
+            HttpResponse response = new JournalHandler(journal).handle(get("from=0&limit=2"));
+
+            assertEquals(200, response.status);
+            assertEquals(PublishHandler.NDJSON, response.contentType);
+            assertEquals("2", response.headers().get(JournalHandler.HEADER_NEXT));
+            String[] lines = new String(response.body, StandardCharsets.UTF_8).split("\n");
+            assertEquals(2, lines.length);
+            assertTrue(lines[0].contains("\"dir\":\"in\""));
+            assertTrue(lines[0].contains("\"text\":\"hola \\\"mundo\\\"\\n\""));
+            assertTrue(lines[1].contains("\"base64\":\"AQI=\""));
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void invalidOffset_isBadRequest() throws Exception {
+        File dir = Files.createTempDirectory("journal").toFile();
+        try (MessageJournal journal = new MessageJournal(dir, 64 * 1024, Long.MAX_VALUE, Long.MAX_VALUE / 2,
+                10_000, new Metrics())) {
+            assertEquals(400, new JournalHandler(journal).handle(get("from=abc")).status);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void loopbackOnly_refusesOtherHosts() {
+        HttpHandler handler = HttpRoutes.loopbackOnly(request -> HttpResponse.text(200, "diario"));
+
+        assertEquals(200, handler.handle(get("", "127.0.0.1")).status);
+        assertEquals(200, handler.handle(get("", "0:0:0:0:0:0:0:1")).status);
+        assertEquals(403, handler.handle(get("", "192.168.1.20")).status);
+        assertEquals(403, handler.handle(get("", "localhost")).status);
+        assertEquals(403, handler.handle(get("", null)).status);
+    }
+
+    private static HttpRequest get(String query) {
+        return get(query, "127.0.0.1");
+    }
+
+    private static HttpRequest get(String query, String remoteAddress) {
+        return new HttpRequest("GET", "/journal", query, new HashMap<>(),
+                new ByteArrayInputStream(new byte[0]), 0, remoteAddress);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LogTest {
+
+    @Test
+    public void format_replacesPlaceholdersInOrder() {
+        assertEquals("a=1 b=dos", Log.format("a={} b={}", 1, "dos", null));
+        assertEquals("sin args {}", Log.format("sin args {}", null, null, null));
+        assertEquals("1 y null", Log.format("{} y {}", 1, null, null));
+    }
+
+    @Test
+    public void disabledLevel_neverReachesSink() {
+        List<String> lines = new ArrayList<>();
+        Log.setSink((priority, tag, msg, tr) -> lines.add(msg));
+        Log.setMinPriority(Log.INFO);
+        try {
+            Log.d("T", "oculto {}", 1);
+            Log.i("T", "visible {}", 2);
+
+            assertEquals(Collections.singletonList("visible 2"), lines);
+        } finally {
+            Log.setMinPriority(Log.DEBUG);
+            Log.setSink(null);
+        }
+    }
+
+    @Test
+    public void formatWithThrowable_passesBothToSink() {
+        List<String> lines = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        Log.setSink((priority, tag, msg, tr) -> {
+            lines.add(msg);
+            errors.add(tr);
+        });
+        try {
+            RuntimeException failure = new RuntimeException("x");
+            Log.e("T", "Error en {} {}", "GET", "/ruta", failure);
+            Log.w("T", "{}, se desconecta {}", "lento", "10.0.0.2");
+
+            assertEquals(Arrays.asList("Error en GET /ruta", "lento, se desconecta 10.0.0.2"), lines);
+            assertSame(failure, errors.get(0));
+            assertNull(errors.get(1));
+        } finally {
+            Log.setSink(null);
+        }
+    }
+
+    @Test
+    public void asyncMode_deliversInOrderAndKeepsRecentLines() {
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        Log.setSink((priority, tag, msg, tr) -> lines.add(msg));
+        Log.startAsync(1024);
+        try {
+            for (int i = 0; i < 100; i++) {
+                Log.d("T", "mensaje {}", i);
+            }
+            Log.flush();
+
+            assertEquals(100, lines.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("mensaje " + i, lines.get(i));
+            }
+            List<String> recent = Log.recent();
+            assertTrue(recent.get(recent.size() - 1).endsWith("D/T: mensaje 99"));
+        } finally {
+            Log.stopAsync();
+            Log.setSink(null);
+        }
+    }
+
+    @Test
+    public void fullRing_dropsInsteadOfBlocking() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        LogRing ring = new LogRing(4, (time, priority, tag, format, a, b, c, tr) -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            for (int i = 0; i < ring.capacity(); i++) {
+                assertTrue(ring.offer(Log.DEBUG, "T", "m", null, null, null, null));
+            }
+            assertFalse(ring.offer(Log.DEBUG, "T", "m", null, null, null, null));
+            assertEquals(1, ring.dropped());
+        } finally {
+            release.countDown();
+            ring.stop();
+        }
+    }
+
+    @Test
+    public void sampler_letsOneInNThrough() {
+        Log.setSampleEvery(10);
+        try {
+            Log.Sampler sampler = new Log.Sampler();
+            int sampled = 0;
+            for (int i = 0; i < 100; i++) {
+                if (sampler.sample()) {
+                    sampled++;
+                }
+            }
+            assertEquals(10, sampled);
+        } finally {
+            Log.setSampleEvery(1);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MessageBusTest {
+
+    @Test
+    public void publish_skipsOriginEndpoint() {
+        MessageBus bus = new MessageBus();
+        List<String> a = new ArrayList<>();
+        List<String> b = new ArrayList<>();
+        bus.register("a", m -> a.add(m.text));
+        bus.register("b", m -> b.add(m.text));
+
+        bus.publish("a", "hola");
+
+        assertTrue(a.isEmpty());
+        assertEquals(1, b.size());
+    }
+
+    @Test
+    public void reflectedMessage_isSuppressed() {
+        MessageBus bus = new MessageBus();
+        List<String> received = new ArrayList<>();
+        // Cada componente reenvía lo que recibe, como hacía el eco por loopback
+        bus.register("server", m -> bus.publish("server", m.topic, m.text));
+        bus.register("service", m -> {
+            received.add(m.text);
+            bus.publish("service", m.topic, m.text);
+        });
+
+        assertTrue(bus.publish("http", "ping"));
+
+        assertEquals(1, received.size());
+        assertTrue(bus.getSuppressedCount() > 0);
+    }
+
+    @Test
+    public void derivedChains_areCutAfterMaxHops() {
+        MessageBus bus = new MessageBus();
+        List<String> received = new ArrayList<>();
+        bus.register("relay1", m -> {
+            received.add(m.text);
+            bus.publish("relay1", m.text + "+");
+        });
+        bus.register("relay2", m -> {
+            received.add(m.text);
+            bus.publish("relay2", m.text + "+");
+        });
+
+        bus.publish("http", "x");
+
+        // Cada rama llega como mucho a MAX_HOPS saltos desde el original
+        assertEquals(2 * (MessageBus.MAX_HOPS + 1), received.size());
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MessageJournalTest {
+
+    private static final int SEGMENT = 64 * 1024;
+
+    @Test
+    public void append_thenReadFromOffset() throws Exception {
+        File dir = tempDir();
+        try (MessageJournal journal = open(dir, Long.MAX_VALUE)) {
+            assertEquals(0, journal.append(MessageJournal.Direction.IN, "client", "uno"));
+            assertEquals(1, journal.append(MessageJournal.Direction.OUT, "service", "dos"));
+            assertEquals(2, journal.append(MessageJournal.Direction.IN, "ws-server",
+                    ByteBuffer.wrap(new byte[]{1, 2, 3})));
+
+            List<MessageJournal.Record> records = journal.read(1, 10);
+
+            assertEquals(2, records.size());
+            assertEquals("dos", records.get(0).text());
+            assertEquals(MessageJournal.Direction.OUT, records.get(0).direction);
+            assertEquals("service", records.get(0).source);
+            assertTrue(records.get(1).binary);
+            assertArrayEquals(new byte[]{1, 2, 3}, records.get(1).payload);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void reopen_recoversRecordsAndContinuesOffsets() throws Exception {
+        File dir = tempDir();
+        try {
+            try (MessageJournal journal = open(dir, Long.MAX_VALUE)) {
+                for (int i = 0; i < 1000; i++) {
+                    journal.append(MessageJournal.Direction.IN, "client", "mensaje " + i);
+                }
+            }
+            try (MessageJournal journal = open(dir, Long.MAX_VALUE)) {
+                assertEquals(1000, journal.nextOffset());
+                assertEquals(1000, journal.append(MessageJournal.Direction.OUT, "service", "después"));
+
+                List<MessageJournal.Record> records = journal.read(0, 2000);
+                assertEquals(1001, records.size());
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals(i, records.get(i).offset);
+                    assertEquals("mensaje " + i, records.get(i).text());
+                }
+                assertEquals("después", records.get(1000).text());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void read_acrossSegmentsUsesIndex() throws Exception {
+        File dir = tempDir();
+        try (MessageJournal journal = open(dir, Long.MAX_VALUE)) {
+            String payload = new String(new char[500]).replace('\0', 'x');
+            for (int i = 0; i < 1000; i++) {
+                journal.append(MessageJournal.Direction.IN, "client", i + ":" + payload);
+            }
+            assertTrue(dir.list((d, name) -> name.endsWith(".log")).length > 1);
+
+            List<MessageJournal.Record> records = journal.read(737, 3);
+
+            assertEquals(3, records.size());
+            assertEquals(737, records.get(0).offset);
+            assertTrue(records.get(2).text().startsWith("739:"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void retention_dropsOldestSegments() throws Exception {
+        File dir = tempDir();
+        try (MessageJournal journal = open(dir, 3L * SEGMENT)) {
+            String payload = new String(new char[1000]).replace('\0', 'x');
+            for (int i = 0; i < 1000; i++) {
+                journal.append(MessageJournal.Direction.IN, "client", payload);
+            }
+
+            assertTrue(journal.firstOffset() > 0);
+            assertTrue(dir.list((d, name) -> name.endsWith(".log")).length <= 4);
+            // Pedir un offset ya borrado empieza por el más antiguo que queda
+            assertEquals(journal.firstOffset(), journal.read(0, 1).get(0).offset);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void tornRecord_isDiscardedOnRecovery() throws Exception {
+        File dir = tempDir();
+        try {
+            try (MessageJournal journal = open(dir, Long.MAX_VALUE)) {
+                journal.append(MessageJournal.Direction.IN, "client", "completo");
+                journal.append(MessageJournal.Direction.IN, "client", "a medias");
+            }
+            // Simula un registro a medio escribir: se corrompe el último byte del payload
+            File log = new File(dir, String.format("%020d.log", 0));
+            try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+                int first = raf.readInt();
+                long second = 8L + first;
+                raf.seek(second);
+                int length = raf.readInt();
+                raf.seek(second + 8 + length - 1);
+                raf.write('#');
+            }
+
+            try (MessageJournal journal = open(dir, Long.MAX_VALUE)) {
+                assertEquals(1, journal.nextOffset());
+                assertEquals(1, journal.append(MessageJournal.Direction.IN, "client", "nuevo"));
+                List<MessageJournal.Record> records = journal.read(0, 10);
+                assertEquals(2, records.size());
+                assertEquals("nuevo", records.get(1).text());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void oversizedRecord_isRejected() throws Exception {
+        File dir = tempDir();
+        try (MessageJournal journal = open(dir, Long.MAX_VALUE)) {
+            assertEquals(-1, journal.append(MessageJournal.Direction.IN, "client",
+                    ByteBuffer.allocate(SEGMENT)));
+            assertEquals(0, journal.nextOffset());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static MessageJournal open(File dir, long retentionBytes) throws IOException {
+        return new MessageJournal(dir, SEGMENT, retentionBytes, Long.MAX_VALUE / 2, 10_000, new Metrics());
+    }
+
+    private static File tempDir() throws IOException {
+        return Files.createTempDirectory("journal").toFile();
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
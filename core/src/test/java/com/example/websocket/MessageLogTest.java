@@ -0,0 +1,60 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class MessageLogTest {
+
+    @Test
+    public void full_overwritesOldest() {
+        MessageLog log = new MessageLog(3);
+        log.addAll(Arrays.asList("a", "b", "c", "d"));
+        log.add("e");
+
+        assertEquals(3, log.size());
+        assertEquals(2, log.firstIndex());
+        assertEquals(5, log.nextIndex());
+        assertEquals(Arrays.asList("c", "d", "e"), log.snapshot());
+        assertEquals("c", log.get(0));
+        assertEquals("e", log.get(2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outsideRetained_throws() {
+        MessageLog log = new MessageLog(3);
+        log.add("a");
+        log.get(1);
+    }
+
+    @Test
+    public void setCapacity_keepsMostRecent() {
+        MessageLog log = new MessageLog(4);
+        log.addAll(Arrays.asList("a", "b", "c", "d", "e", "f"));
+
+        log.setCapacity(2);
+        assertEquals(Arrays.asList("e", "f"), log.snapshot());
+        assertEquals(4, log.firstIndex());
+
+        log.setCapacity(10);
+        log.add("g");
+        assertEquals(Arrays.asList("e", "f", "g"), log.snapshot());
+        assertEquals(10, log.capacity());
+    }
+
+    @Test
+    public void clear_keepsIndicesGrowing() {
+        MessageLog log = new MessageLog(4);
+        log.addAll(Arrays.asList("a", "b"));
+        log.clear();
+
+        assertEquals(0, log.size());
+        assertEquals(2, log.firstIndex());
+        assertEquals(Collections.emptyList(), log.snapshot());
+        log.add("c");
+        assertEquals("c", log.get(0));
+    }
+}
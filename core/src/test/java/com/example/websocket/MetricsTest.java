@@ -0,0 +1,70 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void counter_isSharedByNameAndLabels() {
+        Metrics metrics = new Metrics();
+        metrics.counter("msgs_total", "Mensajes", "server=\"a\"").add(2);
+        metrics.counter("msgs_total", "Mensajes", "server=\"a\"").inc();
+        metrics.counter("msgs_total", "Mensajes", "server=\"b\"").inc();
+
+        String text = metrics.scrape();
+        assertTrue(text, text.contains("# TYPE msgs_total counter\n"));
+        assertTrue(text, text.contains("msgs_total{server=\"a\"} 3\n"));
+        assertTrue(text, text.contains("msgs_total{server=\"b\"} 1\n"));
+    }
+
+    @Test
+    public void histogram_exportsCumulativeBucketsInSeconds() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram h = metrics.histogram("lat_seconds", "Latencia", null,
+                new long[]{1_000_000L, 10_000_000L});
+        h.record(500_000L);
+        h.record(5_000_000L);
+        h.record(50_000_000L);
+
+        String text = metrics.scrape();
+        assertTrue(text, text.contains("lat_seconds_bucket{le=\"0.001000\"} 1\n"));
+        assertTrue(text, text.contains("lat_seconds_bucket{le=\"0.010000\"} 2\n"));
+        assertTrue(text, text.contains("lat_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text, text.contains("lat_seconds_count 3\n"));
+        assertTrue(text, text.contains("lat_seconds_sum 0.055500\n"));
+    }
+
+    @Test
+    public void gauge_readsSourceAtScrapeTime() {
+        Metrics metrics = new Metrics();
+        long[] depth = {4};
+        metrics.gauge("queue_depth", "Cola", null, () -> depth[0]);
+        depth[0] = 7;
+        assertTrue(metrics.scrape().contains("queue_depth 7\n"));
+    }
+
+    @Test
+    public void sampledCounter_isExportedAsCounter() {
+        Metrics metrics = new Metrics();
+        long[] dropped = {2};
+        metrics.counter("queue_dropped_total", "Descartes", null, () -> dropped[0]);
+        dropped[0] = 5;
+        String text = metrics.scrape();
+        assertTrue(text, text.contains("# TYPE queue_dropped_total counter\n"));
+        assertTrue(text, text.contains("queue_dropped_total 5\n"));
+    }
+
+    @Test
+    public void echoTracker_recordsFromEnvelopeTimestamp() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram h = metrics.latency("echo_seconds", "Eco", null);
+        EchoLatencyTracker tracker = new EchoLatencyTracker(h);
+
+        tracker.onEnvelopeEcho(System.currentTimeMillis() - 5);
+        // Un instante en el futuro (reloj de otro equipo) no se anota
+        tracker.onEnvelopeEcho(System.currentTimeMillis() + 60_000);
+        assertEquals(1, h.count());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class NodeConfigTest {
+
+    @Test
+    public void defaults_matchTheApp() {
+        NodeConfig config = NodeConfig.defaults();
+        assertEquals(8888, config.httpPort);
+        assertEquals(8889, config.wsPort);
+        // UNIFIED no comprime: el servidor por defecto es el que negocia permessage-deflate
+        assertEquals(NodeConfig.ServerEngine.SEPARATE, config.engine);
+        assertTrue(config.compression.enabled);
+        assertNull(config.serverUrl);
+        assertEquals("ws://PrintConToda:8889/", config.selfUrl());
+        assertEquals(OutboundQueue.OverflowPolicy.DROP_OLDEST, config.outboundPolicy);
+        assertEquals(NodeConfig.DebugAccess.LOOPBACK, config.debugEndpoints);
+        // Sin límites de entrada por defecto; si se activan, se frena en vez de descartar
+        assertEquals(0, config.wsRateMessagesPerSec);
+        assertEquals(0, config.wsRateGlobalMessagesPerSec);
+        assertEquals(0, config.wsRateBytesPerSec);
+        assertEquals(0, config.wsRateGlobalBytesPerSec);
+        assertEquals(RateLimiter.Policy.DELAY, config.wsRatePolicy);
+    }
+
+    @Test
+    public void properties_overrideDefaults() {
+        Properties props = new Properties();
+        props.setProperty("http.port", "9000");
+        props.setProperty("server.engine", "unified");
+        props.setProperty("client.url", " ws://example.org/feed ");
+        props.setProperty("compression.enabled", "false");
+        props.setProperty("outbound.policy", "reject");
+
+        NodeConfig config = new NodeConfig(props);
+
+        assertEquals(9000, config.httpPort);
+        assertEquals(NodeConfig.ServerEngine.UNIFIED, config.engine);
+        assertEquals("ws://PrintConToda:9000" + UnifiedServer.WS_PATH, config.selfUrl());
+        assertEquals("ws://example.org/feed", config.serverUrl);
+        assertFalse(config.compression.enabled);
+        assertEquals(OutboundQueue.OverflowPolicy.REJECT, config.outboundPolicy);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badNumber_isReported() {
+        Properties props = new Properties();
+        props.setProperty("ws.port", "ocho");
+        new NodeConfig(props);
+    }
+}
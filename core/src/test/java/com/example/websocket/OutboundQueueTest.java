@@ -0,0 +1,47 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+
+    @Test
+    public void dropOldest_keepsNewestWithinLimit() {
+        OutboundQueue queue = new OutboundQueue(2, 1024, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0);
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertTrue(queue.offer("c"));
+
+        assertEquals(2, queue.depth());
+        assertEquals("b", queue.peek());
+        assertEquals(1, queue.droppedCount());
+    }
+
+    @Test
+    public void reject_refusesWhenBytesExceeded() {
+        OutboundQueue queue = new OutboundQueue(100, 4, OutboundQueue.OverflowPolicy.REJECT, 0);
+        assertTrue(queue.offer("abc"));
+        assertFalse(queue.offer("de"));
+        assertEquals(3, queue.bytes());
+        assertEquals(1, queue.rejectedCount());
+    }
+
+    @Test
+    public void removeHead_ignoresMessageAlreadyDropped() {
+        OutboundQueue queue = new OutboundQueue(1, 1024, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0);
+        String first = "uno";
+        queue.offer(first);
+        queue.offer("dos");
+        queue.removeHead(first);
+
+        assertEquals("dos", queue.peek());
+    }
+
+    @Test
+    public void utf8Length_countsMultiByteCharacters() {
+        assertEquals(7, OutboundQueue.utf8Length("ñandú"));
+        assertEquals(3, OutboundQueue.utf8Length("✅"));
+        assertEquals(4, OutboundQueue.utf8Length("📡"));
+    }
+}
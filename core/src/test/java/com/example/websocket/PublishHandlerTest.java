@@ -0,0 +1,58 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PublishHandlerTest {
+
+    @Test
+    public void ndjson_publishesEachLineInOrder() {
+        MessageBus bus = new MessageBus();
+        List<String> received = new ArrayList<>();
+        bus.register("ws", m -> received.add(m.topic + ":" + m.text));
+
+        HttpResponse response = new PublishHandler(bus, "http")
+                .handle(request("topic=sensores", PublishHandler.NDJSON, "{\"a\":1}\r\n\n{\"a\":2}\n{\"a\":3}"));
+
+        assertEquals(200, response.status);
+        assertEquals("{\"accepted\":3,\"rejected\":0}", new String(response.body, StandardCharsets.UTF_8));
+        assertEquals(3, received.size());
+        assertEquals("sensores:{\"a\":1}", received.get(0));
+        assertEquals("sensores:{\"a\":3}", received.get(2));
+    }
+
+    @Test
+    public void plainBody_isSingleMessageOnDefaultTopic() {
+        MessageBus bus = new MessageBus();
+        List<String> received = new ArrayList<>();
+        bus.register("ws", m -> received.add(m.topic + ":" + m.text));
+
+        new PublishHandler(bus, "http").handle(request(null, "text/plain", "uno\ndos"));
+
+        assertEquals(1, received.size());
+        assertEquals(MessageBus.DEFAULT_TOPIC + ":uno\ndos", received.get(0));
+    }
+
+    @Test
+    public void wildcardTopic_isRejected() {
+        HttpResponse response = new PublishHandler(new MessageBus(), "http")
+                .handle(request("topic=sensores/%2B", "text/plain", "x"));
+        assertEquals(400, response.status);
+    }
+
+    private static HttpRequest request(String query, String contentType, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("content-type", contentType);
+        return new HttpRequest("POST", "/publish", query, headers,
+                new ByteArrayInputStream(bytes), bytes.length, "127.0.0.1");
+    }
+}
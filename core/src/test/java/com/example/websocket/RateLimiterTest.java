@@ -0,0 +1,105 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void burstThenSteadyRate() {
+        RateLimiter limiter = new RateLimiter(10, 0, 0, 0, RateLimiter.Policy.DROP, 0);
+        RateLimiter.Client client = limiter.newClient();
+        long now = System.nanoTime();
+
+        // Ráfaga de BURST_SECONDS segundos al ritmo límite
+        for (int i = 0; i < 10 * RateLimiter.BURST_SECONDS; i++) {
+            assertEquals(0, limiter.admit(client, 1, now));
+        }
+        assertEquals(RateLimiter.REJECTED, limiter.admit(client, 1, now));
+
+        // Medio segundo después hay tokens para 5 más
+        now += SECOND / 2;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.admit(client, 1, now));
+        }
+        assertEquals(RateLimiter.REJECTED, limiter.admit(client, 1, now));
+    }
+
+    @Test
+    public void connectionsHaveSeparateBuckets_globalIsShared() {
+        RateLimiter limiter = new RateLimiter(5, 0, 15, 0, RateLimiter.Policy.DROP, 0);
+        RateLimiter.Client a = limiter.newClient();
+        RateLimiter.Client b = limiter.newClient();
+        RateLimiter.Client c = limiter.newClient();
+        long now = System.nanoTime();
+
+        int passedA = 0;
+        int passedB = 0;
+        for (int i = 0; i < 20; i++) {
+            if (limiter.admit(a, 1, now) == 0) passedA++;
+            if (limiter.admit(b, 1, now) == 0) passedB++;
+        }
+
+        assertEquals(10, passedA);
+        assertEquals(10, passedB);
+
+        // El global (30 de ráfaga) aún tiene 10 tokens: un tercer cliente solo consigue esos
+        int passedC = 0;
+        for (int i = 0; i < 20; i++) {
+            if (limiter.admit(c, 1, now) == 0) passedC++;
+        }
+        assertEquals(10, passedC);
+    }
+
+    @Test
+    public void rejectedByGlobal_refundsConnectionTokens() {
+        RateLimiter limiter = new RateLimiter(2, 0, 1, 0, RateLimiter.Policy.DROP, 0);
+        RateLimiter.Client client = limiter.newClient();
+        long now = System.nanoTime();
+        assertEquals(0, limiter.admit(client, 1, now));
+        assertEquals(0, limiter.admit(client, 1, now));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(RateLimiter.REJECTED, limiter.admit(client, 1, now));
+        }
+
+        // Los rechazos no gastaron el cubo de la conexión: al rellenarse el global, pasa
+        now += 2 * SECOND;
+        assertEquals(0, limiter.admit(client, 1, now));
+    }
+
+    @Test
+    public void bytesLimit_oversizedMessageDrainsBucket() {
+        RateLimiter limiter = new RateLimiter(0, 1000, 0, 0, RateLimiter.Policy.DROP, 0);
+        RateLimiter.Client client = limiter.newClient();
+        long now = System.nanoTime();
+
+        assertEquals(0, limiter.admit(client, 1_000_000, now));
+        assertEquals(RateLimiter.REJECTED, limiter.admit(client, 1, now));
+
+        now += SECOND;
+        assertEquals(0, limiter.admit(client, 1000, now));
+    }
+
+    @Test
+    public void delayPolicy_reservesUpToMaxDelay() {
+        RateLimiter limiter = new RateLimiter(10, 0, 0, 0, RateLimiter.Policy.DELAY, 500);
+        RateLimiter.Client client = limiter.newClient();
+        long now = System.nanoTime();
+        for (int i = 0; i < 10 * RateLimiter.BURST_SECONDS; i++) {
+            limiter.admit(client, 1, now);
+        }
+
+        long wait = limiter.admit(client, 1, now);
+        assertEquals(SECOND / 10, wait);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.admit(client, 1, now) > 0);
+        }
+        // La siguiente tendría que esperar 600 ms: no pasa
+        assertEquals(RateLimiter.REJECTED, limiter.admit(client, 1, now));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResumableSessionTest {
+
+    @Test
+    public void ack_releasesUnackedFramesUpToSeq() {
+        ResumableSession session = new ResumableSession("s", 100);
+        assertEquals("SEQ 1 uno", session.wrap("uno"));
+        assertEquals("SEQ 2 dos", session.wrap("dos"));
+        session.wrap("tres");
+
+        session.onAck(2);
+
+        List<Object> pending = session.unackedFrames();
+        assertEquals(1, pending.size());
+        assertEquals("SEQ 3 tres", pending.get(0));
+    }
+
+    @Test
+    public void binaryFrame_carriesSeqHeader() {
+        ResumableSession session = new ResumableSession("s", 100);
+        session.wrap("texto");
+
+        ByteBuffer frame = session.wrap(ByteBuffer.wrap(new byte[]{7, 8}));
+
+        assertEquals(ResumableSession.SEQ_HEADER + 2, frame.remaining());
+        assertEquals(2, frame.getLong(0));
+        assertEquals(7, frame.get(ResumableSession.SEQ_HEADER));
+    }
+
+    @Test
+    public void accept_dropsDuplicatesAndHandlesOutOfOrder() {
+        ResumableSession session = new ResumableSession("s", 100);
+
+        assertTrue(session.accept(1));
+        assertTrue(session.accept(3));
+        assertFalse(session.accept(3));
+        assertEquals(1, session.lastReceived());
+        assertTrue(session.accept(2));
+        assertEquals(3, session.lastReceived());
+        assertFalse(session.accept(1));
+        assertFalse(session.accept(3 + ResumableSession.WINDOW + 1));
+    }
+
+    @Test
+    public void newSession_anchorsOnFirstSeq() {
+        ResumableSession session = new ResumableSession("s", 100);
+
+        assertTrue(session.accept(500));
+        assertFalse(session.accept(500));
+        assertTrue(session.accept(501));
+        assertEquals(501, session.lastReceived());
+    }
+
+    @Test
+    public void acks_areBatched() {
+        ResumableSession session = new ResumableSession("s", 100);
+        for (int seq = 1; seq < ResumableSession.ACK_EVERY; seq++) {
+            session.accept(seq);
+            assertEquals(-1, session.ackIfDue(false));
+        }
+        session.accept(ResumableSession.ACK_EVERY);
+        assertEquals(ResumableSession.ACK_EVERY, session.ackIfDue(false));
+
+        session.accept(ResumableSession.ACK_EVERY + 1);
+        assertEquals(-1, session.ackIfDue(false));
+        assertEquals(ResumableSession.ACK_EVERY + 1, session.ackIfDue(true));
+        assertEquals(-1, session.ackIfDue(true));
+    }
+
+    @Test
+    public void unackedBuffer_isBounded() {
+        ResumableSession session = new ResumableSession("s", 2);
+        session.wrap("a");
+        session.wrap("b");
+        session.wrap("c");
+
+        assertEquals(2, session.unackedCount());
+        assertEquals(1, session.droppedUnacked());
+    }
+
+    @Test
+    public void handler_resendsUnackedAndDropsDuplicatesAfterResume() {
+        FakePeers peers = new FakePeers();
+        WsSessionHandler<String> handler = new WsSessionHandler<>("ws-test", null, peers, new Metrics());
+
+        handler.onOpen("c1");
+        handler.onText("c1", "RESUME abc 0");
+        assertEquals("RESUMED abc 0 NEW", peers.last("c1"));
+        handler.onText("c1", "SEQ 1 hola");
+        String echo = peers.last("c1");
+        assertTrue(echo, echo.startsWith("SEQ 1 {\"type\":\"ECHO\",\"topic\":\"app\","));
+        assertTrue(echo, echo.endsWith(",\"payload\":\"hola\"}"));
+        handler.onClose("c1");
+
+        // Reconexión: el cliente no recibió el eco y reenvía su mensaje 1
+        handler.onOpen("c2");
+        handler.onText("c2", "RESUME abc 0");
+        List<String> afterResume = peers.to("c2");
+        assertEquals("RESUMED abc 1", afterResume.get(afterResume.size() - 2));
+        assertEquals(echo, peers.last("c2"));
+
+        int before = peers.to("c2").size();
+        handler.onText("c2", "SEQ 1 hola");
+        assertEquals(before, peers.to("c2").size());
+        handler.close();
+    }
+
+    private static final class FakePeers implements WsSessionHandler.Peers<String> {
+        final List<String[]> sent = new ArrayList<>();
+
+        @Override
+        public void send(String conn, String text) {
+            sent.add(new String[]{conn, text});
+        }
+
+        @Override
+        public void broadcast(String text, Collection<String> conns) {
+            for (String conn : conns) {
+                send(conn, text);
+            }
+        }
+
+        @Override
+        public void broadcast(ByteBuffer data, Collection<String> conns) {
+        }
+
+        List<String> to(String conn) {
+            List<String> texts = new ArrayList<>();
+            for (String[] entry : sent) {
+                if (entry[0].equals(conn)) {
+                    texts.add(entry[1]);
+                }
+            }
+            return texts;
+        }
+
+        String last(String conn) {
+            List<String> texts = to(conn);
+            return texts.get(texts.size() - 1);
+        }
+    }
+}
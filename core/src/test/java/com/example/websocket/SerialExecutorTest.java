@@ -0,0 +1,78 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SerialExecutorTest {
+
+    @Test
+    public void tasks_runInSubmissionOrder() throws Exception {
+        ExecutorService pool = SerialExecutor.newWorkerPool("test-worker", 4);
+        try {
+            SerialExecutor lane = new SerialExecutor(pool, "a");
+            List<Integer> seen = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(1);
+            for (int i = 0; i < 1000; i++) {
+                int n = i;
+                lane.execute(() -> seen.add(n));
+            }
+            lane.execute(done::countDown);
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(1000, seen.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, (int) seen.get(i));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void slowLane_doesNotBlockOtherLane() throws Exception {
+        ExecutorService pool = SerialExecutor.newWorkerPool("test-worker", 2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            SerialExecutor slow = new SerialExecutor(pool, "lenta");
+            SerialExecutor fast = new SerialExecutor(pool, "rápida");
+            CountDownLatch fastDone = new CountDownLatch(1);
+            slow.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            fast.execute(fastDone::countDown);
+
+            assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failingTask_doesNotStopLane() throws Exception {
+        ExecutorService pool = SerialExecutor.newWorkerPool("test-worker", 1);
+        try {
+            SerialExecutor lane = new SerialExecutor(pool, "a");
+            CountDownLatch done = new CountDownLatch(1);
+            lane.execute(() -> {
+                throw new IllegalStateException("fallo");
+            });
+            lane.execute(done::countDown);
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
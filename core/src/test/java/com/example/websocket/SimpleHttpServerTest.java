@@ -0,0 +1,136 @@
+package com.example.websocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/** AssetHandler detrás de NanoHTTPD: lo que llega al cliente, cabeceras incluidas. */
+public class SimpleHttpServerTest {
+
+    private static final int SIZE = 5000;
+
+    private SimpleHttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        File root = Files.createTempDirectory("assets").toFile();
+        root.deleteOnExit();
+        char[] js = new char[SIZE];
+        Arrays.fill(js, 'a');
+        File app = new File(root, "app.js");
+        Files.write(app.toPath(), new String(js).getBytes(StandardCharsets.US_ASCII));
+        app.deleteOnExit();
+
+        HttpRoutes routes = new HttpRoutes(new Metrics())
+                .add("GET", "/texto", request -> HttpResponse.text(200, new String(js)))
+                .setFallback(new AssetHandler(AssetHandler.directory(root), 1024 * 1024, 64 * 1024, new Metrics()));
+        server = new SimpleHttpServer(0, routes);
+        server.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stopServer();
+    }
+
+    @Test
+    public void range_isNotGzippedAndMatchesContentRange() throws IOException {
+        String response = get("/app.js", "Range: bytes=0-99", "Accept-Encoding: gzip");
+        String head = head(response);
+
+        assertTrue(head, head.startsWith("HTTP/1.1 206"));
+        assertFalse(head, head.contains("content-encoding: gzip"));
+        assertFalse(head, head.contains("transfer-encoding: chunked"));
+        assertTrue(head, head.contains("content-range: bytes 0-99/" + SIZE));
+        assertEquals(100, body(response).length());
+    }
+
+    @Test
+    public void notModified_isNotGzipped() throws IOException {
+        String etag = header(head(get("/app.js", "Accept-Encoding: gzip")), "etag");
+        assertNotNull(etag);
+
+        String head = head(get("/app.js", "If-None-Match: " + etag, "Accept-Encoding: gzip"));
+
+        assertTrue(head, head.startsWith("HTTP/1.1 304"));
+        assertFalse(head, head.contains("content-encoding: gzip"));
+        assertEquals(etag, header(head, "etag"));
+    }
+
+    @Test
+    public void fullAsset_keepsIdentityEncodingForItsEtag() throws IOException {
+        String response = get("/app.js", "Accept-Encoding: gzip");
+
+        assertTrue(response.startsWith("HTTP/1.1 200"));
+        assertFalse(head(response).contains("content-encoding: gzip"));
+        assertEquals(SIZE, body(response).length());
+    }
+
+    @Test
+    public void plainText_isStillGzippedOnTheFly() throws IOException {
+        String head = head(get("/texto", "Accept-Encoding: gzip"));
+
+        assertTrue(head, head.startsWith("HTTP/1.1 200"));
+        assertTrue(head, head.contains("content-encoding: gzip"));
+    }
+
+    private String get(String path, String... headers) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getListeningPort())) {
+            socket.setSoTimeout(5000);
+            StringBuilder request = new StringBuilder("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n");
+            for (String header : headers) {
+                request.append(header).append("\r\n");
+            }
+            request.append("Connection: close\r\n\r\n");
+            OutputStream out = socket.getOutputStream();
+            out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                all.write(buffer, 0, n);
+            }
+            return all.toString("ISO-8859-1");
+        }
+    }
+
+    /** Línea de estado y cabeceras, con los nombres en minúsculas. */
+    private static String head(String response) {
+        String raw = response.substring(0, response.indexOf("\r\n\r\n"));
+        StringBuilder head = new StringBuilder();
+        for (String line : raw.split("\r\n")) {
+            int colon = line.indexOf(':');
+            head.append(colon > 0 && !line.startsWith("HTTP/")
+                    ? line.substring(0, colon).toLowerCase() + line.substring(colon)
+                    : line).append('\n');
+        }
+        return head.toString();
+    }
+
+    private static String header(String head, String name) {
+        for (String line : head.split("\n")) {
+            if (line.startsWith(name + ": ")) {
+                return line.substring(name.length() + 2);
+            }
+        }
+        return null;
+    }
+
+    private static String body(String response) {
+        return response.substring(response.indexOf("\r\n\r\n") + 4);
+    }
+}
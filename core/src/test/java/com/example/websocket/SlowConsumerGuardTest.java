@@ -0,0 +1,150 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SlowConsumerGuardTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void fastConsumer_writesStraightThrough() {
+        FakeSocket socket = new FakeSocket();
+        SlowConsumerGuard.Outbox<String> outbox = guard(SlowConsumerGuard.Policy.DROP_OLDEST).newOutbox(socket);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(outbox.offer(null, "m" + i, 50, 0));
+            socket.backlog = 0;    // el cliente lo lee todo
+        }
+        assertEquals(100, socket.written.size());
+        assertEquals(0, outbox.pendingCount());
+    }
+
+    @Test
+    public void backedUpSocket_holdsFramesAndFlushesInOrderOnPoll() {
+        FakeSocket socket = new FakeSocket();
+        SlowConsumerGuard.Outbox<String> outbox = guard(SlowConsumerGuard.Policy.DROP_OLDEST).newOutbox(socket);
+        socket.backlog = 100;
+        outbox.poll(0);
+
+        outbox.offer(null, "a", 40, 0);
+        outbox.offer(null, "b", 40, 0);
+        outbox.offer(null, "c", 40, 0);
+        assertTrue(socket.written.isEmpty());
+        assertEquals(3, outbox.pendingCount());
+        assertEquals(220, outbox.bufferedBytes());
+        assertEquals(5 * MS, outbox.lagNanos(5 * MS));
+
+        // El cliente lee la mitad: caben dos más
+        socket.backlog = 20;
+        outbox.poll(10 * MS);
+        assertEquals(List.of("a", "b"), socket.written);
+
+        // Mientras queda algo retenido, lo nuevo va detrás aunque haya sitio
+        socket.backlog = 0;
+        outbox.offer(null, "d", 10, 10 * MS);
+        assertEquals(List.of("a", "b"), socket.written);
+        outbox.poll(11 * MS);
+        assertEquals(List.of("a", "b", "c", "d"), socket.written);
+        assertEquals(0, outbox.lagNanos(11 * MS));
+    }
+
+    @Test
+    public void conflate_keepsLatestValuePerTopicInPlace() {
+        FakeSocket socket = new FakeSocket();
+        SlowConsumerGuard.Outbox<String> outbox = guard(SlowConsumerGuard.Policy.CONFLATE).newOutbox(socket);
+        socket.backlog = 100;
+        outbox.poll(0);
+
+        outbox.offer("temp", "temp=20", 10, 0);
+        outbox.offer(null, "respuesta", 10, 0);
+        outbox.offer("temp", "temp=21", 10, 0);
+        outbox.offer("hum", "hum=40", 10, 0);
+        outbox.offer("temp", "temp=22", 10, 0);
+        assertEquals(3, outbox.pendingCount());
+
+        socket.backlog = 0;
+        outbox.poll(MS);
+        assertEquals(List.of("temp=22", "respuesta", "hum=40"), socket.written);
+    }
+
+    @Test
+    public void dropOldest_boundsHeldBytes() {
+        FakeSocket socket = new FakeSocket();
+        SlowConsumerGuard.Outbox<String> outbox = guard(SlowConsumerGuard.Policy.DROP_OLDEST).newOutbox(socket);
+        socket.backlog = 100;
+        outbox.poll(0);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(outbox.offer(null, "m" + i, 100, 0));
+        }
+        // highWater 300: solo quedan los tres últimos
+        assertEquals(3, outbox.pendingCount());
+
+        socket.backlog = 0;
+        outbox.poll(MS);
+        assertEquals(List.of("m7"), socket.written);
+
+        // Lo que por sí solo supera el tope se descarta (y con él lo anterior)
+        assertFalse(outbox.offer(null, "enorme", 1000, MS));
+        assertEquals(0, outbox.pendingCount());
+    }
+
+    @Test
+    public void disconnect_pastHighWaterOrMaxLag() {
+        FakeSocket socket = new FakeSocket();
+        SlowConsumerGuard.Outbox<String> outbox = guard(SlowConsumerGuard.Policy.DISCONNECT).newOutbox(socket);
+        socket.backlog = 100;
+        outbox.poll(0);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(outbox.offer(null, "m" + i, 100, 0));
+        }
+        assertFalse(outbox.offer(null, "m3", 100, 0));
+        assertEquals(SlowConsumerGuard.CLOSE_TRY_AGAIN_LATER, socket.closedWith);
+        assertFalse(outbox.offer(null, "m4", 1, 0));
+        assertEquals(0, outbox.pendingCount());
+
+        // Con cualquier política, un cliente que no avanza en maxLagMs se desconecta
+        FakeSocket stalled = new FakeSocket();
+        SlowConsumerGuard.Outbox<String> other = guard(SlowConsumerGuard.Policy.CONFLATE).newOutbox(stalled);
+        stalled.backlog = 100;
+        other.poll(0);
+        other.offer("t", "x", 10, 0);
+        other.poll(999 * MS);
+        assertEquals(0, stalled.closedWith);
+        other.poll(1001 * MS);
+        assertEquals(SlowConsumerGuard.CLOSE_TRY_AGAIN_LATER, stalled.closedWith);
+    }
+
+    /** socketBytes 100, highWater 300, maxLag 1 s. */
+    private static SlowConsumerGuard guard(SlowConsumerGuard.Policy policy) {
+        return new SlowConsumerGuard(policy, 100, 300, 1000, new Metrics(), "test");
+    }
+
+    private static final class FakeSocket implements SlowConsumerGuard.Socket<String> {
+        final List<String> written = new ArrayList<>();
+        long backlog;
+        int closedWith;
+
+        @Override
+        public long backlogBytes() {
+            return backlog;
+        }
+
+        @Override
+        public void write(String frames) {
+            written.add(frames);
+        }
+
+        @Override
+        public void disconnect(int code, String reason) {
+            closedWith = code;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class StatusCoalescerTest {
+
+    /** Planificador manual: las tareas se ejecutan al llamar a runPending(). */
+    private static final class ManualScheduler implements TaskScheduler {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(task);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            tasks.remove(task);
+        }
+
+        void runPending() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    @Test
+    public void burst_deliversOnlyLatest() {
+        ManualScheduler scheduler = new ManualScheduler();
+        List<String> delivered = new ArrayList<>();
+        StatusCoalescer coalescer = new StatusCoalescer(scheduler, 500,
+                (status, detail) -> delivered.add(status + ":" + detail));
+
+        coalescer.submit(RelayNode.Status.CONNECTING, "a");
+        coalescer.submit(RelayNode.Status.FAILED, "b");
+        coalescer.submit(RelayNode.Status.CONNECTING, "c");
+        assertEquals(1, scheduler.tasks.size());
+        scheduler.runPending();
+
+        assertEquals(1, delivered.size());
+        assertEquals("CONNECTING:c", delivered.get(0));
+        assertEquals(2, coalescer.coalescedCount());
+    }
+
+    @Test
+    public void concurrentSubmits_countEveryCoalescedUpdate() throws InterruptedException {
+        ManualScheduler scheduler = new ManualScheduler();
+        List<String> delivered = new ArrayList<>();
+        StatusCoalescer coalescer = new StatusCoalescer(scheduler, 500,
+                (status, detail) -> delivered.add(detail));
+        int threads = 8;
+        int perThread = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = "t" + t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    coalescer.submit(RelayNode.Status.CONNECTING, name);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Solo el primero encontró el hueco libre; el resto sustituyó a otro
+        assertEquals(threads * perThread - 1, coalescer.coalescedCount());
+        assertEquals(1, scheduler.tasks.size());
+        scheduler.runPending();
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void unchangedStatus_isNotDeliveredAgain() {
+        ManualScheduler scheduler = new ManualScheduler();
+        List<RelayNode.Status> delivered = new ArrayList<>();
+        StatusCoalescer coalescer = new StatusCoalescer(scheduler, 0,
+                (status, detail) -> delivered.add(status));
+
+        coalescer.submit(RelayNode.Status.CONNECTED, "ws://x");
+        scheduler.runPending();
+        coalescer.submit(RelayNode.Status.CONNECTED, "ws://x");
+        scheduler.runPending();
+        coalescer.submit(RelayNode.Status.DISCONNECTED, null);
+        scheduler.runPending();
+
+        assertEquals(2, delivered.size());
+        assertEquals(RelayNode.Status.DISCONNECTED, delivered.get(1));
+    }
+
+    @Test
+    public void cancel_dropsPendingUpdate() {
+        ManualScheduler scheduler = new ManualScheduler();
+        List<RelayNode.Status> delivered = new ArrayList<>();
+        StatusCoalescer coalescer = new StatusCoalescer(scheduler, 500,
+                (status, detail) -> delivered.add(status));
+
+        coalescer.submit(RelayNode.Status.CONNECTING, null);
+        coalescer.cancel();
+        scheduler.runPending();
+
+        assertTrue(delivered.isEmpty());
+    }
+}
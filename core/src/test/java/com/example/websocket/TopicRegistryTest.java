@@ -0,0 +1,73 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.*;
+
+public class TopicRegistryTest {
+
+    @Test
+    public void exactAndWildcardSubscribers_areMatchedWithoutDuplicates() {
+        TopicRegistry<String> registry = new TopicRegistry<>();
+        registry.subscribe("a", "sensores/cocina/temp");
+        registry.subscribe("b", "sensores/+/temp");
+        registry.subscribe("c", "sensores/#");
+        registry.subscribe("a", "sensores/#");
+
+        Set<String> subs = registry.subscribers("sensores/cocina/temp");
+        assertEquals(3, subs.size());
+        assertTrue(subs.contains("a") && subs.contains("b") && subs.contains("c"));
+
+        assertEquals(2, registry.subscribers("sensores/cocina").size());
+        assertTrue(registry.subscribers("impresora/estado").isEmpty());
+    }
+
+    @Test
+    public void removeAll_dropsEveryTopicOfConnection() {
+        TopicRegistry<String> registry = new TopicRegistry<>();
+        registry.subscribe("a", "x/y");
+        registry.subscribe("a", "x/#");
+        registry.removeAll("a");
+
+        assertTrue(registry.subscribers("x/y").isEmpty());
+        assertEquals(0, registry.topicCount());
+    }
+
+    @Test
+    public void subscribeRacingWithLastUnsubscribe_isNeverLost() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            TopicRegistry<String> registry = new TopicRegistry<>();
+            registry.subscribe("a", "t");
+            CyclicBarrier start = new CyclicBarrier(2);
+            Thread leaving = new Thread(() -> {
+                await(start);
+                registry.unsubscribe("a", "t");
+            });
+            leaving.start();
+            await(start);
+            registry.subscribe("b", "t");
+            leaving.join();
+
+            assertEquals(Set.of("b"), registry.subscribers("t"));
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void invalidFilters_areRejected() {
+        TopicRegistry<String> registry = new TopicRegistry<>();
+        assertFalse(registry.subscribe("a", "x/#/y"));
+        assertFalse(registry.subscribe("a", "x/a+"));
+        assertFalse(registry.subscribe("a", ""));
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.websocket;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+import static org.junit.Assert.*;
+
+public class UnifiedServerTest {
+
+    @Test
+    public void acceptKey_matchesRfcExample() {
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", UnifiedServer.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    public void http_andWebSocket_shareOnePort() throws Exception {
+        HttpRoutes routes = new HttpRoutes();
+        UnifiedServer server = new UnifiedServer(0, 2, routes, new MessageBus());
+        server.start();
+        try (Socket http = new Socket("127.0.0.1", server.getPort())) {
+            write(http, "GET /hola HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n");
+            String response = readAll(http.getInputStream());
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(response, response.endsWith("Hola mundo"));
+        }
+
+        try (Socket ws = new Socket("127.0.0.1", server.getPort())) {
+            write(ws, "GET /ws HTTP/1.1\r\nHost: x\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n");
+            DataInputStream in = new DataInputStream(ws.getInputStream());
+            String head = readHead(in);
+            assertTrue(head, head.startsWith("HTTP/1.1 101"));
+            assertTrue(head, head.contains("s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+
+            assertEquals(WsSessionHandler.GREETING, readTextFrame(in));
+            writeMaskedText(ws.getOutputStream(), "hola");
+            assertEcho("hola", readTextFrame(in));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void malformedBodies_areRejectedInsteadOfDesyncing() throws Exception {
+        UnifiedServer server = new UnifiedServer(0, 2, new HttpRoutes(), new MessageBus());
+        server.start();
+        try {
+            try (Socket http = new Socket("127.0.0.1", server.getPort())) {
+                write(http, "POST /publish HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n"
+                        + "5\r\nhola\n\r\n0\r\n\r\n");
+                assertTrue(readAll(http.getInputStream()).startsWith("HTTP/1.1 501"));
+            }
+            try (Socket http = new Socket("127.0.0.1", server.getPort())) {
+                write(http, "POST /publish HTTP/1.1\r\nHost: x\r\nContent-Length: doce\r\n\r\n");
+                assertTrue(readAll(http.getInputStream()).startsWith("HTTP/1.1 400"));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void upgrade_requiresGetAndConnectionUpgrade() throws Exception {
+        UnifiedServer server = new UnifiedServer(0, 2, new HttpRoutes(), new MessageBus());
+        server.start();
+        try {
+            try (Socket ws = new Socket("127.0.0.1", server.getPort())) {
+                write(ws, upgradeRequest("POST", "/ws", "Upgrade"));
+                assertTrue(readAll(ws.getInputStream()).startsWith("HTTP/1.1 400"));
+            }
+            try (Socket ws = new Socket("127.0.0.1", server.getPort())) {
+                write(ws, upgradeRequest("GET", "/ws", "keep-alive"));
+                assertTrue(readAll(ws.getInputStream()).startsWith("HTTP/1.1 400"));
+            }
+            try (Socket ws = new Socket("127.0.0.1", server.getPort())) {
+                write(ws, upgradeRequest("GET", "/ws", "keep-alive, Upgrade"));
+                assertTrue(readHead(new DataInputStream(ws.getInputStream())).startsWith("HTTP/1.1 101"));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void legacyPort_upgradesOnAnyPath() throws Exception {
+        UnifiedServer server = new UnifiedServer(0, 0, 2, new HttpRoutes(), new MessageBus());
+        server.start();
+        try (Socket ws = new Socket("127.0.0.1", server.getLegacyWsPort())) {
+            write(ws, upgradeRequest("GET", "/", "Upgrade"));
+            DataInputStream in = new DataInputStream(ws.getInputStream());
+            assertTrue(readHead(in).startsWith("HTTP/1.1 101"));
+            assertEquals(WsSessionHandler.GREETING, readTextFrame(in));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void binaryEnvelopes_echoIntactWhenReceiveBuffersAreReused() throws Exception {
+        UnifiedServer server = new UnifiedServer(0, 1, new HttpRoutes(), new MessageBus());
+        server.start();
+        try (Socket ws = new Socket("127.0.0.1", server.getPort())) {
+            write(ws, upgradeRequest("GET", "/ws", "Upgrade"));
+            DataInputStream in = new DataInputStream(ws.getInputStream());
+            readHead(in);
+            assertEquals(WsSessionHandler.GREETING, readTextFrame(in));
+            Envelope.Reader reader = new Envelope.Reader();
+            // Dos mensajes seguidos de la misma clase de tamaño: el segundo reutiliza el buffer del primero
+            for (char c : new char[]{'a', 'b', 'c'}) {
+                char[] text = new char[3000];
+                Arrays.fill(text, c);
+                ByteBuffer envelope = Envelope.encode(Envelope.Type.MESSAGE, "app", c, 0, new String(text));
+                byte[] frame = new byte[envelope.remaining()];
+                envelope.get(frame);
+                writeMasked(ws.getOutputStream(), 0x82, frame);
+
+                assertTrue(reader.wrap(ByteBuffer.wrap(readBinaryFrame(in))));
+                assertEquals(Envelope.Type.ECHO, reader.type());
+                assertEquals(c, reader.seq());
+                assertEquals(new String(text), reader.payloadText());
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void largeBodies_streamToTheHandlerAndKeepTheConnectionInSync() throws Exception {
+        MessageBus bus = new MessageBus();
+        int[] published = new int[1];
+        bus.register("test", message -> published[0]++);
+        HttpRoutes routes = new HttpRoutes(new Metrics())
+                .add("POST", "/publish", new PublishHandler(bus, "http"))
+                .add("POST", "/ignora", request -> HttpResponse.text(200, "ignorado"));
+        UnifiedServer server = new UnifiedServer(0, 1, routes, bus);
+        server.start();
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            ndjson.append(String.format("{\"n\":%04d,\"relleno\":\"%080d\"}%n", i, 0));
+        }
+        String body = ndjson.toString();
+        assertTrue(body.length() > 3 * UnifiedServer.BODY_WINDOW_BYTES);
+        try (Socket http = new Socket("127.0.0.1", server.getPort())) {
+            http.setSoTimeout(5000);
+            DataInputStream in = new DataInputStream(http.getInputStream());
+            // Un handler que no lee el cuerpo: el resto se descarta y la conexión sigue en orden
+            write(http, "POST /ignora HTTP/1.1\r\nHost: x\r\nContent-Length: " + body.length() + "\r\n\r\n" + body);
+            assertEquals("ignorado", readResponseBody(in));
+
+            write(http, "POST /publish?format=ndjson HTTP/1.1\r\nHost: x\r\nContent-Length: " + body.length()
+                    + "\r\n\r\n" + body);
+            assertEquals("{\"accepted\":2000,\"rejected\":0}", readResponseBody(in));
+            assertEquals(2000, published[0]);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void streamedBody_reachesTheHandlerBeforeItHasAllArrived() throws Exception {
+        HttpRoutes routes = new HttpRoutes(new Metrics()).add("POST", "/primera", request -> {
+            byte[] first = new byte[5];
+            try {
+                new DataInputStream(request.body).readFully(first);
+            } catch (IOException e) {
+                return HttpResponse.text(400, e.getMessage());
+            }
+            return HttpResponse.text(200, new String(first, StandardCharsets.US_ASCII));
+        });
+        UnifiedServer server = new UnifiedServer(0, 1, routes, new MessageBus());
+        server.start();
+        try (Socket http = new Socket("127.0.0.1", server.getPort())) {
+            http.setSoTimeout(5000);
+            DataInputStream in = new DataInputStream(http.getInputStream());
+            write(http, "POST /primera HTTP/1.1\r\nHost: x\r\nContent-Length: 1000000\r\n\r\nhola ");
+            // Con el cuerpo almacenado entero la respuesta no llegaría hasta enviar el millón de bytes
+            assertEquals("hola ", readResponseBody(in));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void rateLimiter_dropsMessagesOverTheBurst() throws Exception {
+        UnifiedServer server = new UnifiedServer(0, 2, new HttpRoutes(), new MessageBus());
+        server.setRateLimiter(new RateLimiter(1, 0, 0, 0, RateLimiter.Policy.DROP, 0));
+        server.start();
+        try (Socket ws = new Socket("127.0.0.1", server.getPort())) {
+            write(ws, upgradeRequest("GET", "/ws", "Upgrade"));
+            DataInputStream in = new DataInputStream(ws.getInputStream());
+            readHead(in);
+            assertEquals(WsSessionHandler.GREETING, readTextFrame(in));
+            for (int i = 0; i < 5; i++) {
+                writeMaskedText(ws.getOutputStream(), "m" + i);
+            }
+            // Ráfaga de BURST_SECONDS mensajes a 1/s: el resto se descarta
+            assertEcho("m0", readTextFrame(in));
+            assertEcho("m1", readTextFrame(in));
+            ws.setSoTimeout(300);
+            try {
+                in.readUnsignedByte();
+                fail("no debería llegar más eco");
+            } catch (SocketTimeoutException expected) {
+                // ok
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void newDataFrame_duringFragmentedMessage_closesWith1002() throws Exception {
+        UnifiedServer server = new UnifiedServer(0, 1, new HttpRoutes(), new MessageBus());
+        server.start();
+        try (Socket ws = new Socket("127.0.0.1", server.getPort())) {
+            ws.setSoTimeout(5000);
+            write(ws, upgradeRequest("GET", UnifiedServer.WS_PATH, "Upgrade"));
+            DataInputStream in = new DataInputStream(ws.getInputStream());
+            assertTrue(readHead(in).startsWith("HTTP/1.1 101"));
+            assertEquals(WsSessionHandler.GREETING, readTextFrame(in));
+
+            OutputStream out = ws.getOutputStream();
+            writeMasked(out, 0x01, "primera ".getBytes(StandardCharsets.UTF_8));   // TEXT sin FIN
+            writeMasked(out, 0x01, "otra".getBytes(StandardCharsets.UTF_8));       // TEXT sin FIN: prohibido
+
+            assertEquals(0x88, in.readUnsignedByte());
+            assertEquals(2, in.readUnsignedByte());
+            assertEquals(1002, in.readUnsignedShort());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void httpReplies_countTowardsQueuedBytes() throws Exception {
+        // Más de lo que caben en los buffers del kernel en loopback
+        int size = (int) UnifiedServer.MAX_QUEUED_BYTES * 16;
+        ByteBuffer asset = ByteBuffer.allocate(size);
+        HttpRoutes routes = new HttpRoutes()
+                .add("GET", "/grande", request -> new HttpResponse(200, "application/octet-stream", asset));
+        UnifiedServer server = new UnifiedServer(0, 2, routes, new MessageBus());
+        server.start();
+        try (Socket http = new Socket()) {
+            http.setReceiveBufferSize(16 * 1024);
+            http.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+            DataInputStream in = new DataInputStream(http.getInputStream());
+            for (int i = 0; i < 2; i++) {
+                // Sin leer, casi todo el cuerpo sigue en la cola de la conexión
+                write(http, "GET /grande HTTP/1.1\r\nHost: x\r\n\r\n");
+                awaitQueued(server, queued -> queued > UnifiedServer.MAX_QUEUED_BYTES);
+
+                assertEquals(size, readResponseBody(in).length());
+                awaitQueued(server, queued -> queued == 0);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void awaitQueued(UnifiedServer server, LongPredicate condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.test(server.queuedBytes())) {
+            assertTrue("queuedBytes = " + server.queuedBytes(), System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String upgradeRequest(String method, String path, String connection) {
+        return method + " " + path + " HTTP/1.1\r\nHost: x\r\nUpgrade: websocket\r\nConnection: " + connection
+                + "\r\nSec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n";
+    }
+
+    private static void write(Socket socket, String text) throws IOException {
+        socket.getOutputStream().write(text.getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return out.toString("UTF-8");
+    }
+
+    /** Una respuesta con Content-Length de una conexión keep-alive. */
+    private static String readResponseBody(DataInputStream in) throws IOException {
+        String head = readHead(in);
+        assertTrue(head, head.startsWith("HTTP/1.1 200"));
+        int at = head.toLowerCase().indexOf("content-length:");
+        int length = Integer.parseInt(head.substring(at + 15, head.indexOf("\r\n", at)).trim());
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static String readHead(DataInputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (!sb.toString().endsWith("\r\n\r\n")) {
+            sb.append((char) in.readUnsignedByte());
+        }
+        return sb.toString();
+    }
+
+    /** Eco de un texto suelto: sobre ECHO en JSON del tópico por defecto. */
+    private static void assertEcho(String payload, String frame) {
+        ByteBuffer envelope = Envelope.fromJson(frame);
+        Envelope.Reader reader = new Envelope.Reader();
+        assertNotNull(frame, envelope);
+        assertTrue(reader.wrap(envelope));
+        assertEquals(Envelope.Type.ECHO, reader.type());
+        assertEquals(MessageBus.DEFAULT_TOPIC, reader.topic());
+        assertEquals(payload, reader.payloadText());
+    }
+
+    private static String readTextFrame(DataInputStream in) throws IOException {
+        int b0 = in.readUnsignedByte();
+        assertEquals(0x81, b0);
+        int length = in.readUnsignedByte() & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBinaryFrame(DataInputStream in) throws IOException {
+        assertEquals(0x82, in.readUnsignedByte());
+        int length = in.readUnsignedByte() & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    private static void writeMaskedText(OutputStream out, String text) throws IOException {
+        writeMasked(out, 0x81, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Frame de cliente con máscara; hasta 64 KiB. */
+    private static void writeMasked(OutputStream out, int b0, byte[] payload) throws IOException {
+        byte[] mask = {1, 2, 3, 4};
+        out.write(b0);
+        if (payload.length < 126) {
+            out.write(0x80 | payload.length);
+        } else {
+            out.write(0x80 | 126);
+            out.write(payload.length >> 8);
+            out.write(payload.length & 0xFF);
+        }
+        out.write(mask);
+        for (int i = 0; i < payload.length; i++) {
+            out.write(payload[i] ^ mask[i & 3]);
+        }
+        out.flush();
+    }
+}
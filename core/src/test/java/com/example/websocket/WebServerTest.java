@@ -0,0 +1,79 @@
+package com.example.websocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+import static org.junit.Assert.*;
+
+/** Servidor NanoWSD de ejemplo frente a un cliente OkHttp real. */
+public class WebServerTest {
+
+    private WebServer server;
+    private OkHttpClient client;
+    private WebSocket socket;
+    private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        server = new WebServer(0);
+        server.start(5000, true);
+        client = new OkHttpClient.Builder().readTimeout(0, TimeUnit.MILLISECONDS).build();
+        BlockingQueue<Object> opened = new LinkedBlockingQueue<>();
+        socket = client.newWebSocket(new Request.Builder()
+                .url("ws://127.0.0.1:" + server.getListeningPort() + "/ws").build(), new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                opened.add(Boolean.TRUE);
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                received.add(text);
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                opened.add(t);
+                received.add(t);
+            }
+        });
+        assertEquals(Boolean.TRUE, opened.poll(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        socket.cancel();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        server.stop();
+    }
+
+    @Test
+    public void heartbeatPing_isAnsweredWithItsPong() throws InterruptedException {
+        socket.send(AdaptiveHeartbeat.CMD_PING + 7);
+
+        assertEquals(AdaptiveHeartbeat.CMD_PONG + 7, received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void plainText_isEchoedAsJsonEnvelope() throws InterruptedException {
+        socket.send("hola");
+
+        Object reply = received.poll(5, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(reply), reply instanceof String && Envelope.isJson((String) reply));
+        assertTrue((String) reply, ((String) reply).contains("\"ECHO\""));
+        assertTrue((String) reply, ((String) reply).endsWith("\"hola\"}"));
+    }
+}